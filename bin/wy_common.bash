@@ -79,3 +79,81 @@ esac
 WYRT_JAR=${tmp##* }
 WHILEY_BOOTPATH="$WYRT_JAR"
 
+######################
+# COMPILE SERVER
+######################
+
+# Each user has their own compile server.  The server listens on an arbitrary
+# port and writes this, together with a random token, to a server file which
+# only that user can read.  Every request must begin with the token.
+
+WHILEY_SERVER_DIR=${WHILEY_SERVER_DIR:-$HOME/.whiley}
+
+# Connect file descriptor 3 to the compile server described by the given
+# server file, setting server_token on success.
+#
+# usage: wy_server_connect <server-file>
+wy_server_connect() {
+    [ -r "$1" ] || return 1
+    read -r server_port server_token < "$1" || return 1
+    { exec 3<>/dev/tcp/127.0.0.1/$server_port; } 2>/dev/null
+}
+
+# Run a build on a long-running compile server, starting the server first if
+# necessary.  This avoids paying the cost of starting (and warming up) a JVM
+# on every build.  Everything the build writes is echoed to stdout, and the
+# exit code of the build is returned.
+#
+# usage: wy_server_run <server-class> <server-file> <args>...
+wy_server_run() {
+    server_class=$1
+    server_file=$2
+    shift 2
+
+    if ! wy_server_connect "$server_file"; then
+        rm -f "$server_file"
+        nohup java -server -Xmx512M -cp "$WHILEY_CLASSPATH" $server_class "$server_file" >/dev/null 2>&1 &
+        tries=0
+        until wy_server_connect "$server_file"; do
+            tries=$((tries+1))
+            if [ $tries -gt 100 ]; then
+                echo "unable to connect to compile server ($server_file)" >&2
+                return 2
+            fi
+            sleep 0.1
+        done
+    fi
+
+    {
+        printf '%s\n' "$server_token" "$PWD" "$#"
+        for arg in "$@"; do
+            printf '%s\n' "$arg"
+        done
+    } >&3
+
+    code=2
+    while IFS= read -r line <&3; do
+        case "$line" in
+        "--exit "*)
+            code=${line#--exit }
+            break
+            ;;
+        *)
+            printf '%s\n' "$line"
+            ;;
+        esac
+    done
+    exec 3<&-
+    return $code
+}
+
+# Stop the compile server described by the given server file (if there is
+# one).
+#
+# usage: wy_server_stop <server-file>
+wy_server_stop() {
+    if wy_server_connect "$1"; then
+        printf '%s\n' "$server_token" "stop" >&3
+        exec 3<&-
+    fi
+}
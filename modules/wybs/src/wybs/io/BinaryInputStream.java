@@ -26,41 +26,232 @@
 package wybs.io;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 
+/**
+ * An input stream which supports reading values made up of arbitrary numbers
+ * of bits, as written by <code>BinaryOutputStream</code>. Bits are read from
+ * each byte starting with the least significant.
+ * 
+ * <p>
+ * Bytes are read from an internal buffer, rather than one at a time from the
+ * underlying input stream. Alternatively, the stream may read directly from a
+ * given <code>ByteBuffer</code> (e.g. one which maps a file into memory). Most
+ * reads are dominated by variable-length integers (see
+ * <code>read_uv()</code>), and these are decoded a whole byte at a time using
+ * a lookup table. Likewise, reads of whole bytes are performed in bulk
+ * whenever the stream is aligned on a byte boundary.
+ * </p>
+ * 
+ * @author David J. Pearce
+ * 
+ */
 public class BinaryInputStream extends InputStream {
+	
+	/**
+	 * The default size of the buffer used when reading from an underlying
+	 * input stream.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+	
+	/**
+	 * The underlying input stream, which is null if reading directly from a
+	 * buffer.
+	 */
 	protected InputStream input;
+	
+	/**
+	 * The buffer from which bytes are read. When reading from an underlying
+	 * input stream, this holds those bytes which have been read from it, but
+	 * not yet consumed.
+	 */
+	protected ByteBuffer buffer;
+	
+	/**
+	 * The bits remaining from the partially consumed byte (if any), starting
+	 * from the least significant bit.
+	 */
 	protected int value;
+	
+	/**
+	 * The number of bits remaining in value.
+	 */
 	protected int count;
 
 	public BinaryInputStream(InputStream input) {
+		this(input, DEFAULT_BUFFER_SIZE);
+	}
+	
+	public BinaryInputStream(InputStream input, int bufferSize) {
 		this.input = input;
+		this.buffer = ByteBuffer.allocate(bufferSize);
+		this.buffer.limit(0);
+	}
+	
+	/**
+	 * Construct a stream which reads directly from a given buffer, starting at
+	 * its current position.
+	 * 
+	 * @param buffer
+	 */
+	public BinaryInputStream(ByteBuffer buffer) {
+		this.input = null;
+		this.buffer = buffer.slice();
+	}
+	
+	public BinaryInputStream(byte[] bytes) {
+		this(ByteBuffer.wrap(bytes));
+	}
+	
+	/**
+	 * Construct a stream which reads from a given file by mapping it into
+	 * memory. This is generally only worthwhile for large files.
+	 * 
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static BinaryInputStream map(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY,
+					0, channel.size());
+			return new BinaryInputStream(mapped);
+		} finally {
+			// the mapping remains valid after the file is closed.
+			raf.close();
+		}
 	}
 	
 	public int read() throws IOException {
 		if(count == 0) {
-			return input.read();
+			return next();
 		} else {
-			return read_un(8);
+			return nextUnaligned();
 		}
 	}
 	
 	public int read(byte[] bytes) throws IOException {
-		for (int i = 0; i != bytes.length; ++i) {
-			bytes[i] = (byte) read();
-		}
-		return bytes.length;
+		return read(bytes, 0, bytes.length);
 	}
 	
 	public int read(byte[] bytes, int offset, int length) throws IOException {
-		for(;offset < length;++offset) {
-			bytes[offset] = (byte) read();			
+		if (count != 0) {
+			// not aligned on a byte boundary, so must read bytes individually.
+			for (int i = 0; i != length; ++i) {
+				int b = nextUnaligned();
+				if (b < 0) {
+					return i == 0 ? -1 : i;
+				}
+				bytes[offset + i] = (byte) b;
+			}
+			return length;
+		}
+		int total = 0;
+		while (total < length) {
+			if (!buffer.hasRemaining()) {
+				if (input == null) {
+					break;
+				} else if ((length - total) >= buffer.capacity()) {
+					// no point copying large reads through the buffer.
+					int n = input.read(bytes, offset + total, length - total);
+					if (n < 0) {
+						break;
+					}
+					total += n;
+					continue;
+				} else if (!fill()) {
+					break;
+				}
+			}
+			int n = Math.min(length - total, buffer.remaining());
+			buffer.get(bytes, offset + total, n);
+			total += n;
+		}
+		return total == 0 && length != 0 ? -1 : total;
+	}
+	
+	public long skip(long n) throws IOException {
+		if (count != 0) {
+			return super.skip(n);
+		}
+		long skipped = Math.min(n, buffer.remaining());
+		buffer.position(buffer.position() + (int) skipped);
+		if (skipped < n && input != null) {
+			skipped += input.skip(n - skipped);
+		}
+		return skipped;
+	}
+	
+	/**
+	 * Return a view of the next <code>size</code> bytes, and advance past
+	 * them. When the stream is aligned and those bytes are already buffered
+	 * (e.g. for a stream constructed from a buffer, or after a call to
+	 * <code>load()</code>) the view shares the underlying buffer and no copy
+	 * is made. Otherwise, the bytes are read into a fresh buffer.
+	 * 
+	 * @param size --- number of bytes to slice.
+	 * @return
+	 * @throws IOException
+	 */
+	public ByteBuffer slice(int size) throws IOException {
+		if (count == 0 && buffer.remaining() >= size) {
+			ByteBuffer view = buffer.slice();
+			view.limit(size);
+			buffer.position(buffer.position() + size);
+			return view;
+		}
+		byte[] bytes = new byte[size];
+		if (size != 0 && read(bytes) != size) {
+			throw new EOFException();
+		}
+		return ByteBuffer.wrap(bytes);
+	}
+	
+	/**
+	 * Read the remainder of the underlying input stream (if any) into the
+	 * buffer in one go. After this, bytes can be sliced from the stream
+	 * without being copied, and skipping is just a matter of moving the
+	 * buffer's position.
+	 * 
+	 * @throws IOException
+	 */
+	public void load() throws IOException {
+		if (input == null) {
+			return;
+		}
+		ByteArrayOutputStream bout = new ByteArrayOutputStream(Math.max(
+				buffer.remaining(), DEFAULT_BUFFER_SIZE));
+		bout.write(buffer.array(), buffer.arrayOffset() + buffer.position(),
+				buffer.remaining());
+		byte[] chunk = new byte[DEFAULT_BUFFER_SIZE];
+		int n;
+		while ((n = input.read(chunk)) >= 0) {
+			bout.write(chunk, 0, n);
+		}
+		buffer = ByteBuffer.wrap(bout.toByteArray());
+	}
+	
+	public int available() throws IOException {
+		int n = buffer.remaining();
+		if (input != null) {
+			n += input.available();
+		}
+		return n;
+	}
+	
+	public void close() throws IOException {
+		if (input != null) {
+			input.close();
 		}
-		return length;
 	}
 	
 	public int read_u8() throws IOException {
 		if(count == 0) {
-			return input.read() & 0xFF;
+			return next() & 0xFF;
 		} else {
 			return read_un(8);
 		}
@@ -71,40 +262,74 @@ public class BinaryInputStream extends InputStream {
 	}
 		
 	public long read_u32() throws IOException {
-		// FIXME: this is most definitely broken
-		return (read_u8() << 24) | (read_u8() << 16) | (read_u8() << 8)
-				| read_u8();
+		return ((long) read_u8() << 24) | (read_u8() << 16)
+				| (read_u8() << 8) | read_u8();
 	}
 	
 	public int read_un(int n) throws IOException {		
-		int value = 0;
-		int mask = 1;
-		for(int i=0;i!=n;++i) {
-			if(read_bit()) {
-				value |= mask;
+		int r = 0;
+		int shift = 0;
+		while (n > 0) {
+			if (count == 0) {
+				value = nextOrEOF();
+				count = 8;
 			}
-			mask = mask << 1;			
+			int k = n < count ? n : count;
+			r |= (value & ((1 << k) - 1)) << shift;
+			value = value >>> k;
+			count -= k;
+			shift += k;
+			n -= k;
 		}
-		return value;		
+		return r;		
 	}
 	
+	/**
+	 * Read an unsigned integer value written using a variable amount of space
+	 * (see <code>BinaryOutputStream.write_uv()</code>). Whenever a complete
+	 * byte is available, both of its nibbles are decoded in one step using a
+	 * lookup table.
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
 	public int read_uv() throws IOException {
-		int value = 0;
-		boolean flag = true;
+		int r = 0;
 		int shift = 0;
-		while(flag) {
-			int w = read_un(4);
-			flag = (w&8) != 0;
-			value = ((w&7)<<shift) | value;
-			shift = shift + 3;			
+		while (true) {
+			int w;
+			if (count == 0) {
+				int b = nextOrEOF();
+				int e = UV_TABLE[b];
+				r |= (e & 0x3F) << shift;
+				if ((e & UV_TWO_NIBBLES) == 0) {
+					// only the low nibble was consumed
+					value = b >>> 4;
+					count = 4;
+					return r;
+				} else if ((e & UV_MORE) == 0) {
+					return r;
+				}
+				shift += 6;
+				continue;
+			} else if (count >= 4) {
+				w = value & 15;
+				value = value >>> 4;
+				count -= 4;
+			} else {
+				w = read_un(4);
+			}
+			r |= (w & 7) << shift;
+			if ((w & 8) == 0) {
+				return r;
+			}
+			shift += 3;
 		}
-		return value;
 	}
 	
 	public boolean read_bit() throws IOException {
 		if(count == 0) {
-			value = input.read();
-			if(value < 0) { throw new EOFException(); }
+			value = nextOrEOF();
 			count = 8;
 		}
 		boolean r = (value&1) != 0;
@@ -116,4 +341,102 @@ public class BinaryInputStream extends InputStream {
 	public void pad_u8() throws IOException {		
 		count = 0; // easy!!
 	}
+	
+	// =========================================================================
+	// Helpers
+	// =========================================================================
+	
+	/**
+	 * Read the next byte from the buffer, refilling it as necessary. Returns
+	 * -1 if the end of the stream is reached.
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	private int next() throws IOException {
+		if (!buffer.hasRemaining() && !fill()) {
+			return -1;
+		}
+		return buffer.get() & 0xFF;
+	}
+	
+	/**
+	 * Read the next eight bits when the stream is not aligned on a byte
+	 * boundary. Returns -1 if the end of the stream is reached.
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	private int nextUnaligned() throws IOException {
+		int b = next();
+		if (b < 0) {
+			return -1;
+		}
+		int r = (value | (b << count)) & 0xFF;
+		value = b >>> (8 - count);
+		return r;
+	}
+	
+	private int nextOrEOF() throws IOException {
+		if (!buffer.hasRemaining() && !fill()) {
+			throw new EOFException();
+		}
+		return buffer.get() & 0xFF;
+	}
+	
+	/**
+	 * Refill the (empty) buffer from the underlying input stream.
+	 * 
+	 * @return false if no more bytes are available.
+	 * @throws IOException
+	 */
+	private boolean fill() throws IOException {
+		if (input == null) {
+			return false;
+		}
+		int n = input.read(buffer.array(), 0, buffer.capacity());
+		if (n <= 0) {
+			buffer.limit(0);
+			return false;
+		}
+		buffer.position(0);
+		buffer.limit(n);
+		return true;
+	}
+	
+	/**
+	 * Indicates that both nibbles of a byte are part of the variable-length
+	 * integer being decoded.
+	 */
+	private static final int UV_TWO_NIBBLES = 1 << 6;
+	
+	/**
+	 * Indicates that further nibbles follow a byte which was entirely part of
+	 * the variable-length integer being decoded.
+	 */
+	private static final int UV_MORE = 1 << 7;
+	
+	/**
+	 * Maps each byte to the result of decoding a variable-length integer from
+	 * its nibbles (least significant first). Bits 0-5 give the decoded value
+	 * bits, and the two flags above indicate how many nibbles were consumed
+	 * and whether decoding continues into the next byte.
+	 */
+	private static final int[] UV_TABLE = new int[256];
+	
+	static {
+		for (int b = 0; b != 256; ++b) {
+			int lo = b & 15;
+			int hi = b >>> 4;
+			if ((lo & 8) == 0) {
+				UV_TABLE[b] = lo & 7;
+			} else {
+				int e = (lo & 7) | ((hi & 7) << 3) | UV_TWO_NIBBLES;
+				if ((hi & 8) != 0) {
+					e |= UV_MORE;
+				}
+				UV_TABLE[b] = e;
+			}
+		}
+	}
 }
@@ -26,10 +26,51 @@
 package wybs.io;
 
 import java.io.*;
+import java.util.Arrays;
 
+/**
+ * An output stream which supports writing values made up of arbitrary numbers
+ * of bits. Bits are packed into each byte starting with the least significant.
+ * 
+ * <p>
+ * A binary output stream either writes to an underlying output stream, or
+ * accumulates everything written into a growable buffer whose contents can be
+ * obtained via <code>toByteArray()</code>. The latter avoids the overhead of
+ * going through a <code>ByteArrayOutputStream</code> for every byte. In both
+ * cases, whole bytes are written in bulk whenever the stream is aligned on a
+ * byte boundary.
+ * </p>
+ * 
+ * @author David J. Pearce
+ * 
+ */
 public class BinaryOutputStream extends OutputStream {	
+	
+	/**
+	 * The underlying output stream, which is null if writing into the buffer.
+	 */
 	protected OutputStream output;
+	
+	/**
+	 * The buffer into which bytes are written, when there is no underlying
+	 * output stream.
+	 */
+	protected byte[] buffer;
+	
+	/**
+	 * The number of bytes written into the buffer.
+	 */
+	protected int length;
+	
+	/**
+	 * The bits of the partially written byte (if any), starting from the least
+	 * significant bit.
+	 */
 	protected int value;
+	
+	/**
+	 * The number of bits in value.
+	 */
 	protected int count;
 	
 	/**
@@ -39,6 +80,43 @@ public class BinaryOutputStream extends OutputStream {
 	public BinaryOutputStream(OutputStream output) {		
 		this.output = output;
 	}
+	
+	/**
+	 * Write out data in big-endian format into a growable buffer.
+	 */
+	public BinaryOutputStream() {
+		this(256);
+	}
+	
+	/**
+	 * Write out data in big-endian format into a growable buffer with a given
+	 * initial capacity.
+	 * 
+	 * @param capacity
+	 */
+	public BinaryOutputStream(int capacity) {
+		this.buffer = new byte[capacity];
+	}
+	
+	/**
+	 * Get the bytes written into the buffer so far. This is only valid when
+	 * there is no underlying output stream. Note that any bits of a partially
+	 * written byte are not included (see <code>flush()</code>).
+	 * 
+	 * @return
+	 */
+	public byte[] toByteArray() {
+		return Arrays.copyOf(buffer, length);
+	}
+	
+	/**
+	 * Get the number of bytes written into the buffer so far.
+	 * 
+	 * @return
+	 */
+	public int size() {
+		return length;
+	}
 		
 	/**
 	 * Write an unsigned integer value using 8bits using a big-endian encoding.
@@ -48,21 +126,28 @@ public class BinaryOutputStream extends OutputStream {
 	 */
 	public void write(int i) throws IOException {		
 		if(count == 0) {
-			output.write(i & 0xFF);
+			emit(i & 0xFF);
 		} else {
 			write_un(i & 0xFF,8);
 		}
 	}		
 	
 	public void write(byte[] bytes) throws IOException {
-		for(byte b : bytes) {
-			write(b);
-		}
+		write(bytes, 0, bytes.length);
 	}
 	
 	public void write(byte[] bytes, int offset, int length) throws IOException {
-		for(;offset < length;++offset) {
-			write(bytes[offset]);
+		if (count != 0) {
+			// not aligned on a byte boundary, so must write bytes individually.
+			for (int i = 0; i != length; ++i) {
+				write_un(bytes[offset + i] & 0xFF, 8);
+			}
+		} else if (output != null) {
+			output.write(bytes, offset, length);
+		} else {
+			ensureCapacity(this.length + length);
+			System.arraycopy(bytes, offset, buffer, this.length, length);
+			this.length += length;
 		}
 	}
 	
@@ -74,7 +159,7 @@ public class BinaryOutputStream extends OutputStream {
 	 */
 	public void write_u8(int w) throws IOException {
 		if(count == 0) {
-			output.write(w & 0xFF);
+			emit(w & 0xFF);
 		} else {
 			write_un(w & 0xFF,8);
 		}		
@@ -137,25 +222,25 @@ public class BinaryOutputStream extends OutputStream {
 	 * @throws IOException
 	 */
 	public void write_un(int bits, int n) throws IOException {		
-		int mask = 1;
-		for(int i=0;i<n;++i) {
-			boolean bit = (bits & mask) != 0;
-			write_bit(bit);
-			mask = mask << 1;
+		while (n > 0) {
+			int k = 8 - count;
+			if (n < k) {
+				k = n;
+			}
+			value |= (bits & ((1 << k) - 1)) << count;
+			bits = bits >>> k;
+			count += k;
+			n -= k;
+			if (count == 8) {
+				emit(value);
+				value = 0;
+				count = 0;
+			}
 		}		
 	}	
 	
 	public void write_bit(boolean bit) throws IOException {
-		value = value >> 1;
-		if(bit) {
-			value |= 128;
-		}
-		count = count + 1;
-		if(count == 8) {
-			count = 0;			
-			output.write(value);			
-			value = 0;
-		}
+		write_un(bit ? 1 : 0, 1);
 	}
 	
 	/**
@@ -164,7 +249,7 @@ public class BinaryOutputStream extends OutputStream {
 	 */
 	public void pad_u8() throws IOException {
 		if (count > 0) {			
-			output.write(value >>> (8-count));
+			emit(value);
 			value = 0;
 			count = 0;
 		}
@@ -172,7 +257,9 @@ public class BinaryOutputStream extends OutputStream {
 		
 	public void close() throws IOException {
 		flush();
-		output.close();
+		if (output != null) {
+			output.close();
+		}
 	}
 	
 	public void flush() throws IOException {
@@ -181,13 +268,35 @@ public class BinaryOutputStream extends OutputStream {
 			// write. This means we have to pad out the remainder of a byte.
 			// Instead of padding with zeros, I pad with ones. The reason for
 			// this is that it forces an EOF when reading back in with read_uv().
-			value = value >>> (8-count);
 			int mask = 0xff & ((~0) << count);						
-			value = value | mask;			
-			output.write(value);
+			emit(value | mask);
 		}		
 	}
 	
+	/**
+	 * Write a single (complete) byte.
+	 * 
+	 * @param b
+	 * @throws IOException
+	 */
+	private void emit(int b) throws IOException {
+		if (output != null) {
+			output.write(b);
+		} else {
+			if (length == buffer.length) {
+				ensureCapacity(length + 1);
+			}
+			buffer[length++] = (byte) b;
+		}
+	}
+	
+	private void ensureCapacity(int capacity) {
+		if (capacity > buffer.length) {
+			buffer = Arrays.copyOf(buffer,
+					Math.max(capacity, buffer.length * 2));
+		}
+	}
+	
 	public static String bin2str(int v) {
 		if(v == 0) {
 			return "0";
@@ -46,6 +46,14 @@ public interface Logger {
 	 */
 	public void logTimedMessage(String msg, long time, long memory);
 
+	/**
+	 * Log a message which is not associated with any time (e.g. statistics
+	 * gathered during a stage).
+	 * 
+	 * @param msg
+	 */
+	public void logMessage(String msg);
+
 	/**
 	 * The NULL logger simply drops all logged messages. It's a simple, albeit
 	 * not that helpful, default.
@@ -54,6 +62,10 @@ public interface Logger {
 		public void logTimedMessage(String msg, long time, long memory) {
 			// do nothing.
 		}
+
+		public void logMessage(String msg) {
+			// do nothing.
+		}
 	};	
 	
 	/**
@@ -72,7 +84,7 @@ public interface Logger {
 		/**
 		 * This method is just a helper to format the output
 		 */
-		public void logTimedMessage(String msg, long time, long memory) {
+		public synchronized void logTimedMessage(String msg, long time, long memory) {
 			logout.print(msg);
 			logout.print(" ");
 			double mem = memory;
@@ -91,6 +103,10 @@ public interface Logger {
 			}		
 			logout.println(stats);
 		}	
+
+		public synchronized void logMessage(String msg) {
+			logout.println(msg);
+		}
 		
 		public void logTotalTime(String msg, long time, long memory) {
 			memory = memory / 1024;
@@ -79,14 +79,14 @@ public abstract class AbstractEntry<T> implements Path.Entry<T> {
 		}
 	}
 	
-	public T read() throws IOException {
+	public synchronized T read() throws IOException {
 		if (contents == null) {
 			contents = contentType.read(this,inputStream());
 		}
 		return contents;
 	}		
 			
-	public void write(T contents) throws IOException {
+	public synchronized void write(T contents) throws IOException {
 		this.modified = true;
 		this.contents = contents; 
 	}
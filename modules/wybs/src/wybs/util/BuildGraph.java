@@ -0,0 +1,365 @@
+// Copyright (c) 2011, David J. Pearce (djp@ecs.vuw.ac.nz)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//    * Redistributions of source code must retain the above copyright
+//      notice, this list of conditions and the following disclaimer.
+//    * Redistributions in binary form must reproduce the above copyright
+//      notice, this list of conditions and the following disclaimer in the
+//      documentation and/or other materials provided with the distribution.
+//    * Neither the name of the <organization> nor the
+//      names of its contributors may be used to endorse or promote products
+//      derived from this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+// ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL DAVID J. PEARCE BE LIABLE FOR ANY
+// DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+// LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+// ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package wybs.util;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+import wybs.lang.Path;
+
+/**
+ * <p>
+ * Records, for every module built, the information needed to decide whether it
+ * must be rebuilt. This consists of a hash of the module's source, a
+ * fingerprint for each declaration making up its public interface, and the
+ * modules it depends upon (along with the interface fingerprint each had when
+ * this module was last built).
+ * </p>
+ * <p>
+ * A module needs rebuilding if its source hash has changed, or if the interface
+ * fingerprint of anything it depends upon differs from that recorded. Thus,
+ * modifying the body of a function does not force its importers to be rebuilt,
+ * whilst modifying its signature does.
+ * </p>
+ * <p>
+ * The graph is persisted as a simple line-oriented text file, which is
+ * typically stored alongside the binary files it describes.
+ * </p>
+ */
+public final class BuildGraph {
+	
+	/**
+	 * The nodes of this graph, indexed by module identifier.
+	 */
+	private final HashMap<Path.ID, Node> nodes = new HashMap<Path.ID, Node>();
+	
+	/**
+	 * Get the node recorded for a given module, or null if no such node
+	 * exists.
+	 * 
+	 * @param id
+	 * @return
+	 */
+	public synchronized Node get(Path.ID id) {
+		return nodes.get(id);
+	}
+	
+	/**
+	 * Record the source hash and interface of a given module. Any dependencies
+	 * previously recorded for the module are discarded.
+	 * 
+	 * @param id
+	 *            --- module being recorded.
+	 * @param hash
+	 *            --- hash of the module's source.
+	 * @param signatures
+	 *            --- map from each declaration in the module's public interface
+	 *            to its fingerprint.
+	 * @return
+	 */
+	public synchronized Node put(Path.ID id, String hash,
+			Map<String, String> signatures) {
+		Node node = new Node(id, hash, signatures);
+		nodes.put(id, node);
+		return node;
+	}
+	
+	/**
+	 * Get the modules for which nodes are recorded.
+	 * 
+	 * @return
+	 */
+	public synchronized Set<Path.ID> modules() {
+		return new HashSet<Path.ID>(nodes.keySet());
+	}
+	
+	/**
+	 * Remove the node recorded for a given module (e.g. because its source
+	 * file was deleted).
+	 * 
+	 * @param id
+	 */
+	public synchronized void remove(Path.ID id) {
+		nodes.remove(id);
+	}
+
+	/**
+	 * Determine those modules which (directly) depend upon a given module.
+	 * 
+	 * @param id
+	 * @return
+	 */
+	public synchronized Set<Path.ID> dependents(Path.ID id) {
+		HashSet<Path.ID> result = new HashSet<Path.ID>();
+		for (Node node : nodes.values()) {
+			if (node.dependencies.containsKey(id)) {
+				result.add(node.id);
+			}
+		}
+		return result;
+	}
+	
+	// ======================================================================
+	// Persistence
+	// ======================================================================
+
+	/**
+	 * Read a build graph from a given file. If the file does not exist, an
+	 * empty graph is returned.
+	 * 
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static BuildGraph read(File file) throws IOException {
+		BuildGraph graph = new BuildGraph();
+		if (!file.exists()) {
+			return graph;
+		}
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			Node node = null;
+			String line;
+			while ((line = in.readLine()) != null) {
+				// NOTE: declaration names may contain spaces, hence they
+				// always come last.
+				String[] parts = line.split(" ", 3);
+				if (parts.length != 3) {
+					throw new IOException("invalid build graph entry: " + line);
+				}
+				if (parts[0].equals("module")) {
+					node = graph.put(Trie.fromString(parts[1]), parts[2],
+							Collections.EMPTY_MAP);
+				} else if (node == null) {
+					throw new IOException("invalid build graph entry: " + line);
+				} else if (parts[0].equals("decl")) {
+					node.signatures.put(parts[2], parts[1]);
+				} else if (parts[0].equals("dep")) {
+					node.dependencies.put(Trie.fromString(parts[1]), parts[2]);
+				} else {
+					throw new IOException("invalid build graph entry: " + line);
+				}
+			}
+		} finally {
+			in.close();
+		}
+		return graph;
+	}
+
+	/**
+	 * Write this build graph to a given file. Nodes are written in a
+	 * deterministic order, so that unchanged graphs produce identical files.
+	 * 
+	 * @param file
+	 * @throws IOException
+	 */
+	public synchronized void write(File file) throws IOException {
+		TreeMap<String, Node> sorted = new TreeMap<String, Node>();
+		for (Node node : nodes.values()) {
+			sorted.put(node.id.toString(), node);
+		}
+		PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(
+				file)));
+		try {
+			for (Node node : sorted.values()) {
+				out.println("module " + node.id + " " + node.hash);
+				for (Map.Entry<String, String> e : node.signatures.entrySet()) {
+					out.println("decl " + e.getValue() + " " + e.getKey());
+				}
+				TreeMap<String, String> deps = new TreeMap<String, String>();
+				for (Map.Entry<Path.ID, String> e : node.dependencies
+						.entrySet()) {
+					deps.put(e.getKey().toString(), e.getValue());
+				}
+				for (Map.Entry<String, String> e : deps.entrySet()) {
+					out.println("dep " + e.getKey() + " " + e.getValue());
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+	
+	// ======================================================================
+	// Hashing
+	// ======================================================================
+
+	/**
+	 * Compute a hash of the given bytes, returned as a hexadecimal string.
+	 * 
+	 * @param bytes
+	 * @return
+	 */
+	public static String digest(byte[] bytes) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			byte[] result = md.digest(bytes);
+			StringBuilder r = new StringBuilder();
+			for (int i = 0; i != result.length; ++i) {
+				r.append(Integer.toHexString((result[i] >> 4) & 0xF));
+				r.append(Integer.toHexString(result[i] & 0xF));
+			}
+			return r.toString();
+		} catch (NoSuchAlgorithmException e) {
+			// should be dead-code, since all platforms must support SHA-1
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * Compute a hash of the given string, returned as a hexadecimal string.
+	 * 
+	 * @param str
+	 * @return
+	 */
+	public static String digest(String str) {
+		try {
+			return digest(str.getBytes("UTF-8"));
+		} catch (UnsupportedEncodingException e) {
+			// should be dead-code, since all platforms must support UTF-8
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * Compute a hash of all bytes in the given stream, returned as a
+	 * hexadecimal string. The stream is closed afterwards.
+	 * 
+	 * @param input
+	 * @return
+	 * @throws IOException
+	 */
+	public static String digest(InputStream input) throws IOException {
+		try {
+			ByteArrayOutputStream bout = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int nread;
+			while ((nread = input.read(buffer)) != -1) {
+				bout.write(buffer, 0, nread);
+			}
+			return digest(bout.toByteArray());
+		} finally {
+			input.close();
+		}
+	}
+	
+	/**
+	 * Compute a single fingerprint for an entire interface, given the
+	 * fingerprints of its declarations. This changes whenever any declaration
+	 * is added to, removed from or changed within the interface.
+	 * 
+	 * @param signatures
+	 * @return
+	 */
+	public static String fingerprint(Map<String, String> signatures) {
+		StringBuilder r = new StringBuilder();
+		for (Map.Entry<String, String> e : new TreeMap<String, String>(
+				signatures).entrySet()) {
+			r.append(e.getKey());
+			r.append(':');
+			r.append(e.getValue());
+			r.append(';');
+		}
+		return digest(r.toString());
+	}
+	
+	/**
+	 * Represents the information recorded for a single module.
+	 */
+	public static final class Node {
+		private final Path.ID id;
+		private final String hash;
+		private final TreeMap<String, String> signatures;
+		private final HashMap<Path.ID, String> dependencies;
+		private String fingerprint;
+
+		private Node(Path.ID id, String hash, Map<String, String> signatures) {
+			this.id = id;
+			this.hash = hash;
+			this.signatures = new TreeMap<String, String>(signatures);
+			this.dependencies = new HashMap<Path.ID, String>();
+		}
+
+		public Path.ID id() {
+			return id;
+		}
+		
+		/**
+		 * Get the hash of this module's source, as recorded when it was last
+		 * built.
+		 * 
+		 * @return
+		 */
+		public String hash() {
+			return hash;
+		}
+
+		/**
+		 * Get the fingerprints of the declarations making up this module's
+		 * public interface.
+		 * 
+		 * @return
+		 */
+		public Map<String, String> signatures() {
+			return Collections.unmodifiableMap(signatures);
+		}
+
+		/**
+		 * Get the modules this module depends upon, along with the interface
+		 * fingerprint of each at the time this module was built.
+		 * 
+		 * @return
+		 */
+		public Map<Path.ID, String> dependencies() {
+			return Collections.unmodifiableMap(dependencies);
+		}
+		
+		/**
+		 * Record that this module depends upon another, whose interface
+		 * currently has the given fingerprint.
+		 * 
+		 * @param id
+		 * @param fingerprint
+		 */
+		public void addDependency(Path.ID id, String fingerprint) {
+			dependencies.put(id, fingerprint);
+		}
+
+		/**
+		 * Get a single fingerprint for this module's entire public interface.
+		 * 
+		 * @return
+		 */
+		public String fingerprint() {
+			if (fingerprint == null) {
+				fingerprint = BuildGraph.fingerprint(signatures);
+			}
+			return fingerprint;
+		}
+	}
+}
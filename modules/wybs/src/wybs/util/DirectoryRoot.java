@@ -192,9 +192,17 @@ public final class DirectoryRoot extends AbstractRoot<DirectoryRoot.Folder> {
 	public static final class Entry<T> extends AbstractEntry<T> implements Path.Entry<T> {		
 		private final java.io.File file;
 		
+		/**
+		 * The modification time of the underlying file when this entry was
+		 * last synchronised with it. This is used to determine whether or not
+		 * the cached contents of this entry are still valid.
+		 */
+		private long timestamp;
+		
 		public Entry(Path.ID id, java.io.File file) {
 			super(id);
 			this.file = file;			
+			this.timestamp = file.lastModified();
 		}
 		
 		public String location() {
@@ -228,6 +236,28 @@ public final class DirectoryRoot extends AbstractRoot<DirectoryRoot.Folder> {
 			return new FileOutputStream(file);
 		}
 		
+		@Override
+		public void flush() throws IOException {
+			if (modified && contents != null) {
+				super.flush();
+				timestamp = file.lastModified();
+			}
+		}
+		
+		/**
+		 * Discard the cached contents of this entry, but only if the
+		 * underlying file has changed on disk since they were obtained.
+		 * 
+		 * @throws IOException
+		 */
+		void refreshIfChanged() throws IOException {
+			long lastModified = file.lastModified();
+			if (lastModified != timestamp) {
+				timestamp = lastModified;
+				refresh();
+			}
+		}
+		
 		public String toString() {			
 			return file.toString();
 		}
@@ -240,6 +270,14 @@ public final class DirectoryRoot extends AbstractRoot<DirectoryRoot.Folder> {
 	 *
 	 */
 	public final class Folder extends AbstractFolder {
+		/**
+		 * The items found when this folder was last listed, indexed by their
+		 * filenames. When the folder is refreshed, items whose files still
+		 * exist are reused rather than recreated. Thus, entries whose files
+		 * have not changed on disk retain their cached contents.
+		 */
+		private HashMap<String, Path.Item> items = new HashMap<String, Path.Item>();
+		
 		public Folder(Path.ID id) {
 			super(id);
 		}
@@ -247,38 +285,51 @@ public final class DirectoryRoot extends AbstractRoot<DirectoryRoot.Folder> {
 		@Override
 		protected Path.Item[] contents() throws IOException {			
 			File myDir = new File(dir, id.toString().replace('/', File.separatorChar));		
+			HashMap<String, Path.Item> previous = items;
+			items = new HashMap<String, Path.Item>();
 			
 			if (myDir.exists() && myDir.isDirectory()) {
 				File[] files = myDir.listFiles(filter);
-				Path.Item[] items = new Path.Item[files.length];
-				int count = 0;
 				for(int i=0;i!=files.length;++i) {
 					File file = files[i];
 					String filename = file.getName();
+					Path.Item item = previous.get(filename);
 					if (file.isDirectory()) {
-						items[count++] = new Folder(id.append(filename));
+						if (item instanceof Folder) {
+							item.refresh();
+						} else {
+							item = new Folder(id.append(filename));
+						}
+						items.put(filename, item);
 					} else {
 						int idx = filename.lastIndexOf('.');
 						if (idx > 0) {
-							String name = filename.substring(0, idx);
-							Path.ID oid = id.append(name);
-							Entry e = new Entry(oid, file);
-							contentTypes.associate(e);
-							items[count++] = e;
+							if (item instanceof Entry) {
+								((Entry) item).refreshIfChanged();
+							} else {
+								String name = filename.substring(0, idx);
+								Path.ID oid = id.append(name);
+								Entry e = new Entry(oid, file);
+								contentTypes.associate(e);
+								item = e;
+							}
+							items.put(filename, item);
 						}
 					}
 				}
-				
-				if(count != items.length) {
-					// trim the end since we didn't use all allocated elements.
-					return Arrays.copyOf(items,count);
-				} else {
-					// minor optimisation
-					return items;
+			}
+			
+			// Finally, retain any entries which have been created but not yet
+			// written to disk.
+			for (Map.Entry<String, Path.Item> p : previous.entrySet()) {
+				Path.Item item = p.getValue();
+				if (item instanceof Entry && ((Entry) item).isModified()
+						&& !items.containsKey(p.getKey())) {
+					items.put(p.getKey(), item);
 				}
-			} else {
-				return new Path.Item[0];
 			}
+			
+			return items.values().toArray(new Path.Item[items.size()]);
 		}
 
 		@Override
@@ -298,6 +349,7 @@ public final class DirectoryRoot extends AbstractRoot<DirectoryRoot.Folder> {
 					e = new Entry(nid, nfile);
 					e.associate(ct, null);
 					super.insert(e);
+					items.put(nfile.getName(), e);
 				}
 				return e;
 			} else {
@@ -307,6 +359,7 @@ public final class DirectoryRoot extends AbstractRoot<DirectoryRoot.Folder> {
 					// Folder doesn't already exist, so create it.
 					folder = new Folder(id.append(nid.get(0)));
 					super.insert(folder);
+					items.put(nid.get(0), folder);
 				}
 				return folder.create(nid.subpath(1, nid.size()), ct, sources);
 			}
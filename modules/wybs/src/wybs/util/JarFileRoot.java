@@ -44,6 +44,13 @@ public final class JarFileRoot extends AbstractRoot<JarFileRoot.Folder> implemen
 	private final File dir;
 	private Path.Item[] jfContents;
 	
+	/**
+	 * The modification time of the jar file when it was last read. Since the
+	 * contents of a jar file cannot change without this changing as well, a
+	 * refresh is a no-op unless it does.
+	 */
+	private long timestamp;
+	
 	public JarFileRoot(String dir, Content.Registry contentTypes) throws IOException {
 		super(contentTypes);
 		this.dir = new File(dir);
@@ -68,6 +75,14 @@ public final class JarFileRoot extends AbstractRoot<JarFileRoot.Folder> implemen
 
 	@Override
 	public void refresh() throws IOException {
+		long lastModified = dir.lastModified();
+		if (jfContents != null && lastModified == timestamp) {
+			// jar file is unchanged, so retain existing entries and their
+			// cached contents.
+			return;
+		}
+		timestamp = lastModified;
+		root.refresh();
 		JarFile jf = new JarFile(dir);
 		Enumeration<JarEntry> entries = jf.entries();
 		this.jfContents = new Path.Item[jf.size()];
@@ -88,7 +88,7 @@ public class StandardProject implements NameSpace {
 	// Accessors
 	// ======================================================================		
 	
-	public boolean exists(Path.ID id, Content.Type<?> ct) throws Exception {
+	public synchronized boolean exists(Path.ID id, Content.Type<?> ct) throws Exception {
 		for(int i=0;i!=roots.size();++i) {
 			if(roots.get(i).exists(id, ct)) {
 				return true;
@@ -97,7 +97,7 @@ public class StandardProject implements NameSpace {
 		return false;
 	}
 	
-	public <T> Path.Entry<T> get(Path.ID id, Content.Type<T> ct) throws Exception {
+	public synchronized <T> Path.Entry<T> get(Path.ID id, Content.Type<T> ct) throws Exception {
 		for(int i=0;i!=roots.size();++i) {
 			Path.Entry<T> e = roots.get(i).get(id, ct);
 			if(e != null) {
@@ -107,7 +107,7 @@ public class StandardProject implements NameSpace {
 		return null;
 	}
 	
-	public <T> ArrayList<Path.Entry<T>> get(Content.Filter<T> filter) throws Exception {
+	public synchronized <T> ArrayList<Path.Entry<T>> get(Content.Filter<T> filter) throws Exception {
 		ArrayList<Path.Entry<T>> r = new ArrayList<Path.Entry<T>>();
 		for(int i=0;i!=roots.size();++i) {
 			r.addAll(roots.get(i).get(filter));
@@ -115,7 +115,7 @@ public class StandardProject implements NameSpace {
 		return r;
 	}
 	
-	public <T> HashSet<Path.ID> match(Content.Filter<T> filter) throws Exception {
+	public synchronized <T> HashSet<Path.ID> match(Content.Filter<T> filter) throws Exception {
 		HashSet<Path.ID> r = new HashSet<Path.ID>();
 		for(int i=0;i!=roots.size();++i) {
 			r.addAll(roots.get(i).match(filter));
@@ -128,13 +128,13 @@ public class StandardProject implements NameSpace {
 	// ======================================================================		
 
 	
-	public void flush() throws Exception {
+	public synchronized void flush() throws Exception {
 		for(int i=0;i!=roots.size();++i) {
 			roots.get(i).flush();
 		}
 	}
 	
-	public void refresh() throws Exception {
+	public synchronized void refresh() throws Exception {
 		for(int i=0;i!=roots.size();++i) {
 			roots.get(i).refresh();
 		}
@@ -70,6 +70,10 @@ public class WycMain {
 					"Print detailed information on what the compiler is doing"),
 			new OptArg("verify",
 					"Enable detailed verification checking"),
+			new OptArg("threads", "j", OptArg.INT,
+					"Specify number of threads to use for compilation", 1),
+			new OptArg("incremental",
+					"Only rebuild files affected by changes since the last build"),
 			new OptArg("whileypath", "wp", OptArg.FILELIST,
 					"Specify where to find whiley (binary) files",
 					new ArrayList<String>()),
@@ -156,14 +160,15 @@ public class WycMain {
 
 	public int run(String[] _args) {
 		boolean verbose = false;
+		ArrayList<String> args = new ArrayList<String>(Arrays.asList(_args));
+		Map<String, Object> values;
 
 		try {
 			// =====================================================================
 			// Process Options
 			// =====================================================================
 
-			ArrayList<String> args = new ArrayList<String>(Arrays.asList(_args));
-			Map<String, Object> values = OptArg.parseOptions(args, options);
+			values = OptArg.parseOptions(args, options);
 
 			// Second, check if we're printing version
 			if (values.containsKey("version")) {
@@ -178,12 +183,43 @@ public class WycMain {
 			}
 
 			// =====================================================================
-			// Configure Build Task & Sanity Check
+			// Configure Build Task
 			// =====================================================================
 			verbose = values.containsKey("verbose");
-			
+
 			configure(values);
-						
+
+		} catch (Throwable e) {
+			errout.println("internal failure (" + e.getMessage() + ")");
+			if (verbose) {
+				e.printStackTrace(errout);
+			}
+			return INTERNAL_FAILURE;
+		}
+
+		return build(values, args);
+	}
+
+	/**
+	 * Build a given list of source files using the build task, which should
+	 * already have been configured with the given option values. This is
+	 * separated from <code>run()</code> so that a build task can be configured
+	 * once, and then used for many builds.
+	 * 
+	 * @param values
+	 *            --- option values with which the build task was configured.
+	 * @param args
+	 *            --- paths of the source files to be compiled.
+	 * @return
+	 */
+	public int build(Map<String, Object> values, List<String> args) {
+		boolean verbose = values.containsKey("verbose");
+
+		try {
+			// =====================================================================
+			// Sanity Check
+			// =====================================================================
+
 			ArrayList<File> delta = new ArrayList<File>();
 			for (String arg : args) {
 				delta.add(new File(arg));
@@ -235,6 +271,12 @@ public class WycMain {
 				
 		builder.setVerbose(verbose);
 		builder.setVerification(values.containsKey("verify"));
+		builder.setIncremental(values.containsKey("incremental"));
+
+		Integer threads = (Integer) values.get("threads");
+		if (threads != null) {
+			builder.setThreads(threads);
+		}
 
 		ArrayList<Pipeline.Modifier> pipelineModifiers = (ArrayList) values
 				.get("pipeline");
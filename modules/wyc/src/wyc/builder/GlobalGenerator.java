@@ -55,6 +55,12 @@ import wyc.lang.WhileyFile;
 public class GlobalGenerator {
 	private final WhileyBuilder builder;
 	private final GlobalResolver resolver;	
+	
+	/**
+	 * Cache of constraint blocks generated for named types. This is guarded by
+	 * the generator's lock, as one generator may be shared by several threads
+	 * when building in parallel.
+	 */
 	private final HashMap<NameID,Block> cache = new HashMap<NameID,Block>();
 	
 	public GlobalGenerator(WhileyBuilder builder, GlobalResolver resolver) {		
@@ -62,7 +68,7 @@ public class GlobalGenerator {
 		this.resolver = resolver;
 	}
 		
-	public Block generate(NameID nid) throws Exception {
+	public synchronized Block generate(NameID nid) throws Exception {
 		Block blk = cache.get(nid);
 		if(blk == EMPTY_BLOCK) {
 			return null;
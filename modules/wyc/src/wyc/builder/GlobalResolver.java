@@ -35,7 +35,9 @@ import wyc.lang.WhileyFile;
  */
 public class GlobalResolver extends LocalResolver {
 	/**
-	 * The constant cache contains a cache of expanded constant values.
+	 * The constant cache contains a cache of expanded constant values. This is
+	 * guarded by the resolver's lock, as one resolver may be shared by several
+	 * threads when building in parallel.
 	 */
 	private final HashMap<NameID, Constant> constantCache = new HashMap();
 	
@@ -559,7 +561,7 @@ public class GlobalResolver extends LocalResolver {
 	 * @return
 	 * @throws Exception
 	 */
-	private Constant resolveAsConstant(NameID key, HashSet<NameID> visited) throws Exception {				
+	private synchronized Constant resolveAsConstant(NameID key, HashSet<NameID> visited) throws Exception {				
 		Constant result = constantCache.get(key);
 		if(result != null) {
 			return result;
@@ -27,10 +27,12 @@ package wyc.builder;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import wyil.*;
 import wyil.lang.*;
 import wyil.util.*;
+import wyil.util.type.TypeCache;
 import wybs.lang.*;
 import wybs.lang.Pipeline;
 import wybs.util.*;
@@ -95,6 +97,33 @@ public final class WhileyBuilder implements Builder {
 	 */
 	private final List<Transform<WyilFile>> stages;
 	
+	/**
+	 * The pipeline from which the stages were instantiated. This is retained so
+	 * that additional instances of every stage can be created when building in
+	 * parallel.
+	 */
+	private final Pipeline<WyilFile> pipeline;
+	
+	/**
+	 * The number of worker threads used to process independent modules
+	 * concurrently. By default, this is one and all modules are processed
+	 * sequentially on the calling thread.
+	 */
+	private int threads = 1;
+	
+	/**
+	 * The build graph (if any) into which the interface and dependencies of
+	 * every module built are recorded. This is used to determine which modules
+	 * must be rebuilt when compiling incrementally.
+	 */
+	private BuildGraph graph;
+	
+	/**
+	 * Caches the interface fingerprints of modules which are not recorded in
+	 * the build graph (e.g. those from the standard library).
+	 */
+	private final HashMap<Path.ID,String> fingerprints = new HashMap<Path.ID,String>();
+	
 	private Logger logger;
 	
 	/**
@@ -108,9 +137,10 @@ public final class WhileyBuilder implements Builder {
 	 * time. For example, the statement <code>import whiley.lang.*</code>
 	 * corresponds to the triple <code>("whiley.lang",*,null)</code>.
 	 */
-	private final HashMap<Trie,ArrayList<Path.ID>> importCache = new HashMap();	
+	private final ConcurrentHashMap<Trie,ArrayList<Path.ID>> importCache = new ConcurrentHashMap();	
 		
 	public WhileyBuilder(NameSpace namespace, Pipeline<WyilFile> pipeline) {
+		this.pipeline = pipeline;
 		this.stages = pipeline.instantiate(this);
 		this.logger = Logger.NULL;
 		this.namespace = namespace;
@@ -124,6 +154,26 @@ public final class WhileyBuilder implements Builder {
 		this.logger = logger;
 	}
 	
+	public void setBuildGraph(BuildGraph graph) {
+		this.graph = graph;
+		this.fingerprints.clear();
+	}
+	
+	/**
+	 * Set the number of worker threads used to parse, type, generate and
+	 * transform independent modules concurrently. A value of one means all
+	 * modules are processed sequentially.
+	 * 
+	 * @param threads
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("invalid number of threads: "
+					+ threads);
+		}
+		this.threads = threads;
+	}
+	
 	public void build(List<Pair<Path.Entry<?>,Path.Entry<?>>> delta) throws Exception {
 		Runtime runtime = Runtime.getRuntime();
 		long startTime = System.currentTimeMillis();
@@ -131,90 +181,171 @@ public final class WhileyBuilder implements Builder {
 		long tmpTime = startTime;
 		long tmpMemory = startMemory;
 
-		// ========================================================================
-		// Parse and register source files
-		// ========================================================================
+		// Statistics for the type caches are reported for each build.
+		for(TypeCache<?> cache : Type.caches()) {
+			cache.resetStatistics();
+		}
+		Type.interned().resetStatistics();
+
+		// Worker pool used for processing independent modules concurrently.
+		// This is null when building sequentially.
+		ExecutorService executor = null;
+		if(threads > 1) {
+			executor = Executors.newFixedThreadPool(threads);
+		}
 		
-		srcFiles.clear();
-		int count=0;
-		for (Pair<Path.Entry<?>,Path.Entry<?>> p : delta) {
-			Path.Entry<?> f = p.first();
-			if (f.contentType() == WhileyFile.ContentType) {
-				Path.Entry<WhileyFile> sf = (Path.Entry<WhileyFile>) f;
-				WhileyFile wf = sf.read();
-				count++;				
-				srcFiles.put(wf.module, sf);
+		try {
+			// ====================================================================
+			// Parse and register source files
+			// ====================================================================
+
+			srcFiles.clear();
+			importCache.clear();
+			ArrayList<Path.Entry<WhileyFile>> sources = new ArrayList<Path.Entry<WhileyFile>>();
+			ArrayList<Path.Entry<WyilFile>> binaries = new ArrayList<Path.Entry<WyilFile>>();
+			for (Pair<Path.Entry<?>,Path.Entry<?>> p : delta) {
+				Path.Entry<?> f = p.first();
+				Path.Entry<?> s = p.second();
+				if (f.contentType() == WhileyFile.ContentType) {
+					sources.add((Path.Entry<WhileyFile>) f);
+				}
+				if (s.contentType() == WyilFile.ContentType) {
+					binaries.add((Path.Entry<WyilFile>) s);
+				}
 			}
-		}
 
-		logger.logTimedMessage("Parsed " + count + " source file(s).",
-				System.currentTimeMillis() - tmpTime, tmpMemory - runtime.freeMemory());
+			ArrayList<Callable<WhileyFile>> parseTasks = new ArrayList<Callable<WhileyFile>>();
+			for (final Path.Entry<WhileyFile> sf : sources) {
+				parseTasks.add(new Callable<WhileyFile>() {
+					public WhileyFile call() throws Exception {
+						// Discard any tree cached from a previous build, since
+						// compilation modifies it in place.
+						sf.refresh();
+						return sf.read();
+					}
+				});
+			}
 
-		// ========================================================================
-		// Flow Type source files
-		// ========================================================================
-		
-		GlobalResolver resolver = new GlobalResolver(this);
-		
-		runtime = Runtime.getRuntime();
-		tmpTime = System.currentTimeMillis();		
-		tmpMemory = runtime.freeMemory();
-		
-		for(Pair<Path.Entry<?>,Path.Entry<?>> p : delta) {
-			Path.Entry<?> f = p.first();
-			if (f.contentType() == WhileyFile.ContentType) {
-				Path.Entry<WhileyFile> sf = (Path.Entry<WhileyFile>) f;			
-				WhileyFile wf = sf.read();								
-				new FlowTyping(resolver).propagate(wf);						
+			List<WhileyFile> parsed = execute(executor, parseTasks);
+			int count = parsed.size();
+			for (int i = 0; i != count; ++i) {
+				srcFiles.put(parsed.get(i).module, sources.get(i));
 			}
-		}		
-		
-		logger.logTimedMessage("Typed " + count + " source file(s).",
-				System.currentTimeMillis() - tmpTime, tmpMemory - runtime.freeMemory());
-		
-		// ========================================================================
-		// Code Generation
-		// ========================================================================
-		
-		runtime = Runtime.getRuntime();
-		tmpTime = System.currentTimeMillis();		
-		tmpMemory = runtime.freeMemory();	
 
-		GlobalGenerator globalGen = new GlobalGenerator(this,resolver);
-		CodeGeneration generator = new CodeGeneration(this,globalGen,resolver);
-		for(Pair<Path.Entry<?>,Path.Entry<?>> p : delta) {
-			Path.Entry<?> f = p.first();
-			Path.Entry<?> s = (Path.Entry<?>) p.second();
-			if (f.contentType() == WhileyFile.ContentType && s.contentType() == WyilFile.ContentType) {
-				Path.Entry<WhileyFile> source = (Path.Entry<WhileyFile>) f;
-				Path.Entry<WyilFile> target = (Path.Entry<WyilFile>) s;				
-				WhileyFile wf = source.read();								
-				WyilFile wyil = generator.generate(wf);
-				target.write(wyil);
+			logger.logTimedMessage("Parsed " + count + " source file(s).",
+					System.currentTimeMillis() - tmpTime, tmpMemory - runtime.freeMemory());
+
+			// ====================================================================
+			// Flow Type source files
+			// ====================================================================
+
+			final GlobalResolver resolver = new GlobalResolver(this);
+
+			runtime = Runtime.getRuntime();
+			tmpTime = System.currentTimeMillis();		
+			tmpMemory = runtime.freeMemory();
+
+			ArrayList<Callable<Object>> typeTasks = new ArrayList<Callable<Object>>();
+			for (final Path.Entry<WhileyFile> sf : sources) {
+				typeTasks.add(new Callable<Object>() {
+					public Object call() throws Exception {
+						new FlowTyping(resolver).propagate(sf.read());
+						return null;
+					}
+				});
 			}
-		}
-		
-		logger.logTimedMessage("Generated code for " + count + " source file(s).",
+			execute(executor, typeTasks);
+
+			logger.logTimedMessage("Typed " + count + " source file(s).",
 					System.currentTimeMillis() - tmpTime, tmpMemory - runtime.freeMemory());
-		
-		// ========================================================================
-		// Pipeline Stages
-		// ========================================================================
-				
-		for(Transform stage : stages) {
+
+			// ====================================================================
+			// Code Generation
+			// ====================================================================
+
+			runtime = Runtime.getRuntime();
+			tmpTime = System.currentTimeMillis();		
+			tmpMemory = runtime.freeMemory();	
+
+			final GlobalGenerator globalGen = new GlobalGenerator(this,resolver);
+			ArrayList<Pair<Path.Entry<WhileyFile>, Path.Entry<WyilFile>>> generated = new ArrayList();
+			ArrayList<Callable<Object>> genTasks = new ArrayList<Callable<Object>>();
 			for(Pair<Path.Entry<?>,Path.Entry<?>> p : delta) {
-				Path.Entry<?> f = p.second();
-				if (f.contentType() == WyilFile.ContentType) {			
-					Path.Entry<WyilFile> wf = (Path.Entry<WyilFile>) f;
-					process(wf.read(),stage);
-				}				
+				Path.Entry<?> f = p.first();
+				Path.Entry<?> s = p.second();
+				if (f.contentType() == WhileyFile.ContentType && s.contentType() == WyilFile.ContentType) {
+					final Path.Entry<WhileyFile> source = (Path.Entry<WhileyFile>) f;
+					final Path.Entry<WyilFile> target = (Path.Entry<WyilFile>) s;
+					generated.add(new Pair<Path.Entry<WhileyFile>, Path.Entry<WyilFile>>(
+							source, target));
+					genTasks.add(new Callable<Object>() {
+						public Object call() throws Exception {
+							CodeGeneration generator = new CodeGeneration(
+									WhileyBuilder.this, globalGen, resolver);
+							WyilFile wyil = generator.generate(source.read());
+							target.write(wyil);
+							return null;
+						}
+					});
+				}
+			}
+			execute(executor, genTasks);
+
+			logger.logTimedMessage("Generated code for " + count + " source file(s).",
+					System.currentTimeMillis() - tmpTime, tmpMemory - runtime.freeMemory());
+
+			// ====================================================================
+			// Pipeline Stages
+			// ====================================================================
+
+			// When building in parallel, each module gets its own instance of
+			// every stage, since stages are not safe for concurrent use.
+			// Stages are still applied in order, so every module has completed
+			// a given stage before any module begins the next.
+			ArrayList<List<Transform<WyilFile>>> instances = new ArrayList<List<Transform<WyilFile>>>();
+			for (int j = 0; j != binaries.size(); ++j) {
+				instances.add(executor == null ? stages : pipeline.instantiate(this));
+			}
+
+			for (int i = 0; i != stages.size(); ++i) {
+				ArrayList<Callable<Object>> stageTasks = new ArrayList<Callable<Object>>();
+				for (int j = 0; j != binaries.size(); ++j) {
+					final Path.Entry<WyilFile> wf = binaries.get(j);
+					final Transform<WyilFile> stage = instances.get(j).get(i);
+					stageTasks.add(new Callable<Object>() {
+						public Object call() throws Exception {
+							process(wf.read(), stage);
+							return null;
+						}
+					});
+				}
+				execute(executor, stageTasks);
+			}
+			
+			// ====================================================================
+			// Record Dependencies
+			// ====================================================================
+			
+			if(graph != null) {
+				record(generated);
 			}
-		}	
+		} finally {
+			if(executor != null) {
+				executor.shutdown();
+			}
+		}
 	
 		// ========================================================================
 		// Done
 		// ========================================================================
 		
+		if(logger != Logger.NULL) {
+			for(TypeCache<?> cache : Type.caches()) {
+				logger.logMessage(cache.toString());
+			}
+			logger.logMessage(Type.interned().toString());
+		}
+		
 		long endTime = System.currentTimeMillis();
 		logger.logTimedMessage("Whiley => Wyil: compiled " + delta.size() + " file(s)",
 				endTime - startTime, startMemory - runtime.freeMemory());
@@ -330,10 +461,217 @@ public final class WhileyBuilder implements Builder {
 		return namespace.get(mid, WyilFile.ContentType).read();
 	}
 	
+	/**
+	 * Determine whether a given source file must be rebuilt, according to the
+	 * build graph. This is the case if no information is recorded for it, if
+	 * its source has changed since it was last built, or if the public
+	 * interface of anything it depends upon has changed.
+	 * 
+	 * @param source
+	 * @return
+	 * @throws Exception
+	 */
+	public boolean isModified(Path.Entry<WhileyFile> source) throws Exception {
+		BuildGraph.Node node = graph == null ? null : graph.get(source.id());
+		if (node == null
+				|| !node.hash().equals(BuildGraph.digest(source.inputStream()))) {
+			return true;
+		}
+		for (Map.Entry<Path.ID, String> e : node.dependencies().entrySet()) {
+			Path.ID dep = e.getKey();
+			if (!exists(dep) || !fingerprint(dep).equals(e.getValue())) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
 	// ======================================================================
 	// Private Implementation
 	// ======================================================================
 
+	/**
+	 * Record the interface and dependencies of every module generated into the
+	 * build graph. The interfaces of all modules are recorded first, so that
+	 * dependencies between modules built together see the updated
+	 * fingerprints.
+	 * 
+	 * @param generated
+	 *            --- list of source files and the binary files generated from
+	 *            them.
+	 * @throws Exception
+	 */
+	private void record(
+			List<Pair<Path.Entry<WhileyFile>, Path.Entry<WyilFile>>> generated)
+			throws Exception {
+		for (Pair<Path.Entry<WhileyFile>, Path.Entry<WyilFile>> p : generated) {
+			Path.Entry<WhileyFile> source = p.first();
+			String hash = BuildGraph.digest(source.inputStream());
+			graph.put(source.id(), hash, signatures(p.second().read()));
+		}
+		for (Pair<Path.Entry<WhileyFile>, Path.Entry<WyilFile>> p : generated) {
+			Path.Entry<WhileyFile> source = p.first();
+			BuildGraph.Node node = graph.get(source.id());
+			for (Path.ID dep : dependencies(source.read())) {
+				node.addDependency(dep, fingerprint(dep));
+			}
+		}
+	}
+
+	/**
+	 * Determine the modules a given source file may depend upon. This is every
+	 * module matched by one of its imports (including those imported
+	 * implicitly), and is therefore a conservative approximation.
+	 * 
+	 * @param wf
+	 * @return
+	 * @throws Exception
+	 */
+	private Set<Path.ID> dependencies(WhileyFile wf) throws Exception {
+		ArrayList<Trie> filters = new ArrayList<Trie>();
+		filters.add(Trie.fromString("whiley/lang/*"));
+		filters.add(Trie.fromString(wf.module.parent(), "*"));
+		for (WhileyFile.Import imp : wf.declarations(WhileyFile.Import.class)) {
+			if (imp.name == null) {
+				// In this case, names are resolved against siblings of the
+				// import filter (see GlobalResolver.resolveAsName).
+				filters.add(imp.filter.parent().append("*"));
+			} else {
+				filters.add(imp.filter);
+			}
+		}
+		HashSet<Path.ID> deps = new HashSet<Path.ID>();
+		for (Trie filter : filters) {
+			deps.addAll(imports(filter));
+		}
+		deps.remove(wf.module);
+		return deps;
+	}
+
+	/**
+	 * Get the fingerprint of a given module's public interface. For modules
+	 * recorded in the build graph, this is the recorded fingerprint; otherwise,
+	 * it is computed from the binary module itself.
+	 * 
+	 * @param mid
+	 * @return
+	 * @throws Exception
+	 */
+	private String fingerprint(Path.ID mid) throws Exception {
+		BuildGraph.Node node = graph.get(mid);
+		if (node != null) {
+			return node.fingerprint();
+		}
+		String fingerprint = fingerprints.get(mid);
+		if (fingerprint == null) {
+			fingerprint = BuildGraph.fingerprint(signatures(getModule(mid)));
+			fingerprints.put(mid, fingerprint);
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * Compute a fingerprint for every declaration in a given module. Only those
+	 * parts of a declaration which other modules may depend upon are included
+	 * (e.g. method bodies are not). All declarations are considered, regardless
+	 * of their modifiers, since those of binary modules are currently visible
+	 * irrespective of modifiers.
+	 * 
+	 * @param module
+	 * @return
+	 */
+	private static HashMap<String, String> signatures(WyilFile module) {
+		HashMap<String, String> signatures = new HashMap<String, String>();
+		for (WyilFile.Declaration d : module.declarations()) {
+			if (d instanceof WyilFile.TypeDeclaration) {
+				WyilFile.TypeDeclaration td = (WyilFile.TypeDeclaration) d;
+				signatures.put("type " + td.name(),
+						BuildGraph.digest(td.type() + " " + td.modifiers()
+								+ " " + toString(td.constraint())));
+			} else if (d instanceof WyilFile.ConstantDeclaration) {
+				WyilFile.ConstantDeclaration cd = (WyilFile.ConstantDeclaration) d;
+				signatures.put("constant " + cd.name(),
+						BuildGraph.digest(cd.constant() + " " + cd.modifiers()));
+			} else if (d instanceof WyilFile.MethodDeclaration) {
+				WyilFile.MethodDeclaration md = (WyilFile.MethodDeclaration) d;
+				String r = md.modifiers().toString();
+				for (WyilFile.Case c : md.cases()) {
+					r += " " + toString(c.precondition()) + " "
+							+ toString(c.postcondition());
+				}
+				signatures.put("method " + md.name() + " " + md.type(),
+						BuildGraph.digest(r));
+			}
+		}
+		return signatures;
+	}
+
+	/**
+	 * Convert a block into a string, such that identical blocks always give
+	 * identical strings. In particular, labels are renamed in order of
+	 * appearance, since their original names are not stable between builds.
+	 * 
+	 * @param blk
+	 *            --- block to convert, which may be null.
+	 * @return
+	 */
+	private static String toString(Block blk) {
+		if (blk == null) {
+			return "null";
+		}
+		HashMap<String, String> labels = new HashMap<String, String>();
+		for (Block.Entry e : blk) {
+			if (e.code instanceof Code.Label) {
+				Code.Label l = (Code.Label) e.code;
+				labels.put(l.label, "L" + labels.size());
+			}
+		}
+		String r = "[";
+		for (Block.Entry e : blk) {
+			r += e.code.relabel(labels) + ";";
+		}
+		return r + "]";
+	}
+
+	/**
+	 * Run a list of independent tasks, returning their results in the order
+	 * the tasks were given. If no executor is provided, the tasks are simply
+	 * run in sequence on the calling thread. Otherwise, they are run
+	 * concurrently and, if any fail, the exception of the first failing task
+	 * (in list order) is rethrown. This ensures errors are reported
+	 * deterministically, regardless of scheduling.
+	 * 
+	 * @param executor
+	 *            --- worker pool to use, or null for sequential execution.
+	 * @param tasks
+	 * @return
+	 * @throws Exception
+	 */
+	private static <T> List<T> execute(ExecutorService executor,
+			List<Callable<T>> tasks) throws Exception {
+		ArrayList<T> results = new ArrayList<T>();
+		if (executor == null) {
+			for (Callable<T> task : tasks) {
+				results.add(task.call());
+			}
+		} else {
+			for (Future<T> future : executor.invokeAll(tasks)) {
+				try {
+					results.add(future.get());
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof Exception) {
+						throw (Exception) cause;
+					} else if (cause instanceof Error) {
+						throw (Error) cause;
+					}
+					throw e;
+				}
+			}
+		}
+		return results;
+	}
+	
 	private void process(WyilFile module, Transform stage) throws Exception {
 		Runtime runtime = Runtime.getRuntime();
 		long start = System.currentTimeMillis();		
@@ -344,7 +682,14 @@ public final class WhileyBuilder implements Builder {
 			stage.apply(module);			
 			logger.logTimedMessage("[" + module.filename() + "] applied "
 					+ name, System.currentTimeMillis() - start, memory - runtime.freeMemory());
-			System.gc();
+			if (threads == 1 && logger != Logger.NULL) {
+				// Collecting garbage here only serves to make the memory
+				// figures reported in the log meaningful, and is only
+				// worthwhile when nothing else is running. Otherwise, it
+				// dominates the build time, particularly when the compiler
+				// is kept resident and so has a larger heap.
+				System.gc();
+			}
 		} catch (RuntimeException ex) {
 			logger.logTimedMessage("[" + module.filename() + "] failed on "
 					+ name + " (" + ex.getMessage() + ")",
@@ -25,9 +25,12 @@
 
 package wyc.testing;
 
-import static org.junit.Assert.fail;
+import static org.junit.Assert.*;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import wyc.WycMain;
 import wyc.util.WycBuildTask;
@@ -143,6 +146,304 @@ public class TestHarness {
 	
 	
 	
+	/**
+	 * Compile a number of syntactically valid test cases together: first
+	 * sequentially, then in parallel and then incrementally. The expectation
+	 * is that every build produces exactly the same wyil files and, hence, the
+	 * test fails if any build fails or they differ.
+	 * 
+	 * @param names
+	 *            Names of the tests to compile. These must correspond to
+	 *            Whiley files in the srcPath of the same name.
+	 */
+	protected void parallelBuildTest(final String... names) {
+		tempProjectTest(names, new ProjectTest() {
+			public void run(File root, File srcDir) throws IOException {
+				File sequential = build(srcDir, new File(root, "sequential"),
+						names);
+				File parallel = build(srcDir, new File(root, "parallel"),
+						names, "-threads", "4");
+				File incremental = build(srcDir,
+						new File(root, "incremental"), names, "-incremental");
+				compareWyil(sequential, parallel, names);
+				compareWyil(sequential, incremental, names);
+			}
+		});
+	}
+
+	/**
+	 * Build a small project incrementally, in which module <code>Lib</code>
+	 * is imported by <code>Main</code> (and, implicitly, by its other sibling
+	 * <code>Other</code>), and then modify it. Modifying only the body of a
+	 * function must rebuild <code>Lib</code> alone, whilst modifying its
+	 * interface must also rebuild its importers. Deleting a module must
+	 * rebuild its dependents and remove it from the build graph. Which modules were rebuilt is
+	 * determined from the modification times of their wyil files, and each
+	 * build must produce exactly the same wyil files as building from
+	 * scratch.
+	 */
+	protected void incrementalBuildTest() {
+		tempProjectTest(new String[0], new ProjectTest() {
+			public void run(File root, File srcDir) throws IOException {
+				String[] names = { "Lib", "Main", "Other" };
+				write(new File(srcDir, "Lib.whiley"),
+						"int f(int x):\n    return x + 1\n");
+				write(new File(srcDir, "Main.whiley"),
+						"import f from Lib\n\nint g(int x):\n    return f(x) + 1\n");
+				write(new File(srcDir, "Other.whiley"),
+						"int h(int x):\n    return x\n");
+				File outDir = build(srcDir, new File(root, "incremental"), names,
+						"-incremental");
+
+				// First, modify the body of a function.
+				write(new File(srcDir, "Lib.whiley"),
+						"int f(int x):\n    return x + 2\n");
+				checkRebuilt(srcDir, outDir, names, "Lib");
+				compareWyil(build(srcDir, new File(root, "body"), names), outDir,
+						names);
+
+				// Second, modify the interface by adding a function.
+				write(new File(srcDir, "Lib.whiley"),
+						"int f(int x):\n    return x + 2\n\nint k(int x):\n    return x\n");
+				checkRebuilt(srcDir, outDir, names, "Lib", "Main", "Other");
+				compareWyil(build(srcDir, new File(root, "interface"), names),
+						outDir, names);
+
+				// Finally, delete a module, on which the others depend.
+				new File(srcDir, "Other.whiley").delete();
+				names = new String[] { "Lib", "Main" };
+				checkRebuilt(srcDir, outDir, names, "Lib", "Main");
+				String graph = new String(read(new File(outDir, ".wydeps")),
+						"UTF-8");
+				assertTrue("Main not recorded", graph.contains("module Main "));
+				assertFalse("Other still recorded", graph.contains("module Other "));
+			}
+		});
+	}
+
+	/**
+	 * Rebuild a number of modules incrementally, and check that exactly those
+	 * expected were rebuilt (i.e. that their wyil files were written).
+	 */
+	private static void checkRebuilt(File srcDir, File outDir, String[] names,
+			String... rebuilt) {
+		// Set the modification times to some point in the past, so that any
+		// wyil file written must have a different one.
+		long past = System.currentTimeMillis() - 3600000;
+		for (String name : names) {
+			new File(outDir, name + ".wyil").setLastModified(past);
+		}
+		build(srcDir, outDir, names, "-incremental");
+		List<String> expected = Arrays.asList(rebuilt);
+		for (String name : names) {
+			boolean written = new File(outDir, name + ".wyil").lastModified() != past;
+			if (expected.contains(name) && !written) {
+				fail(name + " not rebuilt");
+			} else if (!expected.contains(name) && written) {
+				fail(name + " rebuilt unnecessarily");
+			}
+		}
+	}
+
+	/**
+	 * Compile a number of syntactically valid test cases with verification
+	 * enabled and incrementally, such that the normal forms of their
+	 * verification conditions are kept between builds (i.e. in the
+	 * <code>.wyvcs</code> file). The test cases are then rebuilt, at which
+	 * point these normal forms are reused. The expectation is that both builds
+	 * pass and produce exactly the same wyil files as a build without them
+	 * and, hence, the test fails if this is not the case.
+	 * 
+	 * @param names
+	 *            Names of the tests to compile. These must correspond to
+	 *            Whiley files in the srcPath of the same name.
+	 */
+	protected void cachedVerifyPassTest(String... names) {
+		cachedVerifyTest(true, names);
+	}
+
+	/**
+	 * Compile a syntactically invalid test case with verification enabled and
+	 * incrementally, as for <code>cachedVerifyPassTest()</code>. The
+	 * expectation is that both builds fail with an error and, hence, the test
+	 * fails if either does not. In particular, reusing the normal forms kept
+	 * from the first build must not cause the second to pass.
+	 * 
+	 * @param name
+	 *            Name of the test to run. This must correspond to a Whiley
+	 *            file in the srcPath of the same name.
+	 */
+	protected void cachedVerifyFailTest(String name) {
+		cachedVerifyTest(false, name);
+	}
+
+	private void cachedVerifyTest(final boolean valid, final String... names) {
+		tempProjectTest(names, new ProjectTest() {
+			public void run(File root, File srcDir) throws IOException {
+				File outDir = new File(root, "cached");
+				outDir.mkdir();
+				String[] args = buildArgs(srcDir, outDir, names, "-verify",
+						"-incremental");
+				checkVerified(valid, compile(args));
+				assertTrue("normal forms not kept",
+						new File(outDir, ".wyvcs").length() > 0);
+
+				// Now, force everything to be rebuilt using the normal forms kept.
+				for (String name : names) {
+					File file = new File(srcDir, name + ".whiley");
+					file.setLastModified(file.lastModified() + 2000);
+				}
+				checkVerified(valid, compile(args));
+				if (valid) {
+					File plain = build(srcDir, new File(root, "plain"), names,
+							"-verify");
+					compareWyil(plain, outDir, names);
+				}
+			}
+		});
+	}
+
+	/**
+	 * A test which is run against a project in a temporary directory.
+	 */
+	private interface ProjectTest {
+		/**
+		 * Run the test.
+		 * 
+		 * @param root
+		 *            The temporary directory, which is deleted once the test
+		 *            has finished.
+		 * @param srcDir
+		 *            The source directory of the project within root.
+		 */
+		void run(File root, File srcDir) throws IOException;
+	}
+
+	/**
+	 * Create a temporary directory holding a project whose source directory
+	 * contains copies of a number of test cases, run a given test against it
+	 * and then delete it. The test fails if any I/O operation does.
+	 * 
+	 * @param names
+	 *            Names of the tests to copy. These must correspond to Whiley
+	 *            files in the srcPath of the same name.
+	 * @param test
+	 *            The test to run.
+	 */
+	private void tempProjectTest(String[] names, ProjectTest test) {
+		File root = null;
+		try {
+			root = File.createTempFile("wyc", "");
+			if (!root.delete() || !root.mkdir()) {
+				fail("Couldn't create temporary directory!");
+			}
+			File srcDir = new File(root, "src");
+			srcDir.mkdir();
+			for (String name : names) {
+				copy(new File(sourcepath, name + ".whiley"), new File(srcDir,
+						name + ".whiley"));
+			}
+			test.run(root, srcDir);
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail("Problem building tests");
+		} finally {
+			if (root != null) {
+				delete(root);
+			}
+		}
+	}
+
+	private static void checkVerified(boolean valid, int r) {
+		if (r == WycMain.INTERNAL_FAILURE) {
+			fail("Test caused internal failure!");
+		} else if (valid && r != WycMain.SUCCESS) {
+			fail("Couldn't compile test!");
+		} else if (!valid && r == WycMain.SUCCESS) {
+			fail("Test compiled when it shouldn't have!");
+		}
+	}
+
+	private static File build(File srcDir, File outDir, String[] names,
+			String... options) {
+		outDir.mkdir();
+		int r = compile(buildArgs(srcDir, outDir, names, options));
+		if (r == WycMain.INTERNAL_FAILURE) {
+			fail("Test caused internal failure!");
+		} else if (r != WycMain.SUCCESS) {
+			fail("Couldn't compile tests with " + Arrays.toString(options));
+		}
+		return outDir;
+	}
+
+	private static String[] buildArgs(File srcDir, File outDir,
+			String[] names, String... options) {
+		ArrayList<String> args = new ArrayList<String>();
+		args.add("-wd");
+		args.add(srcDir.getPath());
+		args.add("-wyildir");
+		args.add(outDir.getPath());
+		args.add("-wp");
+		args.add(WYRT_PATH);
+		args.addAll(Arrays.asList(options));
+		for (String name : names) {
+			args.add(new File(srcDir, name + ".whiley").getPath());
+		}
+		return args.toArray(new String[args.size()]);
+	}
+
+	private static void compareWyil(File expected, File actual, String[] names)
+			throws IOException {
+		for (String name : names) {
+			byte[] e = read(new File(expected, name + ".wyil"));
+			byte[] a = read(new File(actual, name + ".wyil"));
+			assertTrue(name + ".wyil differs", Arrays.equals(e, a));
+		}
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	private static void write(File file, String contents) throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(contents.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void copy(File from, File to) throws IOException {
+		FileOutputStream out = new FileOutputStream(to);
+		try {
+			out.write(read(from));
+		} finally {
+			out.close();
+		}
+	}
+
+	private static byte[] read(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int n;
+			while ((n = in.read(buffer)) > 0) {
+				bytes.write(buffer, 0, n);
+			}
+			return bytes.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
 	private static int compile(String... args) {
 		return new WycMain(new WycBuildTask(), WycMain.DEFAULT_OPTIONS).run(args);
 	}	
@@ -0,0 +1,40 @@
+// This file is part of the Whiley-to-Java Compiler (wyjc).
+//
+// The Whiley-to-Java Compiler is free software; you can redistribute
+// it and/or modify it under the terms of the GNU General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+//
+// The Whiley-to-Java Compiler is distributed in the hope that it
+// will be useful, but WITHOUT ANY WARRANTY; without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE.  See the GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public
+// License along with the Whiley-to-Java Compiler. If not, see
+// <http://www.gnu.org/licenses/>
+//
+// Copyright 2010, David James Pearce.
+
+package wyc.testing.tests;
+
+import org.junit.*;
+
+import wyc.testing.TestHarness;
+
+/**
+ * Checks that building a number of files in parallel, or incrementally,
+ * produces exactly the same wyil files as building them sequentially, and
+ * that incremental builds rebuild only what they must.
+ */
+public class BuildTests extends TestHarness {
+ public BuildTests() {
+	 super("../../tests/base/valid","../../tests/base/valid","sysout");	
+ }
+
+ @Test public void Incremental_BuildTest() { incrementalBuildTest(); }
+ @Test public void Dictionary_BuildTest() { parallelBuildTest("Dictionary_Valid_1", "Dictionary_Valid_2", "Dictionary_Valid_3", "Dictionary_Valid_4", "Dictionary_Valid_5", "Dictionary_Valid_6", "Dictionary_Valid_7", "Dictionary_Valid_8"); }
+ @Test public void ListAssign_BuildTest() { parallelBuildTest("ListAssign_Valid_1", "ListAssign_Valid_2", "ListAssign_Valid_3", "ListAssign_Valid_4", "ListAssign_Valid_5", "ListAssign_Valid_6", "ListAssign_Valid_7", "ListAssign_Valid_8"); }
+ @Test public void RecordAssign_BuildTest() { parallelBuildTest("RecordAssign_Valid_1", "RecordAssign_Valid_2", "RecordAssign_Valid_3", "RecordAssign_Valid_4", "RecordAssign_Valid_5", "RecordAssign_Valid_6"); }
+ @Test public void UnionType_BuildTest() { parallelBuildTest("UnionType_Valid_1", "UnionType_Valid_2", "UnionType_Valid_4", "UnionType_Valid_5", "UnionType_Valid_6", "UnionType_Valid_7", "UnionType_Valid_8", "UnionType_Valid_9"); }
+}
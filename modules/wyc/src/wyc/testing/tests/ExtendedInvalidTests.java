@@ -144,4 +144,7 @@ public class ExtendedInvalidTests extends TestHarness {
  @Test public void While_Invalid_4_StaticFailTest() { verifyFailTest("While_Invalid_4"); }
  @Test public void While_Invalid_5_StaticFailTest() { verifyFailTest("While_Invalid_5"); }
  @Test public void While_Invalid_6_StaticFailTest() { verifyFailTest("While_Invalid_6"); }
+ @Test public void ConstrainedInt_Invalid_1_CachedVerifyTest() { cachedVerifyFailTest("ConstrainedInt_Invalid_1"); }
+ @Test public void ConstrainedInt_Invalid_2_CachedVerifyTest() { cachedVerifyFailTest("ConstrainedInt_Invalid_2"); }
+ @Test public void Quantifiers_Invalid_1_CachedVerifyTest() { cachedVerifyFailTest("Quantifiers_Invalid_1"); }
 }
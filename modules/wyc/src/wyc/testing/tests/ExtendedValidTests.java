@@ -239,4 +239,5 @@ public class ExtendedValidTests extends TestHarness {
  @Ignore("Issue #225") 
  @Test public void While_Valid_8_RuntimeTest() { verifyPassTest("While_Valid_8"); }
  @Test public void While_Valid_9_RuntimeTest() { verifyPassTest("While_Valid_9"); }
+ @Test public void ConstrainedInt_CachedVerifyTest() { cachedVerifyPassTest("ConstrainedInt_Valid_1", "ConstrainedInt_Valid_3", "ConstrainedInt_Valid_4", "ConstrainedInt_Valid_10"); }
 }
@@ -146,6 +146,8 @@ public class StaticInvalidTests extends TestHarness {
  @Test public void Return_CompileFail_1_StaticTest() { contextFailTest("Return_CompileFail_1"); }
  @Test public void Return_CompileFail_10_StaticTest() { contextFailTest("Return_CompileFail_10"); }
  @Test public void Return_CompileFail_11_StaticTest() { contextFailTest("Return_CompileFail_11"); }
+ @Test public void Return_CompileFail_12_StaticTest() { contextFailTest("Return_CompileFail_12"); }
+ @Test public void Return_CompileFail_13_StaticTest() { contextFailTest("Return_CompileFail_13"); }
  @Test public void Return_CompileFail_2_StaticTest() { contextFailTest("Return_CompileFail_2"); }
  @Test public void Return_CompileFail_3_StaticTest() { contextFailTest("Return_CompileFail_3"); }
  @Test public void Return_CompileFail_4_StaticTest() { contextFailTest("Return_CompileFail_4"); }
@@ -13,6 +13,7 @@ import wyc.lang.WhileyFile;
 import wycs.builders.Wyal2WycsBuilder;
 import wycs.core.WycsFile;
 import wycs.syntax.WyalFile;
+import wycs.transforms.VerificationCheck;
 import wycs.util.WycsBuildTask;
 import wyil.io.WyilFilePrinter;
 import wyil.lang.WyilFile;
@@ -279,6 +280,52 @@ public class WycBuildTask {
 	 */
 	protected boolean verification = false;	
 	
+	/**
+	 * The number of worker threads to use when compiling Whiley files, and
+	 * when verifying the assertions of each file. By default, files are
+	 * compiled and verified sequentially.
+	 */
+	protected int threads = 1;
+	
+	/**
+	 * Indicates whether or not the compiler should build incrementally. In
+	 * this mode, a build graph is maintained alongside the generated wyil
+	 * files, and only those source files whose contents have changed, or
+	 * which depend upon a module whose interface has changed, are rebuilt.
+	 */
+	protected boolean incremental = false;
+	
+	/**
+	 * Indicates whether or not the project should be kept resident between
+	 * builds. In this mode, the project (along with its roots and any contents
+	 * cached by them) is constructed on the first build and then reused by
+	 * subsequent builds, which only need to reload those files changed on
+	 * disk in the meantime. This is useful when the build task is kept alive
+	 * across many builds (e.g. by <code>WycServer</code>). Note that the
+	 * configuration of the build task should not be changed once a resident
+	 * project has been constructed. If a build fails, the resident project is
+	 * discarded and constructed afresh by the next build.
+	 */
+	protected boolean resident = false;
+	
+	/**
+	 * The project being built. When the project is not resident, this is only
+	 * non-null during a build.
+	 */
+	protected StandardProject project;
+	
+	/**
+	 * The build graph used when building incrementally. This is null
+	 * otherwise.
+	 */
+	protected BuildGraph graph;
+	
+	/**
+	 * The builder responsible for compiling Whiley files into wyil files. This
+	 * is null until the build rules are added.
+	 */
+	protected WhileyBuilder wyilBuilder;
+	
 	// ==========================================================================
 	// Constructors & Configuration
 	// ========================================================================== 
@@ -305,6 +352,18 @@ public class WycBuildTask {
 		this.verbose = verbose;
 	}
 	
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+	
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+	
+	public void setResident(boolean resident) {
+		this.resident = resident;
+	}
+	
 	public void setVerification(boolean verification) {
 		this.verification = verification;
 	}
@@ -444,6 +503,7 @@ public class WycBuildTask {
 	 * @param _args
 	 */
 	public void build(List<File> files) throws Exception {					
+		refresh();
 		buildEntries(whileyDir.find(files, WhileyFile.ContentType));    
 	}
 
@@ -453,6 +513,7 @@ public class WycBuildTask {
 	 * @param _args
 	 */
 	public int buildAll() throws Exception {
+		refresh();
 		List delta = getModifiedSourceFiles();
 		buildEntries(delta);
 		return delta.size();		
@@ -464,21 +525,150 @@ public class WycBuildTask {
 		// Initialise Project
 		// ======================================================================
 
-		StandardProject project = initialiseProject();  		
+		File graphFile = getBuildGraphFile();
+		graph = graphFile == null ? null : BuildGraph.read(graphFile);
 
-		// ======================================================================
-		// Initialise Build Rules
-		// ======================================================================
+		if (project == null) {
+			project = initialiseProject();
 
-		addBuildRules(project);
+			// ==================================================================
+			// Initialise Build Rules
+			// ==================================================================
+
+			addBuildRules(project);
+		} else if (wyilBuilder != null) {
+			wyilBuilder.setBuildGraph(graph);
+		}
 
 		// ======================================================================
 		// Build!
 		// ======================================================================		
 
-		project.build(delta);
-		
-		flush();		
+		boolean succeeded = false;
+		try {
+			if (graph == null) {
+				project.build(delta);
+			} else {
+				buildIncremental(project, delta);
+			}
+
+			flush();
+
+			if (graph != null) {
+				graph.write(graphFile);
+			}
+			succeeded = true;
+		} finally {
+			// A failed build may leave the project's cached contents
+			// inconsistent with the file system, so it is not kept resident.
+			if (!resident || !succeeded) {
+				project = null;
+			}
+		}
+	}
+	
+	/**
+	 * Build those entries from a given list which are out-of-date with respect
+	 * to the build graph. This proceeds in rounds, since rebuilding a module
+	 * may change its interface and, hence, require those which depend upon it
+	 * to be rebuilt as well. Every source file is checked in the first round,
+	 * but only those depending upon a module rebuilt in the previous round are
+	 * checked after that. Entries which are not Whiley source files are simply
+	 * built in the first round.
+	 * 
+	 * @param project
+	 * @param delta
+	 * @throws Exception
+	 */
+	protected <T> void buildIncremental(StandardProject project,
+			List<Path.Entry<T>> delta) throws Exception {
+		// First, forget those modules whose source files have been deleted.
+		for (Path.ID id : graph.modules()) {
+			if (whileyDir.get(id, WhileyFile.ContentType) == null) {
+				graph.remove(id);
+			}
+		}
+
+		ArrayList<Path.Entry<?>> round = new ArrayList<Path.Entry<?>>();
+		LinkedHashMap<Path.ID, Path.Entry<WhileyFile>> sources =
+				new LinkedHashMap<Path.ID, Path.Entry<WhileyFile>>();
+		for (Path.Entry<T> e : delta) {
+			if (e.contentType() != WhileyFile.ContentType) {
+				round.add(e);
+			} else {
+				sources.put(e.id(), (Path.Entry<WhileyFile>) e);
+			}
+		}
+		Collection<Path.Entry<WhileyFile>> candidates = sources.values();
+		ArrayList<Path.Entry<?>> last = null;
+		while (true) {
+			for (Path.Entry<WhileyFile> sf : candidates) {
+				if (wyilDir.get(sf.id(), WyilFile.ContentType) == null
+						|| wyilBuilder.isModified(sf)) {
+					round.add(sf);
+				}
+			}
+			if (round.isEmpty() || round.equals(last)) {
+				// Either everything is up-to-date, or no progress is being
+				// made (which should not happen).
+				break;
+			}
+			for (Path.Entry<?> e : round) {
+				// discard any cached contents, since these may have been
+				// modified by an earlier round.
+				e.refresh();
+			}
+			project.build(round);
+			// Only those which depend upon a module just rebuilt can have
+			// become out-of-date.
+			LinkedHashSet<Path.Entry<WhileyFile>> dependents =
+					new LinkedHashSet<Path.Entry<WhileyFile>>();
+			for (Path.Entry<?> e : round) {
+				for (Path.ID id : graph.dependents(e.id())) {
+					Path.Entry<WhileyFile> sf = sources.get(id);
+					if (sf != null) {
+						dependents.add(sf);
+					}
+				}
+			}
+			candidates = dependents;
+			last = round;
+			round = new ArrayList<Path.Entry<?>>();
+		}
+	}
+	
+	/**
+	 * Determine the file in which the build graph is stored when building
+	 * incrementally. By default, this is located in the wyil directory. If
+	 * incremental building is not enabled, or the wyil directory is not on
+	 * disk, then null is returned.
+	 * 
+	 * @return
+	 */
+	protected File getBuildGraphFile() {
+		if (incremental && wyilDir instanceof DirectoryRoot) {
+			File dir = ((DirectoryRoot) wyilDir).location();
+			return new File(dir, ".wydeps");
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Determine the file in which the normal forms of verification conditions
+	 * are kept when building incrementally. This allows assertions which are
+	 * unchanged since the last build to be verified without rewriting them
+	 * again. As for the build graph, this is located in the wyil directory.
+	 * 
+	 * @return
+	 */
+	protected File getNormalFormsFile() {
+		if (incremental && wyilDir instanceof DirectoryRoot) {
+			File dir = ((DirectoryRoot) wyilDir).location();
+			return new File(dir, ".wyvcs");
+		} else {
+			return null;
+		}
 	}
 	
 	// ==========================================================================
@@ -522,6 +712,9 @@ public class WycBuildTask {
 		if (whileyDir == null) {
 			// Note, whileyDir can be null if e.g. compiling wyil -> wyjc
 			return new ArrayList();
+		} else if (incremental) {
+			// In this case, the build graph determines what is modified.
+			return whileyDir.get(whileyIncludes);
 		} else {
 			return getModifiedSourceFiles(whileyDir, whileyIncludes, wyilDir,
 					WyilFile.ContentType);
@@ -549,7 +742,9 @@ public class WycBuildTask {
 			// Whiley => Wyil Compilation Rule
 			// ========================================================
 			
-			WhileyBuilder wyilBuilder = new WhileyBuilder(project,wyilPipeline);
+			wyilBuilder = new WhileyBuilder(project,wyilPipeline);
+			wyilBuilder.setThreads(threads);
+			wyilBuilder.setBuildGraph(graph);
 
 			if(verbose) {			
 				wyilBuilder.setLogger(new Logger.Default(System.err));
@@ -587,6 +782,16 @@ public class WycBuildTask {
 				
 				Pipeline<WycsFile> wycsPipeline = new Pipeline(WycsBuildTask.defaultPipeline);    		
 
+				if(threads > 1) {
+					wycsPipeline.setOption(VerificationCheck.class, "threads", threads);
+				}
+
+				File normalFormsFile = getNormalFormsFile();
+				if(normalFormsFile != null) {
+					wycsPipeline.setOption(VerificationCheck.class, "cache",
+							normalFormsFile.getPath());
+				}
+				
 				if(pipelineModifiers != null) {
 					wycsPipeline.apply(pipelineModifiers);
 				}
@@ -645,4 +850,17 @@ public class WycBuildTask {
 		wyalDir.flush();
 		wycsDir.flush();
 	}	
+	
+	/**
+	 * Bring a resident project up-to-date with the file system, prior to a
+	 * build. Only entries whose underlying files have changed are reloaded.
+	 * If there is no resident project, then this does nothing.
+	 * 
+	 * @throws Exception
+	 */
+	protected void refresh() throws Exception {
+		if (project != null) {
+			project.refresh();
+		}
+	}
 }
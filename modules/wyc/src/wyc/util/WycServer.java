@@ -0,0 +1,475 @@
+// Copyright (c) 2011, David J. Pearce (djp@ecs.vuw.ac.nz)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//    * Redistributions of source code must retain the above copyright
+//      notice, this list of conditions and the following disclaimer.
+//    * Redistributions in binary form must reproduce the above copyright
+//      notice, this list of conditions and the following disclaimer in the
+//      documentation and/or other materials provided with the distribution.
+//    * Neither the name of the <organization> nor the
+//      names of its contributors may be used to endorse or promote products
+//      derived from this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+// ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL DAVID J. PEARCE BE LIABLE FOR ANY
+// DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+// LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+// ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package wyc.util;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.*;
+
+import wybs.util.OptArg;
+import wyc.WycMain;
+
+/**
+ * A long-running compile server for the Whiley Compiler. The server listens on
+ * a loopback socket for build requests, each of which consists of a working
+ * directory and the command-line arguments which would otherwise have been
+ * passed to <code>WycMain</code>. The point of this is twofold: firstly, the
+ * cost of starting a JVM is only paid once; secondly, the build task for each
+ * distinct configuration is kept resident, so that the standard library and
+ * any other modules which have not changed on disk are not reloaded on every
+ * build. Furthermore, the compiler itself becomes progressively faster as the
+ * JIT warms up.
+ * 
+ * <p>
+ * Every server belongs to a single user. When started, the server listens on
+ * an arbitrary free port and generates a random token. Both are written to a
+ * <i>server file</i> (by default in <code>~/.whiley</code>) which only that
+ * user can read. Every request must begin with this token, and any connection
+ * which does not is closed without doing anything. Hence, other users on the
+ * same machine can neither submit builds nor stop the server.
+ * </p>
+ * 
+ * <p>
+ * The protocol is line-based, and intended to be simple enough that a client
+ * can be written as a shell script. A request consists of the token, followed
+ * by the working directory, followed by the number of arguments, followed by
+ * each argument on a line of its own. Alternatively, the token may be followed
+ * by the single line "<code>stop</code>", which causes the server to
+ * shutdown. The server replies
+ * with everything written to the standard output and error streams during the
+ * build, followed by a line of the form "<code>--exit n</code>" where
+ * <code>n</code> is the exit code of the build. Requests are processed one at a
+ * time.
+ * </p>
+ */
+public class WycServer {
+	
+	/**
+	 * The maximum number of resident compilers. When this is exceeded, the
+	 * compiler used least recently is discarded.
+	 */
+	public static final int MAX_COMPILERS = 8;
+	
+	/**
+	 * The prefix of the final line of every response, which is followed by the
+	 * exit code of the build.
+	 */
+	public static final String EXIT_PREFIX = "--exit ";
+	
+	/**
+	 * The command-line options accepted by the compiler.
+	 */
+	protected final OptArg[] options;
+	
+	/**
+	 * The resident compilers, each of which is indexed by the configuration
+	 * (i.e. the option values) it was created for.
+	 */
+	protected final LinkedHashMap<String, WycMain> compilers = new LinkedHashMap<String, WycMain>(
+			16, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry<String, WycMain> e) {
+			return size() > MAX_COMPILERS;
+		}
+	};
+	
+	/**
+	 * The token which every request must begin with. This is null until the
+	 * server is started.
+	 */
+	private String token;
+	
+	/**
+	 * The stream to which output during a build is redirected. Outside of a
+	 * build, output is sent to the original standard error stream of the
+	 * server.
+	 */
+	private final Redirect redirect;
+	
+	public WycServer(OptArg[] options) {
+		this.options = options;
+		this.redirect = new Redirect(System.err);
+	}
+	
+	/**
+	 * Construct a new compiler for a given configuration. Subclasses should
+	 * override this to use a different build task.
+	 * 
+	 * @return
+	 */
+	protected WycMain create() {
+		WycBuildTask builder = new WycBuildTask();
+		builder.setResident(true);
+		return new WycMain(builder, options);
+	}
+	
+	/**
+	 * Listen for requests on a free port of the loopback interface, and
+	 * process them until a stop request is received. The port and the token
+	 * which requests must begin with are written to a given server file, which
+	 * is readable only by the current user. This file is removed when the
+	 * server stops.
+	 * 
+	 * @param file
+	 *            --- the server file through which clients find the server.
+	 * @throws IOException
+	 */
+	public void serve(File file) throws IOException {
+		ServerSocket server = new ServerSocket(0, 50,
+				InetAddress.getByName("127.0.0.1"));
+		byte[] bytes = new byte[16];
+		new SecureRandom().nextBytes(bytes);
+		StringBuilder sb = new StringBuilder();
+		for (byte b : bytes) {
+			sb.append(String.format("%02x", b & 0xFF));
+		}
+		token = sb.toString();
+		try {
+			writeServerFile(file, server.getLocalPort() + " " + token + "\n");
+		} catch (IOException e) {
+			server.close();
+			throw e;
+		}
+
+		// Redirect all output streams. These are redirected once, rather than
+		// for each request, because some (e.g. that used by the logger of a
+		// resident build task) are captured when first used.
+		PrintStream out = new PrintStream(redirect, true);
+		System.setOut(out);
+		System.setErr(out);
+		WycMain.errout = new PrintStream(redirect, true, "UTF-8");
+		
+		try {
+			while (true) {
+				Socket socket = server.accept();
+				try {
+					if (!process(socket)) {
+						return;
+					}
+				} catch (IOException e) {
+					// problem communicating with client, so just move on.
+				} finally {
+					socket.close();
+				}
+			}
+		} finally {
+			server.close();
+			file.delete();
+		}
+	}
+
+	/**
+	 * Write the contents of the server file, such that only the current user
+	 * can read it. The enclosing directory is restricted first, so that no
+	 * other user can open the file before its permissions have been set.
+	 * 
+	 * @param file
+	 * @param contents
+	 * @throws IOException
+	 */
+	private static void writeServerFile(File file, String contents)
+			throws IOException {
+		File dir = file.getAbsoluteFile().getParentFile();
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("unable to create directory: " + dir);
+		}
+		restrict(dir);
+		File tmp = new File(dir, file.getName() + ".tmp");
+		tmp.delete();
+		if (!tmp.createNewFile()) {
+			throw new IOException("unable to create server file: " + tmp);
+		}
+		restrict(tmp);
+		Writer out = new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8");
+		try {
+			out.write(contents);
+		} finally {
+			out.close();
+		}
+		file.delete();
+		if (!tmp.renameTo(file)) {
+			throw new IOException("unable to create server file: " + file);
+		}
+	}
+
+	/**
+	 * Restrict the permissions of a given file or directory so that only its
+	 * owner can access it.
+	 * 
+	 * @param file
+	 * @throws IOException
+	 */
+	private static void restrict(File file) throws IOException {
+		boolean ok = file.setReadable(false, false)
+				&& file.setWritable(false, false)
+				&& file.setExecutable(false, false)
+				&& file.setReadable(true, true)
+				&& file.setWritable(true, true)
+				&& (!file.isDirectory() || file.setExecutable(true, true));
+		if (!ok) {
+			throw new IOException("unable to restrict permissions of " + file);
+		}
+	}
+	
+	/**
+	 * Determine the default location of the server file for a given compiler.
+	 * This is located in the <code>.whiley</code> directory of the current
+	 * user's home directory.
+	 * 
+	 * @param name
+	 *            --- name of the compiler (e.g. "wyc").
+	 * @return
+	 */
+	public static File defaultServerFile(String name) {
+		return new File(new File(System.getProperty("user.home"), ".whiley"),
+				name + "-server");
+	}
+	
+	/**
+	 * Process a single request from a given client.
+	 * 
+	 * @param socket
+	 * @return false if the server should stop.
+	 * @throws IOException
+	 */
+	protected boolean process(Socket socket) throws IOException {
+		BufferedReader input = new BufferedReader(new InputStreamReader(
+				socket.getInputStream(), "UTF-8"));
+		OutputStream output = new BufferedOutputStream(socket.getOutputStream());		
+		String line = input.readLine();
+		if (line == null || !MessageDigest.isEqual(line.getBytes("UTF-8"),
+				token.getBytes("UTF-8"))) {
+			// client disconnected without sending a request, or does not know
+			// the token
+			return true;
+		}
+		line = input.readLine();
+		if (line == null) {
+			return true;
+		} else if (line.equals("stop")) {
+			return false;
+		}
+		File dir = new File(line);
+		int count = Integer.parseInt(input.readLine());
+		String[] args = new String[count];
+		for (int i = 0; i != count; ++i) {
+			args[i] = input.readLine();
+		}
+
+		redirect.setTarget(output);
+		int result;
+		try {
+			result = build(dir, args);
+		} finally {
+			System.out.flush();
+			WycMain.errout.flush();
+			redirect.reset();
+		}
+		
+		if (redirect.lastWritten != '\n' && redirect.lastWritten != -1) {
+			output.write('\n');
+		}
+		output.write((EXIT_PREFIX + result + "\n").getBytes("UTF-8"));
+		output.flush();
+		return true;
+	}
+	
+	/**
+	 * Build using a given set of command-line arguments. The build is
+	 * performed by the resident compiler for the configuration given by the
+	 * arguments, which is created if necessary. A configuration is determined
+	 * by the working directory and all arguments other than the files to be
+	 * compiled.
+	 * 
+	 * @param dir
+	 *            --- directory against which relative paths are resolved.
+	 * @param args
+	 *            --- command-line arguments, as would be passed to wyc.
+	 * @return
+	 */
+	protected int build(File dir, String[] args) {
+		String[] resolved = resolve(dir, args);
+		ArrayList<String> files = new ArrayList<String>(Arrays.asList(resolved));
+		Map<String, Object> values;
+		
+		try {
+			values = OptArg.parseOptions(files, options);
+		} catch (RuntimeException e) {
+			// let the compiler report the problem
+			return create().run(resolved);
+		}
+
+		if (files.isEmpty() || values.containsKey("help")
+				|| values.containsKey("version")) {
+			return create().run(resolved);
+		}
+
+		ArrayList<String> configuration = new ArrayList<String>(
+				Arrays.asList(resolved));
+		for (String file : files) {
+			configuration.remove(file);
+		}
+		String key = dir.getPath() + configuration;
+
+		for (Map.Entry<String, Object> e : values.entrySet()) {
+			Object value = e.getValue();
+			if (value instanceof File) {
+				e.setValue(resolve(dir, (File) value));
+			} else if (value instanceof List) {
+				ArrayList<Object> nvalue = new ArrayList<Object>();
+				for (Object o : (List) value) {
+					nvalue.add(o instanceof File ? resolve(dir, (File) o) : o);
+				}
+				e.setValue(nvalue);
+			}
+		}
+		for (int i = 0; i != files.size(); ++i) {
+			files.set(i, resolve(dir, new File(files.get(i))).getPath());
+		}
+
+		WycMain compiler = compilers.get(key);
+		if (compiler == null) {
+			compiler = create();
+			try {
+				compiler.configure(values);
+			} catch (Throwable e) {
+				WycMain.errout.println("internal failure (" + e.getMessage()
+						+ ")");
+				return WycMain.INTERNAL_FAILURE;
+			}
+			compilers.put(key, compiler);
+		}
+
+		return compiler.build(values, files);
+	}
+
+	/**
+	 * Resolve all path arguments of options within a given list of
+	 * command-line arguments against a given directory. This must be done
+	 * before the options are parsed, since some are checked for validity as
+	 * they are parsed.
+	 * 
+	 * @param dir
+	 * @param args
+	 * @return
+	 */
+	protected String[] resolve(File dir, String[] args) {
+		HashMap<String, OptArg> optmap = new HashMap<String, OptArg>();
+		for (OptArg opt : options) {
+			optmap.put(opt.option, opt);
+			optmap.put(opt.shortForm, opt);
+		}
+		
+		args = args.clone();
+		for (int i = 0; i < args.length - 1; ++i) {
+			String arg = args[i];
+			OptArg opt = arg.startsWith("-") ? optmap.get(arg.substring(1))
+					: null;
+			if (opt == null) {
+				continue;
+			} else if (opt.argument == OptArg.FILE
+					|| opt.argument == OptArg.FILEDIR) {
+				args[i + 1] = resolve(dir, new File(args[i + 1])).getPath();
+			} else if (opt.argument == OptArg.FILELIST) {
+				String r = "";
+				for (String p : args[i + 1].split(File.pathSeparator)) {
+					if (!r.equals("")) {
+						r = r + File.pathSeparator;
+					}
+					r = r + resolve(dir, new File(p)).getPath();
+				}
+				args[i + 1] = r;
+			}
+			if (opt.argument != null) {
+				i = i + 1;
+			}
+		}
+		return args;
+	}
+	
+	private static File resolve(File dir, File file) {
+		if (file.isAbsolute()) {
+			return file;
+		} else {
+			return new File(dir, file.getPath());
+		}
+	}
+	
+	/**
+	 * An output stream which forwards everything written to it to a target
+	 * stream, which can be changed. This allows the output of each build to be
+	 * sent to the client which requested it.
+	 */
+	private static final class Redirect extends OutputStream {
+		private final OutputStream original;
+		private OutputStream target;
+		private int lastWritten = -1;
+
+		public Redirect(OutputStream original) {
+			this.original = original;
+			this.target = original;
+		}
+
+		public synchronized void setTarget(OutputStream target) {
+			this.target = target;
+			this.lastWritten = -1;
+		}
+
+		public synchronized void reset() {
+			this.target = original;
+		}
+
+		public synchronized void write(int b) throws IOException {
+			target.write(b);
+			lastWritten = b;
+		}
+
+		public synchronized void write(byte[] bytes, int offset, int length)
+				throws IOException {
+			if (length > 0) {
+				target.write(bytes, offset, length);
+				lastWritten = bytes[offset + length - 1];
+			}
+		}
+
+		public synchronized void flush() throws IOException {
+			target.flush();
+		}
+	}
+
+	// =========================================================================
+	// Main Method
+	// =========================================================================
+
+	public static void main(String[] args) throws IOException {
+		File file = args.length > 0 ? new File(args[0])
+				: defaultServerFile("wyc");
+		new WycServer(WycMain.DEFAULT_OPTIONS).serve(file);
+	}
+}
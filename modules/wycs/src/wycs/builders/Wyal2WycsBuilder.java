@@ -83,6 +83,40 @@ public class Wyal2WycsBuilder implements Builder, Logger {
 	public void logTimedMessage(String msg, long time, long memory) {
 		logger.logTimedMessage(msg, time, memory);		
 	}
+
+	public void logMessage(String msg) {
+		logger.logMessage(msg);
+	}
+	
+	/**
+	 * Report a warning about a given element of a source file. Unlike a syntax
+	 * error, a warning does not cause the build to fail. This is synchronized
+	 * since assertions may be checked by several threads at once.
+	 * 
+	 * @param msg
+	 *            --- message to report.
+	 * @param filename
+	 *            --- file containing the element in question.
+	 * @param elem
+	 *            --- element to which the warning applies.
+	 */
+	public synchronized void warning(String msg, String filename,
+			SyntacticElement elem) {
+		if (filename == null) {
+			System.err.println("warning: " + msg);
+			return;
+		}
+		int start = -1;
+		int end = -1;
+		Attribute.Source attr = elem.attribute(Attribute.Source.class);
+		if (attr != null) {
+			start = attr.start;
+			end = attr.end;
+		}
+		// reuse the formatting of syntax errors, without throwing
+		new SyntaxError("warning: " + msg, filename, start, end)
+				.outputSourceError(System.err);
+	}
 	
 	// ======================================================================
 	// Build Method
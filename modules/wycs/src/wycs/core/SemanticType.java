@@ -6,6 +6,7 @@ import java.util.HashMap;
 import java.util.Map;
 import wyautl.core.*;
 import wyautl.io.PrettyAutomataWriter;
+import wyautl.rw.RewriteCache;
 import wyautl.rw.StaticDispatchRewriter;
 import static wycs.core.Types.*;
 
@@ -459,6 +460,14 @@ public abstract class SemanticType {
 	// Private Implementation
 	// =============================================================
 
+	/**
+	 * Normal forms of type automata under the rules of <code>Types</code>.
+	 * Type checking asks the same subtype questions many times over, and each
+	 * requires rewriting a type to a fixpoint.
+	 */
+	private static final RewriteCache normalForms = new RewriteCache(
+			Types.inferences, Types.reductions, Types.SCHEMA, 10000);
+
 	protected final Automaton automaton;
 	
 	private SemanticType() {
@@ -472,6 +481,17 @@ public abstract class SemanticType {
 	public Automaton automaton() {
 		return automaton;
 	}
+
+	/**
+	 * Get the normal form of this type under the rules of <code>Types</code>.
+	 * This may be shared with other identical types and, hence, must not be
+	 * modified.
+	 * 
+	 * @return
+	 */
+	public Automaton normalForm() {
+		return normalise(automaton);
+	}
 			
 	public int hashCode() {
 		return automaton.hashCode();
@@ -680,10 +700,7 @@ public abstract class SemanticType {
 	 * @return
 	 */
 	public SemanticType canonicalise() {
-		Automaton a = new Automaton(automaton);
-		StaticDispatchRewriter rewriter = new StaticDispatchRewriter(
-				Types.inferences, Types.reductions, Types.SCHEMA);
-		rewriter.apply(a);
+		Automaton a = new Automaton(normalise(automaton));
 		return construct(a);
 	}
 	
@@ -775,10 +792,7 @@ public abstract class SemanticType {
 //					"Or").write(result.automaton);
 //			System.out.println();
 //		} catch(IOException e) {}
-		StaticDispatchRewriter rewriter = new StaticDispatchRewriter(
-				Types.inferences, Types.reductions, Types.SCHEMA);
-		rewriter.apply(result.automaton);		
-		boolean r = result.equals(SemanticType.Void);
+		boolean r = normalise(result.automaton).equals(Void.automaton);
 //		System.out.println("CHECKING SUBTYPE: " + t1 + " :> " + t2 + " : " + r);		
 //		try {
 //			new PrettyAutomataWriter(System.err, SCHEMA, "And",
@@ -788,6 +802,29 @@ public abstract class SemanticType {
 		return r;
 	}
 	
+	/**
+	 * Rewrite a given type automaton to its normal form, reusing the normal
+	 * form computed previously for an identical automaton where possible. The
+	 * given automaton is not modified and the result must not be modified
+	 * either.
+	 * 
+	 * @param automaton
+	 *            --- a minimised and compacted type automaton.
+	 * @return
+	 */
+	private static Automaton normalise(Automaton automaton) {
+		Automaton result = normalForms.get(automaton);
+		if (result == null) {
+			result = new Automaton(automaton);
+			StaticDispatchRewriter rewriter = new StaticDispatchRewriter(
+					Types.inferences, Types.reductions, Types.SCHEMA);
+			if (rewriter.apply(result)) {
+				normalForms.put(new Automaton(automaton), result);
+			}
+		}
+		return result;
+	}
+
 	/**
 	 * Attempt to bind a generic type against a concrete type. This will fail if
 	 * no possible binding exists, otherwise it produces a binding from
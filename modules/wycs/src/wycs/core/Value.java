@@ -407,7 +407,7 @@ public abstract class Value implements Comparable<Value> {
 	private static final ArrayList<Value> values = new ArrayList<Value>();
 	private static final HashMap<Value,java.lang.Integer> cache = new HashMap<Value,java.lang.Integer>();
 	
-	private static <T extends Value> T get(T type) {
+	private static synchronized <T extends Value> T get(T type) {
 		java.lang.Integer idx = cache.get(type);
 		if(idx != null) {
 			return (T) values.get(idx);
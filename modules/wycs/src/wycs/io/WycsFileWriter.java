@@ -104,8 +104,7 @@ public class WycsFileWriter {
 	 */
 	private byte[] generateHeaderBlock(WycsFile module)
 			throws IOException {
-		ByteArrayOutputStream bytes = new ByteArrayOutputStream();		
-		BinaryOutputStream output = new BinaryOutputStream(bytes);
+		BinaryOutputStream output = new BinaryOutputStream();
 		
 		// second, write the file version number		
 		output.write_uv(MAJOR_VERSION); 
@@ -129,12 +128,11 @@ public class WycsFileWriter {
 		
 		output.close();
 		
-		return bytes.toByteArray();
+		return output.toByteArray();
 	}
 	
 	private byte[] generateModuleBlock(WycsFile module) throws IOException {
-		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-		BinaryOutputStream output = new BinaryOutputStream(bytes);
+		BinaryOutputStream output = new BinaryOutputStream();
 
 		output.write_uv(pathCache.get(module.id())); // FIXME: BROKEN!
 		output.write_uv(module.declarations().size());
@@ -145,7 +143,7 @@ public class WycsFileWriter {
 
 		output.close();
 
-		return bytes.toByteArray();
+		return output.toByteArray();
 	}
 	
 	/**
@@ -274,8 +272,7 @@ public class WycsFileWriter {
 	}
 		
 	private byte[] generateMacroBlock(WycsFile.Macro md) throws IOException {
-		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-		BinaryOutputStream output = new BinaryOutputStream(bytes);
+		BinaryOutputStream output = new BinaryOutputStream();
 					
 		output.write_uv(stringCache.get(md.name()));
 		output.write_uv(typeCache.get(md.type));
@@ -283,12 +280,11 @@ public class WycsFileWriter {
 		writeBlock(BLOCK_Code,md.condition,output);
 		
 		output.close();
-		return bytes.toByteArray();
+		return output.toByteArray();
 	}
 	
 	private byte[] generateFunctionBlock(WycsFile.Function fd) throws IOException {
-		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-		BinaryOutputStream output = new BinaryOutputStream(bytes);
+		BinaryOutputStream output = new BinaryOutputStream();
 				
 		output.write_uv(stringCache.get(fd.name()));
 		output.write_uv(typeCache.get(fd.type));
@@ -300,19 +296,18 @@ public class WycsFileWriter {
 		}
 
 		output.close();
-		return bytes.toByteArray();
+		return output.toByteArray();
 	}
 
 	private byte[] generateAssertBlock(WycsFile.Assert td) throws IOException {
-		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-		BinaryOutputStream output = new BinaryOutputStream(bytes);
+		BinaryOutputStream output = new BinaryOutputStream();
 		
 		output.write_uv(stringCache.get(td.name()));
 		output.write_uv(1); // one sub-block
 		writeBlock(BLOCK_Code,td.condition,output);
 
 		output.close();
-		return bytes.toByteArray();
+		return output.toByteArray();
 	}
 
 	/**
@@ -325,13 +320,12 @@ public class WycsFileWriter {
 	 * @throws IOException
 	 */
 	private byte[] generateCodeBlock(Code<?> code) throws IOException {
-		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-		BinaryOutputStream output = new BinaryOutputStream(bytes);
+		BinaryOutputStream output = new BinaryOutputStream();
 				
 		writeCode(code,output);
 
 		output.close();
-		return bytes.toByteArray();
+		return output.toByteArray();
 	}
 	
 	/**
@@ -86,7 +86,29 @@ public class TestHarness {
 			fail("Test threw IOException");
 		}
 	}
+	
+	protected void verifyUnknownTest(String name) {
+		// verification gives up which, when requested, is reported by way of
+		// a warning rather than failing the build.
+		name = sourcepath + File.separatorChar + name + ".wyal";
+		ByteArrayOutputStream warnings = new ByteArrayOutputStream();
+		PrintStream err = System.err;
 		
+		try {
+			System.setErr(new PrintStream(warnings, true));
+			if (compile("-bp", WYRT_PATH, "-wyaldir", sourcepath, "-wycsdir",
+					sourcepath, "-X", "verification:warnunknown", name) != WycsMain.SUCCESS) {
+				fail("Test failed to verify when it should be unknown!");
+			} else if (!warnings.toString().contains(
+					"(unknown: verification limit reached)")) {
+				fail("Test verified when it should be unknown!");
+			}
+		} catch(IOException e) {
+			fail("Test threw IOException");
+		} finally {
+			System.setErr(err);
+		}
+	}
 	
 	private static int compile(String... args) throws IOException {
 		return new WycsMain(new WycsBuildTask(), WycsMain.DEFAULT_OPTIONS)
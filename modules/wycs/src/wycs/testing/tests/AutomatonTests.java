@@ -0,0 +1,310 @@
+package wycs.testing.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import wyautl.core.Automaton;
+
+/**
+ * Checks the representation of states used by <code>Automaton</code>. That
+ * is, the states returned by <code>get()</code> must match those which were
+ * added, the cursor-style accessors (e.g. <code>getKind()</code>) must match
+ * <code>get()</code>, and the child and constant pools must survive growth,
+ * rollback via <code>resize()</code> and copying. The automata used are
+ * generated pseudo-randomly from a fixed seed, so that any failure is
+ * reproducible.
+ */
+public class AutomatonTests {
+	private static final int TERM_KINDS = 4;
+
+	@Test public void Test_Virtual() {
+		Automaton automaton = new Automaton();
+		assertEquals(Automaton.K_LIST, automaton.add(new Automaton.List()));
+		assertEquals(Automaton.K_SET, automaton.add(new Automaton.Set()));
+		assertEquals(Automaton.K_BAG, automaton.add(new Automaton.Bag()));
+		int term = automaton.add(new Automaton.Term(2));
+		assertTrue(term < 0);
+		assertEquals(2, automaton.getKind(term));
+		assertEquals(new Automaton.Term(2), automaton.get(term));
+		assertEquals(0, automaton.getSize(Automaton.K_LIST));
+		assertEquals(0, automaton.nStates());
+	}
+
+	@Test public void Test_Constants() {
+		Automaton automaton = new Automaton();
+		Automaton.State[] states = { new Automaton.Bool(true),
+				new Automaton.Int(-3), new Automaton.Int("123456789012345678901234567890"),
+				new Automaton.Real("1.5"), new Automaton.Strung("hello") };
+		for (Automaton.State state : states) {
+			int index = automaton.add(state);
+			assertEquals(state, automaton.get(index));
+			assertEquals(state, automaton.getConstant(index));
+			assertEquals(state.kind, automaton.getKind(index));
+			// equal constants share the same state
+			assertEquals(index, automaton.add(state));
+		}
+		assertEquals(states.length, automaton.nStates());
+	}
+
+	@Test public void Test_Sharing() {
+		Automaton automaton = new Automaton();
+		int x = automaton.add(new Automaton.Int(1));
+		int y = automaton.add(new Automaton.Int(2));
+		int list = automaton.add(new Automaton.List(x, y, x));
+		assertEquals(list, automaton.add(new Automaton.List(x, y, x)));
+		assertFalse(list == automaton.add(new Automaton.List(y, x, x)));
+		// sets are unordered and so ignore duplicates
+		int set = automaton.add(new Automaton.Set(y, x, y));
+		assertEquals(set, automaton.add(new Automaton.Set(x, y)));
+		assertEquals(2, automaton.getSize(set));
+		// bags are unordered, but retain duplicates
+		int bag = automaton.add(new Automaton.Bag(y, x, y));
+		assertEquals(bag, automaton.add(new Automaton.Bag(y, y, x)));
+		assertEquals(3, automaton.getSize(bag));
+	}
+
+	@Test public void Test_Cursor() {
+		Random random = new Random(1);
+		for (int i = 0; i != 100; ++i) {
+			checkCursor(generate(random, 50));
+		}
+	}
+
+	@Test public void Test_Growth() {
+		// Enough states to force the state arrays, child pool and constant
+		// pool to be grown many times.
+		Random random = new Random(2);
+		Automaton automaton = new Automaton();
+		Automaton.State[] states = new Automaton.State[10000];
+		int[] indices = new int[states.length];
+		for (int i = 0; i != states.length; ++i) {
+			states[i] = generateState(random, automaton, i);
+			indices[i] = automaton.add(states[i]);
+		}
+		for (int i = 0; i != states.length; ++i) {
+			assertEquals(states[i], automaton.get(indices[i]));
+		}
+		checkCursor(automaton);
+	}
+
+	@Test public void Test_Rollback() {
+		Random random = new Random(3);
+		for (int i = 0; i != 100; ++i) {
+			Automaton automaton = generate(random, 20);
+			Automaton original = new Automaton(automaton);
+			int nStates = automaton.nStates();
+			// add some states, as a failed rewrite would, and then roll back
+			Automaton.State[] states = new Automaton.State[10];
+			for (int j = 0; j != states.length; ++j) {
+				states[j] = generateState(random, automaton, nStates + j);
+				automaton.add(states[j]);
+			}
+			automaton.resize(nStates);
+			assertEquals(original, automaton);
+			checkCursor(automaton);
+			// re-adding the states which were rolled back must give valid states
+			for (Automaton.State state : states) {
+				int index = automaton.add(state);
+				assertEquals(state, automaton.get(index));
+			}
+			checkCursor(automaton);
+		}
+	}
+
+	@Test public void Test_Copy() {
+		Random random = new Random(4);
+		for (int i = 0; i != 100; ++i) {
+			Automaton automaton = generate(random, 20);
+			Automaton original = new Automaton(automaton);
+			Automaton copy = new Automaton(automaton);
+			// modifying the copy must not affect the original
+			for (int j = 0; j != 10; ++j) {
+				copy.add(generateState(random, copy, copy.nStates()));
+			}
+			if (copy.nStates() > 0) {
+				copy.set(0, new Automaton.List(copy.nStates() - 1));
+			}
+			assertEquals(original, automaton);
+			checkCursor(automaton);
+			checkCursor(copy);
+		}
+	}
+
+	@Test public void Test_Cyclic() {
+		// set() can be used to create cycles, which minimise() then collapses
+		// where states turn out to be equivalent. The representative of
+		// equivalent states is the one with the lowest index.
+		Automaton automaton = new Automaton();
+		int a = automaton.add(new Automaton.Term(0, 0));
+		int b = automaton.add(new Automaton.Term(1, a));
+		automaton.set(a, new Automaton.Term(0, b));
+		int c = automaton.add(new Automaton.Term(1, b));
+		automaton.set(c, new Automaton.Term(1, a));
+		automaton.setRoot(0, c);
+		automaton.minimise();
+		assertEquals(b, automaton.getRoot(0));
+		assertEquals(a, automaton.getContents(b));
+		assertEquals(b, automaton.getContents(a));
+		assertNull(automaton.get(c));
+		checkCursor(automaton);
+		automaton.compact();
+		assertEquals(2, automaton.nStates());
+		checkCursor(automaton);
+	}
+
+	@Test public void Test_Index() {
+		// add() finds existing states through an index, which must be kept up
+		// to date by every operation that changes states in place.
+		Random random = new Random(5);
+		for (int i = 0; i != 100; ++i) {
+			Automaton automaton = generate(random, 30);
+			automaton.setRoot(0, automaton.nStates() - 1);
+			checkIndex(automaton);
+			Automaton copy = new Automaton(automaton);
+			checkIndex(copy);
+			automaton.set(0, automaton.get(automaton.nStates() - 1));
+			automaton.minimise();
+			checkIndex(automaton);
+			automaton.compact();
+			checkIndex(automaton);
+			if (automaton.nStates() > 1) {
+				automaton.rewrite(automaton.nStates() - 1, 0);
+				checkIndex(automaton);
+			}
+			Automaton other = generate(random, 30);
+			automaton.setRoot(1,
+					automaton.addAll(other.nStates() - 1, other));
+			checkIndex(automaton);
+			int source = automaton.getRoot(1);
+			if (source >= 0 && automaton.nStates() > 1) {
+				automaton.setRoot(1, automaton.substitute(source, 0,
+						automaton.nStates() - 1));
+				checkIndex(automaton);
+			}
+			int[] binding = new int[automaton.nStates()];
+			for (int j = 0; j != binding.length; ++j) {
+				binding[j] = j;
+			}
+			automaton.remap(binding);
+			checkIndex(automaton);
+			automaton.swap(copy);
+			checkIndex(automaton);
+			checkIndex(copy);
+			automaton.compact();
+			checkIndex(automaton);
+		}
+	}
+
+	@Test public void Test_SetRepresentative() {
+		// Where several states are equivalent, add() returns the one with the
+		// lowest index. Overwriting that state must leave the others findable.
+		Automaton automaton = new Automaton();
+		int x = automaton.add(new Automaton.Int(1));
+		int a = automaton.add(new Automaton.Term(0, x));
+		int b = automaton.add(new Automaton.Term(1, x));
+		automaton.set(b, new Automaton.Term(0, x));
+		assertEquals(a, automaton.add(new Automaton.Term(0, x)));
+		automaton.set(a, new Automaton.Int(2));
+		assertEquals(b, automaton.add(new Automaton.Term(0, x)));
+		automaton.set(a, new Automaton.Term(0, x));
+		assertEquals(a, automaton.add(new Automaton.Term(0, x)));
+		assertEquals(3, automaton.nStates());
+	}
+
+	/**
+	 * Check that adding any state already in a minimised automaton gives
+	 * back that state, rather than allocating another.
+	 */
+	private static void checkIndex(Automaton automaton) {
+		int nStates = automaton.nStates();
+		for (int i = 0; i != nStates; ++i) {
+			Automaton.State state = automaton.get(i);
+			if (state != null) {
+				assertEquals(i, automaton.add(state));
+			}
+		}
+		assertEquals(nStates, automaton.nStates());
+	}
+
+	/**
+	 * Check that the cursor-style accessors agree with the states returned by
+	 * <code>get()</code>, for every state in the automaton.
+	 */
+	private static void checkCursor(Automaton automaton) {
+		for (int i = 0; i != automaton.nStates(); ++i) {
+			Automaton.State state = automaton.get(i);
+			if (state == null) {
+				assertEquals(Automaton.K_VOID, automaton.getKind(i));
+				continue;
+			}
+			assertEquals(state.kind, automaton.getKind(i));
+			if (state instanceof Automaton.Term) {
+				Automaton.Term term = (Automaton.Term) state;
+				assertEquals(term.contents, automaton.getContents(i));
+			} else if (state instanceof Automaton.Collection) {
+				Automaton.Collection collection = (Automaton.Collection) state;
+				assertEquals(collection.size(), automaton.getSize(i));
+				for (int j = 0; j != collection.size(); ++j) {
+					assertEquals(collection.get(j), automaton.getChild(i, j));
+				}
+			} else {
+				assertEquals(state, automaton.getConstant(i));
+			}
+		}
+	}
+
+	private static Automaton generate(Random random, int size) {
+		Automaton automaton = new Automaton();
+		for (int i = 0; i != size; ++i) {
+			automaton.add(generateState(random, automaton, i));
+		}
+		return automaton;
+	}
+
+	/**
+	 * Generate a state whose children are existing states of the automaton
+	 * (or virtual states). The given number is used for constant values, so
+	 * that a good proportion of them are distinct.
+	 */
+	private static Automaton.State generateState(Random random,
+			Automaton automaton, int number) {
+		switch (random.nextInt(8)) {
+		case 0:
+			return new Automaton.Int(number);
+		case 1:
+			return new Automaton.Real(number);
+		case 2:
+			return new Automaton.Strung("s" + number);
+		case 3:
+			return new Automaton.Term(random.nextInt(TERM_KINDS));
+		case 4:
+			return new Automaton.Term(random.nextInt(TERM_KINDS),
+					generateChild(random, automaton));
+		case 5:
+			return new Automaton.List(generateChildren(random, automaton));
+		case 6:
+			return new Automaton.Set(generateChildren(random, automaton));
+		default:
+			return new Automaton.Bag(generateChildren(random, automaton));
+		}
+	}
+
+	private static int[] generateChildren(Random random, Automaton automaton) {
+		int[] children = new int[random.nextInt(5)];
+		for (int i = 0; i != children.length; ++i) {
+			children[i] = generateChild(random, automaton);
+		}
+		return children;
+	}
+
+	private static int generateChild(Random random, Automaton automaton) {
+		if (automaton.nStates() == 0 || random.nextInt(5) == 0) {
+			return Automaton.K_FREE - random.nextInt(TERM_KINDS);
+		} else {
+			return random.nextInt(automaton.nStates());
+		}
+	}
+}
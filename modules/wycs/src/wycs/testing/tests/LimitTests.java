@@ -0,0 +1,117 @@
+package wycs.testing.tests;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import wyautl.core.Automaton;
+import wyautl.rw.AbstractRewriter;
+import wyautl.rw.GlobalDispatchRewriter;
+import wyautl.rw.IncrementalRewriter;
+import wyautl.rw.RandomRewriter;
+import wyautl.rw.SimpleRewriter;
+import wyautl.rw.StaticDispatchRewriter;
+import wycs.core.SemanticType;
+import wycs.core.Types;
+import wycs.testing.TestHarness;
+
+/**
+ * Checks the limits placed on rewriting. That is, when a limit is reached every
+ * rewriter gives up and reports rewriting as incomplete and, furthermore, the
+ * verifier then reports the assertion in question as unknown by way of a
+ * warning, rather than failing the build.
+ */
+public class LimitTests extends TestHarness {
+	public LimitTests() {
+		super("tests/invalid");
+	}
+
+	private static final SemanticType INT_OR_REAL = SemanticType.Or(
+			SemanticType.Int, SemanticType.Real);
+
+	/**
+	 * A type which requires over a hundred probes to normalise.
+	 */
+	private static final SemanticType TYPE = SemanticType.And(
+			SemanticType.Not(SemanticType.Tuple(INT_OR_REAL, SemanticType.Set(
+					true, SemanticType.Tuple(SemanticType.Bool,
+							SemanticType.Int)), SemanticType.Or(
+					SemanticType.Bool,
+					SemanticType.Set(false, SemanticType.Int)))),
+			SemanticType.Tuple(INT_OR_REAL, SemanticType.Set(true,
+					SemanticType.Tuple(SemanticType.Bool, INT_OR_REAL)),
+					SemanticType.Set(false, SemanticType.Int)));
+
+	@Test public void Test_NoLimit() {
+		for (AbstractRewriter rewriter : newRewriters(100000)) {
+			Automaton automaton = new Automaton(TYPE.automaton());
+			assertTrue(name(rewriter), rewriter.apply(automaton));
+		}
+	}
+
+	@Test public void Test_MaxSteps() {
+		for (AbstractRewriter rewriter : newRewriters(1)) {
+			Automaton automaton = new Automaton(TYPE.automaton());
+			assertFalse(name(rewriter), rewriter.apply(automaton));
+		}
+	}
+
+	@Test public void Test_MaxStates() {
+		for (AbstractRewriter rewriter : newRewriters(100000)) {
+			Automaton automaton = new Automaton(TYPE.automaton());
+			rewriter.setMaxStates(automaton.nStates());
+			// Rewriting the negated tuple requires at least one new state.
+			assertFalse(name(rewriter), rewriter.apply(automaton));
+		}
+	}
+
+	@Test public void Test_Interrupted() {
+		// The time limit and thread interruption are checked at the same
+		// point, but only the latter can be tested deterministically.
+		for (AbstractRewriter rewriter : newRewriters(100000)) {
+			Automaton automaton = new Automaton(TYPE.automaton());
+			Thread.currentThread().interrupt();
+			try {
+				assertFalse(name(rewriter), rewriter.apply(automaton));
+			} finally {
+				Thread.interrupted();
+			}
+		}
+	}
+
+	@Test public void Test_Unknown_059() {
+		// This assertion does not hold, but the verifier cannot show this
+		// within the default limit on rewrite steps. Hence, it fails unless
+		// such assertions are reported as warnings.
+		verifyFailTest("test_059");
+		verifyUnknownTest("test_059");
+	}
+
+	@Test public void Test_Unknown_102() {
+		verifyFailTest("test_102");
+		verifyUnknownTest("test_102");
+	}
+
+	private static AbstractRewriter[] newRewriters(int maxSteps) {
+		StaticDispatchRewriter staticDispatch = new StaticDispatchRewriter(
+				Types.inferences, Types.reductions, Types.SCHEMA, maxSteps);
+		IncrementalRewriter incremental = new IncrementalRewriter(
+				Types.inferences, Types.reductions, Types.SCHEMA);
+		incremental.setMaxProbes(maxSteps);
+		GlobalDispatchRewriter globalDispatch = new GlobalDispatchRewriter(
+				Types.inferences, Types.reductions, Types.SCHEMA);
+		globalDispatch.setMaxProbes(maxSteps);
+		RandomRewriter random = new RandomRewriter(Types.inferences,
+				Types.reductions, Types.SCHEMA);
+		random.setMaxProbes(maxSteps);
+		SimpleRewriter simple = new SimpleRewriter(Types.inferences,
+				Types.reductions, Types.SCHEMA);
+		simple.setMaxProbes(maxSteps);
+		return new AbstractRewriter[] { staticDispatch, incremental,
+				globalDispatch, random, simple };
+	}
+
+	private static String name(AbstractRewriter rewriter) {
+		return rewriter.getClass().getSimpleName();
+	}
+}
@@ -0,0 +1,239 @@
+package wycs.testing.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import wyautl.core.Automaton;
+import wyautl.rw.RewriteCache;
+import wyautl.rw.StaticDispatchRewriter;
+import wycs.core.SemanticType;
+import wycs.core.Types;
+import wycs.solver.Solver;
+
+/**
+ * Checks the cache of normal forms used by the verifier and the subtype
+ * checker. That is, a cached normal form must be exactly that produced by
+ * rewriting, the least recently used entries must be discarded first, and
+ * entries written to a file (e.g. <code>.wyvcs</code>) must be read back
+ * unchanged, unless the file was written for a different set of rules.
+ */
+public class RewriteCacheTests {
+	private static final SemanticType[] TYPES = {
+			SemanticType.And(SemanticType.Not(SemanticType.Int),
+					SemanticType.Real),
+			SemanticType.And(SemanticType.Not(SemanticType.Real),
+					SemanticType.Int),
+			SemanticType.And(
+					SemanticType.Not(SemanticType.Tuple(SemanticType.Int,
+							SemanticType.Bool)),
+					SemanticType.Tuple(SemanticType.Int, SemanticType.Any)),
+			SemanticType.And(
+					SemanticType.Not(SemanticType.Set(true, SemanticType.Or(
+							SemanticType.Int, SemanticType.Real))),
+					SemanticType.Set(true, SemanticType.Int)),
+			SemanticType.Or(SemanticType.Bool,
+					SemanticType.Not(SemanticType.String)) };
+
+	@Test public void Test_GetPut() {
+		RewriteCache cache = newCache(100);
+		for (SemanticType type : TYPES) {
+			Automaton input = input(type);
+			assertNull(cache.get(input));
+			cache.put(input, normalise(type));
+		}
+		assertEquals(TYPES.length, cache.size());
+		for (SemanticType type : TYPES) {
+			// a separately constructed input must find the same entry
+			assertEquals(type.toString(), normalise(type),
+					cache.get(input(type)));
+		}
+		assertEquals(TYPES.length, cache.hits());
+		assertEquals(TYPES.length, cache.misses());
+	}
+
+	@Test public void Test_LeastRecentlyUsed() {
+		RewriteCache cache = newCache(2);
+		cache.put(input(TYPES[0]), normalise(TYPES[0]));
+		cache.put(input(TYPES[1]), normalise(TYPES[1]));
+		assertNotNull(cache.get(input(TYPES[0])));
+		cache.put(input(TYPES[2]), normalise(TYPES[2]));
+		assertEquals(2, cache.size());
+		assertNotNull(cache.get(input(TYPES[0])));
+		assertNull(cache.get(input(TYPES[1])));
+		assertNotNull(cache.get(input(TYPES[2])));
+	}
+
+	@Test public void Test_Concurrent() throws InterruptedException {
+		final RewriteCache cache = newCache(TYPES.length);
+		final Automaton[] normalForms = new Automaton[TYPES.length];
+		for (int i = 0; i != TYPES.length; ++i) {
+			normalForms[i] = normalise(TYPES[i]);
+		}
+		final List<Throwable> errors = Collections
+				.synchronizedList(new ArrayList<Throwable>());
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i != threads.length; ++i) {
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						for (int j = 0; j != 20; ++j) {
+							for (int k = 0; k != TYPES.length; ++k) {
+								Automaton input = input(TYPES[k]);
+								Automaton normalForm = cache.get(input);
+								if (normalForm == null) {
+									cache.put(input, normalForms[k]);
+								} else {
+									assertEquals(normalForms[k], normalForm);
+								}
+							}
+						}
+					} catch (Throwable e) {
+						errors.add(e);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(errors.toString(), 0, errors.size());
+		assertEquals(TYPES.length, cache.size());
+	}
+
+	@Test public void Test_ReadWrite() throws IOException {
+		File file = File.createTempFile("cache", ".wyvcs");
+		try {
+			RewriteCache cache = newCache(100);
+			for (SemanticType type : TYPES) {
+				cache.put(input(type), normalise(type));
+			}
+			cache.write(file);
+			RewriteCache copy = newCache(100);
+			copy.read(file);
+			assertEquals(TYPES.length, copy.size());
+			for (SemanticType type : TYPES) {
+				assertEquals(type.toString(), normalise(type),
+						copy.get(input(type)));
+			}
+			// writing again replaces the file, rather than appending to it
+			copy.write(file);
+			RewriteCache again = newCache(100);
+			again.read(file);
+			assertEquals(TYPES.length, again.size());
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test public void Test_ReadLimit() throws IOException {
+		// Entries are written least recently used first, so that these are
+		// discarded first when read into a smaller cache.
+		File file = File.createTempFile("cache", ".wyvcs");
+		try {
+			RewriteCache cache = newCache(100);
+			for (SemanticType type : TYPES) {
+				cache.put(input(type), normalise(type));
+			}
+			assertNotNull(cache.get(input(TYPES[0])));
+			cache.write(file);
+			RewriteCache copy = newCache(2);
+			copy.read(file);
+			assertEquals(2, copy.size());
+			assertNotNull(copy.get(input(TYPES[0])));
+			assertNotNull(copy.get(input(TYPES[TYPES.length - 1])));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test public void Test_ReadMissing() throws IOException {
+		File file = File.createTempFile("cache", ".wyvcs");
+		file.delete();
+		RewriteCache cache = newCache(100);
+		cache.read(file);
+		assertEquals(0, cache.size());
+	}
+
+	@Test public void Test_ReadDifferentRules() throws IOException {
+		File file = File.createTempFile("cache", ".wyvcs");
+		try {
+			RewriteCache cache = newCache(100);
+			cache.put(input(TYPES[0]), normalise(TYPES[0]));
+			cache.write(file);
+			RewriteCache other = new RewriteCache(Solver.inferences,
+					Solver.reductions, Solver.SCHEMA, 100);
+			other.read(file);
+			assertEquals(0, other.size());
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test public void Test_ReadInvalid() throws IOException {
+		File file = File.createTempFile("cache", ".wyvcs");
+		try {
+			FileOutputStream out = new FileOutputStream(file);
+			out.write(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+			out.close();
+			try {
+				newCache(100).read(file);
+				fail("invalid cache file was read");
+			} catch (IOException e) {
+				// expected
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test public void Test_Subtypes() {
+		// SemanticType.isSubtype() caches normal forms, and so must give the
+		// same answer as rewriting directly, even when asked again.
+		for (int i = 0; i != 2; ++i) {
+			for (SemanticType t1 : TYPES) {
+				for (SemanticType t2 : TYPES) {
+					SemanticType t = SemanticType.And(SemanticType.Not(t1), t2);
+					boolean expected = normalise(t).equals(
+							SemanticType.Void.automaton());
+					assertEquals(t.toString(), expected,
+							SemanticType.isSubtype(t1, t2));
+				}
+			}
+		}
+		SemanticType intOrBool = SemanticType.Or(SemanticType.Int,
+				SemanticType.Bool);
+		assertTrue(SemanticType.isSubtype(intOrBool, SemanticType.Int));
+		assertFalse(SemanticType.isSubtype(SemanticType.Int, intOrBool));
+	}
+
+	private static RewriteCache newCache(int limit) {
+		return new RewriteCache(Types.inferences, Types.reductions,
+				Types.SCHEMA, limit);
+	}
+
+	/**
+	 * Construct the automaton used to key the normal form of a given type.
+	 */
+	private static Automaton input(SemanticType type) {
+		Automaton automaton = new Automaton(type.automaton());
+		automaton.minimise();
+		automaton.compact();
+		return automaton;
+	}
+
+	private static Automaton normalise(SemanticType type) {
+		Automaton automaton = input(type);
+		assertTrue(new StaticDispatchRewriter(Types.inferences,
+				Types.reductions, Types.SCHEMA).apply(automaton));
+		return automaton;
+	}
+}
@@ -0,0 +1,118 @@
+package wycs.testing.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import wyautl.core.Automaton;
+import wyautl.rw.IncrementalRewriter;
+import wyautl.rw.Rewriter;
+import wyautl.rw.StaticDispatchRewriter;
+import wycs.core.SemanticType;
+import wycs.core.Types;
+
+/**
+ * Checks that <code>IncrementalRewriter</code> produces exactly the same
+ * normal forms as <code>StaticDispatchRewriter</code>. The automata used are
+ * semantic types (rather than verification conditions), since these are easy
+ * to generate and exercise both inference and reduction rules. They are
+ * generated pseudo-randomly from a fixed seed, so that any failure is
+ * reproducible.
+ */
+public class RewriterTests {
+	private static final SemanticType[] ATOMS = { SemanticType.Any,
+			SemanticType.Void, SemanticType.Bool, SemanticType.Int,
+			SemanticType.Real, SemanticType.String, SemanticType.Var("X") };
+
+	@Test public void Test_Atoms() {
+		for (SemanticType t : ATOMS) {
+			checkSameNormalForm(t);
+			checkSameNormalForm(SemanticType.Not(t));
+		}
+	}
+
+	@Test public void Test_Subtypes() {
+		// These are the automata constructed by SemanticType.isSubtype().
+		for (SemanticType t1 : ATOMS) {
+			for (SemanticType t2 : ATOMS) {
+				checkSameNormalForm(SemanticType.And(SemanticType.Not(t1), t2));
+				if (t1 != SemanticType.Void && t2 != SemanticType.Void) {
+					// tuples cannot contain void elements
+					checkSameNormalForm(SemanticType.And(
+							SemanticType.Not(SemanticType.Tuple(t1, t2)),
+							SemanticType.Tuple(t2, t1)));
+				}
+				checkSameNormalForm(SemanticType.And(
+						SemanticType.Not(SemanticType.Set(true, t1)),
+						SemanticType.Set(true, SemanticType.Or(t1, t2))));
+			}
+		}
+	}
+
+	@Test public void Test_Random_Depth2() {
+		checkRandom(1, 2, 500);
+	}
+
+	@Test public void Test_Random_Depth3() {
+		checkRandom(2, 3, 500);
+	}
+
+	@Test public void Test_Random_Depth4() {
+		checkRandom(3, 4, 200);
+	}
+
+	private static void checkRandom(long seed, int depth, int count) {
+		Random random = new Random(seed);
+		for (int i = 0; i != count; ++i) {
+			checkSameNormalForm(generate(random, depth));
+		}
+	}
+
+	private static SemanticType generate(Random random, int depth) {
+		if (depth == 0) {
+			return ATOMS[random.nextInt(ATOMS.length)];
+		}
+		switch (random.nextInt(6)) {
+		case 0:
+			return SemanticType.Not(generate(random, depth - 1));
+		case 1:
+			return SemanticType.And(generate(random, depth - 1),
+					generate(random, depth - 1));
+		case 2:
+			return SemanticType.Or(generate(random, depth - 1),
+					generate(random, depth - 1));
+		case 3:
+			return SemanticType.Tuple(generateElement(random, depth - 1),
+					generateElement(random, depth - 1));
+		case 4:
+			return SemanticType.Set(random.nextBoolean(),
+					generate(random, depth - 1));
+		default:
+			return ATOMS[random.nextInt(ATOMS.length)];
+		}
+	}
+
+	private static SemanticType generateElement(Random random, int depth) {
+		// tuples cannot contain void elements
+		SemanticType element = generate(random, depth);
+		while (element == SemanticType.Void) {
+			element = generate(random, depth);
+		}
+		return element;
+	}
+
+	private static void checkSameNormalForm(SemanticType type) {
+		Automaton expected = new Automaton(type.automaton());
+		Automaton actual = new Automaton(type.automaton());
+		Rewriter staticDispatch = new StaticDispatchRewriter(Types.inferences,
+				Types.reductions, Types.SCHEMA);
+		Rewriter incremental = new IncrementalRewriter(Types.inferences,
+				Types.reductions, Types.SCHEMA);
+		boolean expectedComplete = staticDispatch.apply(expected);
+		boolean actualComplete = incremental.apply(actual);
+		assertEquals(type.toString(), expectedComplete, actualComplete);
+		assertEquals(type.toString(), expected, actual);
+	}
+}
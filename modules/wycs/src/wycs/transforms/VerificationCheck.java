@@ -3,9 +3,11 @@ package wycs.transforms;
 import static wybs.lang.SyntaxError.*;
 import static wycs.solver.Solver.*;
 
+import java.io.File;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.util.*;
+import java.util.concurrent.*;
 
 import wyautl.core.*;
 import wyautl.io.PrettyAutomataWriter;
@@ -22,7 +24,6 @@ import wycs.builders.Wyal2WycsBuilder;
 import wycs.core.Code;
 import wycs.core.NormalForms;
 import wycs.core.SemanticType;
-import wycs.core.Types;
 import wycs.core.Value;
 import wycs.core.WycsFile;
 import wycs.io.WycsFilePrinter;
@@ -40,7 +41,7 @@ import wycs.solver.SolverUtil;
  * 
  */
 public class VerificationCheck implements Transform<WycsFile> {
-    private enum RewriteMode { SIMPLE, STATICDISPATCH, GLOBALDISPATCH, RANDOM };
+    private enum RewriteMode { SIMPLE, STATICDISPATCH, INCREMENTAL, GLOBALDISPATCH, RANDOM };
     
 	/**
 	 * Determines whether this transform is enabled or not.
@@ -61,12 +62,49 @@ public class VerificationCheck implements Transform<WycsFile> {
 	 * Determine the maximum number of rewrite steps.
 	 */
 	private int maxSteps = getMaxsteps();
+	
+	/**
+	 * Determine the maximum time (in milliseconds) spent rewriting a single
+	 * assertion.
+	 */
+	private int timeout = getTimeout();
+	
+	/**
+	 * Determine the maximum number of automaton states permitted when
+	 * rewriting a single assertion.
+	 */
+	private int maxStates = getMaxstates();
+
+	/**
+	 * Determine whether an assertion which reaches one of the above limits is
+	 * reported by way of a warning, rather than as failing.
+	 */
+	private boolean warnUnknown = getWarnunknown();
 		
 	/**
-	 * The rewrite engine used to actually check assertions are true or false.
+	 * Determine the number of worker threads used to check assertions.
 	 */
-	private Rewriter rewriter;
+	private int threads = getThreads();
 	
+	/**
+	 * Determine the file in which normal forms are kept between builds (if
+	 * any).
+	 */
+	private String cache = getCache();
+
+	/**
+	 * Normal forms of the assertions checked so far. This is shared between
+	 * all instances, since the same assertions are often checked again (e.g.
+	 * when a file is rebuilt without changes to a given function).
+	 */
+	private static final RewriteCache normalForms = new RewriteCache(
+			Solver.inferences, Solver.reductions, Solver.SCHEMA, 1000);
+
+	/**
+	 * The file from which the normal forms were last read (if any).
+	 */
+	private static File normalFormsFile;
+
 	private final Wyal2WycsBuilder builder;
 			
 	private String filename;
@@ -108,7 +146,7 @@ public class VerificationCheck implements Transform<WycsFile> {
 	}
 
 	public static String describeRwMode() {
-		return "Set the rewrite mode to use (simple or static-dispatch)";
+		return "Set the rewrite mode to use (simple, staticdispatch or incremental)";
 	}
 
 	public static String getRwmode() {
@@ -137,6 +175,70 @@ public class VerificationCheck implements Transform<WycsFile> {
 		this.maxSteps = limit;
 	}
 
+	public static String describeTimeout() {
+		return "Limits the time (in milliseconds) spent checking an assertion (0 for no limit)";
+	}
+
+	public static int getTimeout() {
+		return 0; // default value
+	}
+
+	public void setTimeout(int limit) {
+		this.timeout = limit;
+	}
+
+	public static String describeMaxStates() {
+		return "Limits the number of automaton states permitted when checking an assertion (0 for no limit)";
+	}
+
+	public static int getMaxstates() {
+		return 1000000; // default value
+	}
+
+	public void setMaxstates(int limit) {
+		this.maxStates = limit;
+	}
+
+	public static String describeWarnUnknown() {
+		return "Report assertions which reach a verification limit as warnings, rather than failures";
+	}
+
+	public static boolean getWarnunknown() {
+		return false; // default value
+	}
+
+	public void setWarnunknown(boolean flag) {
+		this.warnUnknown = flag;
+	}
+
+	public static String describeThreads() {
+		return "Set the number of threads used to check assertions";
+	}
+
+	public static int getThreads() {
+		return 1; // default value
+	}
+
+	public void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("invalid number of threads: "
+					+ threads);
+		}
+		this.threads = threads;
+	}
+
+	public static String describeCache() {
+		return "Set the file in which normal forms are kept between builds (empty for none)";
+	}
+
+	public static String getCache() {
+		return ""; // default value
+	}
+
+	public void setCache(String cache) {
+		this.cache = cache;
+	}
+
 	// ======================================================================
 	// Apply Method
 	// ======================================================================
@@ -151,37 +253,15 @@ public class VerificationCheck implements Transform<WycsFile> {
 		if (enabled) {
 			this.filename = wf.filename();
 					
-			// First, construct a fresh rewriter for this file.
-			switch(rwMode) {		
-			case STATICDISPATCH:
-				this.rewriter = new StaticDispatchRewriter(Solver.inferences,Solver.reductions,Solver.SCHEMA, maxSteps);
-				break;
-			case GLOBALDISPATCH:
-				// NOTE: I don't supply a max steps value here because the
-				// default value would be way too small for the simple rewriter.
-				this.rewriter = new GlobalDispatchRewriter(Solver.inferences,Solver.reductions,Solver.SCHEMA);
-				break;
-			case RANDOM:
-				// NOTE: I don't supply a max steps value here because the
-				// default value would be way too small for the simple rewriter.
-				this.rewriter = new RandomRewriter(Solver.inferences,Solver.reductions,Solver.SCHEMA);
-				break;
-			default:
-				// NOTE: I don't supply a max steps value here because the
-				// default value would be way too small for the simple rewriter.
-				this.rewriter = new SimpleRewriter(Solver.inferences,Solver.reductions,Solver.SCHEMA);
-				break;
-			}	
-
-			// Second, traverse each statement and verify any assertions we
+			// First, traverse each statement and collect the assertions we
 			// encounter.  
 			List<WycsFile.Declaration> statements = wf.declarations();
-			int count = 0;
+			ArrayList<WycsFile.Assert> assertions = new ArrayList<WycsFile.Assert>();
 			for (int i = 0; i != statements.size(); ++i) {
 				WycsFile.Declaration stmt = statements.get(i);
 
 				if (stmt instanceof WycsFile.Assert) {
-					checkValid((WycsFile.Assert) stmt, ++count);
+					assertions.add((WycsFile.Assert) stmt);
 				} else if (stmt instanceof WycsFile.Function
 						|| stmt instanceof WycsFile.Macro) {
 					// TODO: we could try to verify that the function makes
@@ -192,10 +272,173 @@ public class VerificationCheck implements Transform<WycsFile> {
 							filename, stmt);
 				}
 			}
+			
+			// Second, verify the assertions.
+			File file = cache.equals("") ? null : new File(cache);
+			readNormalForms(file);
+			try {
+				if (threads > 1 && assertions.size() > 1) {
+					checkValid(assertions);
+				} else {
+					Rewriter rewriter = createRewriter();
+					for (int i = 0; i != assertions.size(); ++i) {
+						long[] stats = checkValid(assertions.get(i), rewriter);
+						logVerified(i + 1, stats);
+					}
+				}
+			} finally {
+				writeNormalForms(file);
+			}
+		}
+	}
+
+	/**
+	 * Read the normal forms kept in a given file into the cache, unless they
+	 * have already been read. Since the cache is only an optimisation, any
+	 * problem reading the file is ignored.
+	 * 
+	 * @param file
+	 *            --- file to read, or <code>null</code> if none.
+	 */
+	private static void readNormalForms(File file) {
+		if (file != null) {
+			synchronized (normalForms) {
+				if (!file.equals(normalFormsFile)) {
+					normalFormsFile = file;
+					try {
+						normalForms.read(file);
+					} catch (IOException e) {
+						normalForms.clear();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Write the normal forms held in the cache to a given file. Again, any
+	 * problem writing the file is ignored.
+	 * 
+	 * @param file
+	 *            --- file to write, or <code>null</code> if none.
+	 */
+	private static void writeNormalForms(File file) {
+		if (file != null) {
+			synchronized (normalForms) {
+				try {
+					normalForms.write(file);
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	/**
+	 * Check a list of assertions concurrently on a pool of worker threads.
+	 * Each assertion is independent and is checked on its own automaton, using
+	 * a rewriter belonging to the worker (since rewriters are not safe for
+	 * concurrent use). Results are then examined in declaration order, so that
+	 * timings are logged and any failure is reported exactly as for sequential
+	 * checking.
+	 * 
+	 * @param assertions
+	 */
+	private void checkValid(List<WycsFile.Assert> assertions) {
+		final ThreadLocal<Rewriter> rewriters = new ThreadLocal<Rewriter>() {
+			protected Rewriter initialValue() {
+				return createRewriter();
+			}
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(
+				threads, assertions.size()));
+		try {
+			ArrayList<Future<long[]>> results = new ArrayList<Future<long[]>>();
+			for (final WycsFile.Assert stmt : assertions) {
+				results.add(executor.submit(new Callable<long[]>() {
+					public long[] call() {
+						return checkValid(stmt, rewriters.get());
+					}
+				}));
+			}
+			for (int i = 0; i != results.size(); ++i) {
+				long[] stats;
+				try {
+					stats = results.get(i).get();
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					} else if (cause instanceof Error) {
+						throw (Error) cause;
+					}
+					throw new RuntimeException(cause);
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+				logVerified(i + 1, stats);
+			}
+		} finally {
+			executor.shutdownNow();
 		}
 	}
 	
-	private void checkValid(WycsFile.Assert stmt, int number) {
+	/**
+	 * Construct a fresh rewriter for checking assertions, according to the
+	 * selected rewrite mode. The time and size limits apply regardless of
+	 * mode.
+	 * 
+	 * @return
+	 */
+	private Rewriter createRewriter() {
+		AbstractRewriter rewriter;
+		switch(rwMode) {		
+		case STATICDISPATCH:
+			rewriter = new StaticDispatchRewriter(Solver.inferences,Solver.reductions,Solver.SCHEMA, maxSteps);
+			break;
+		case INCREMENTAL:
+			rewriter = new IncrementalRewriter(Solver.inferences,Solver.reductions,Solver.SCHEMA, maxSteps);
+			break;
+		case GLOBALDISPATCH:
+			// NOTE: I don't supply a max steps value here because the
+			// default value would be way too small for the simple rewriter.
+			rewriter = new GlobalDispatchRewriter(Solver.inferences,Solver.reductions,Solver.SCHEMA);
+			break;
+		case RANDOM:
+			// NOTE: I don't supply a max steps value here because the
+			// default value would be way too small for the simple rewriter.
+			rewriter = new RandomRewriter(Solver.inferences,Solver.reductions,Solver.SCHEMA);
+			break;
+		default:
+			// NOTE: I don't supply a max steps value here because the
+			// default value would be way too small for the simple rewriter.
+			rewriter = new SimpleRewriter(Solver.inferences,Solver.reductions,Solver.SCHEMA);
+		}	
+		rewriter.setMaxTime(timeout);
+		rewriter.setMaxStates(maxStates);
+		return rewriter;
+	}
+	
+	private void logVerified(int number, long[] stats) {
+		builder.logTimedMessage("[" + filename + "] Verified assertion #" + number,
+				stats[0], stats[1]);
+	}
+	
+	/**
+	 * Check a given assertion is valid, throwing an
+	 * <code>AssertionFailure</code> if it is not. If rewriting gives up
+	 * before completing (e.g. because the time limit was reached), then the
+	 * assertion is reported as unknown. This also fails, unless warnings have
+	 * been requested for such assertions (e.g. because whether or not a limit
+	 * is reached can depend upon the machine).
+	 * 
+	 * @param stmt
+	 *            --- assertion to check.
+	 * @param rewriter
+	 *            --- rewriter to use for checking.
+	 * @return the time taken and memory used.
+	 */
+	private long[] checkValid(WycsFile.Assert stmt, Rewriter rewriter) {
 		Runtime runtime = Runtime.getRuntime();
 		long startTime = System.currentTimeMillis();
 		long startMemory = runtime.freeMemory();
@@ -227,17 +470,37 @@ public class VerificationCheck implements Transform<WycsFile> {
 		}
 				
 		rewriter.resetStats();
-		rewriter.apply(automaton);		
+		boolean complete;
+		Automaton normalForm = normalForms.get(automaton);
+		if (normalForm != null) {
+			// This assertion has been checked before.
+			automaton = new Automaton(normalForm);
+			complete = true;
+		} else {
+			Automaton input = new Automaton(automaton);
+			complete = rewriter.apply(automaton);
+			if (complete) {
+				normalForms.put(input, new Automaton(automaton));
+			}
+		}
 
 		if(!automaton.get(automaton.getRoot(0)).equals(Solver.False)) {
 			String msg = stmt.message;
 			msg = msg == null ? "assertion failure" : msg;
-			throw new AssertionFailure(msg,stmt,rewriter,automaton,original);			
+			if(!complete) {
+				msg = msg + " (unknown: verification limit reached)";
+			}
+			if(!complete && warnUnknown) {
+				builder.warning(msg, filename, stmt);
+			} else {
+				throw new AssertionFailure(msg, stmt, rewriter, automaton,
+						original);
+			}
 		}		
 		
 		long endTime = System.currentTimeMillis();
-		builder.logTimedMessage("[" + filename + "] Verified assertion #" + number,
-				endTime - startTime, startMemory - runtime.freeMemory());		
+		return new long[] { endTime - startTime,
+				startMemory - runtime.freeMemory() };
 	}
 	
 	private int translate(Code expr, Automaton automaton, HashMap<String,Integer> environment) {
@@ -459,14 +722,12 @@ public class VerificationCheck implements Transform<WycsFile> {
 	 * @return the index of the new node.
 	 */
 	public static int convert(Automaton automaton, SemanticType type) {		
-		Automaton type_automaton = type.automaton();
 		// The following is important to make sure that the type is in minimised
 		// form before verification begins. This firstly reduces the amount of
 		// work during verification, and also allows the functions in
-		// SolverUtils to work properly.
-		StaticDispatchRewriter rewriter = new StaticDispatchRewriter(
-				Types.inferences, Types.reductions, Types.SCHEMA);
-		rewriter.apply(type_automaton);
+		// SolverUtils to work properly. The normal form is shared with those
+		// computed during type checking, and is only read from here.
+		Automaton type_automaton = type.normalForm();
 		return automaton.addAll(type_automaton.getRoot(0), type_automaton);		
 	}
 	
@@ -399,6 +399,15 @@ public final class Automata {
 	 * </p>
 	 * 
 	 * <p>
+	 * When the search could be expensive (i.e. there are wide
+	 * non-deterministic states), a canonical labelling is computed instead by
+	 * partition refinement (see <code>label()</code>), which runs in polynomial
+	 * time. Whether or not this happens depends only on the shape of the
+	 * automaton, and so isomorphic automata are always canonicalised in the
+	 * same way.
+	 * </p>
+	 * 
+	 * <p>
 	 * <b>NOTE:</b> Generally speaking, you want to run extract, simplify and
 	 * minimise before calling this algorithm. Otherwise, you don't get a true
 	 * canonical form.
@@ -413,20 +422,256 @@ public final class Automata {
 	 */
 	public static void canonicalise(Automaton automaton,
 			Comparator<State> dataComparator) {
-		int size = automaton.size();				
-		ArrayList<Morphism> candidates = new ArrayList<Morphism>();		
-		candidates.add(new Morphism(size));		
-		for(int i=0;i!=size;++i) {
-			extend(i,candidates,automaton,dataComparator);			
-		}		
-		inplaceReorder(automaton,candidates.get(0).n2i);					
+		canonicalise(automaton, dataComparator, SEARCH_LIMIT);
 	}
 
-	/*
+	/**
+	 * Canonicalise an automaton, as above, except that partition refinement is
+	 * used whenever the search could consider more than a given number of
+	 * child orderings. Both produce a canonical form, but partition refinement
+	 * may number states differently from the search. Thus, the two forms of
+	 * an automaton are isomorphic, but not necessarily identical.
+	 * 
+	 * @param automaton
+	 *            --- to be canonicalised
+	 * @param dataComparator
+	 *            --- comparator for supplementary data (see above).
+	 * @param searchLimit
+	 *            --- the largest number of child orderings the search may
+	 *            consider. A limit of zero means partition refinement is
+	 *            always tried first.
+	 */
+	public static void canonicalise(Automaton automaton,
+			Comparator<State> dataComparator, long searchLimit) {
+		int size = automaton.size();
+		int[] n2i = null;
+		if(searchSpace(automaton, searchLimit) > searchLimit) {
+			n2i = label(automaton,dataComparator);
+		}
+		if(n2i == null) {
+			ArrayList<Morphism> candidates = new ArrayList<Morphism>();		
+			candidates.add(new Morphism(size));		
+			for(int i=0;i!=size;++i) {
+				extend(i,candidates,automaton,dataComparator);			
+			}
+			n2i = candidates.get(0).n2i;
+		}
+		inplaceReorder(automaton,n2i);					
+	}
+
+	/**
+	 * The largest number of child orderings which the back-tracking search
+	 * used by <code>canonicalise()</code> is permitted to consider.
+	 */
+	private static final int SEARCH_LIMIT = 5040; // 7!
+	
+	/**
+	 * Determine (an upper bound on) the number of child orderings which the
+	 * back-tracking search may consider. This is the product of the number of
+	 * permutations of each non-deterministic state's children.
+	 * 
+	 * @param automaton
+	 *            --- automaton to be canonicalised.
+	 * @param limit
+	 *            --- the limit on the number of orderings.
+	 * @return --- the number of orderings, or some number above
+	 *         <code>limit</code> if that is exceeded.
+	 */
+	private static long searchSpace(Automaton automaton, long limit) {
+		long count = 1;
+		for(State s : automaton.states) {
+			if(!s.deterministic) {
+				for(int i=2;i<=s.children.length;++i) {
+					count = count * i;
+					if(count > limit) {
+						return count;
+					}
+				}
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * <p>
+	 * Compute a canonical labelling of an automaton by partition refinement.
+	 * Initially, states are coloured according to their kind, determinism,
+	 * number of children and supplementary data. Then, states are repeatedly
+	 * recoloured according to their colour and the colours of their children
+	 * (in order for deterministic states, and sorted for non-deterministic
+	 * states), until no colour class is split. Colours are always numbered in
+	 * sorted order of the information they are computed from, and so they do
+	 * not depend on the original numbering of states.
+	 * </p>
+	 * 
+	 * <p>
+	 * When every state ends up with a distinct colour, the states are
+	 * numbered in breadth-first order from the root, visiting the children of
+	 * non-deterministic states in order of colour. For a minimised automaton,
+	 * this is normally the case, since states with the same final colour are
+	 * equivalent. Otherwise, no labelling is returned and the caller falls
+	 * back to the search.
+	 * </p>
+	 * 
+	 * <p>
+	 * This takes <code>O(n^2 log n)</code> time at worst, where
+	 * <code>n</code> is the size of the automaton.
+	 * </p>
+	 * 
+	 * @param automaton
+	 *            --- to be labelled.
+	 * @param dataComparator
+	 *            --- comparator for supplementary data.
+	 * @return --- the new index of each state, or <code>null</code> if the
+	 *         states could not all be distinguished.
+	 */
+	private static int[] label(Automaton automaton,
+			final Comparator<State> dataComparator) {
+		final State[] states = automaton.states;
+		final int size = states.length;
+		Integer[] order = new Integer[size];
+		for(int i=0;i!=size;++i) {
+			order[i] = i;
+		}
+		
+		// First, colour states by their contents.
+		Comparator<Integer> contents = new Comparator<Integer>() {
+			public int compare(Integer i1, Integer i2) {
+				return compareContents(states[i1], states[i2], dataComparator);
+			}
+		};
+		Arrays.sort(order,contents);
+		int[] colours = new int[size];
+		int ncolours = recolour(order,contents,colours);
+		
+		// Second, refine colours until they are stable.
+		int[][] signatures = new int[size][];
+		Comparator<Integer> signature = new SignatureComparator(signatures);
+		while(ncolours != size) {
+			for(int i=0;i!=size;++i) {
+				State s = states[i];
+				int[] children = s.children;
+				int[] sig = new int[children.length + 1];
+				sig[0] = colours[i];
+				for(int j=0;j!=children.length;++j) {
+					sig[j+1] = colours[children[j]];
+				}
+				if(!s.deterministic) {
+					Arrays.sort(sig, 1, sig.length);
+				}
+				signatures[i] = sig;
+			}
+			Arrays.sort(order,signature);
+			int count = recolour(order,signature,colours);
+			if(count == ncolours) {
+				// no colour class was split
+				return null;
+			}
+			ncolours = count;
+		}
+		
+		// Third, number the states in breadth-first order.
+		int[] n2i = new int[size];
+		int[] i2n = new int[size];
+		Arrays.fill(n2i, Integer.MAX_VALUE);
+		n2i[0] = 0;
+		int free = 1;
+		for(int index=0;index!=free;++index) {
+			State s = states[i2n[index]];
+			int[] children = s.children;
+			if(!s.deterministic) {
+				children = sortByColour(children,colours);
+			}
+			for(int child : children) {
+				if(n2i[child] == Integer.MAX_VALUE) {
+					n2i[child] = free;
+					i2n[free++] = child;
+				}
+			}
+		}
+		return free == size ? n2i : null;
+	}
+	
+	/**
+	 * Assign colours to states which have been sorted by a given comparator,
+	 * such that states which are equal under the comparator get the same
+	 * colour.
+	 * 
+	 * @return --- the number of colours used.
+	 */
+	private static int recolour(Integer[] order, Comparator<Integer> comparator,
+			int[] colours) {
+		int colour = 0;
+		for(int i=0;i!=order.length;++i) {
+			if(i > 0 && comparator.compare(order[i-1],order[i]) != 0) {
+				colour = colour + 1;
+			}
+			colours[order[i]] = colour;
+		}
+		return order.length == 0 ? 0 : colour + 1;
+	}
+	
+	private static int[] sortByColour(int[] children, int[] colours) {
+		long[] keys = new long[children.length];
+		for(int i=0;i!=children.length;++i) {
+			keys[i] = ((long) colours[children[i]] << 32) | children[i];
+		}
+		Arrays.sort(keys);
+		int[] sorted = new int[children.length];
+		for(int i=0;i!=children.length;++i) {
+			sorted[i] = (int) keys[i];
+		}
+		return sorted;
+	}
+	
+	/**
+	 * Compare two states by their contents, ignoring the identity of their
+	 * children. This uses the same ordering as <code>lessThan()</code>.
+	 */
+	private static int compareContents(State s1, State s2,
+			Comparator<State> dataComparator) {
+		if(s1.kind != s2.kind) {
+			return s1.kind < s2.kind ? -1 : 1;
+		} else if(s1.deterministic != s2.deterministic) {
+			return s1.deterministic ? -1 : 1;
+		} else if(s1.children.length != s2.children.length) {
+			return s1.children.length < s2.children.length ? -1 : 1;
+		} else if(s1.data == null) {
+			return s2.data == null ? 0 : -1;
+		} else if(s2.data == null) {
+			return 1;
+		} else {
+			return dataComparator.compare(s1,s2);
+		}
+	}
+	
+	private static final class SignatureComparator implements Comparator<Integer> {
+		private final int[][] signatures;
+		
+		public SignatureComparator(int[][] signatures) {
+			this.signatures = signatures;
+		}
+		
+		public int compare(Integer i1, Integer i2) {
+			int[] sig1 = signatures[i1];
+			int[] sig2 = signatures[i2];
+			if(sig1.length != sig2.length) {
+				return sig1.length < sig2.length ? -1 : 1;
+			}
+			for(int i=0;i!=sig1.length;++i) {
+				if(sig1[i] != sig2[i]) {
+					return sig1[i] < sig2[i] ? -1 : 1;
+				}
+			}
+			return 0;
+		}
+	}
+	
+	/**
 	 * The following provides a brute-force way of determining the canonical
 	 * form. It's really really slow, but useful for testing.	
 	 */
-	private static Automaton bruteForce(Automaton automaton, Comparator dataComparator) {
+	public static Automaton bruteForce(Automaton automaton, Comparator dataComparator) {
 		int[] init = new int[automaton.size()-1];
 		for(int i=0;i<init.length;++i) {
 			init[i] = i+1;
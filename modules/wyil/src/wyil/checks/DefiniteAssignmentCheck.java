@@ -28,10 +28,8 @@ package wyil.checks;
 import java.util.*;
 
 import wybs.lang.Builder;
-import wybs.lang.Path;
+import wybs.lang.SyntaxError;
 import wybs.lang.Transform;
-import wybs.util.Pair;
-import wyil.util.*;
 import wyil.util.dfa.*;
 import wyil.lang.*;
 import static wybs.lang.SyntaxError.*;
@@ -55,145 +53,111 @@ import static wyil.util.ErrorMessages.*;
  * In the above example, variable z is used in the return statement before it
  * has been defined any value. This is considered a syntax error in whiley.
  * </p>
+ * <p>
+ * The set of definitely assigned registers is computed as a forward
+ * "must" analysis over the control-flow graph of each method case, and each
+ * bytecode is then checked against the set holding immediately before it.
+ * </p>
  * @author David J. Pearce
  * 
  */
-public class DefiniteAssignmentCheck extends
-		ForwardFlowAnalysis<HashSet<Integer>> implements Transform<WyilFile> {
+public class DefiniteAssignmentCheck extends BitSetFlowAnalysis implements
+		Transform<WyilFile> {
+	private String filename;
 	
 	public DefiniteAssignmentCheck(Builder builder) {
-		
+		super(true, false);
 	}
 	
-	public HashSet<Integer> initialStore() {
-		HashSet<Integer> defined = new HashSet<Integer>();
+	public void apply(WyilFile module) {
+		filename = module.filename();
 		
-		int diff = 0;
-										
-		for(int i=0;i!=method.type().params().size();++i) {
-			defined.add(i+diff);
-		}								
-		
-		return defined;
+		for(WyilFile.MethodDeclaration method : module.methods()) {
+			if(!method.isNative()) {
+				// native functions/methods don't have bodies
+				for(WyilFile.Case c : method.cases()) {
+					check(c.body(), method);
+				}
+			}
+		}
 	}
 	
-	public HashSet<Integer> propagate(int idx, Entry entry, HashSet<Integer> in) {						
-		Code code = entry.code;			
-		
-		checkUses(code,entry,in);
-		
-		int def = defs(code,entry);
-		if(def >= 0) {			
-			in = new HashSet<Integer>(in);			
-			in.add(def); 
-		} 	
-		
-		return in;
-	}
+	public void check(Block block, WyilFile.MethodDeclaration method) {
+		BitSet defined = new BitSet();
+		defined.set(0, method.type().params().size());
+		boolean hasReturnValue = !(method.type().ret() instanceof Type.Void);
 		
-	@Override
-	public Pair<HashSet<Integer>, HashSet<Integer>> propagate(int index,
-			Code.If igoto, Entry entry, HashSet<Integer> in) {
-
-		if (!in.contains(igoto.leftOperand) || !in.contains(igoto.rightOperand)) {
-			syntaxError(errorMessage(VARIABLE_POSSIBLY_UNITIALISED), filename,
-					entry);
-		}
-
-		return new Pair(in, in);
-	}
-
-	@Override
-	public Pair<HashSet<Integer>, HashSet<Integer>> propagate(int index,
-			Code.IfIs iftype, Entry entry, HashSet<Integer> in) {
+		solve(new ControlFlowGraph(block), defined);
 		
-		if (!in.contains(iftype.operand)) {
-			syntaxError(errorMessage(VARIABLE_POSSIBLY_UNITIALISED), filename,
-					entry);
+		for (int i = 0; i != block.size(); ++i) {
+			Entry entry = block.get(i);
+			BitSet in = before(i);
+			if (in == null) {
+				// this indicates dead-code has been reached.
+				continue;
+			}
+			try {
+				checkUses(entry.code, entry, in);
+				if (hasReturnValue) {
+					checkReturn(entry.code, entry);
+				}
+			} catch (SyntaxError se) {
+				throw se;
+			} catch (Throwable ex) {
+				internalFailure("internal failure", filename, entry, ex);
+			}
 		}
-		
-		return new Pair(in,in);
 	}
 	
 	@Override
-	public List<HashSet<Integer>> propagate(int index, Code.Switch sw,
-			Entry entry, HashSet<Integer> in) {
-
-		if (!in.contains(sw.operand)) {
-			syntaxError(errorMessage(VARIABLE_POSSIBLY_UNITIALISED), filename,
-					entry);
-		}
-
-		ArrayList<HashSet<Integer>> stores = new ArrayList();
-		for (int i = 0; i != sw.branches.size(); ++i) {
-			stores.add(in);
+	protected void propagate(int idx, Entry entry, BitSet in) {						
+		Code code = entry.code;			
+		
+		if (code instanceof Code.ForAll) {
+			in.set(((Code.ForAll) code).indexOperand);
+		} else {
+			int def = defs(code,entry);
+			if(def >= 0) {			
+				in.set(def); 
+			} 	
 		}
-		return stores;
-	}
-
-	@Override
-	public HashSet<Integer> propagate(Type handler, Code.TryCatch tc, HashSet<Integer> in) {
-		in = new HashSet<Integer>(in);
-		in.add(tc.operand);
-		return in;
 	}
 	
 	@Override
-	public HashSet<Integer> propagate(int start, int end, Code.Loop loop,
-			Entry entry, HashSet<Integer> in, List<Code.TryCatch> handlers) {
-
-		if (loop instanceof Code.ForAll) {						
-			Code.ForAll fall = (Code.ForAll) loop;
-			
-			if (!in.contains(fall.sourceOperand)) {
-				syntaxError(errorMessage(VARIABLE_POSSIBLY_UNITIALISED),
-						filename, entry);
-			}
-			
-			in = new HashSet<Integer>(in);
-			in.add(fall.indexOperand);
-		}
-
-		HashSet<Integer> r = propagate(start + 1, end, in, handlers);
-		return join(in, r);
-	}
-	
-	protected HashSet<Integer> join(HashSet<Integer> s1, HashSet<Integer> s2) {		
-		HashSet<Integer> r = new HashSet<Integer>();
-		// set intersection
-		for (Integer s : s1) {
-			if (s2.contains(s)) {
-				r.add(s);
-			}
-		}
-		return r;
+	protected void propagate(Type handler, Code.TryCatch tc, BitSet in) {
+		in.set(tc.operand);
 	}
 		
-	public void checkUses(Code code, Entry entry, HashSet<Integer> in) {
-		if(code instanceof Code.AbstractUnaryOp) {
+	public void checkUses(Code code, Entry entry, BitSet in) {
+		if(code instanceof Code.ForAll) {
+			Code.ForAll fall = (Code.ForAll) code;
+			if(in.get(fall.sourceOperand)) {
+				return;
+			}
+		} else if(code instanceof Code.AbstractUnaryOp) {
 			Code.AbstractUnaryOp a = (Code.AbstractUnaryOp) code;
-			if(a.operand == Code.NULL_REG || in.contains(a.operand)) {
+			if(a.operand == Code.NULL_REG || in.get(a.operand)) {
 				return;
 			}
 		} else if(code instanceof Code.AbstractUnaryAssignable) {
 			Code.AbstractUnaryAssignable a = (Code.AbstractUnaryAssignable) code;
-			if(in.contains(a.operand)) {
+			if(in.get(a.operand)) {
 				return;
 			}
 		} else if(code instanceof Code.AbstractBinaryAssignable) {
 			Code.AbstractBinaryAssignable a = (Code.AbstractBinaryAssignable) code;
-			if (in.contains(a.leftOperand) && in.contains(a.rightOperand)) {
+			if (in.get(a.leftOperand) && in.get(a.rightOperand)) {
 				return;
 			}
 		} else if(code instanceof Code.AbstractBinaryOp) {
 			Code.AbstractBinaryOp a = (Code.AbstractBinaryOp) code;			
-			if (in.contains(a.leftOperand) && in.contains(a.rightOperand)) {
+			if (in.get(a.leftOperand) && in.get(a.rightOperand)) {
 				return;
 			}
 		} else if(code instanceof Code.AbstractNaryAssignable) {
 			Code.AbstractNaryAssignable a = (Code.AbstractNaryAssignable) code;
 			for(int operand : a.operands) {
-				if(operand != Code.NULL_REG && !in.contains(operand)) {
+				if(operand != Code.NULL_REG && !in.get(operand)) {
 					syntaxError(errorMessage(VARIABLE_POSSIBLY_UNITIALISED),
 	                        filename, entry);
 				}				
@@ -201,12 +165,12 @@ public class DefiniteAssignmentCheck extends
 			return;
 		} else if(code instanceof Code.AbstractSplitNaryAssignable) {
 			Code.AbstractSplitNaryAssignable a = (Code.AbstractSplitNaryAssignable) code;
-			if(!in.contains(a.operand)) {
+			if(!in.get(a.operand)) {
 				syntaxError(errorMessage(VARIABLE_POSSIBLY_UNITIALISED),
                         filename, entry);
 			}				
 			for(int operand : a.operands) {
-				if(!in.contains(operand)) {
+				if(!in.get(operand)) {
 					syntaxError(errorMessage(VARIABLE_POSSIBLY_UNITIALISED),
 	                        filename, entry);
 				}				
@@ -221,6 +185,22 @@ public class DefiniteAssignmentCheck extends
                 filename, entry);
 	}
 	
+	/**
+	 * Check that a reachable return bytecode in a function or method which
+	 * returns a value does actually return one. The code generator always
+	 * appends a return without a value to the end of a body and, hence, this
+	 * identifies those bodies where control can reach the end.
+	 * 
+	 * @param code
+	 * @param entry
+	 */
+	public void checkReturn(Code code, Entry entry) {
+		if (code instanceof Code.Return
+				&& ((Code.Return) code).operand == Code.NULL_REG) {
+			syntaxError(errorMessage(MISSING_RETURN_VALUE), filename, entry);
+		}
+	}
+	
 	public int defs(Code code, Entry entry) {
 		if (code instanceof Code.AbstractAssignable) {
 			Code.AbstractAssignable aa = (Code.AbstractAssignable) code;
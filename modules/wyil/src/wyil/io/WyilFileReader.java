@@ -27,7 +27,9 @@ package wyil.io;
 
 import java.io.*;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import wybs.io.BinaryInputStream;
 import wybs.lang.NameID;
@@ -47,7 +49,8 @@ import wyautl.util.BigRational;
 public final class WyilFileReader {
 	private static final char[] magic = {'W','Y','I','L','F','I','L','E'};
 	
-	private final BinaryInputStream input;
+	private BinaryInputStream input;
+	private boolean lazy;
 	private String[] stringPool;
 	private Path.ID[] pathPool;
 	private NameID[] namePool;
@@ -62,12 +65,35 @@ public final class WyilFileReader {
 		this.input = new BinaryInputStream(input);
 	}
 	
+	public WyilFileReader(BinaryInputStream input) throws IOException {
+		this.input = input;
+	}
+	
+	/**
+	 * Determine whether or not code blocks are decoded lazily. In lazy mode,
+	 * the remainder of the stream is loaded in one go, and the size recorded
+	 * in each block header is used to step over every precondition,
+	 * postcondition and body. These are retained as views onto the loaded
+	 * bytes (i.e. without copying) and only decoded when that block is first
+	 * accessed. Since the constant and type pools are decoded eagerly
+	 * regardless, this is safe to do even after the underlying stream has
+	 * been closed.
+	 * 
+	 * @param flag
+	 */
+	public void setLazy(boolean flag) {
+		this.lazy = flag;
+	}
+	
 	public void close() throws IOException {
 		input.close();
 	}
 	
 	public WyilFile read() throws IOException {
-				
+		if(lazy) {
+			input.load();
+		}
+		
 		for(int i=0;i!=8;++i) {
 			char c = (char) input.read_u8();
 			if(magic[i] != c) {
@@ -452,6 +478,9 @@ public final class WyilFileReader {
 	}
 	
 	private WyilFile.Case readFunctionOrMethodCase(Type.FunctionOrMethod type) throws IOException {
+		if(lazy) {
+			return readLazyFunctionOrMethodCase(type);
+		}
 		Block precondition = null;
 		Block postcondition = null;
 		Block body = null;		
@@ -483,6 +512,87 @@ public final class WyilFileReader {
 		return new WyilFile.Case(body, precondition, postcondition, Collections.EMPTY_LIST);
 	}
 	
+	private WyilFile.Case readLazyFunctionOrMethodCase(
+			Type.FunctionOrMethod type) throws IOException {
+		LazyCodeBlock precondition = null;
+		LazyCodeBlock postcondition = null;
+		LazyCodeBlock body = null;
+		int numInputs = type.params().size();
+		int nBlocks = input.read_uv();
+		
+		input.pad_u8();
+		
+		for (int i = 0; i != nBlocks; ++i) {			
+			int kind = input.read_uv(); 
+			int size = input.read_uv();
+			input.pad_u8();
+			
+			ByteBuffer bytes = input.slice(size);
+			
+			switch (kind) {
+			case WyilFileWriter.BLOCK_Precondition:
+				precondition = new LazyCodeBlock(numInputs, bytes);
+				break;
+			case WyilFileWriter.BLOCK_Postcondition:
+				postcondition = new LazyCodeBlock(numInputs + 1, bytes);
+				break;
+			case WyilFileWriter.BLOCK_Body:
+				body = new LazyCodeBlock(numInputs, bytes);
+				break;
+			default:
+				throw new RuntimeException("Unknown case block encountered");
+			}
+		}
+
+		return new WyilFile.Case(body, precondition, postcondition, Collections.EMPTY_LIST);
+	}
+	
+	/**
+	 * Decode a code block from the given bytes, using the pools previously
+	 * read from this file. This is synchronized since lazy blocks from the
+	 * same file may be materialised by different threads at the same time.
+	 * 
+	 * @param numInputs
+	 * @param bytes
+	 * @return
+	 * @throws IOException
+	 */
+	private synchronized Block readCodeBlock(int numInputs, ByteBuffer bytes)
+			throws IOException {
+		BinaryInputStream old = input;
+		try {
+			input = new BinaryInputStream(bytes);
+			return readCodeBlock(numInputs);
+		} finally {
+			input = old;
+		}
+	}
+	
+	/**
+	 * A code block whose bytes have been sliced from the file, but which has
+	 * not yet been decoded.
+	 * 
+	 * @author David J. Pearce
+	 * 
+	 */
+	private final class LazyCodeBlock implements WyilFile.LazyBlock {
+		private final int numInputs;
+		private final ByteBuffer bytes;
+
+		public LazyCodeBlock(int numInputs, ByteBuffer bytes) {
+			this.numInputs = numInputs;
+			this.bytes = bytes;
+		}
+
+		public Block get() {
+			try {
+				return readCodeBlock(numInputs, bytes);
+			} catch (IOException e) {
+				throw new RuntimeException(e.getMessage(), e);
+			}
+		}
+	}
+	
 	private Block readCodeBlock(int numInputs) throws IOException {
 		Block block = new Block(numInputs);
 		int nCodes = input.read_uv();
@@ -1024,13 +1134,13 @@ public final class WyilFileReader {
 		}
 	}
 	
-	private static int labelCount = 0;
+	private static final AtomicInteger labelCount = new AtomicInteger();
 
 	private static Code.Label findLabel(int target,
 			HashMap<Integer, Code.Label> labels) {
 		Code.Label label = labels.get(target);
 		if (label == null) {
-			label = Code.Label("label" + labelCount++);
+			label = Code.Label("label" + labelCount.getAndIncrement());
 			labels.put(target, label);
 		}
 		return label;
@@ -1040,7 +1150,7 @@ public final class WyilFileReader {
 			HashMap<Integer, Code.Label> labels) {
 		Code.Label label = labels.get(target);
 		if (label == null) {
-			Code.LoopEnd end = Code.LoopEnd("label" + labelCount++);
+			Code.LoopEnd end = Code.LoopEnd("label" + labelCount.getAndIncrement());
 			labels.put(target, end);
 			return end;
 		} else {
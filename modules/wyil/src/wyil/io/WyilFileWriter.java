@@ -163,8 +163,7 @@ public final class WyilFileWriter {
 	 */
 	private byte[] generateHeaderBlock(WyilFile module)
 			throws IOException {
-		ByteArrayOutputStream bytes = new ByteArrayOutputStream();		
-		BinaryOutputStream output = new BinaryOutputStream(bytes);
+		BinaryOutputStream output = new BinaryOutputStream();
 		
 		// second, write the file version number		
 		output.write_uv(MAJOR_VERSION); 
@@ -188,7 +187,7 @@ public final class WyilFileWriter {
 		
 		output.close();
 		
-		return bytes.toByteArray();
+		return output.toByteArray();
 	}
 	
 	/**
@@ -345,8 +344,7 @@ public final class WyilFileWriter {
 	}
 	
 	private byte[] generateModuleBlock(WyilFile module) throws IOException {
-		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-		BinaryOutputStream output = new BinaryOutputStream(bytes);
+		BinaryOutputStream output = new BinaryOutputStream();
 		
 		output.write_uv(pathCache.get(module.id())); // FIXME: BROKEN!
 		output.write_uv(MODIFIER_Public); // for now
@@ -358,7 +356,7 @@ public final class WyilFileWriter {
 
         output.close();
 
-		return bytes.toByteArray();
+		return output.toByteArray();
 	}
 	
 	private void writeModuleBlock(WyilFile.Declaration d,
@@ -378,8 +376,7 @@ public final class WyilFileWriter {
 	}
 		
 	private byte[] generateConstantBlock(WyilFile.ConstantDeclaration cd) throws IOException {
-		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-		BinaryOutputStream output = new BinaryOutputStream(bytes);
+		BinaryOutputStream output = new BinaryOutputStream();
 					
 		output.write_uv(stringCache.get(cd.name()));
 		output.write_uv(generateModifiers(cd.modifiers()));
@@ -388,12 +385,11 @@ public final class WyilFileWriter {
 		// TODO: write annotations
 		
 		output.close();
-		return bytes.toByteArray();
+		return output.toByteArray();
 	}
 	
 	private byte[] generateTypeBlock(WyilFile.TypeDeclaration td) throws IOException {
-		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-		BinaryOutputStream output = new BinaryOutputStream(bytes);
+		BinaryOutputStream output = new BinaryOutputStream();
 				
 		output.write_uv(stringCache.get(td.name()));
 		output.write_uv(generateModifiers(td.modifiers()));
@@ -406,12 +402,11 @@ public final class WyilFileWriter {
 		}
 
 		output.close();
-		return bytes.toByteArray();
+		return output.toByteArray();
 	}
 
 	private byte[] generateMethodBlock(WyilFile.MethodDeclaration md) throws IOException {		
-		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-		BinaryOutputStream output = new BinaryOutputStream(bytes);
+		BinaryOutputStream output = new BinaryOutputStream();
 		
 		output.write_uv(stringCache.get(md.name()));
 		output.write_uv(generateModifiers(md.modifiers()));
@@ -424,12 +419,11 @@ public final class WyilFileWriter {
 		
 		// TODO: write annotations
 		output.close();
-		return bytes.toByteArray();
+		return output.toByteArray();
 	}
 	
 	private byte[] generateMethodCaseBlock(WyilFile.Case c) throws IOException {
-		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-		BinaryOutputStream output = new BinaryOutputStream(bytes);
+		BinaryOutputStream output = new BinaryOutputStream();
 		
 		int n = 0;
 		n += c.precondition() != null ? 1 : 0;
@@ -448,12 +442,11 @@ public final class WyilFileWriter {
 		// TODO: write annotations
 		
 		output.close();
-		return bytes.toByteArray();
+		return output.toByteArray();
 	}
 	
 	private byte[] generateCodeBlock(Block block) throws IOException {		
-		ByteArrayOutputStream bytes = new ByteArrayOutputStream();		
-		BinaryOutputStream output = new BinaryOutputStream(bytes);
+		BinaryOutputStream output = new BinaryOutputStream();
 				
 		HashMap<String,Integer> labels = new HashMap<String,Integer>();
 		
@@ -481,7 +474,7 @@ public final class WyilFileWriter {
 		}
 		
 		output.close();
-		return bytes.toByteArray();
+		return output.toByteArray();
 	}
 	
 	private void writeCode(Code code, int offset,
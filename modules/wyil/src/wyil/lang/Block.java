@@ -26,6 +26,7 @@
 package wyil.lang;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import wybs.lang.Attribute;
 import wybs.lang.SyntacticElement;
@@ -439,9 +440,9 @@ public final class Block implements Iterable<Block.Entry> {
 		return r + "]";
 	}
 
-	private static int _idx=0;
+	private static final AtomicInteger _idx = new AtomicInteger();
 	public static String freshLabel() {
-		return "blklab" + _idx++;
+		return "blklab" + _idx.getAndIncrement();
 	}
 
 	/**
@@ -4394,7 +4394,7 @@ public abstract class Code {
 	private static final ArrayList<Code> values = new ArrayList<Code>();
 	private static final HashMap<Code, Integer> cache = new HashMap<Code, Integer>();
 
-	private static <T extends Code> T get(T type) {
+	private static synchronized <T extends Code> T get(T type) {
 		Integer idx = cache.get(type);
 		if (idx != null) {
 			return (T) values.get(idx);
@@ -830,7 +830,7 @@ public abstract class Constant implements Comparable<Constant> {
 	private static final ArrayList<Constant> values = new ArrayList<Constant>();
 	private static final HashMap<Constant,java.lang.Integer> cache = new HashMap<Constant,java.lang.Integer>();
 	
-	private static <T extends Constant> T get(T type) {
+	private static synchronized <T extends Constant> T get(T type) {
 		java.lang.Integer idx = cache.get(type);
 		if(idx != null) {
 			return (T) values.get(idx);
@@ -72,6 +72,14 @@ public abstract class Type {
 	// Type Constructors
 	// =============================================================
 
+	/**
+	 * The canonical instance of every type constructed (other than the
+	 * primitive types, which are already unique). This allows types to be
+	 * compared by reference. Note, this must be initialised before the type
+	 * constants below.
+	 */
+	private static final TypeInterner interned = new TypeInterner();
+	
 	public static final Any T_ANY = new Any();
 	public static final Void T_VOID = new Void();
 	public static final Null T_NULL = new Null();	
@@ -151,7 +159,13 @@ public abstract class Type {
 			throw new IllegalArgumentException(
 					"nominal name cannot be null");
 		}
-		return new Nominal(name);
+		Automaton automaton = new Automaton(new State(K_NOMINAL, name, true,
+				Automaton.NOCHILDREN));
+		Type type = interned.get(automaton);
+		if (type == null) {
+			type = interned.intern(automaton, new Nominal(name));
+		}
+		return (Nominal) type;
 	}
 	
 	/**
@@ -527,6 +541,44 @@ public abstract class Type {
 	// Type operations
 	// =============================================================
 
+	/**
+	 * The maximum number of results held by each of the operation caches.
+	 */
+	private static final int CACHE_LIMIT = 100000;
+	
+	private static final TypeCache<Boolean> subtypeCache = new TypeCache<Boolean>(
+			"subtype", CACHE_LIMIT);
+	private static final TypeCache<Boolean> implicitCoercionCache = new TypeCache<Boolean>(
+			"implicit coercion", CACHE_LIMIT);
+	private static final TypeCache<Boolean> explicitCoercionCache = new TypeCache<Boolean>(
+			"explicit coercion", CACHE_LIMIT);
+	private static final TypeCache<Type> intersectionCache = new TypeCache<Type>(
+			"intersection", CACHE_LIMIT);
+	
+	/**
+	 * Return the table of canonical types, so its statistics can be reported.
+	 * 
+	 * @return
+	 */
+	public static TypeInterner interned() {
+		return interned;
+	}
+	
+	/**
+	 * Return the caches used to memoise the results of the type operations
+	 * (e.g. <code>isSubtype()</code>), so their statistics can be reported.
+	 * 
+	 * @return
+	 */
+	public static java.util.List<TypeCache<?>> caches() {
+		ArrayList<TypeCache<?>> caches = new ArrayList<TypeCache<?>>();
+		caches.add(subtypeCache);
+		caches.add(implicitCoercionCache);
+		caches.add(explicitCoercionCache);
+		caches.add(intersectionCache);
+		return caches;
+	}
+
 	/**
 	 * Determine whether type <code>t2</code> is an <i>implicit coercive
 	 * subtype</i> of type <code>t1</code> (written t1 :> t2). In other words,
@@ -534,10 +586,15 @@ public abstract class Type {
 	 * <code>t2</code> is a subset of that described by <code>t1</code>.
 	 */
 	public static boolean isImplicitCoerciveSubtype(Type t1, Type t2) {				
-		Automaton a1 = destruct(t1);
-		Automaton a2 = destruct(t2);
-		ImplicitCoercionOperator relation = new ImplicitCoercionOperator(a1,a2);				
-		return relation.isSubtype(0, 0); 
+		Boolean result = implicitCoercionCache.get(t1, t2);
+		if(result == null) {
+			Automaton a1 = destruct(t1);
+			Automaton a2 = destruct(t2);
+			ImplicitCoercionOperator relation = new ImplicitCoercionOperator(a1,a2);
+			result = relation.isSubtype(0, 0);
+			implicitCoercionCache.put(t1, t2, result);
+		}
+		return result; 
 	}
 
 	/**
@@ -545,10 +602,15 @@ public abstract class Type {
 	 * subtype</i> of type <code>t1</code>.  
 	 */
 	public static boolean isExplicitCoerciveSubtype(Type t1, Type t2) {				
-		Automaton a1 = destruct(t1);
-		Automaton a2 = destruct(t2);
-		ExplicitCoercionOperator relation = new ExplicitCoercionOperator(a1,a2);				
-		return relation.isSubtype(0, 0); 
+		Boolean result = explicitCoercionCache.get(t1, t2);
+		if(result == null) {
+			Automaton a1 = destruct(t1);
+			Automaton a2 = destruct(t2);
+			ExplicitCoercionOperator relation = new ExplicitCoercionOperator(a1,a2);
+			result = relation.isSubtype(0, 0);
+			explicitCoercionCache.put(t1, t2, result);
+		}
+		return result; 
 	}
 	
 	/**
@@ -558,10 +620,15 @@ public abstract class Type {
 	 * that described by <code>t1</code>.
 	 */
 	public static boolean isSubtype(Type t1, Type t2) {		
-		Automaton a1 = destruct(t1);
-		Automaton a2 = destruct(t2);
-		SubtypeOperator relation = new SubtypeOperator(a1,a2);		
-		return relation.isSubtype(0, 0);		
+		Boolean result = subtypeCache.get(t1, t2);
+		if(result == null) {
+			Automaton a1 = destruct(t1);
+			Automaton a2 = destruct(t2);
+			SubtypeOperator relation = new SubtypeOperator(a1,a2);
+			result = relation.isSubtype(0, 0);
+			subtypeCache.put(t1, t2, result);
+		}
+		return result;		
 	}
 	
 	/**
@@ -600,7 +667,12 @@ public abstract class Type {
 	 * @return
 	 */
 	public static Type intersect(Type t1, Type t2) {
-		return TypeAlgorithms.intersect(t1,t2);
+		Type result = intersectionCache.get(t1, t2);
+		if(result == null) {
+			result = TypeAlgorithms.intersect(t1,t2);
+			intersectionCache.put(t1, t2, result);
+		}
+		return result;
 	}
 		
 	public static Reference effectiveReference(Type t) {
@@ -879,11 +951,8 @@ public abstract class Type {
 			nid = name;
 		}
 		public boolean equals(Object o) {
-			if(o instanceof Nominal) {
-				Nominal e = (Nominal) o;
-				return nid.equals(e.nid);
-			}
-			return false;
+			// nominal types are interned
+			return o == this;
 		}
 		public NameID name() {
 			return nid;
@@ -909,21 +978,27 @@ public abstract class Type {
 	public static class Compound extends Type {
 		//protected Automaton automaton;
 		public Automaton automaton;
+		private final int hashCode;
 		
 		public Compound(Automaton automaton) {
 			this.automaton = automaton;
+			this.hashCode = automaton.hashCode();
 		}
 		
 		public int hashCode() {
-			return automaton.hashCode();
+			return hashCode;
 		}
 		
 		public boolean equals(Object o) {
-			if (o instanceof Compound) {
+			if (o == this) {
+				return true;
+			} else if (o instanceof Compound) {
 				Compound c = (Compound) o;
 				//equalsCount++;
 				if(canonicalisation) {
-					return automaton.equals(c.automaton);
+					// compound types are interned, and so distinct instances
+					// are distinct types.
+					return false;
 				} else {
 					return isSubtype(this, c) && isSubtype(c, this);
 				}				
@@ -2077,9 +2152,13 @@ public abstract class Type {
 	 */
 	public final static Type construct(Automaton automaton) {
 		automaton = normalise(automaton);
-		// second, construc the appropriate face
+		// second, check whether this type has already been constructed
+		Type type = interned.get(automaton);
+		if(type != null) {
+			return type;
+		}
+		// third, construct the appropriate face
 		State root = automaton.states[0];
-		Type type;
 		
 		switch(root.kind) {
 		case K_VOID:
@@ -2187,9 +2266,7 @@ public abstract class Type {
 			throw new IllegalArgumentException("invalid node kind: " + root.kind);
 		}
 		
-		//distinctTypes.add(type);
-		
-		return type;
+		return interned.intern(automaton, type);
 	}
 
 	/**
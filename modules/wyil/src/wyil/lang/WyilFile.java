@@ -55,6 +55,7 @@ public final class WyilFile implements CompilationUnit {
 
 		public WyilFile read(Path.Entry<WyilFile> e, InputStream input) throws IOException {			
 			WyilFileReader reader = new WyilFileReader(input);
+			reader.setLazy(true);
 			WyilFile mi = reader.read();
 			return mi;				
 		}
@@ -77,6 +78,14 @@ public final class WyilFile implements CompilationUnit {
 	private final String filename;
 	private final ArrayList<Declaration> declarations;
 	
+	/**
+	 * Maps each name to the declarations of that name, in the order they
+	 * appear in the file. This allows a declaration to be found without
+	 * scanning every declaration in the file, which matters for large modules
+	 * which are frequently consulted during name resolution.
+	 */
+	private final HashMap<String,ArrayList<NamedDeclaration>> index;
+	
 	// =========================================================================
 	// Constructors
 	// =========================================================================
@@ -87,6 +96,7 @@ public final class WyilFile implements CompilationUnit {
 		this.mid = mid;
 		this.filename = filename;		
 		this.declarations = new ArrayList<Declaration>(declarations);
+		this.index = new HashMap<String,ArrayList<NamedDeclaration>>();
 		
 		// second, validate methods and/or functions
 		HashSet<Pair<String,Type.FunctionOrMethod>> methods = new HashSet();
@@ -117,6 +127,9 @@ public final class WyilFile implements CompilationUnit {
 				}
 				constants.add(c.name());
 			}
+			if(d instanceof NamedDeclaration) {
+				index((NamedDeclaration) d);
+			}
 		}
 	}
 	
@@ -133,7 +146,7 @@ public final class WyilFile implements CompilationUnit {
 	}
 	
 	public TypeDeclaration type(String name) {
-		for (Declaration d : declarations) {
+		for (Declaration d : lookup(name)) {
 			if(d instanceof TypeDeclaration) {
 				TypeDeclaration td = (TypeDeclaration) d;
 				if(td.name().equals(name)) {
@@ -155,7 +168,7 @@ public final class WyilFile implements CompilationUnit {
 	}
 	
 	public ConstantDeclaration constant(String name) {
-		for (Declaration d : declarations) {
+		for (Declaration d : lookup(name)) {
 			if(d instanceof ConstantDeclaration) {
 				ConstantDeclaration cd = (ConstantDeclaration) d;
 				if(cd.name().equals(name)) {
@@ -178,7 +191,7 @@ public final class WyilFile implements CompilationUnit {
 	
 	public List<MethodDeclaration> method(String name) {
 		ArrayList<MethodDeclaration> r = new ArrayList<MethodDeclaration>();
-		for (Declaration d : declarations) {
+		for (Declaration d : lookup(name)) {
 			if (d instanceof MethodDeclaration) {
 				MethodDeclaration m = (MethodDeclaration) d;
 				if (m.name().equals(name)) {
@@ -190,7 +203,7 @@ public final class WyilFile implements CompilationUnit {
 	}
 	
 	public MethodDeclaration method(String name, Type.FunctionOrMethod ft) {
-		for (Declaration d : declarations) {
+		for (Declaration d : lookup(name)) {
 			if (d instanceof MethodDeclaration) {
 				MethodDeclaration md = (MethodDeclaration) d;
 				if (md.name().equals(name) && md.type().equals(ft)) {
@@ -223,21 +236,60 @@ public final class WyilFile implements CompilationUnit {
 		for(int i=0;i!=declarations.size();++i) {
 			if(declarations.get(i) == old) {
 				declarations.set(i,nuw);
+				reindex(old,nuw);
 				return;
 			}			
 		}
 	}
 	
-	public boolean hasName(String name) {
-		for (Declaration d : declarations) {
-			if(d instanceof NamedDeclaration) {
-				NamedDeclaration nd = (NamedDeclaration) d;
-				if(nd.name().equals(name)) {
-					return true;
+	/**
+	 * Update the declaration index after one declaration has been replaced by
+	 * another. Where both have the same name, the replacement takes the
+	 * original's place so that declarations remain in file order.
+	 * 
+	 * @param old
+	 * @param nuw
+	 */
+	private void reindex(Declaration old, Declaration nuw) {
+		if(old instanceof NamedDeclaration) {
+			ArrayList<NamedDeclaration> ds = index.get(((NamedDeclaration) old).name());
+			for(int i=0;i!=ds.size();++i) {
+				if(ds.get(i) == old) {
+					if (nuw instanceof NamedDeclaration
+							&& ((NamedDeclaration) nuw).name().equals(
+									((NamedDeclaration) old).name())) {
+						ds.set(i, (NamedDeclaration) nuw);
+						return;
+					}
+					ds.remove(i);
+					break;
 				}
-			} 
-		}		
-		return false;
+			}
+		}
+		if(nuw instanceof NamedDeclaration) {
+			index((NamedDeclaration) nuw);
+		}
+	}
+	
+	public boolean hasName(String name) {
+		return !lookup(name).isEmpty();
+	}
+	
+	private List<NamedDeclaration> lookup(String name) {
+		ArrayList<NamedDeclaration> ds = index.get(name);
+		if(ds == null) {
+			return Collections.EMPTY_LIST;
+		}
+		return ds;
+	}
+	
+	private void index(NamedDeclaration d) {
+		ArrayList<NamedDeclaration> ds = index.get(d.name());
+		if(ds == null) {
+			ds = new ArrayList<NamedDeclaration>();
+			index.put(d.name(), ds);
+		}
+		ds.add(d);
 	}
 	
 	// =========================================================================
@@ -413,10 +465,26 @@ public final class WyilFile implements CompilationUnit {
 		}
 	}	
 	
+	/**
+	 * A code block which is decoded on demand. This allows a WyilFile to be
+	 * loaded without materialising the body of every function and method it
+	 * contains, which matters when only a few declarations (e.g. the types and
+	 * signatures of an imported module) are actually used.
+	 * 
+	 * @author David J. Pearce
+	 * 
+	 */
+	public interface LazyBlock {
+		public Block get();
+	}
+	
 	public static final class Case extends SyntacticElement.Impl {				
-		private final Block precondition;
-		private final Block postcondition;
-		private final Block body;
+		private Block precondition;
+		private Block postcondition;
+		private Block body;
+		private LazyBlock lazyPrecondition;
+		private LazyBlock lazyPostcondition;
+		private LazyBlock lazyBody;
 		private final ArrayList<String> locals;		
 		
 		public Case(Block body, Block precondition, Block postcondition,
@@ -437,15 +505,37 @@ public final class WyilFile implements CompilationUnit {
 			this.locals = new ArrayList<String>(locals);			
 		}
 		
-		public Block body() {
+		public Case(LazyBlock body, LazyBlock precondition,
+				LazyBlock postcondition, Collection<String> locals,
+				Attribute... attributes) {
+			super(attributes);
+			this.lazyBody = body;
+			this.lazyPrecondition = precondition;
+			this.lazyPostcondition = postcondition;
+			this.locals = new ArrayList<String>(locals);
+		}
+		
+		public synchronized Block body() {
+			if (lazyBody != null) {
+				body = lazyBody.get();
+				lazyBody = null;
+			}
 			return body;
 		}
 		
-		public Block precondition() {
+		public synchronized Block precondition() {
+			if (lazyPrecondition != null) {
+				precondition = lazyPrecondition.get();
+				lazyPrecondition = null;
+			}
 			return precondition;
 		}
 		
-		public Block postcondition() {
+		public synchronized Block postcondition() {
+			if (lazyPostcondition != null) {
+				postcondition = lazyPostcondition.get();
+				lazyPostcondition = null;
+			}
 			return postcondition;
 		}
 		
@@ -30,6 +30,8 @@ import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({ ListSubtypeTests.class, RecordSubtypeTests.class,
-		RecursiveSubtypeTests.class, TupleSubtypeTests.class })
+		RecursiveSubtypeTests.class, TupleSubtypeTests.class,
+		TypeInterningTests.class, CanonicalFormTests.class,
+		TypeCacheTests.class })
 public class AllTests {
 }
@@ -0,0 +1,181 @@
+// Copyright (c) 2011, David J. Pearce (djp@ecs.vuw.ac.nz)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//    * Redistributions of source code must retain the above copyright
+//      notice, this list of conditions and the following disclaimer.
+//    * Redistributions in binary form must reproduce the above copyright
+//      notice, this list of conditions and the following disclaimer in the
+//      documentation and/or other materials provided with the distribution.
+//    * Neither the name of the <organization> nor the
+//      names of its contributors may be used to endorse or promote products
+//      derived from this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+// ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL DAVID J. PEARCE BE LIABLE FOR ANY
+// DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+// LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+// ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package wyil.testing;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.*;
+
+import wyautl_old.lang.Automata;
+import wyautl_old.lang.Automaton;
+import wyil.lang.Type;
+import wyil.util.type.TypeAlgorithms;
+
+/**
+ * Checks the canonical forms computed by <code>Automata.canonicalise()</code>.
+ * Where the back-tracking search is used, these must be the same as those of
+ * <code>Automata.bruteForce()</code>. Partition refinement may number states
+ * differently, but its forms must still be canonical and must be isomorphic to
+ * those of the search. Since canonical forms must not depend on how the states
+ * of an automaton are numbered, the automata are randomly renumbered (from a
+ * fixed seed) before being canonicalised.
+ */
+public class CanonicalFormTests {
+	private static final int BRUTE_FORCE_LIMIT = 9;
+	private static final int RENUMBERINGS = 10;
+
+	@Test public void test_1() { checkCanonicalForm("[int]"); }
+	@Test public void test_2() { checkCanonicalForm("int|null"); }
+	@Test public void test_3() { checkCanonicalForm("[int|null]"); }
+	@Test public void test_4() { checkCanonicalForm("{int f1, null f2}"); }
+	@Test public void test_5() { checkCanonicalForm("{int f1}|{null f1}"); }
+	@Test public void test_6() { checkCanonicalForm("{int f1}|{int f2}|null"); }
+	@Test public void test_7() { checkCanonicalForm("(int,null)|(null,int)"); }
+	@Test public void test_8() { checkCanonicalForm("({int f1},int)|({null f1},null)"); }
+	@Test public void test_9() { checkCanonicalForm("{{int f1} f1}|{{null f2} f1}"); }
+	@Test public void test_10() { checkCanonicalForm("[int]|{int}|[null]|{null}"); }
+	@Test public void test_11() { checkCanonicalForm("X<(null,X|null)>"); }
+	@Test public void test_12() { checkCanonicalForm("X<null|{X f1}>"); }
+	@Test public void test_13() { checkCanonicalForm("X<null|{X f2}>"); }
+	@Test public void test_14() { checkCanonicalForm("X<(X,null)|null>"); }
+	@Test public void test_15() { checkCanonicalForm("X<{X|null f1}>"); }
+	@Test public void test_16() { checkCanonicalForm("X<null|(X,null)|(null,X)>"); }
+	@Test public void test_17() { checkCanonicalForm("X<int|[X]|{X}>"); }
+	@Test public void test_18() { checkCanonicalForm("X<null|{X f1}|{X f2}>"); }
+	@Test public void test_19() { checkCanonicalForm("!int"); }
+	@Test public void test_20() { checkCanonicalForm("!(int|null)|[!int]"); }
+
+	@Test public void test_21() { checkCanonicalForm(nestedLists(6)); }
+	@Test public void test_22() { checkCanonicalForm(nestedLists(8)); }
+	@Test public void test_23() { checkCanonicalForm(nestedLists(12)); }
+	@Test public void test_24() { checkCanonicalForm(records(6)); }
+	@Test public void test_25() { checkCanonicalForm(records(8)); }
+	@Test public void test_26() { checkCanonicalForm(records(12)); }
+
+	private void checkCanonicalForm(String type) {
+		checkCanonicalForm(Type.fromString(type));
+	}
+
+	private void checkCanonicalForm(Type type) {
+		Automaton automaton = Type.destruct(type);
+		Random random = new Random(automaton.size());
+
+		// First, check against the brute-force search, when feasible.
+		if (automaton.size() <= BRUTE_FORCE_LIMIT) {
+			Automaton brute = Automata.bruteForce(new Automaton(automaton),
+					TypeAlgorithms.DATA_COMPARATOR);
+			assertEquals(type.toString(), brute, automaton);
+		}
+
+		// Second, check the default canonical form, partition refinement and
+		// (when feasible) the back-tracking search give the same results
+		// regardless of the initial numbering.
+		Automaton labelled = canonicalise(automaton, 0);
+		for (int i = 0; i != RENUMBERINGS; ++i) {
+			Automaton renumbered = renumber(automaton, random);
+			assertEquals(type.toString(), automaton,
+					canonicalise(renumbered));
+			assertEquals(type.toString(), labelled,
+					canonicalise(renumbered, 0));
+			if (automaton.size() <= BRUTE_FORCE_LIMIT) {
+				assertEquals(type.toString(), automaton,
+						canonicalise(renumbered, Long.MAX_VALUE));
+			}
+		}
+
+		// Third, check partition refinement gives an isomorphic form.
+		if (automaton.size() <= BRUTE_FORCE_LIMIT) {
+			assertEquals(type.toString(), automaton,
+					canonicalise(labelled, Long.MAX_VALUE));
+		}
+	}
+
+	private static Automaton canonicalise(Automaton automaton) {
+		automaton = new Automaton(automaton);
+		Automata.canonicalise(automaton, TypeAlgorithms.DATA_COMPARATOR);
+		return automaton;
+	}
+
+	private static Automaton canonicalise(Automaton automaton, long limit) {
+		automaton = new Automaton(automaton);
+		Automata.canonicalise(automaton, TypeAlgorithms.DATA_COMPARATOR, limit);
+		return automaton;
+	}
+
+	/**
+	 * Randomly renumber the states of an automaton, whilst keeping the root
+	 * at index zero.
+	 */
+	private static Automaton renumber(Automaton automaton, Random random) {
+		int size = automaton.size();
+		int[] rmap = new int[size];
+		for (int j = 0; j != size; ++j) {
+			rmap[j] = j;
+		}
+		for (int j = size - 1; j > 1; --j) {
+			int k = 1 + random.nextInt(j);
+			int tmp = rmap[j];
+			rmap[j] = rmap[k];
+			rmap[k] = tmp;
+		}
+		// reorder() updates the states it's given, so work on a copy
+		return Automata.reorder(new Automaton(automaton), rmap);
+	}
+
+	/**
+	 * Construct a union of nested list types of increasing depth (e.g.
+	 * <code>[int]|[[int]]|[[[int]]]</code>).
+	 */
+	private static Type nestedLists(int width) {
+		ArrayList<Type> bounds = new ArrayList<Type>();
+		Type t = Type.T_INT;
+		for (int i = 0; i != width; ++i) {
+			t = Type.List(t, false);
+			bounds.add(t);
+		}
+		return Type.Union(bounds);
+	}
+
+	/**
+	 * Construct a union of records with the same field, but of different
+	 * types. These records can only be told apart by their children.
+	 */
+	private static Type records(int width) {
+		ArrayList<Type> bounds = new ArrayList<Type>();
+		Type t = Type.T_INT;
+		for (int i = 0; i != width; ++i) {
+			t = Type.List(t, false);
+			HashMap<String, Type> fields = new HashMap<String, Type>();
+			fields.put("f", t);
+			bounds.add(Type.Record(false, fields));
+		}
+		return Type.Union(bounds);
+	}
+}
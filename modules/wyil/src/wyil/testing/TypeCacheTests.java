@@ -0,0 +1,79 @@
+// Copyright (c) 2011, David J. Pearce (djp@ecs.vuw.ac.nz)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//    * Redistributions of source code must retain the above copyright
+//      notice, this list of conditions and the following disclaimer.
+//    * Redistributions in binary form must reproduce the above copyright
+//      notice, this list of conditions and the following disclaimer in the
+//      documentation and/or other materials provided with the distribution.
+//    * Neither the name of the <organization> nor the
+//      names of its contributors may be used to endorse or promote products
+//      derived from this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+// ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL DAVID J. PEARCE BE LIABLE FOR ANY
+// DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+// LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+// ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+package wyil.testing;
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+import wyil.lang.Type;
+import wyil.util.type.TypeCache;
+
+/**
+ * Checks that a type cache evicts only its least recently used entries once
+ * full, and that its statistics can be reset between builds.
+ */
+public class TypeCacheTests {
+	private static final Type T1 = Type.fromString("[int]");
+	private static final Type T2 = Type.fromString("{int}");
+	private static final Type T3 = Type.fromString("int|null");
+
+	@Test public void test_1() {
+		TypeCache<Boolean> cache = new TypeCache<Boolean>("test", 2);
+		cache.put(T1, T1, true);
+		cache.put(T1, T2, false);
+		cache.put(T1, T3, true);
+		// the eldest entry is evicted, rather than everything
+		assertEquals(2, cache.size());
+		assertNull(cache.get(T1, T1));
+		assertEquals(false, cache.get(T1, T2));
+		assertEquals(true, cache.get(T1, T3));
+	}
+
+	@Test public void test_2() {
+		TypeCache<Boolean> cache = new TypeCache<Boolean>("test", 2);
+		cache.put(T1, T1, true);
+		cache.put(T1, T2, false);
+		// using an entry protects it from eviction
+		assertEquals(true, cache.get(T1, T1));
+		cache.put(T1, T3, true);
+		assertEquals(true, cache.get(T1, T1));
+		assertNull(cache.get(T1, T2));
+	}
+
+	@Test public void test_3() {
+		TypeCache<Boolean> cache = new TypeCache<Boolean>("test", 2);
+		cache.put(T1, T2, false);
+		cache.get(T1, T2);
+		cache.get(T2, T1);
+		assertEquals(1, cache.hits());
+		assertEquals(1, cache.misses());
+		cache.resetStatistics();
+		assertEquals(0, cache.hits());
+		assertEquals(0, cache.misses());
+		// resetting the statistics does not affect the entries
+		assertEquals(false, cache.get(T1, T2));
+	}
+}
@@ -0,0 +1,112 @@
+// Copyright (c) 2011, David J. Pearce (djp@ecs.vuw.ac.nz)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//    * Redistributions of source code must retain the above copyright
+//      notice, this list of conditions and the following disclaimer.
+//    * Redistributions in binary form must reproduce the above copyright
+//      notice, this list of conditions and the following disclaimer in the
+//      documentation and/or other materials provided with the distribution.
+//    * Neither the name of the <organization> nor the
+//      names of its contributors may be used to endorse or promote products
+//      derived from this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+// ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL DAVID J. PEARCE BE LIABLE FOR ANY
+// DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+// LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+// ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package wyil.testing;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.*;
+
+import wyil.lang.Type;
+
+/**
+ * Checks that types are interned. That is, any two types which are equal are
+ * the same object, regardless of how (or on which thread) they were
+ * constructed.
+ */
+public class TypeInterningTests {
+	private static final String[] TYPES = { "[int]", "{int}", "{real f1}",
+			"(int,null)", "{int f1, null f2}", "int|null", "[int|null]",
+			"{[int] f1}|(null,int)", "X<(null,X|null)>", "X<null|{X f1}>" };
+
+	@Test public void test_1() { checkSame("[int]", "[int]"); }
+	@Test public void test_2() { checkSame("int|null", "null|int"); }
+	@Test public void test_3() { checkSame("{int f1, null f2}", "{null f2, int f1}"); }
+	@Test public void test_4() { checkSame("int|int|null", "null|int"); }
+	@Test public void test_5() { checkSame("[int|null]", "[null|int]"); }
+	@Test public void test_6() { checkSame("X<(null,X|null)>", "X<(null,(null,X|null)|null)>"); }
+	@Test public void test_7() { checkSame("X<null|{X f1}>", "Y<null|{Y f1}>"); }
+	@Test public void test_8() { checkNotSame("[int]", "{int}"); }
+	@Test public void test_9() { checkNotSame("{int f1}", "{int f2}"); }
+	@Test public void test_10() { checkNotSame("(int,null)", "(null,int)"); }
+	@Test public void test_11() { checkNotSame("X<null|{X f1}>", "X<null|{X f2}>"); }
+
+	@Test public void test_12() {
+		// types constructed directly are interned with those parsed
+		assertSame(Type.fromString("[int]"), Type.List(Type.T_INT, false));
+		assertSame(Type.fromString("int|null"),
+				Type.Union(Type.T_NULL, Type.T_INT));
+		assertSame(Type.fromString("[int|null]"),
+				Type.List(Type.Union(Type.T_INT, Type.T_NULL), false));
+	}
+
+	@Test public void test_13() throws Exception {
+		// types constructed concurrently agree on a single instance
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			ArrayList<Future<Type[]>> results = new ArrayList<Future<Type[]>>();
+			for (int i = 0; i != 8; ++i) {
+				results.add(executor.submit(new Callable<Type[]>() {
+					public Type[] call() {
+						Type[] types = new Type[TYPES.length];
+						for (int j = 0; j != TYPES.length; ++j) {
+							types[j] = Type.fromString(TYPES[j]);
+						}
+						return types;
+					}
+				}));
+			}
+			Type[] expected = results.get(0).get();
+			for (Future<Type[]> result : results) {
+				Type[] actual = result.get();
+				for (int j = 0; j != TYPES.length; ++j) {
+					assertSame(TYPES[j], expected[j], actual[j]);
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private void checkSame(String t1, String t2) {
+		Type ft = Type.fromString(t1);
+		Type tt = Type.fromString(t2);
+		assertSame(ft, tt);
+		assertEquals(ft.hashCode(), tt.hashCode());
+	}
+
+	private void checkNotSame(String t1, String t2) {
+		Type ft = Type.fromString(t1);
+		Type tt = Type.fromString(t2);
+		assertNotSame(ft, tt);
+		assertFalse(ft.equals(tt));
+	}
+}
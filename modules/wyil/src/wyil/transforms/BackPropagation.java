@@ -85,8 +85,8 @@ import wyil.util.dfa.BackwardFlowAnalysis;
  * 
  */
 public final class BackPropagation extends BackwardFlowAnalysis<BackPropagation.Env> implements Transform<WyilFile> {	
-	private static final HashMap<Integer,Block> afterInserts = new HashMap<Integer,Block>();
-	private static final HashMap<Integer,Block.Entry> rewrites = new HashMap<Integer,Block.Entry>();
+	private final HashMap<Integer,Block> afterInserts = new HashMap<Integer,Block>();
+	private final HashMap<Integer,Block.Entry> rewrites = new HashMap<Integer,Block.Entry>();
 	
 	public BackPropagation(Builder builder) {
 		super();
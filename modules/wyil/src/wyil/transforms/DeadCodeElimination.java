@@ -34,12 +34,21 @@ import wybs.lang.Transform;
 import wybs.util.Pair;
 import wyil.*;
 import wyil.lang.*;
+import wyil.util.dfa.ControlFlowGraph;
 
 /**
+ * <p>
  * Removes dead-code from method and function bodies in a given bytecode.
  * Dead=code is defined as code which is unreachable from the entry point by
  * bytecodes sequentially, and traversing along all branches and exceptional
  * edges as appropriate.
+ * </p>
+ * <p>
+ * Reachability is determined by a traversal of the block's control-flow graph.
+ * To preserve the structure of the block, the end of every reachable loop is
+ * retained (along with the code following it), as are the catch handlers of
+ * every reachable try-catch.
+ * </p>
  * 
  * @author David J. Pearce
  * 
@@ -99,45 +108,35 @@ public class DeadCodeElimination implements Transform<WyilFile> {
 	}
 	
 	private void transform(Block block) {
-		HashMap<String,Integer> labelMap = buildLabelMap(block);
+		if(block.size() == 0) {
+			return;
+		}
+		ControlFlowGraph cfg = new ControlFlowGraph(block);
 		BitSet visited = new BitSet(block.size());
-		Stack<Integer> worklist = new Stack();
-		worklist.push(0);
+		int[] worklist = new int[block.size()];
+		int top = 0;
+		worklist[top++] = 0;
 		visited.set(0);
-		while(!worklist.isEmpty()) {
-			int index = worklist.pop();
+		while(top > 0) {
+			int index = worklist[--top];
 					
 			Code code = block.get(index).code;
 			
-			if(code instanceof Code.Goto) {
-				Code.Goto g = (Code.Goto) code;				
-				addTarget(labelMap.get(g.target),visited,worklist);
-			} else if(code instanceof Code.If) {								
-				Code.If ig = (Code.If) code;				
-				addTarget(index+1,visited,worklist);
-				addTarget(labelMap.get(ig.target),visited,worklist);				
-			} else if(code instanceof Code.IfIs) {								
-				Code.IfIs ig = (Code.IfIs) code;				
-				addTarget(index+1,visited,worklist);
-				addTarget(labelMap.get(ig.target),visited,worklist);				
-			} else if(code instanceof Code.Switch) {
-				Code.Switch sw = (Code.Switch) code;
-				for(Pair<Constant,String> p : sw.branches) {
-					addTarget(labelMap.get(p.second()),visited,worklist);
-				}
-				addTarget(labelMap.get(sw.defaultTarget),visited,worklist);
+			for(int succ : cfg.successors(index)) {
+				top = addTarget(succ,visited,worklist,top);
+			}
+			for(int handler : cfg.handlers(index)) {
+				top = addTarget(handler,visited,worklist,top);
+			}
+			
+			if(code instanceof Code.Loop) {
+				top = addTarget(cfg.loopEnd(index),visited,worklist,top);
+			} else if(code instanceof Code.LoopEnd) {
+				top = addTarget(index+1,visited,worklist,top);
 			} else if(code instanceof Code.TryCatch) {
 				Code.TryCatch tc = (Code.TryCatch) code;
 				for(Pair<Type,String> p : tc.catches) {
-					addTarget(labelMap.get(p.second()),visited,worklist);
-				}
-				addTarget(index+1,visited,worklist);
-			} else if(code instanceof Code.Throw || code instanceof Code.Return) {
-				// terminating bytecode
-			} else {
-				// sequential bytecode	
-				if((index+1) < block.size()) {
-					addTarget(index+1,visited,worklist);
+					top = addTarget(cfg.target(p.second()),visited,worklist,top);
 				}
 			}
 		}
@@ -154,22 +153,11 @@ public class DeadCodeElimination implements Transform<WyilFile> {
 		}
 	}
 	
-	private static HashMap<String,Integer> buildLabelMap(Block block) {
-		HashMap<String,Integer> map = new HashMap<String,Integer>();
-		for(int i=0;i!=block.size();++i) {
-			Code c = block.get(i).code;
-			if(c instanceof Code.Label) {
-				Code.Label l = (Code.Label) c;				
-				map.put(l.label,i);
-			}
-		}
-		return map;
-	}
-	
-	private static void addTarget(int index, BitSet visited, Stack<Integer> worklist) {
-		if(!visited.get(index)) {
+	private static int addTarget(int index, BitSet visited, int[] worklist, int top) {
+		if(index < worklist.length && !visited.get(index)) {
 			visited.set(index);			
-			worklist.push(index);
+			worklist[top++] = index;
 		}
+		return top;
 	}
 }
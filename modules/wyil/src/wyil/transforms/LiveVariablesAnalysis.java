@@ -32,9 +32,7 @@ import static wybs.lang.SyntaxError.*;
 import static wyil.util.ErrorMessages.*;
 
 import wybs.lang.Builder;
-import wybs.lang.Path;
 import wybs.lang.Transform;
-import wybs.util.Pair;
 import wyil.lang.Block;
 import wyil.lang.Code;
 import wyil.lang.WyilFile;
@@ -64,12 +62,17 @@ import wyil.util.dfa.*;
  * href="http://en.wikipedia.org/wiki/Live_variable_analysis">the Wikipedia
  * page</a>.
  * </p>
+ * <p>
+ * The analysis is iterated to a fixed point over the control-flow graph of
+ * each block, with the set of live registers represented as a
+ * <code>BitSet</code>. Once this is done, the block is rewritten in a single
+ * pass.
+ * </p>
  * 
  * @author David J. Pearce, 2011
  * 
  */
-public class LiveVariablesAnalysis extends BackwardFlowAnalysis<LiveVariablesAnalysis.Env> implements Transform<WyilFile> {
-	private static final HashMap<Integer,Block.Entry> rewrites = new HashMap<Integer,Block.Entry>();
+public class LiveVariablesAnalysis extends BitSetFlowAnalysis implements Transform<WyilFile> {
 	
 	/**
 	 * Determines whether constant propagation is enabled or not.
@@ -79,13 +82,24 @@ public class LiveVariablesAnalysis extends BackwardFlowAnalysis<LiveVariablesAna
 	private boolean nops = getNops();
 	
 	public LiveVariablesAnalysis(Builder builder) {
-		
+		super(false, true);
 	}	
 	
 	@Override
 	public void apply(WyilFile module) {
 		if(enabled) {
-			super.apply(module);
+			for(WyilFile.Declaration d : module.declarations()) {
+				if(d instanceof WyilFile.TypeDeclaration) {
+					WyilFile.TypeDeclaration td = (WyilFile.TypeDeclaration) d;
+					module.replace(td,propagate(td));	
+				} else if(d instanceof WyilFile.MethodDeclaration) {
+					WyilFile.MethodDeclaration md = (WyilFile.MethodDeclaration) d;
+					if(!md.isNative()) {
+						// native functions/methods don't have bodies
+						module.replace(md,propagate(md));
+					}
+				}
+			}
 		}
 	}
 	
@@ -113,7 +127,7 @@ public class LiveVariablesAnalysis extends BackwardFlowAnalysis<LiveVariablesAna
 	public void setNops(boolean flag) {
 		this.nops = flag;
 	}
-	@Override
+	
 	public WyilFile.TypeDeclaration propagate(WyilFile.TypeDeclaration type) {		
 		Block constraint = type.constraint();
 		if(constraint != null) {
@@ -124,16 +138,14 @@ public class LiveVariablesAnalysis extends BackwardFlowAnalysis<LiveVariablesAna
 		return type;		
 	}
 	
-	/**
-	 * Last store for the live variables analysis is empty, because all
-	 * variables are considered to be dead at the end of a method/function.
-	 * 
-	 * @return
-	 */
-	@Override
-	public Env lastStore() { return EMPTY_ENV; }
+	public WyilFile.MethodDeclaration propagate(WyilFile.MethodDeclaration method) {
+		ArrayList<WyilFile.Case> cases = new ArrayList<WyilFile.Case>();
+		for (WyilFile.Case c : method.cases()) {
+			cases.add(propagate(c));
+		}
+		return new WyilFile.MethodDeclaration(method.modifiers(), method.name(), method.type(), cases);
+	}
 	
-	@Override
 	public WyilFile.Case propagate(WyilFile.Case mcase) {
 		// TODO: back propagate through pre- and post-conditions
 		Block precondition = mcase.precondition();
@@ -150,162 +162,111 @@ public class LiveVariablesAnalysis extends BackwardFlowAnalysis<LiveVariablesAna
 	}
 	
 	public Block propagate(Block body) {		
-		block = body;
-		stores = new HashMap<String,Env>();
-		rewrites.clear();
-		Env environment = lastStore();		
-		propagate(0,body.size(), environment, Collections.EMPTY_LIST);	
+		analyse(new ControlFlowGraph(body));
 		
-		// At this point, we apply the inserts	
+		// At this point, we apply the rewrites	
 		Block nbody = new Block(body.numInputs());		
 		for(int i=0;i!=body.size();++i) {
-			Block.Entry rewrite = rewrites.get(i);			
-			if(rewrite != null) {		
-				if (!(rewrite.code instanceof Code.Nop) || nops) {
-					nbody.append(rewrite);
-				}
-			} else {
-				nbody.append(body.get(i));
+			Block.Entry entry = body.get(i);
+			Code code = entry.code;
+			if(code instanceof Code.Loop) {
+				nbody.append(propagate((Code.Loop) code, entry, before(i)));
+			} else if(isLive(code, after(i))) {
+				nbody.append(entry);
+			} else if(nops) {
+				nbody.append(new Block.Entry(Code.Nop, entry.attributes()));
 			}
 		}
 		
 		return nbody;
 	}
 	
+	/**
+	 * Determine the set of live registers at each point in the given
+	 * control-flow graph, without rewriting its block. The results are then
+	 * available from <code>before()</code> and <code>after()</code>.
+	 * 
+	 * @param cfg
+	 *            --- control-flow graph of the block to analyse.
+	 */
+	public void analyse(ControlFlowGraph cfg) {
+		// All variables are considered to be dead at the end of a
+		// method/function, hence the initial store is empty.
+		solve(cfg, new BitSet());
+	}
+	
 	@Override
-	public Env propagate(int index, Entry entry, Env environment) {		
-		rewrites.put(index,null);
+	protected void propagate(int index, Entry entry, BitSet environment) {		
 		Code code = entry.code;		
-		boolean isLive = true;
-		environment = (Env) environment.clone();
 		
-		if (code instanceof Code.AbstractAssignable) {
+		if(code instanceof Code.ForAll) {
+			Code.ForAll fall = (Code.ForAll) code;
+			environment.clear(fall.indexOperand);
+			environment.set(fall.sourceOperand);
+			return;
+		}
+		
+		boolean isLive = isLive(code, environment);
+		
+		if (code instanceof Code.AbstractAssignable
+				&& !(code instanceof Code.Update)) {
 			Code.AbstractAssignable aa = (Code.AbstractAssignable) code;
-			if(code instanceof Code.Update) {
-				isLive = environment.contains(aa.target);
-			} else {
-				isLive = environment.remove(aa.target);
+			if(aa.target != Code.NULL_REG) {
+				environment.clear(aa.target);
 			}
 		} 
 		
-		if ((isLive && code instanceof Code.AbstractUnaryAssignable)
-				|| (code instanceof Code.Dereference)) {
+		if(!isLive) {
+			// dead code, so operands are not used
+		} else if (code instanceof Code.AbstractUnaryAssignable) {
 			Code.AbstractUnaryAssignable c = (Code.AbstractUnaryAssignable) code;
-			environment.add(c.operand);
-		} else if(isLive && code instanceof Code.AbstractUnaryOp) {
+			environment.set(c.operand);
+		} else if(code instanceof Code.AbstractUnaryOp) {
 			Code.AbstractUnaryOp c = (Code.AbstractUnaryOp) code;
 			if(c.operand != Code.NULL_REG) {
 				// return bytecode has an optional operand.
-				environment.add(c.operand);
+				environment.set(c.operand);
 			}
-		} else if(isLive && code instanceof Code.AbstractBinaryAssignable) {
+		} else if(code instanceof Code.AbstractBinaryAssignable) {
 			Code.AbstractBinaryAssignable c = (Code.AbstractBinaryAssignable) code;
-			environment.add(c.leftOperand);
-			environment.add(c.rightOperand);
-		} else if(isLive && code instanceof Code.AbstractBinaryOp) {
+			environment.set(c.leftOperand);
+			environment.set(c.rightOperand);
+		} else if(code instanceof Code.AbstractBinaryOp) {
 			Code.AbstractBinaryOp c = (Code.AbstractBinaryOp) code;
-			environment.add(c.leftOperand);
-			environment.add(c.rightOperand);
-		} else if ((isLive && code instanceof Code.AbstractNaryAssignable)
-				|| (code instanceof Code.Invoke && ((Code.Invoke) code).type instanceof Type.Method)) {
+			environment.set(c.leftOperand);
+			environment.set(c.rightOperand);
+		} else if (code instanceof Code.AbstractNaryAssignable) {
 			Code.AbstractNaryAssignable c = (Code.AbstractNaryAssignable) code;
 			for(int operand : c.operands) {
-				environment.add(operand);
+				use(operand, environment);
 			}
-		} else if ((isLive && code instanceof Code.AbstractSplitNaryAssignable)
-				|| (code instanceof Code.IndirectInvoke && ((Code.IndirectInvoke) code).type instanceof Type.Method)
-				|| (code instanceof Code.Update && ((Code.Update) code).type instanceof Type.Reference)) {
+		} else if (code instanceof Code.AbstractSplitNaryAssignable) {
 			Code.AbstractSplitNaryAssignable c = (Code.AbstractSplitNaryAssignable) code;
-			environment.add(c.operand);
+			environment.set(c.operand);
 			for(int operand : c.operands) {
-				environment.add(operand);
-			}
-			
-		} else if(!isLive) {			
-			entry = new Block.Entry(Code.Nop, entry.attributes());
-			rewrites.put(index, entry);
+				use(operand, environment);
+			}			
 		} else {
-			// const
+			// const, or a branching bytecode without operands
 		}
-		
-		return environment;
 	}
 	
-	@Override
-	public Env propagate(int index, Code.If code, Entry entry, Env trueEnv,
-			Env falseEnv) {
-		Env r = join(trueEnv, falseEnv);
-
-		r.add(code.leftOperand);
-		r.add(code.rightOperand);
-
-		return r;
-	}
-	
-	@Override
-	protected Env propagate(Type handler, Env normalEnv, Env exceptionEnv) {
-		
-		return join(normalEnv, exceptionEnv);
-	}
-	
-	@Override
-	public Env propagate(int index,
-			Code.IfIs code, Entry entry, Env trueEnv, Env falseEnv) {
-		Env r = join(trueEnv,falseEnv);
-				
-		r.add(code.operand);		
-		
-		return r;
-	}
-	
-	@Override
-	public Env propagate(int index, Code.Switch code,
-			Entry stmt, List<Env> environments, Env defEnv) {
-		Env environment = defEnv;
-		
-		for(int i=0;i!=code.branches.size();++i) {
-			environment = join(environment,environments.get(i));
-		} 		
-		
-		environment.add(code.operand);
-		
-		return environment;
-	}
-		
-	public Env propagate(int start, int end, Code.Loop loop,
-			Entry stmt, Env environment, List<Pair<Type,String>> handlers) {
-		rewrites.put(start,null); // to overrule any earlier rewrites
-		 
-		Env oldEnv = null;
-		Env newEnv = null;
-		
-		if(loop instanceof Code.ForAll) {
-			Code.ForAll fall = (Code.ForAll) loop;
-			environment = new Env(environment);	
-			environment.add(fall.sourceOperand);
-		} else {
-			environment = EMPTY_ENV;
-		}
-				
-		do {			
-			// iterate until a fixed point reached
-			oldEnv = newEnv != null ? newEnv : environment;
-			newEnv = propagate(start+1,end, oldEnv, handlers);
-			newEnv = join(environment,newEnv);
-		} while (!newEnv.equals(oldEnv));
-		
-		environment = newEnv;
-		
-		if(loop instanceof Code.ForAll) {
-			Code.ForAll fall = (Code.ForAll) loop; 		
-			// FIXME: is the following really necessary?
-			environment.remove(fall.indexOperand);
-		} 		
-		
-		// Now, check whether any of the modified operands are no longer live.
+	/**
+	 * Check whether any of the modified operands of a loop are no longer live
+	 * on entry to the loop and, if so, remove them.
+	 * 
+	 * @param loop
+	 *            --- the loop bytecode.
+	 * @param stmt
+	 *            --- the block entry for the loop.
+	 * @param environment
+	 *            --- the set of live variables on entry to the loop.
+	 * @return
+	 */
+	private Block.Entry propagate(Code.Loop loop, Entry stmt, BitSet environment) {
 		int nInvalidatedOperands = 0;
 		for(int mo : loop.modifiedOperands) {
-			if(!environment.contains(mo)) {
+			if(!environment.get(mo)) {
 				nInvalidatedOperands++;
 			}
 		}
@@ -314,7 +275,7 @@ public class LiveVariablesAnalysis extends BackwardFlowAnalysis<LiveVariablesAna
 			int[] nModifiedOperands = new int[loop.modifiedOperands.length - nInvalidatedOperands];
 			int j = 0;
 			for(int mo : loop.modifiedOperands) {
-				if(environment.contains(mo)) {
+				if(environment.get(mo)) {
 					nModifiedOperands[j++] = mo;
 				}
 			}
@@ -326,28 +287,41 @@ public class LiveVariablesAnalysis extends BackwardFlowAnalysis<LiveVariablesAna
 			} else {
 				stmt = new Block.Entry(Code.Loop(loop.target,nModifiedOperands), stmt.attributes());
 			}
-			rewrites.put(start, stmt);
 		}
 		
-		return environment;		
+		return stmt;		
 	}
 	
-	private Env join(Env env1, Env env2) {		
-		// implements set union
-		Env r = new Env(env1);
-		r.addAll(env2);
-		return r;
+	/**
+	 * Determine whether a given bytecode is live. That is, whether the
+	 * register it assigns is live afterwards, or it has side-effects. Dead
+	 * bytecodes can be removed altogether.
+	 * 
+	 * @param code
+	 *            --- the bytecode in question.
+	 * @param environment
+	 *            --- the set of live variables immediately after the
+	 *            bytecode.
+	 * @return
+	 */
+	private static boolean isLive(Code code, BitSet environment) {
+		if (code instanceof Code.Dereference
+				|| (code instanceof Code.Invoke && ((Code.Invoke) code).type instanceof Type.Method)
+				|| (code instanceof Code.IndirectInvoke && ((Code.IndirectInvoke) code).type instanceof Type.Method)
+				|| (code instanceof Code.Update && ((Code.Update) code).type instanceof Type.Reference)) {
+			// these have side-effects, and must be kept regardless
+			return true;
+		} else if (code instanceof Code.AbstractAssignable) {
+			Code.AbstractAssignable aa = (Code.AbstractAssignable) code;
+			return aa.target != Code.NULL_REG && environment.get(aa.target);
+		} else {
+			return true;
+		}
 	}
 	
-	private static final Env EMPTY_ENV = new Env();
-	
-	public static final class Env extends HashSet<Integer> {
-		public Env() {
-			super();
-		}
-		
-		public Env(Env env) {
-			super(env);
+	private static void use(int operand, BitSet environment) {
+		if(operand != Code.NULL_REG) {
+			environment.set(operand);
 		}
 	}
 }
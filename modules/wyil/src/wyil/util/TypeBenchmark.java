@@ -0,0 +1,168 @@
+// Copyright (c) 2011, David J. Pearce (djp@ecs.vuw.ac.nz)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//    * Redistributions of source code must retain the above copyright
+//      notice, this list of conditions and the following disclaimer.
+//    * Redistributions in binary form must reproduce the above copyright
+//      notice, this list of conditions and the following disclaimer in the
+//      documentation and/or other materials provided with the distribution.
+//    * Neither the name of the <organization> nor the
+//      names of its contributors may be used to endorse or promote products
+//      derived from this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+// ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL DAVID J. PEARCE BE LIABLE FOR ANY
+// DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+// LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+// ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package wyil.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import wyautl_old.lang.Automata;
+import wyautl_old.lang.Automaton;
+import wyil.lang.Type;
+import wyil.util.type.TypeAlgorithms;
+
+/**
+ * A simple benchmark for measuring how long it takes to construct (and hence
+ * normalise) wide union types. For each width, three families of union are
+ * constructed: unions of distinct list types, unions of records with distinct
+ * fields, and unions of records with the same field at distinct types (which
+ * are the hardest to canonicalise, since the records can only be told apart by
+ * their children). The average time taken to construct each is reported.
+ * 
+ * <p>
+ * In addition, the canonical form of each type is checked by canonicalising
+ * randomly renumbered copies of its automaton, all of which must give the
+ * same form. Where the automaton is small enough, the canonical form is also
+ * compared against <code>Automata.bruteForce()</code>, and whether these
+ * agree is reported.
+ * </p>
+ * 
+ * <pre>
+ * usage: java wyil.util.TypeBenchmark [-i iterations] [-w maximum width]
+ * </pre>
+ */
+public class TypeBenchmark {
+	private static final int WARMUP_ITERATIONS = 5;
+	private static final int RENUMBERINGS = 20;
+	private static final int BRUTE_FORCE_LIMIT = 9;
+
+	public static void main(String[] args) {
+		int iterations = 20;
+		int maxWidth = 16;
+
+		for (int i = 0; i != args.length; ++i) {
+			if (args[i].equals("-i")) {
+				iterations = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-w")) {
+				maxWidth = Integer.parseInt(args[++i]);
+			} else {
+				System.out.println("usage: java wyil.util.TypeBenchmark [-i iterations] [-w maximum width]");
+				return;
+			}
+		}
+
+		Random random = new Random(0);
+		System.out.println("width\tlists (ms)\trecords (ms)\tfields (ms)\tinvariant\tbrute force");
+		for (int width = 2; width <= maxWidth; ++width) {
+			ArrayList<Type> lists = new ArrayList<Type>();
+			ArrayList<Type> records = new ArrayList<Type>();
+			ArrayList<Type> fields = new ArrayList<Type>();
+			for (int i = 0; i != width; ++i) {
+				lists.add(nestedList(i));
+				records.add(record("f" + i, Type.T_INT));
+				fields.add(record("f", nestedList(i)));
+			}
+			String line = width + "";
+			boolean invariant = true;
+			String brute = "";
+			for (ArrayList<Type> bounds : new ArrayList[] { lists, records,
+					fields }) {
+				for (int i = 0; i != WARMUP_ITERATIONS; ++i) {
+					Type.Union(bounds);
+				}
+				long start = System.nanoTime();
+				Type type = null;
+				for (int i = 0; i != iterations; ++i) {
+					type = Type.Union(bounds);
+				}
+				long time = System.nanoTime() - start;
+				line += "\t" + String.format("%.3f", time / (iterations * 1000000.0));
+				invariant &= checkInvariant(type, random);
+				brute += checkBruteForce(type) + " ";
+			}
+			System.out.println(line + "\t" + invariant + "\t" + brute);
+		}
+	}
+
+	private static Type nestedList(int depth) {
+		Type t = Type.T_INT;
+		for (int i = 0; i != depth; ++i) {
+			t = Type.List(t, false);
+		}
+		return t;
+	}
+
+	private static Type record(String field, Type type) {
+		HashMap<String, Type> fields = new HashMap<String, Type>();
+		fields.put(field, type);
+		return Type.Record(false, fields);
+	}
+
+	/**
+	 * Check that randomly renumbering the states of a type's automaton does
+	 * not change its canonical form.
+	 */
+	private static boolean checkInvariant(Type type, Random random) {
+		Automaton automaton = Type.destruct(type);
+		int size = automaton.size();
+		for (int i = 0; i != RENUMBERINGS; ++i) {
+			int[] rmap = new int[size];
+			for (int j = 0; j != size; ++j) {
+				rmap[j] = j;
+			}
+			// the root must remain at index 0
+			for (int j = size - 1; j > 1; --j) {
+				int k = 1 + random.nextInt(j);
+				int tmp = rmap[j];
+				rmap[j] = rmap[k];
+				rmap[k] = tmp;
+			}
+			// reorder() updates the states it's given, and the automaton of
+			// a compound type is shared, so work on a copy
+			Automaton renumbered = Automata.reorder(new Automaton(automaton),
+					rmap);
+			Automata.canonicalise(renumbered, TypeAlgorithms.DATA_COMPARATOR);
+			if (!renumbered.equals(automaton)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Check whether the canonical form of a type is that found by brute
+	 * force, provided its automaton is small enough.
+	 */
+	private static String checkBruteForce(Type type) {
+		Automaton automaton = Type.destruct(type);
+		if (automaton.size() > BRUTE_FORCE_LIMIT) {
+			return "-";
+		}
+		Automaton brute = Automata.bruteForce(new Automaton(automaton),
+				TypeAlgorithms.DATA_COMPARATOR);
+		return brute.equals(automaton) ? "same" : "differs";
+	}
+}
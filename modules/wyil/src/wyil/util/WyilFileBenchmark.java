@@ -0,0 +1,125 @@
+// Copyright (c) 2011, David J. Pearce (djp@ecs.vuw.ac.nz)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//    * Redistributions of source code must retain the above copyright
+//      notice, this list of conditions and the following disclaimer.
+//    * Redistributions in binary form must reproduce the above copyright
+//      notice, this list of conditions and the following disclaimer in the
+//      documentation and/or other materials provided with the distribution.
+//    * Neither the name of the <organization> nor the
+//      names of its contributors may be used to endorse or promote products
+//      derived from this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+// ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL DAVID J. PEARCE BE LIABLE FOR ANY
+// DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+// LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+// ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package wyil.util;
+
+import java.io.*;
+import java.util.ArrayList;
+
+import wybs.io.BinaryInputStream;
+import wyil.io.WyilFileReader;
+
+/**
+ * A simple benchmark for measuring how long it takes to decode wyil files.
+ * Each file given on the command-line is loaded into memory once, and then
+ * decoded repeatedly from there. This is done both through an input stream (as
+ * happens when reading from a file or jar) and directly from a buffer, and the
+ * average time taken to decode all files is reported for each. A number of
+ * warmup iterations are performed first, to give the JIT a chance.
+ * 
+ * <pre>
+ * usage: java wyil.util.WyilFileBenchmark [-i iterations] file.wyil ...
+ * </pre>
+ */
+public class WyilFileBenchmark {
+	private static final int WARMUP_ITERATIONS = 20;
+	
+	public static void main(String[] args) throws IOException {
+		int iterations = 100;
+		ArrayList<byte[]> files = new ArrayList<byte[]>();
+		long size = 0;
+		
+		for (int i = 0; i != args.length; ++i) {
+			if (args[i].equals("-i")) {
+				iterations = Integer.parseInt(args[++i]);
+			} else {
+				byte[] bytes = load(new File(args[i]));
+				size += bytes.length;
+				files.add(bytes);
+			}
+		}
+		
+		if (files.isEmpty()) {
+			System.out.println("usage: java wyil.util.WyilFileBenchmark [-i iterations] file.wyil ...");
+			return;
+		}
+
+		System.out.println("Decoding " + files.size() + " file(s), " + size
+				+ " bytes in total.");
+		
+		for (int i = 0; i != WARMUP_ITERATIONS; ++i) {
+			decode(files, false);
+			decode(files, true);
+		}
+		
+		long streamTime = 0;
+		long bufferTime = 0;
+		for (int i = 0; i != iterations; ++i) {
+			streamTime += decode(files, false);
+			bufferTime += decode(files, true);
+		}
+
+		System.out.println("Stream: " + (streamTime / (iterations * 1000))
+				+ "us per iteration");
+		System.out.println("Buffer: " + (bufferTime / (iterations * 1000))
+				+ "us per iteration");
+	}
+	
+	/**
+	 * Decode all of the given files, returning the time taken in nanoseconds.
+	 * 
+	 * @param files
+	 * @param buffer
+	 *            --- if true, decode directly from the bytes; otherwise, decode
+	 *            through an input stream.
+	 * @return
+	 * @throws IOException
+	 */
+	private static long decode(ArrayList<byte[]> files, boolean buffer)
+			throws IOException {
+		long start = System.nanoTime();
+		for (byte[] bytes : files) {
+			WyilFileReader reader;
+			if (buffer) {
+				reader = new WyilFileReader(new BinaryInputStream(bytes));
+			} else {
+				reader = new WyilFileReader(new ByteArrayInputStream(bytes));
+			}
+			reader.read();
+		}
+		return System.nanoTime() - start;
+	}
+	
+	private static byte[] load(File file) throws IOException {
+		DataInputStream input = new DataInputStream(new FileInputStream(file));
+		try {
+			byte[] bytes = new byte[(int) file.length()];
+			input.readFully(bytes);
+			return bytes;
+		} finally {
+			input.close();
+		}
+	}
+}
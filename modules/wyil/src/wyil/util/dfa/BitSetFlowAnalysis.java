@@ -0,0 +1,301 @@
+// Copyright (c) 2011, David J. Pearce (djp@ecs.vuw.ac.nz)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//    * Redistributions of source code must retain the above copyright
+//      notice, this list of conditions and the following disclaimer.
+//    * Redistributions in binary form must reproduce the above copyright
+//      notice, this list of conditions and the following disclaimer in the
+//      documentation and/or other materials provided with the distribution.
+//    * Neither the name of the <organization> nor the
+//      names of its contributors may be used to endorse or promote products
+//      derived from this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+// ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL DAVID J. PEARCE BE LIABLE FOR ANY
+// DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+// LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+// ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package wyil.util.dfa;
+
+import java.util.BitSet;
+
+import wyil.lang.*;
+
+/**
+ * <p>
+ * A dataflow analysis over a <code>ControlFlowGraph</code>, whose abstract
+ * stores are sets of registers represented as <code>BitSet</code>s. This is
+ * suitable for the classic gen/kill analyses (e.g. live variables or definite
+ * assignment), where the store at each point is simply the set of registers
+ * for which some property holds. The analysis may run either forwards or
+ * backwards, and stores are joined using either set union (for "may"
+ * analyses) or set intersection (for "must" analyses).
+ * </p>
+ *
+ * <p>
+ * The analysis is iterated to a fixed point using a worklist ordered by the
+ * reverse postorder of the graph (or its reverse, for a backward analysis).
+ * Two stores are recorded for every bytecode: that holding immediately before
+ * it, and that holding immediately after it. These are allocated once and
+ * updated in place, so that iteration does not allocate.
+ * </p>
+ *
+ * <p>
+ * A store of <code>null</code> indicates no information has reached that
+ * point. For an intersection analysis, this means the point is unreachable.
+ * For a union analysis, it is equivalent to the empty set.
+ * </p>
+ */
+public abstract class BitSetFlowAnalysis {
+
+	/**
+	 * Determines whether this is a forward or a backward analysis.
+	 */
+	private final boolean forward;
+
+	/**
+	 * Determines whether stores are joined using set union or set
+	 * intersection.
+	 */
+	private final boolean union;
+
+	/**
+	 * The graph currently being analysed.
+	 */
+	protected ControlFlowGraph cfg;
+
+	/**
+	 * The store holding immediately before each bytecode.
+	 */
+	private BitSet[] before;
+
+	/**
+	 * The store holding immediately after each bytecode.
+	 */
+	private BitSet[] after;
+
+	/**
+	 * Temporary space used when joining stores.
+	 */
+	private final BitSet tmp = new BitSet();
+	private final BitSet edge = new BitSet();
+
+	protected BitSetFlowAnalysis(boolean forward, boolean union) {
+		this.forward = forward;
+		this.union = union;
+	}
+
+	/**
+	 * Iterate this analysis over a given control-flow graph until a fixed
+	 * point is reached. The given store is that holding at the entry of the
+	 * graph for a forward analysis, or at its exit for a backward analysis.
+	 *
+	 * @param cfg
+	 *            --- the graph to analyse.
+	 * @param initial
+	 *            --- the initial store.
+	 */
+	protected void solve(ControlFlowGraph cfg, BitSet initial) {
+		int size = cfg.size();
+		int[] order = cfg.order();
+		// the position of each node in the worklist order.
+		int[] position = new int[size];
+		for (int i = 0; i != size; ++i) {
+			position[order[i]] = forward ? i : size - i - 1;
+		}
+		this.cfg = cfg;
+		this.before = new BitSet[size];
+		this.after = new BitSet[size];
+
+		BitSet worklist = new BitSet(size);
+		worklist.set(0, size);
+		for (int p = worklist.nextSetBit(0); p >= 0; p = worklist
+				.nextSetBit(0)) {
+			worklist.clear(p);
+			int index = order[forward ? p : size - p - 1];
+			if (forward) {
+				propagateForward(index, initial, worklist, position);
+			} else {
+				propagateBackward(index, initial, worklist, position);
+			}
+		}
+	}
+
+	/**
+	 * Get the store holding immediately before a given bytecode, or
+	 * <code>null</code> if no information reached that point.
+	 *
+	 * @param index
+	 *            --- index of the bytecode in question.
+	 * @return
+	 */
+	public BitSet before(int index) {
+		return before[index];
+	}
+
+	/**
+	 * Get the store holding immediately after a given bytecode, or
+	 * <code>null</code> if no information reached that point.
+	 *
+	 * @param index
+	 *            --- index of the bytecode in question.
+	 * @return
+	 */
+	public BitSet after(int index) {
+		return after[index];
+	}
+
+	private void propagateForward(int index, BitSet initial,
+			BitSet worklist, int[] position) {
+		BitSet store = index == 0 ? join(null, initial) : null;
+		for (int pred : cfg.predecessors(index)) {
+			store = join(store, after[pred]);
+		}
+		int[] throwers = cfg.throwers(index);
+		if (throwers.length > 0) {
+			Type handler = cfg.catchType(index);
+			Code.TryCatch tc = cfg.catchCode(index);
+			for (int pred : throwers) {
+				if (before[pred] != null) {
+					edge.clear();
+					edge.or(before[pred]);
+					propagate(handler, tc, edge);
+					store = join(store, edge);
+				}
+			}
+		}
+		if (store == null && union) {
+			tmp.clear();
+			store = tmp;
+		} else if (store == null) {
+			return; // not yet reachable
+		} else if (before[index] != null && before[index].equals(store)) {
+			return; // nothing has changed
+		}
+
+		before[index] = update(before[index], store);
+		for (int handler : cfg.handlers(index)) {
+			worklist.set(position[handler]);
+		}
+
+		propagate(index, cfg.block().get(index), store);
+
+		if (after[index] == null || !after[index].equals(store)) {
+			after[index] = update(after[index], store);
+			for (int succ : cfg.successors(index)) {
+				if (succ < position.length) {
+					worklist.set(position[succ]);
+				}
+			}
+		}
+	}
+
+	private void propagateBackward(int index, BitSet initial,
+			BitSet worklist, int[] position) {
+		int size = position.length;
+		BitSet store = null;
+		for (int succ : cfg.successors(index)) {
+			store = join(store, succ == size ? initial : before[succ]);
+		}
+		if (store == null && union) {
+			tmp.clear();
+			store = tmp;
+		} else if (store == null) {
+			return; // not yet reachable
+		}
+
+		after[index] = update(after[index], store);
+		propagate(index, cfg.block().get(index), store);
+
+		for (int handler : cfg.handlers(index)) {
+			if (before[handler] != null) {
+				edge.clear();
+				edge.or(before[handler]);
+				propagate(cfg.catchType(handler), cfg.catchCode(handler), edge);
+				store = join(store, edge);
+			}
+		}
+
+		if (before[index] == null || !before[index].equals(store)) {
+			before[index] = update(before[index], store);
+			for (int pred : cfg.predecessors(index)) {
+				worklist.set(position[pred]);
+			}
+			for (int pred : cfg.throwers(index)) {
+				worklist.set(position[pred]);
+			}
+		}
+	}
+
+	/**
+	 * Join a store into the accumulated result. The result is held in
+	 * temporary space, and must be copied before being retained.
+	 *
+	 * @param result
+	 *            --- the result so far, or <code>null</code> if none.
+	 * @param store
+	 *            --- the store to join, or <code>null</code> if none.
+	 * @return
+	 */
+	private BitSet join(BitSet result, BitSet store) {
+		if (store == null) {
+			return result;
+		} else if (result == null) {
+			tmp.clear();
+			tmp.or(store);
+			return tmp;
+		} else if (union) {
+			result.or(store);
+		} else {
+			result.and(store);
+		}
+		return result;
+	}
+
+	private static BitSet update(BitSet old, BitSet store) {
+		if (old == null) {
+			return (BitSet) store.clone();
+		}
+		old.clear();
+		old.or(store);
+		return old;
+	}
+
+	/**
+	 * Propagate through a bytecode, by updating the given store in place.
+	 * For a forward analysis, the store initially holds immediately before
+	 * the bytecode and should be updated to hold immediately after it; for a
+	 * backward analysis, the reverse.
+	 *
+	 * @param index
+	 *            --- the index of this bytecode in the block
+	 * @param entry
+	 *            --- block entry for this bytecode
+	 * @param store
+	 *            --- abstract store to be updated.
+	 */
+	protected abstract void propagate(int index, Block.Entry entry,
+			BitSet store);
+
+	/**
+	 * Propagate along an exceptional edge into a catch handler, by updating
+	 * the given store in place. By default, the store is unchanged.
+	 *
+	 * @param handler
+	 *            --- type of handler catching exception
+	 * @param tc
+	 *            --- the code of the enclosing try-catch handler
+	 * @param store
+	 *            --- abstract store to be updated.
+	 */
+	protected void propagate(Type handler, Code.TryCatch tc, BitSet store) {
+	}
+}
@@ -0,0 +1,462 @@
+// Copyright (c) 2011, David J. Pearce (djp@ecs.vuw.ac.nz)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//    * Redistributions of source code must retain the above copyright
+//      notice, this list of conditions and the following disclaimer.
+//    * Redistributions in binary form must reproduce the above copyright
+//      notice, this list of conditions and the following disclaimer in the
+//      documentation and/or other materials provided with the distribution.
+//    * Neither the name of the <organization> nor the
+//      names of its contributors may be used to endorse or promote products
+//      derived from this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+// ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL DAVID J. PEARCE BE LIABLE FOR ANY
+// DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+// LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+// ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package wyil.util.dfa;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+
+import wybs.util.Pair;
+import wyil.lang.*;
+
+/**
+ * <p>
+ * An int-indexed control-flow graph for a given block of bytecodes. Every
+ * bytecode in the block is a node of the graph, and is identified by its
+ * index. An additional <i>exit node</i>, whose index equals the size of the
+ * block, represents the end of the block. The graph is built once per block,
+ * and is then used to iterate dataflow analyses to a fixed point (see
+ * <code>BitSetFlowAnalysis</code>).
+ * </p>
+ *
+ * <p>
+ * The structured bytecodes are modelled as follows. Falling through onto a
+ * <code>LoopEnd</code> represents the back edge of the loop, and so the
+ * successor of a <code>LoopEnd</code> is its loop header. By contrast, a branch
+ * to the label of a <code>LoopEnd</code> exits the loop, and so its target is
+ * the bytecode following the <code>LoopEnd</code>. A <code>ForAll</code> may
+ * also exit its loop directly. Finally, a <code>Return</code> or
+ * <code>Throw</code> always flows to the exit node.
+ * </p>
+ *
+ * <p>
+ * Exceptional edges are kept separate from normal edges. These go from a
+ * bytecode which may throw (i.e. a <code>Throw</code>, <code>Invoke</code> or
+ * <code>IndirectInvoke</code>) to the catch handlers which may receive the
+ * exception. An exceptional edge leaves from the point immediately
+ * <i>before</i> the throwing bytecode, since its effect does not take place.
+ * </p>
+ */
+public final class ControlFlowGraph {
+	private static final int[] NO_EDGES = new int[0];
+
+	/**
+	 * The block this graph was constructed from.
+	 */
+	private final Block block;
+
+	/**
+	 * The normal successors of each node.
+	 */
+	private final int[][] successors;
+
+	/**
+	 * The normal predecessors of each node, including the exit node.
+	 */
+	private final int[][] predecessors;
+
+	/**
+	 * The catch handlers which may be reached by an exception thrown from each
+	 * node.
+	 */
+	private final int[][] handlers;
+
+	/**
+	 * The nodes from which an exception may reach each catch handler.
+	 */
+	private final int[][] throwers;
+
+	/**
+	 * The enclosing try-catch of each catch handler, or <code>null</code> if
+	 * the node is not a catch handler.
+	 */
+	private final Code.TryCatch[] catchCodes;
+
+	/**
+	 * The type caught by each catch handler, or <code>null</code> if the node
+	 * is not a catch handler.
+	 */
+	private final Type[] catchTypes;
+
+	/**
+	 * The index of the matching <code>LoopEnd</code> of each loop header, or
+	 * -1 if the node is not a loop header.
+	 */
+	private final int[] loopEnds;
+
+	/**
+	 * The nodes of the graph in reverse postorder. Nodes which are not
+	 * reachable from the entry are placed at the end, in index order.
+	 */
+	private final int[] order;
+
+	/**
+	 * The index of each label in the block.
+	 */
+	private final HashMap<String, Integer> labels = new HashMap<String, Integer>();
+
+	public ControlFlowGraph(Block block) {
+		int size = block.size();
+		this.block = block;
+		this.successors = new int[size][];
+		this.handlers = new int[size][];
+		this.catchCodes = new Code.TryCatch[size];
+		this.catchTypes = new Type[size];
+		this.loopEnds = new int[size];
+
+		// First, identify all labels and the structure of loops and
+		// try-catch blocks.
+		for (int i = 0; i != size; ++i) {
+			Code code = block.get(i).code;
+			if (code instanceof Code.Label) {
+				labels.put(((Code.Label) code).label, i);
+			}
+		}
+		int[] tryEnds = new int[size];
+		int[] headers = new int[size];
+		for (int i = 0; i != size; ++i) {
+			Code code = block.get(i).code;
+			loopEnds[i] = -1;
+			if (code instanceof Code.Loop) {
+				loopEnds[i] = labels.get(((Code.Loop) code).target);
+				headers[loopEnds[i]] = i;
+			} else if (code instanceof Code.TryCatch) {
+				Code.TryCatch tc = (Code.TryCatch) code;
+				tryEnds[i] = labels.get(tc.target);
+				for (Pair<Type, String> p : tc.catches) {
+					int target = labels.get(p.second());
+					catchCodes[target] = tc;
+					catchTypes[target] = p.first();
+				}
+			}
+		}
+
+		// Second, compute the successors of each node. The stack of
+		// enclosing try-catch blocks is maintained as we go, in order to
+		// determine the exceptional edges.
+		ArrayList<Integer> enclosing = new ArrayList<Integer>();
+		int[] tmp = new int[4];
+		for (int i = 0; i != size; ++i) {
+			while (!enclosing.isEmpty()
+					&& tryEnds[enclosing.get(enclosing.size() - 1)] == i) {
+				enclosing.remove(enclosing.size() - 1);
+			}
+			Code code = block.get(i).code;
+			int n = 0;
+			if (code instanceof Code.Goto) {
+				tmp[n++] = target(((Code.Goto) code).target);
+			} else if (code instanceof Code.If) {
+				tmp[n++] = i + 1;
+				tmp[n++] = target(((Code.If) code).target);
+			} else if (code instanceof Code.IfIs) {
+				tmp[n++] = i + 1;
+				tmp[n++] = target(((Code.IfIs) code).target);
+			} else if (code instanceof Code.Switch) {
+				Code.Switch sw = (Code.Switch) code;
+				if (tmp.length <= sw.branches.size()) {
+					tmp = new int[sw.branches.size() + 1];
+				}
+				for (Pair<Constant, String> p : sw.branches) {
+					tmp[n++] = target(p.second());
+				}
+				tmp[n++] = target(sw.defaultTarget);
+			} else if (code instanceof Code.ForAll) {
+				tmp[n++] = i + 1;
+				tmp[n++] = loopEnds[i] + 1;
+			} else if (code instanceof Code.LoopEnd) {
+				tmp[n++] = headers[i];
+			} else if (code instanceof Code.Return
+					|| code instanceof Code.Throw) {
+				tmp[n++] = size;
+			} else {
+				if (code instanceof Code.TryCatch) {
+					enclosing.add(i);
+				}
+				tmp[n++] = i + 1;
+			}
+			successors[i] = copy(tmp, n);
+			handlers[i] = handlers(code, enclosing);
+		}
+
+		// Third, invert the edges to give the predecessors of each node.
+		this.predecessors = invert(successors, size + 1);
+		this.throwers = invert(handlers, size);
+
+		// Finally, determine the reverse postorder.
+		this.order = reversePostorder();
+	}
+
+	/**
+	 * Get the block from which this graph was constructed.
+	 *
+	 * @return
+	 */
+	public Block block() {
+		return block;
+	}
+
+	/**
+	 * Get the number of bytecodes in the graph. This is also the index of the
+	 * exit node.
+	 *
+	 * @return
+	 */
+	public int size() {
+		return successors.length;
+	}
+
+	/**
+	 * Get the normal successors of a given node. This may include the exit
+	 * node.
+	 *
+	 * @param index
+	 *            --- index of node in question.
+	 * @return
+	 */
+	public int[] successors(int index) {
+		return successors[index];
+	}
+
+	/**
+	 * Get the normal predecessors of a given node (which may be the exit
+	 * node).
+	 *
+	 * @param index
+	 *            --- index of node in question.
+	 * @return
+	 */
+	public int[] predecessors(int index) {
+		return predecessors[index];
+	}
+
+	/**
+	 * Get the catch handlers which may receive an exception thrown by a given
+	 * node.
+	 *
+	 * @param index
+	 *            --- index of node in question.
+	 * @return
+	 */
+	public int[] handlers(int index) {
+		return handlers[index];
+	}
+
+	/**
+	 * Get the nodes which may throw an exception received by a given catch
+	 * handler.
+	 *
+	 * @param index
+	 *            --- index of catch handler in question.
+	 * @return
+	 */
+	public int[] throwers(int index) {
+		return throwers[index];
+	}
+
+	/**
+	 * Get the try-catch bytecode which a given catch handler belongs to, or
+	 * <code>null</code> if the node is not a catch handler.
+	 *
+	 * @param index
+	 *            --- index of node in question.
+	 * @return
+	 */
+	public Code.TryCatch catchCode(int index) {
+		return catchCodes[index];
+	}
+
+	/**
+	 * Get the type of exception caught by a given catch handler, or
+	 * <code>null</code> if the node is not a catch handler.
+	 *
+	 * @param index
+	 *            --- index of node in question.
+	 * @return
+	 */
+	public Type catchType(int index) {
+		return catchTypes[index];
+	}
+
+	/**
+	 * Get the index of the <code>LoopEnd</code> matching a given loop header,
+	 * or -1 if the node is not a loop header.
+	 *
+	 * @param index
+	 *            --- index of node in question.
+	 * @return
+	 */
+	public int loopEnd(int index) {
+		return loopEnds[index];
+	}
+
+	/**
+	 * Get the index of the node which a branch to a given label will reach.
+	 *
+	 * @param label
+	 * @return
+	 */
+	public int target(String label) {
+		int index = labels.get(label);
+		if (block.get(index).code instanceof Code.LoopEnd) {
+			// a branch to the end of a loop exits the loop.
+			return index + 1;
+		}
+		return index;
+	}
+
+	/**
+	 * Get the nodes of this graph (excluding the exit node) in reverse
+	 * postorder. Nodes unreachable from the entry come last. This is the
+	 * order in which a forward analysis converges most quickly; a backward
+	 * analysis should use it in reverse.
+	 *
+	 * @return
+	 */
+	public int[] order() {
+		return order;
+	}
+
+	// =========================================================================
+	// Helpers
+	// =========================================================================
+
+	/**
+	 * Determine the catch handlers which may be reached by an exception thrown
+	 * from a given bytecode. Handlers are considered from the innermost
+	 * try-catch outwards, and the search stops as soon as a handler is found
+	 * which catches every exception that may be thrown.
+	 *
+	 * @param code
+	 * @param enclosing
+	 * @return
+	 */
+	private int[] handlers(Code code, ArrayList<Integer> enclosing) {
+		Type type;
+		if (enclosing.isEmpty()) {
+			return NO_EDGES;
+		} else if (code instanceof Code.Throw) {
+			type = ((Code.Throw) code).type;
+		} else if (code instanceof Code.IndirectInvoke) {
+			type = ((Code.IndirectInvoke) code).type.throwsClause();
+		} else if (code instanceof Code.Invoke) {
+			type = ((Code.Invoke) code).type.throwsClause();
+		} else {
+			return NO_EDGES;
+		}
+		int[] targets = new int[4];
+		int n = 0;
+		for (int i = enclosing.size() - 1; i >= 0; --i) {
+			Code.TryCatch tc = (Code.TryCatch) block.get(enclosing.get(i)).code;
+			for (Pair<Type, String> p : tc.catches) {
+				Type handler = p.first();
+				if (n == targets.length) {
+					targets = copy(targets, n * 2);
+				}
+				if (Type.isSubtype(handler, type)) {
+					targets[n++] = labels.get(p.second());
+					return copy(targets, n); // completely subsumed
+				} else if (Type.isSubtype(type, handler)) {
+					targets[n++] = labels.get(p.second());
+					// not completely subsumed
+					type = Type.intersect(type, Type.Negation(handler));
+				}
+			}
+		}
+		return copy(targets, n);
+	}
+
+	private int[] reversePostorder() {
+		int size = successors.length;
+		int[] postorder = new int[size];
+		int count = 0;
+		BitSet visited = new BitSet(size);
+		if (size > 0) {
+			// iterative depth-first search, where next[k] holds the number of
+			// edges of stack[k] already explored.
+			int[] stack = new int[size];
+			int[] next = new int[size];
+			int top = 0;
+			stack[0] = 0;
+			visited.set(0);
+			while (top >= 0) {
+				int node = stack[top];
+				int[] succs = successors[node];
+				int[] excs = handlers[node];
+				int k = next[top]++;
+				int child = -1;
+				if (k < succs.length) {
+					child = succs[k];
+				} else if (k < succs.length + excs.length) {
+					child = excs[k - succs.length];
+				} else {
+					postorder[count++] = node;
+					top--;
+					continue;
+				}
+				if (child < size && !visited.get(child)) {
+					visited.set(child);
+					stack[++top] = child;
+					next[top] = 0;
+				}
+			}
+		}
+		int[] order = new int[size];
+		for (int i = 0; i != count; ++i) {
+			order[i] = postorder[count - i - 1];
+		}
+		for (int i = visited.nextClearBit(0); i < size; i = visited
+				.nextClearBit(i + 1)) {
+			order[count++] = i;
+		}
+		return order;
+	}
+
+	private static int[][] invert(int[][] edges, int size) {
+		int[] counts = new int[size];
+		for (int[] targets : edges) {
+			for (int target : targets) {
+				counts[target]++;
+			}
+		}
+		int[][] inverse = new int[size][];
+		for (int i = 0; i != size; ++i) {
+			inverse[i] = counts[i] == 0 ? NO_EDGES : new int[counts[i]];
+			counts[i] = 0;
+		}
+		for (int i = 0; i != edges.length; ++i) {
+			for (int target : edges[i]) {
+				inverse[target][counts[target]++] = i;
+			}
+		}
+		return inverse;
+	}
+
+	private static int[] copy(int[] array, int length) {
+		int[] r = new int[length];
+		System.arraycopy(array, 0, r, 0, Math.min(length, array.length));
+		return r;
+	}
+}
@@ -0,0 +1,420 @@
+// Copyright (c) 2011, David J. Pearce (djp@ecs.vuw.ac.nz)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//    * Redistributions of source code must retain the above copyright
+//      notice, this list of conditions and the following disclaimer.
+//    * Redistributions in binary form must reproduce the above copyright
+//      notice, this list of conditions and the following disclaimer in the
+//      documentation and/or other materials provided with the distribution.
+//    * Neither the name of the <organization> nor the
+//      names of its contributors may be used to endorse or promote products
+//      derived from this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+// ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL DAVID J. PEARCE BE LIABLE FOR ANY
+// DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+// LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+// ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package wyil.util.dfa;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import wyil.lang.*;
+import wyil.transforms.LiveVariablesAnalysis;
+
+/**
+ * <p>
+ * Determines which compound values (e.g. lists, sets, maps and records) can
+ * be safely updated in place. Whiley has value semantics and, hence, updating
+ * a compound value must not be observable through any other variable which
+ * refers to it. A register is said to be <i>unique</i> at a given point if the
+ * compound value it holds cannot be reached from any other live register, nor
+ * from within any other value. For example, consider the following:
+ * </p>
+ * 
+ * <pre>
+ * [int] f(int n):
+ *     xs = []
+ *     for i in 0..n:
+ *         xs = xs + [i]
+ *     return xs
+ * </pre>
+ * 
+ * <p>
+ * Here, the value held in <code>xs</code> is created by the append itself
+ * and is never shared. Therefore, each append can extend the list in place,
+ * rather than copying it. Without this, the loop would take O(n^2) time.
+ * </p>
+ * 
+ * <p>
+ * The analysis is a forward "must" analysis, whose store is the set of unique
+ * registers. A register becomes unique when it is assigned a freshly
+ * constructed value (e.g. by <code>newlist</code>, or by an
+ * <code>update</code> or <code>append</code> which copies its operand when it
+ * is not itself unique). A register stops being unique as soon as its value
+ * may escape; for example, by being passed to a function, stored into
+ * another value, or assigned to another register which remains live. Reading
+ * from a register (e.g. <code>indexof</code> or <code>lengthof</code>) does
+ * not affect its uniqueness. The live variables analysis is used to determine
+ * when an operand is at its last use, in which case an operation may update it
+ * in place and then hand the result on to its target.
+ * </p>
+ * 
+ * <p>
+ * Values passed in as parameters, or loaded from constants, are not unique.
+ * This means the first update in a loop would copy the value, but each
+ * subsequent iteration could not rely on this. Therefore, a register which is
+ * updated in place within a loop, and which remains unique around it, is
+ * copied once on entry to the loop instead (see <code>loopCopies()</code>).
+ * </p>
+ */
+public class UniquenessAnalysis extends BitSetFlowAnalysis {
+
+	/**
+	 * The live variables at each point of the block being analysed.
+	 */
+	private final LiveVariablesAnalysis liveness = new LiveVariablesAnalysis(
+			null);
+
+	/**
+	 * For each loop header, the registers which are made unique on entry to
+	 * the loop.
+	 */
+	private BitSet[] owned;
+
+	/**
+	 * For each loop header, the type of each register which is made unique on
+	 * entry to the loop. This is the type of the register where it is
+	 * updated in place.
+	 */
+	private HashMap<Integer, HashMap<Integer, Type>> ownedTypes;
+
+	/**
+	 * Temporary space used when determining the registers of a bytecode.
+	 */
+	private final HashSet<Integer> registers = new HashSet<Integer>();
+
+	public UniquenessAnalysis() {
+		super(true, false);
+	}
+
+	/**
+	 * Analyse a given block to determine which registers are unique at each
+	 * point.
+	 * 
+	 * @param block
+	 *            --- the block to analyse.
+	 */
+	public void analyse(Block block) {
+		ControlFlowGraph cfg = new ControlFlowGraph(block);
+		liveness.analyse(cfg);
+		owned = new BitSet[block.size()];
+		ownedTypes = new HashMap<Integer, HashMap<Integer, Type>>();
+		for (int i = 0; i != block.size(); ++i) {
+			if (block.get(i).code instanceof Code.Loop) {
+				owned[i] = candidates(cfg, i);
+			}
+		}
+		// Registers are only retained as owned by a loop if they remain unique
+		// on its back edge. Since discarding one may affect others, this is
+		// iterated until nothing changes.
+		boolean changed;
+		do {
+			solve(cfg, new BitSet());
+			changed = false;
+			for (int i = 0; i != owned.length; ++i) {
+				BitSet regs = owned[i];
+				if (regs != null && !regs.isEmpty()) {
+					BitSet back = after(cfg.loopEnd(i));
+					for (int r = regs.nextSetBit(0); r >= 0; r = regs
+							.nextSetBit(r + 1)) {
+						if (back == null || !back.get(r)) {
+							regs.clear(r);
+							changed = true;
+						}
+					}
+				}
+			}
+		} while (changed);
+	}
+
+	/**
+	 * Determine whether the bytecode at a given index can update its operand
+	 * in place, rather than copying it. This holds when the operand is unique
+	 * immediately beforehand, and is either overwritten by the bytecode or no
+	 * longer live after it.
+	 * 
+	 * @param index
+	 *            --- index of the bytecode in question.
+	 * @return
+	 */
+	public boolean isInPlace(int index) {
+		BitSet store = before(index);
+		Code code = cfg.block().get(index).code;
+		int operand = inPlaceOperand(code);
+		if (store == null || operand == Code.NULL_REG || !store.get(operand)) {
+			return false;
+		} else if (code instanceof Code.Update) {
+			return true;
+		}
+		Code.AbstractAssignable aa = (Code.AbstractAssignable) code;
+		return operand == aa.target || !liveness.after(index).get(operand);
+	}
+
+	/**
+	 * Determine the registers which must be copied on entry to the loop at a
+	 * given index. Such registers are updated in place within the loop, but
+	 * may not be unique on entry to it. A copy is only required when the
+	 * register holds a value of its type within the loop (see
+	 * <code>loopCopyType()</code>); for example, it may hold
+	 * <code>null</code> on entry, and be assigned a list within the loop.
+	 * 
+	 * @param index
+	 *            --- index of the loop header in question.
+	 * @return
+	 */
+	public BitSet loopCopies(int index) {
+		BitSet copies = new BitSet();
+		BitSet store = before(index);
+		if (owned[index] != null && store != null) {
+			copies.or(owned[index]);
+			copies.andNot(store);
+		}
+		return copies;
+	}
+
+	/**
+	 * Determine the type of a register which must be copied on entry to the
+	 * loop at a given index, as given by those bytecodes which update it in
+	 * place.
+	 * 
+	 * @param index
+	 *            --- index of the loop header in question.
+	 * @param register
+	 *            --- register being copied.
+	 * @return
+	 */
+	public Type loopCopyType(int index, int register) {
+		return ownedTypes.get(index).get(register);
+	}
+
+	@Override
+	protected void propagate(int index, Block.Entry entry, BitSet store) {
+		Code code = entry.code;
+
+		if (code instanceof Code.Loop) {
+			if (code instanceof Code.ForAll) {
+				Code.ForAll fall = (Code.ForAll) code;
+				// the source operand is retained by the loop's iterator.
+				store.clear(fall.sourceOperand);
+				store.clear(fall.indexOperand);
+			}
+			store.or(owned[index]);
+		} else if (code instanceof Code.Assign || code instanceof Code.Move) {
+			Code.AbstractUnaryAssignable c = (Code.AbstractUnaryAssignable) code;
+			if (c.target != c.operand) {
+				// the target inherits uniqueness only when the operand is
+				// not used again, as otherwise they are aliases.
+				boolean unique = store.get(c.operand)
+						&& !liveness.after(index).get(c.operand);
+				store.clear(c.operand);
+				store.set(c.target, unique);
+			}
+		} else if (code instanceof Code.Update
+				&& !(((Code.Update) code).type instanceof Type.Reference)) {
+			Code.Update c = (Code.Update) code;
+			// the right-hand side and keys are stored into the target, which
+			// is itself either updated in place or copied.
+			store.clear(c.operand);
+			for (int operand : c.operands) {
+				store.clear(operand);
+			}
+			store.set(c.target);
+		} else if (code instanceof Code.NewList || code instanceof Code.NewSet
+				|| code instanceof Code.NewMap
+				|| code instanceof Code.NewRecord
+				|| code instanceof Code.NewTuple
+				|| code instanceof Code.BinListOp
+				|| code instanceof Code.BinSetOp) {
+			// these always produce a fresh value, though their operands
+			// may be contained within it.
+			escape(code, store);
+			store.set(((Code.AbstractAssignable) code).target);
+		} else if (code instanceof Code.SubList) {
+			// the result is either fresh, or the source list updated in place
+			// at its last use.
+			store.set(((Code.SubList) code).target);
+		} else if (code instanceof Code.LengthOf
+				|| code instanceof Code.IndexOf
+				|| code instanceof Code.FieldLoad
+				|| code instanceof Code.TupleLoad
+				|| code instanceof Code.BinArithOp
+				|| code instanceof Code.UnArithOp
+				|| code instanceof Code.BinStringOp
+				|| code instanceof Code.SubString
+				|| code instanceof Code.Invert || code instanceof Code.Not
+				|| code instanceof Code.Dereference) {
+			// these only read from their operands, and their results are
+			// never unique.
+			store.clear(((Code.AbstractAssignable) code).target);
+		} else if (code instanceof Code.If || code instanceof Code.IfIs
+				|| code instanceof Code.Switch || code instanceof Code.Debug
+				|| code instanceof Code.AssertOrAssume
+				|| code instanceof Code.Return) {
+			// these only read from their operands
+		} else {
+			// conservatively assume everything else may retain its operands,
+			// and produces a value which may be shared.
+			escape(code, store);
+		}
+	}
+
+	@Override
+	protected void propagate(Type handler, Code.TryCatch tc, BitSet store) {
+		store.clear(tc.operand);
+	}
+
+	/**
+	 * Remove all registers used or defined by a given bytecode from the
+	 * store.
+	 * 
+	 * @param code
+	 *            --- the bytecode in question.
+	 * @param store
+	 *            --- abstract store to be updated.
+	 */
+	private void escape(Code code, BitSet store) {
+		registers.clear();
+		code.registers(registers);
+		for (int r : registers) {
+			if (r >= 0) {
+				store.clear(r);
+			}
+		}
+	}
+
+	/**
+	 * Determine the registers which are live on entry to the loop at a given
+	 * index, and which are updated in place within it (assuming they are
+	 * unique). These are candidates for being copied on entry to the loop.
+	 * The source of a <code>forall</code> loop is excluded, since it is
+	 * retained by the loop's iterator. So too is any register updated in place
+	 * at different types, since its type on entry would then be unclear.
+	 * 
+	 * @param cfg
+	 *            --- control-flow graph of the block being analysed.
+	 * @param index
+	 *            --- index of the loop header.
+	 * @return
+	 */
+	private BitSet candidates(ControlFlowGraph cfg, int index) {
+		Block block = cfg.block();
+		BitSet regs = new BitSet();
+		BitSet conflicts = new BitSet();
+		HashMap<Integer, Type> types = new HashMap<Integer, Type>();
+		for (int i = index + 1; i < cfg.loopEnd(index); ++i) {
+			Code code = block.get(i).code;
+			int operand = inPlaceOperand(code);
+			if (operand != Code.NULL_REG) {
+				Type type = inPlaceType(code);
+				Type old = types.put(operand, type);
+				if (old != null && !old.equals(type)) {
+					conflicts.set(operand);
+				}
+				regs.set(operand);
+			}
+		}
+		regs.andNot(conflicts);
+		ownedTypes.put(index, types);
+		Code code = block.get(index).code;
+		if (code instanceof Code.ForAll) {
+			regs.clear(((Code.ForAll) code).sourceOperand);
+		}
+		BitSet live = liveness.before(index);
+		if (live == null) {
+			regs.clear();
+		} else {
+			regs.and(live);
+		}
+		return regs;
+	}
+
+	/**
+	 * Determine the operand which a given bytecode could update in place, if
+	 * it were unique. For example, the left operand of a list append.
+	 * 
+	 * @param code
+	 *            --- the bytecode in question.
+	 * @return the operand, or <code>Code.NULL_REG</code> if there is none.
+	 */
+	private static int inPlaceOperand(Code code) {
+		if (code instanceof Code.Update) {
+			Code.Update c = (Code.Update) code;
+			Code.LVal lv = c.iterator().next();
+			if (!(lv instanceof Code.ListLVal || lv instanceof Code.MapLVal
+					|| lv instanceof Code.RecordLVal) || c.operand == c.target) {
+				return Code.NULL_REG;
+			}
+			for (int operand : c.operands) {
+				if (operand == c.target) {
+					return Code.NULL_REG;
+				}
+			}
+			return c.target;
+		} else if (code instanceof Code.BinListOp) {
+			Code.BinListOp c = (Code.BinListOp) code;
+			if (c.leftOperand == c.rightOperand) {
+				return Code.NULL_REG;
+			} else if (c.kind == Code.BinListKind.RIGHT_APPEND) {
+				return c.rightOperand;
+			} else {
+				return c.leftOperand;
+			}
+		} else if (code instanceof Code.BinSetOp) {
+			Code.BinSetOp c = (Code.BinSetOp) code;
+			if (c.leftOperand == c.rightOperand) {
+				return Code.NULL_REG;
+			}
+			switch (c.kind) {
+			case RIGHT_UNION:
+			case RIGHT_INTERSECTION:
+				return c.rightOperand;
+			default:
+				return c.leftOperand;
+			}
+		} else if (code instanceof Code.SubList) {
+			return ((Code.SubList) code).operands[0];
+		}
+		return Code.NULL_REG;
+	}
+
+	/**
+	 * Determine the type of the operand which a given bytecode could update
+	 * in place.
+	 * 
+	 * @param code
+	 *            --- the bytecode in question.
+	 * @return
+	 */
+	private static Type inPlaceType(Code code) {
+		if (code instanceof Code.Update) {
+			return ((Code.Update) code).type;
+		} else if (code instanceof Code.BinListOp) {
+			return (Type) ((Code.BinListOp) code).type;
+		} else if (code instanceof Code.BinSetOp) {
+			return (Type) ((Code.BinSetOp) code).type;
+		} else {
+			return (Type) ((Code.SubList) code).type;
+		}
+	}
+}
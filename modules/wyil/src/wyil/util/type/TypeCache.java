@@ -0,0 +1,190 @@
+// Copyright (c) 2011, David J. Pearce (djp@ecs.vuw.ac.nz)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//    * Redistributions of source code must retain the above copyright
+//      notice, this list of conditions and the following disclaimer.
+//    * Redistributions in binary form must reproduce the above copyright
+//      notice, this list of conditions and the following disclaimer in the
+//      documentation and/or other materials provided with the distribution.
+//    * Neither the name of the <organization> nor the
+//      names of its contributors may be used to endorse or promote products
+//      derived from this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+// ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL DAVID J. PEARCE BE LIABLE FOR ANY
+// DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+// LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+// ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package wyil.util.type;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import wyil.lang.Type;
+
+/**
+ * <p>
+ * A bounded cache of the results of a binary operation over types, such as
+ * <code>Type.isSubtype()</code> or <code>Type.intersect()</code>. Such
+ * operations are expensive, since they construct a relation over the states of
+ * both automata, and yet the type checker and code generators repeatedly ask
+ * identical questions. Since types are canonicalised, a pair of types uniquely
+ * determines the result of any such operation.
+ * </p>
+ * 
+ * <p>
+ * The cache is safe for concurrent use, as modules may be built in parallel.
+ * When the number of entries exceeds the given limit, the least recently used
+ * entry is evicted. Thus, the results used most often survive, rather than
+ * being discarded together with everything else.
+ * </p>
+ * 
+ * @param <T>
+ *            --- the type of result being cached.
+ */
+public final class TypeCache<T> {
+	private final String name;
+	private final int limit;
+	private final LinkedHashMap<Key, T> cache;
+	private long hits;
+	private long misses;
+
+	/**
+	 * Construct a cache with a given name, which is used when reporting
+	 * statistics.
+	 * 
+	 * @param name
+	 *            --- name of operation being cached.
+	 * @param limit
+	 *            --- maximum number of entries held, beyond which the least
+	 *            recently used is evicted.
+	 */
+	public TypeCache(String name, int limit) {
+		this.name = name;
+		this.limit = limit;
+		this.cache = new LinkedHashMap<Key, T>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<Key, T> eldest) {
+				return size() > TypeCache.this.limit;
+			}
+		};
+	}
+
+	/**
+	 * Lookup the result previously recorded for the given pair of types, or
+	 * return <code>null</code> if there is none.
+	 * 
+	 * @param t1
+	 * @param t2
+	 * @return
+	 */
+	public T get(Type t1, Type t2) {
+		Key key = new Key(t1, t2);
+		synchronized (cache) {
+			T result = cache.get(key);
+			if (result != null) {
+				hits++;
+			} else {
+				misses++;
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Record the result of the operation on a given pair of types.
+	 * 
+	 * @param t1
+	 * @param t2
+	 * @param result
+	 */
+	public void put(Type t1, Type t2, T result) {
+		Key key = new Key(t1, t2);
+		synchronized (cache) {
+			cache.put(key, result);
+		}
+	}
+
+	public void clear() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	public String name() {
+		return name;
+	}
+	
+	public int size() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+	public long hits() {
+		synchronized (cache) {
+			return hits;
+		}
+	}
+
+	public long misses() {
+		synchronized (cache) {
+			return misses;
+		}
+	}
+
+	/**
+	 * Reset the number of hits and misses recorded, so that statistics can be
+	 * reported for each build separately.
+	 */
+	public void resetStatistics() {
+		synchronized (cache) {
+			hits = 0;
+			misses = 0;
+		}
+	}
+
+	public String toString() {
+		synchronized (cache) {
+			return name + " cache: " + hits + " hit(s), " + misses
+					+ " miss(es), " + cache.size() + " entries";
+		}
+	}
+
+	/**
+	 * An ordered pair of types. The hashcodes of both types are computed once
+	 * up front, since hashing a compound type requires traversing its
+	 * automaton.
+	 */
+	private static final class Key {
+		private final Type first;
+		private final Type second;
+		private final int hashCode;
+
+		public Key(Type first, Type second) {
+			this.first = first;
+			this.second = second;
+			this.hashCode = (first.hashCode() * 31) + second.hashCode();
+		}
+
+		public int hashCode() {
+			return hashCode;
+		}
+
+		public boolean equals(Object o) {
+			if (o instanceof Key) {
+				Key k = (Key) o;
+				return hashCode == k.hashCode && first.equals(k.first)
+						&& second.equals(k.second);
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,147 @@
+// Copyright (c) 2011, David J. Pearce (djp@ecs.vuw.ac.nz)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//    * Redistributions of source code must retain the above copyright
+//      notice, this list of conditions and the following disclaimer.
+//    * Redistributions in binary form must reproduce the above copyright
+//      notice, this list of conditions and the following disclaimer in the
+//      documentation and/or other materials provided with the distribution.
+//    * Neither the name of the <organization> nor the
+//      names of its contributors may be used to endorse or promote products
+//      derived from this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+// ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL DAVID J. PEARCE BE LIABLE FOR ANY
+// DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+// LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+// ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package wyil.util.type;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import wyautl_old.lang.Automaton;
+import wyil.lang.Type;
+
+/**
+ * <p>
+ * A table of canonical type instances, keyed by their (canonicalised)
+ * automata. Since every type is constructed via this table, two types are
+ * equal if and only if they are the same object. This avoids comparing and
+ * hashing whole automata whenever a type is used as a key, and means that
+ * each distinct type is held in memory only once.
+ * </p>
+ * 
+ * <p>
+ * The table is safe for concurrent use, as modules may be built in parallel.
+ * Types are only weakly referenced by the table, and their entries are
+ * removed once they are no longer used elsewhere.
+ * </p>
+ */
+public final class TypeInterner {
+	private final ConcurrentHashMap<Automaton, Entry> table = new ConcurrentHashMap<Automaton, Entry>();
+	private final ReferenceQueue<Type> queue = new ReferenceQueue<Type>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Lookup the canonical type for a given automaton, or return
+	 * <code>null</code> if there is none.
+	 * 
+	 * @param automaton
+	 *            --- the canonical automaton of the type.
+	 * @return
+	 */
+	public Type get(Automaton automaton) {
+		expunge();
+		Entry e = table.get(automaton);
+		Type type = e == null ? null : e.get();
+		if (type != null) {
+			hits.incrementAndGet();
+		} else {
+			misses.incrementAndGet();
+		}
+		return type;
+	}
+
+	/**
+	 * Record a type as the canonical type for a given automaton, unless there
+	 * is one already. In either case, the canonical type is returned.
+	 * 
+	 * @param automaton
+	 *            --- the canonical automaton of the type.
+	 * @param type
+	 *            --- a type whose automaton is <code>automaton</code>.
+	 * @return
+	 */
+	public Type intern(Automaton automaton, Type type) {
+		Entry entry = new Entry(automaton, type, queue);
+		while (true) {
+			Entry e = table.putIfAbsent(automaton, entry);
+			if (e == null) {
+				return type;
+			}
+			Type existing = e.get();
+			if (existing != null) {
+				return existing;
+			} else if (table.replace(automaton, e, entry)) {
+				return type;
+			}
+		}
+	}
+
+	public int size() {
+		return table.size();
+	}
+
+	public long hits() {
+		return hits.get();
+	}
+
+	public long misses() {
+		return misses.get();
+	}
+
+	/**
+	 * Reset the number of hits and misses recorded, so that statistics can be
+	 * reported for each build separately.
+	 */
+	public void resetStatistics() {
+		hits.set(0);
+		misses.set(0);
+	}
+
+	public String toString() {
+		return "type intern table: " + hits.get() + " hit(s), "
+				+ misses.get() + " miss(es), " + table.size() + " entries";
+	}
+
+	/**
+	 * Remove the entries of those types which have been garbage collected.
+	 */
+	private void expunge() {
+		Entry e;
+		while ((e = (Entry) queue.poll()) != null) {
+			table.remove(e.key, e);
+		}
+	}
+
+	private static final class Entry extends WeakReference<Type> {
+		private final Automaton key;
+
+		public Entry(Automaton key, Type type, ReferenceQueue<Type> queue) {
+			super(type, queue);
+			this.key = key;
+		}
+	}
+}
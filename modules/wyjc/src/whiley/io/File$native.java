@@ -30,7 +30,9 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.math.BigInteger;
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
 
 import wyjc.runtime.WyObject;
 import wyjc.runtime.WyList;
@@ -44,7 +46,6 @@ public class File$native {
 			r.put("fileName", filename);
 			r.put("$fin", fin);
 			WyObject p = new WyObject(r);
-			p.start();
 			return p;
 		} catch(FileNotFoundException e) {
 			r.put("msg", e.getMessage());			
@@ -59,7 +60,6 @@ public class File$native {
 			r.put("fileName", filename);
 			r.put("$fout", fout);			
 			WyObject p = new WyObject(r);
-			p.start();
 			return p;
 		} catch(FileNotFoundException e) {
 			r.put("msg", e.getMessage());	
@@ -68,13 +68,13 @@ public class File$native {
 	}
 	
 	public static void close(WyObject p) {
-		FileInputStream fin = (FileInputStream) ((HashMap) p.state())
+		FileInputStream fin = (FileInputStream) ((WyRecord) p.state())
 				.get("$fin");		
 		try {
 			if(fin != null) {
 				fin.close();
 			} else {
-				FileOutputStream fout = (FileOutputStream) ((HashMap) p.state())
+				FileOutputStream fout = (FileOutputStream) ((WyRecord) p.state())
 				.get("$fout");		
 				fout.close();
 			}
@@ -84,56 +84,93 @@ public class File$native {
 	}
 	
 	public static WyList read(WyObject p, BigInteger max) {		
-		FileInputStream fin = (FileInputStream) ((HashMap) p.state())
+		FileInputStream fin = (FileInputStream) ((WyRecord) p.state())
 				.get("$fin");
 		
-		WyList r = new WyList();
-		byte[] bytes = new byte[max.intValue()];		
 		try {
+			// don't allocate more than can possibly be read, although the
+			// number of bytes remaining in a stream (e.g. a pipe) is unknown.
+			long remaining = Math.max(fin.available(), CHUNK_SIZE);
+			long size = max.min(BigInteger.valueOf(MAX_BYTES))
+					.max(BigInteger.ZERO).longValue();
+			byte[] bytes = new byte[(int) Math.min(size, remaining)];
 			int nbytes = fin.read(bytes);
-			for(int i=0;i!=nbytes;++i) {				
-				r.add(bytes[i]);
-			}
+			return new WyList(bytes, Math.max(nbytes, 0));
 		} catch (IOException ioe) {
 			// what to do here??
 		}
 		
-		return r;		
+		return new WyList();		
 	}
 	
-	private static final int CHUNK_SIZE = 1024;
+	/**
+	 * The largest number of bytes read from a file at once, which is also the
+	 * number read when the number remaining is unknown (e.g. for a pipe).
+	 */
+	private static final int CHUNK_SIZE = 1024 * 1024;
+	
+	/**
+	 * The largest number of bytes which can be read into a single list (i.e.
+	 * the largest array which can be safely allocated).
+	 */
+	private static final int MAX_BYTES = Integer.MAX_VALUE - 8;
+	
 	public static WyList read(WyObject p) {		
-		FileInputStream fin = (FileInputStream) ((HashMap) p.state())
+		FileInputStream fin = (FileInputStream) ((WyRecord) p.state())
 				.get("$fin");
 		
-		WyList r = new WyList();				
 		try {
+			FileChannel channel = fin.getChannel();
+			long position = channel.position();
+			long remaining = channel.size() - position;
+			if(remaining > MAX_BYTES) {
+				throw tooLarge(remaining);
+			}
+			// The bytes are copied onto the heap, rather than mapping the
+			// file into memory, since the file may be truncated or written
+			// (e.g. by this program) whilst the list is still in use.
+			byte[] bytes = new byte[(int) Math.max(remaining, 16)];
 			int nbytes = 0;
-			do {
-				byte[] bytes = new byte[CHUNK_SIZE];
-				nbytes = fin.read(bytes);
-				for(int i=0;i!=nbytes;++i) {
-					r.add(bytes[i]);
+			int n;
+			// the file may be longer than reported (e.g. if still being
+			// written), so keep reading until the end.
+			while((n = fin.read(bytes, nbytes,
+					Math.min(bytes.length - nbytes, CHUNK_SIZE))) > 0) {
+				nbytes += n;
+				if(nbytes == MAX_BYTES) {
+					if(fin.read() < 0) {
+						break;
+					}
+					throw tooLarge(channel.size() - position);
+				} else if(nbytes == bytes.length) {
+					bytes = Arrays.copyOf(bytes,
+							(int) Math.min(2L * bytes.length, MAX_BYTES));
 				}
-			} while(nbytes == CHUNK_SIZE);			
+			}
+			return new WyList(bytes, nbytes);
 		} catch (IOException ioe) {
 			// what to do here??
 		}
 		
-		return r;		
+		return new WyList();		
+	}
+	
+	private static RuntimeException tooLarge(long nbytes) {
+		return new RuntimeException("file too large to read (" + nbytes
+				+ " bytes remaining, but at most " + MAX_BYTES
+				+ " can be read at once)");
 	}
 	
 	public static void write(WyObject p, WyList bytes) {
-		FileOutputStream fout = (FileOutputStream) ((HashMap) p.state())
+		FileOutputStream fout = (FileOutputStream) ((WyRecord) p.state())
 				.get("$fout");
 				
 		try {			
-			byte[] bs = new byte[bytes.size()];
-			for(int i=0;i!=bs.length;++i) {
-				Byte r = (Byte) bytes.get(i); 
-				bs[i] = r.byteValue();
-			}			
-			fout.write(bs);			
+			FileChannel channel = fout.getChannel();
+			ByteBuffer bs = bytes.toByteBuffer();
+			while(bs.hasRemaining()) {
+				channel.write(bs);
+			}
 		} catch (IOException ioe) {
 			// what to do here??
 		}		
@@ -41,6 +41,7 @@ import wybs.util.Pair;
 import static wybs.lang.SyntaxError.*;
 import wyautl.util.BigRational;
 import wyil.lang.*;
+import wyil.util.dfa.UniquenessAnalysis;
 import static wyil.lang.Block.*;
 import wyjvm.attributes.Code.Handler;
 import wyjvm.attributes.LineNumberTable;
@@ -51,6 +52,8 @@ import wyjvm.lang.JvmType;
 import wyjvm.lang.ClassFile;
 import wyjvm.lang.JvmTypes;
 import wyjvm.lang.Modifier;
+import wyjvm.util.DeadCodeElimination;
+import wyjvm.util.TypeAnalysis;
 import wyjvm.util.Validation;
 import wyrl.io.JavaIdentifierOutputStream;
 import static wyjvm.lang.JvmTypes.*;
@@ -64,15 +67,57 @@ import static wyjvm.lang.JvmTypes.*;
  * 
  */
 public class Wyil2JavaBuilder implements Builder {
-	private static int CLASS_VERSION = 49;
 	private Logger logger = Logger.NULL;
+	
+	/**
+	 * The class file version to generate. Class files of version 50 and above
+	 * carry a StackMapTable attribute for each method, which is computed by
+	 * type analysis of the generated bytecode. Versions 51 and above must do
+	 * so, since they cannot fall back to the old verifier.
+	 */
+	private int classVersion = 49;
+	
+	/**
+	 * Determines whether programs generated by this builder represent lists,
+	 * sets and maps using persistent data structures. These can be copied in
+	 * constant time, which avoids the cost of copying a whole collection when
+	 * updating one which is shared.
+	 */
+	private boolean persistentCollections = false;
 	protected String filename;
 	protected JvmType.Clazz owner;
 	
+	/**
+	 * Maps the register holding each range which is only iterated over by an
+	 * immediately following <code>forall</code> loop to the code which
+	 * constructs it. Such loops are translated as counting loops, rather than
+	 * materialising the range as a list.
+	 */
+	private HashMap<Integer,Code.BinArithOp> countedLoops = new HashMap<Integer,Code.BinArithOp>();
+	
+	/**
+	 * Determines which compound values in the block being translated can be
+	 * updated in place, rather than being copied.
+	 */
+	private UniquenessAnalysis uniqueness;
+	
+	/**
+	 * The index of the bytecode being translated within its block.
+	 */
+	private int codeIndex;
+	
 	public void setLogger(Logger logger) {
 		this.logger = logger;
 	}
 	
+	public void setClassVersion(int classVersion) {
+		this.classVersion = classVersion;
+	}
+	
+	public void setPersistentCollections(boolean persistentCollections) {
+		this.persistentCollections = persistentCollections;
+	}
+	
 	public NameSpace namespace() {
 		return null; // TODO: this seems like a mistake in Builder ?
 	}
@@ -96,16 +141,14 @@ public class Wyil2JavaBuilder implements Builder {
 						
 				// validate generated bytecode
 				new Validation().apply(contents);
-				
-				// FIXME: deadCode elimination is currently unsafe because the
-				// LineNumberTable and Exceptions attributes do not deal with rewrites
-				// properly.
 					
 				// eliminate any dead code that was introduced.		
-				// new DeadCodeElimination().apply(file);			
+				new DeadCodeElimination().apply(contents);			
 				
 				// Compute the StackMapTable
-				//new TypeAnalysis().apply(file);	
+				if(classVersion >= 50) {
+					new TypeAnalysis().apply(contents);
+				}
 				
 				// finally, write the file into its destination
 				df.write(contents);
@@ -127,7 +170,7 @@ public class Wyil2JavaBuilder implements Builder {
 		ArrayList<Modifier> modifiers = new ArrayList<Modifier>();
 		modifiers.add(Modifier.ACC_PUBLIC);
 		modifiers.add(Modifier.ACC_FINAL);
-		ClassFile cf = new ClassFile(49, owner, JAVA_LANG_OBJECT,
+		ClassFile cf = new ClassFile(classVersion, owner, JAVA_LANG_OBJECT,
 				new ArrayList<JvmType.Clazz>(), modifiers);
 	
 		this.filename = module.filename();
@@ -207,7 +250,23 @@ public class Wyil2JavaBuilder implements Builder {
 				// Now, create code to intialise this field
 				translate(constant,0,bytecodes);
 				bytecodes.add(new Bytecode.PutField(owner, name, type, Bytecode.STATIC));
-			} 
+			} else if(c instanceof JvmShape) {
+				nvalues++;
+				List<String> fields = ((JvmShape)c).fields;
+				String name = "shape$" + entry.getValue();
+				ArrayList<Modifier> fmods = new ArrayList<Modifier>();
+				fmods.add(Modifier.ACC_PRIVATE);
+				fmods.add(Modifier.ACC_STATIC);
+				fmods.add(Modifier.ACC_FINAL);
+				ClassFile.Field field = new ClassFile.Field(name,
+						JAVA_LANG_STRING_ARRAY, fmods);
+				cf.fields().add(field);
+				
+				// Now, create code to intern this shape 
+				translateShape(fields,bytecodes);
+				bytecodes.add(new Bytecode.PutField(owner, name,
+						JAVA_LANG_STRING_ARRAY, Bytecode.STATIC));
+			}
 		}
 		
 		if(nvalues > 0) {
@@ -237,6 +296,12 @@ public class Wyil2JavaBuilder implements Builder {
 		ClassFile.Method cm = new ClassFile.Method("main",ft1,modifiers);
 		JvmType.Array strArr = new JvmType.Array(JAVA_LANG_STRING);
 		ArrayList<Bytecode> codes = new ArrayList<Bytecode>();
+		if(persistentCollections) {
+			// this must be selected before any collections are created.
+			ft1 = new JvmType.Function(T_VOID);
+			codes.add(new Bytecode.Invoke(WHILEYUTIL,
+					"usePersistentCollections", ft1, Bytecode.STATIC));
+		}
 		ft1 = new JvmType.Function(WHILEYRECORD,new JvmType.Array(JAVA_LANG_STRING));		
 		codes.add(new Bytecode.Load(0,strArr));
 		codes.add(new Bytecode.Invoke(WHILEYUTIL,"systemConsole",ft1,Bytecode.STATIC));		
@@ -404,7 +469,14 @@ public class Wyil2JavaBuilder implements Builder {
 			ArrayList<Bytecode> bytecodes) {
 		
 		ArrayList<UnresolvedHandler> unresolvedHandlers = new ArrayList<UnresolvedHandler>();
-		for (Entry s : blk) {
+		HashMap<Integer,Code.BinArithOp> oldCountedLoops = countedLoops;
+		UniquenessAnalysis oldUniqueness = uniqueness;
+		int oldCodeIndex = codeIndex;
+		countedLoops = findCountedLoops(blk);
+		uniqueness = new UniquenessAnalysis();
+		uniqueness.analyse(blk);
+		for (codeIndex = 0; codeIndex != blk.size(); ++codeIndex) {
+			Entry s = blk.get(codeIndex);
 			Attribute.Source loc = s.attribute(Attribute.Source.class);
 			if(loc != null) {				
 				lineNumbers.add(new LineNumberTable.Entry(bytecodes.size(),loc.line));
@@ -434,6 +506,49 @@ public class Wyil2JavaBuilder implements Builder {
 		}
 		
 		// here, we need to resolve the handlers.
+		countedLoops = oldCountedLoops;
+		uniqueness = oldUniqueness;
+		codeIndex = oldCodeIndex;
+	}
+	
+	/**
+	 * Identify those ranges which are constructed only to be iterated over by
+	 * an immediately following <code>forall</code> loop.
+	 * 
+	 * @param blk
+	 *            --- block being translated.
+	 * @return
+	 */
+	private static HashMap<Integer, Code.BinArithOp> findCountedLoops(Block blk) {
+		HashMap<Integer, Code.BinArithOp> loops = new HashMap<Integer, Code.BinArithOp>();
+		HashMap<Integer, Integer> uses = new HashMap<Integer, Integer>();
+		HashSet<Integer> registers = new HashSet<Integer>();
+		for (int i = 0; i != blk.size(); ++i) {
+			Code code = blk.get(i).code;
+			registers.clear();
+			code.registers(registers);
+			for (Integer r : registers) {
+				Integer n = uses.get(r);
+				uses.put(r, n == null ? 1 : n + 1);
+			}
+			if (i > 0 && code instanceof Code.ForAll
+					&& blk.get(i - 1).code instanceof Code.BinArithOp) {
+				Code.ForAll forall = (Code.ForAll) code;
+				Code.BinArithOp range = (Code.BinArithOp) blk.get(i - 1).code;
+				if (range.kind == Code.BinArithKind.RANGE
+						&& range.target == forall.sourceOperand) {
+					loops.put(range.target, range);
+				}
+			}
+		}
+		// the range must not be used anywhere else
+		Iterator<Integer> iter = loops.keySet().iterator();
+		while (iter.hasNext()) {
+			if (uses.get(iter.next()) != 2) {
+				iter.remove();
+			}
+		}
+		return loops;
 	}
 	
 	private int translate(Entry entry, int freeSlot,
@@ -494,7 +609,7 @@ public class Wyil2JavaBuilder implements Builder {
 			} else if(code instanceof Code.NewList) {
 				 translate((Code.NewList)code,freeSlot,bytecodes);
 			} else if(code instanceof Code.NewRecord) {
-				 translate((Code.NewRecord)code,freeSlot,bytecodes);
+				 translate((Code.NewRecord)code,freeSlot,constants,bytecodes);
 			} else if(code instanceof Code.NewSet) {
 				 translate((Code.NewSet)code,freeSlot,bytecodes);
 			} else if(code instanceof Code.NewTuple) {
@@ -566,7 +681,8 @@ public class Wyil2JavaBuilder implements Builder {
 	private void translate(Code.Update code, int freeSlot,
 			ArrayList<Bytecode> bytecodes) {
 		bytecodes.add(new Bytecode.Load(code.target, convertType(code.type)));
-		translateUpdate(code.iterator(), code, bytecodes);
+		translateUpdate(code.iterator(), code, uniqueness.isInPlace(codeIndex),
+				bytecodes);
 		bytecodes.add(new Bytecode.Store(code.target,
 				convertType(code.afterType)));
 	}
@@ -579,11 +695,14 @@ public class Wyil2JavaBuilder implements Builder {
 	 *            --- update iterator.
 	 * @param rhsOperand
 	 *            --- register operand of right-hand side
+	 * @param inPlace
+	 *            --- indicates whether the value at this level can be updated
+	 *            in place.
 	 * @param bytecodes
 	 *            --- list of bytecodes to append to.
 	 */
 	private void translateUpdate(Iterator<Code.LVal> iterator, Code.Update code,
-			ArrayList<Bytecode> bytecodes) {
+			boolean inPlace, ArrayList<Bytecode> bytecodes) {
 		Code.LVal lv = iterator.next();
 		if(lv instanceof Code.ListLVal) {
 			Code.ListLVal l = (Code.ListLVal) lv;
@@ -597,7 +716,7 @@ public class Wyil2JavaBuilder implements Builder {
 				bytecodes.add(new Bytecode.Invoke(WHILEYLIST, "internal_get", ftype,
 						Bytecode.STATIC));				
 				addReadConversion(l.rawType().element(),bytecodes);
-				translateUpdate(iterator,code,bytecodes);		
+				translateUpdate(iterator,code,false,bytecodes);		
 				bytecodes.add(new Bytecode.Load(l.indexOperand,WHILEYINT));				
 				bytecodes.add(new Bytecode.Swap());
 			} else {
@@ -609,8 +728,8 @@ public class Wyil2JavaBuilder implements Builder {
 
 			JvmType.Function ftype = new JvmType.Function(WHILEYLIST,
 					WHILEYLIST,WHILEYINT,JAVA_LANG_OBJECT);			
-			bytecodes.add(new Bytecode.Invoke(WHILEYLIST, "set", ftype,
-					Bytecode.STATIC));	
+			bytecodes.add(new Bytecode.Invoke(WHILEYLIST, inPlace ? "internal_set"
+					: "set", ftype, Bytecode.STATIC));	
 
 		} else if(lv instanceof Code.StringLVal) {
 			Code.StringLVal l = (Code.StringLVal) lv;
@@ -637,7 +756,7 @@ public class Wyil2JavaBuilder implements Builder {
 				bytecodes.add(new Bytecode.Invoke(WHILEYMAP, "internal_get", ftype,
 					Bytecode.STATIC));				
 				addReadConversion(l.rawType().value(),bytecodes);
-				translateUpdate(iterator,code,bytecodes);
+				translateUpdate(iterator,code,false,bytecodes);
 				bytecodes.add(new Bytecode.Load(l.keyOperand,keyType));
 				addWriteConversion(l.rawType().key(),bytecodes);		
 				bytecodes.add(new Bytecode.Swap());
@@ -650,33 +769,40 @@ public class Wyil2JavaBuilder implements Builder {
 						
 			JvmType.Function ftype = new JvmType.Function(WHILEYMAP,
 					WHILEYMAP,JAVA_LANG_OBJECT,JAVA_LANG_OBJECT);						
-			bytecodes.add(new Bytecode.Invoke(WHILEYMAP, "put", ftype,
-					Bytecode.STATIC));			
+			bytecodes.add(new Bytecode.Invoke(WHILEYMAP, inPlace ? "internal_put"
+					: "put", ftype, Bytecode.STATIC));			
 				
 		} else if(lv instanceof Code.RecordLVal) {
 			Code.RecordLVal l = (Code.RecordLVal) lv;
 			Type.EffectiveRecord type = l.rawType();
+			int index = fieldIndex(type, l.field);
 			
 			if (iterator.hasNext()) {
 				bytecodes.add(new Bytecode.Dup(WHILEYRECORD));
-				bytecodes.add(new Bytecode.LoadConst(l.field));
-				JvmType.Function ftype = new JvmType.Function(JAVA_LANG_OBJECT,
-						WHILEYRECORD, JAVA_LANG_STRING);
+				addFieldAccess(l.field, index, bytecodes);
+				JvmType.Function ftype = fieldAccessType(JAVA_LANG_OBJECT,
+						index);
 				bytecodes.add(new Bytecode.Invoke(WHILEYRECORD, "internal_get",
 						ftype, Bytecode.STATIC));
 				addReadConversion(type.field(l.field), bytecodes);
-				translateUpdate(iterator, code, bytecodes);
+				translateUpdate(iterator, code, false, bytecodes);
 				bytecodes.add(new Bytecode.LoadConst(l.field));
 				bytecodes.add(new Bytecode.Swap());
+				if (index >= 0) {
+					bytecodes.add(new Bytecode.LoadConst(index));
+					bytecodes.add(new Bytecode.Swap());
+				}
 			} else {
-				bytecodes.add(new Bytecode.LoadConst(l.field));
+				addFieldAccess(l.field, index, bytecodes);
 				bytecodes.add(new Bytecode.Load(code.operand, convertType(type
 						.field(l.field))));
 				addWriteConversion(type.field(l.field), bytecodes);
 			}
 			
-			JvmType.Function ftype = new JvmType.Function(WHILEYRECORD,WHILEYRECORD,JAVA_LANG_STRING,JAVA_LANG_OBJECT);						
-			bytecodes.add(new Bytecode.Invoke(WHILEYRECORD,"put",ftype,Bytecode.STATIC));	
+			JvmType.Function ftype = fieldAccessType(WHILEYRECORD, index,
+					JAVA_LANG_OBJECT);
+			bytecodes.add(new Bytecode.Invoke(WHILEYRECORD, inPlace ? "internal_put"
+					: "put", ftype, Bytecode.STATIC));	
 		} else {
 			Code.ReferenceLVal l = (Code.ReferenceLVal) lv;
 			bytecodes.add(new Bytecode.Dup(WHILEYOBJECT));
@@ -684,7 +810,7 @@ public class Wyil2JavaBuilder implements Builder {
 			bytecodes.add(new Bytecode.Invoke(WHILEYOBJECT, "state", ftype,
 					Bytecode.VIRTUAL));
 			addReadConversion(l.rawType().element(), bytecodes);
-			translateUpdate(iterator, code, bytecodes);
+			translateUpdate(iterator, code, false, bytecodes);
 			ftype = new JvmType.Function(WHILEYOBJECT, JAVA_LANG_OBJECT);
 			bytecodes.add(new Bytecode.Invoke(WHILEYOBJECT, "setState", ftype,
 					Bytecode.VIRTUAL));
@@ -1011,7 +1137,10 @@ public class Wyil2JavaBuilder implements Builder {
 	protected void translateTypeTest(String trueTarget, Type src, Type test,
 			ArrayList<Bytecode> bytecodes, HashMap<JvmConstant,Integer> constants) {		
 		
-		// First, try for the easy cases
+		// First, discard whatever the test need not check
+		test = narrowTypeTest(src, test);
+		
+		// Second, try for the easy cases
 		
 		if (test instanceof Type.Null) {
 			// Easy case		
@@ -1031,9 +1160,17 @@ public class Wyil2JavaBuilder implements Builder {
 		} else if(test instanceof Type.Strung) {
 			bytecodes.add(new Bytecode.InstanceOf(JAVA_LANG_STRING));			
 			bytecodes.add(new Bytecode.If(Bytecode.If.NE, trueTarget));
-			
+		} else if(test.equals(Type.T_LIST_ANY)) {
+			bytecodes.add(new Bytecode.InstanceOf(WHILEYLIST));			
+			bytecodes.add(new Bytecode.If(Bytecode.If.NE, trueTarget));
+		} else if(test.equals(Type.T_SET_ANY)) {
+			bytecodes.add(new Bytecode.InstanceOf(WHILEYSET));			
+			bytecodes.add(new Bytecode.If(Bytecode.If.NE, trueTarget));
+		} else if(test.equals(Type.T_MAP_ANY)) {
+			bytecodes.add(new Bytecode.InstanceOf(WHILEYMAP));			
+			bytecodes.add(new Bytecode.If(Bytecode.If.NE, trueTarget));
 		} else {
-			// Fall-back to an external (recursive) check			
+			// Fall-back to an external (compiled) check			
 			Constant constant = Constant.V_TYPE(test);
 			int id = JvmValue.get(constant,constants);			
 			String name = "constant$" + id;
@@ -1047,11 +1184,80 @@ public class Wyil2JavaBuilder implements Builder {
 		}
 	}	
 
+	/**
+	 * Simplify a type test, given the type of the value being tested. In
+	 * particular, if every list (resp. set or map) described by the source type
+	 * passes a test, then the test need not examine the elements of a list and
+	 * their type can be replaced with <code>any</code>. This eliminates the
+	 * element-wise loop from the runtime test.
+	 * 
+	 * @param src
+	 *            --- the type of the value being tested.
+	 * @param test
+	 *            --- the type being tested against.
+	 * @return
+	 */
+	private static Type narrowTypeTest(Type src, Type test) {
+		if (test instanceof Type.Union) {
+			HashSet<Type> bounds = new HashSet<Type>();
+			for (Type bound : ((Type.Union) test).bounds()) {
+				bounds.add(narrowTypeTest(src, bound));
+			}
+			return Type.Union(bounds);
+		}
+		Type any;
+		if (test instanceof Type.List) {
+			any = Type.List(Type.T_ANY, ((Type.List) test).nonEmpty());
+		} else if (test instanceof Type.Set) {
+			any = Type.Set(Type.T_ANY, ((Type.Set) test).nonEmpty());
+		} else if (test instanceof Type.Map) {
+			any = Type.T_MAP_ANY;
+		} else {
+			return test;
+		}
+		if (Type.isSubtype(test, Type.intersect(src, any))) {
+			return any;
+		} else {
+			return test;
+		}
+	}
+	
 	private void translate(Code.Loop c, int freeSlot,
 			ArrayList<Bytecode> bytecodes) {
+		translateLoopCopies(c, bytecodes);
 		bytecodes.add(new Bytecode.Label(c.target + "$head"));
 	}
 	
+	/**
+	 * Copy those registers which are updated in place within a given loop,
+	 * but which may be shared on entry to it. Thus, only the first iteration
+	 * pays for the copy. A register is copied only when it holds a value of
+	 * the type at which it is updated within the loop.
+	 * 
+	 * @param c
+	 *            --- the loop being translated.
+	 * @param bytecodes
+	 *            --- list of bytecodes to append to.
+	 */
+	private void translateLoopCopies(Code.Loop c, ArrayList<Bytecode> bytecodes) {
+		BitSet copies = uniqueness.loopCopies(codeIndex);
+		for (int r = copies.nextSetBit(0); r >= 0; r = copies.nextSetBit(r + 1)) {
+			JvmType.Clazz type = (JvmType.Clazz) convertType(uniqueness
+					.loopCopyType(codeIndex, r));
+			String skip = c.target + "$copy" + r;
+			bytecodes.add(new Bytecode.Load(r, JAVA_LANG_OBJECT));
+			bytecodes.add(new Bytecode.InstanceOf(type));
+			bytecodes.add(new Bytecode.If(Bytecode.If.EQ, skip));
+			bytecodes.add(new Bytecode.Load(r, JAVA_LANG_OBJECT));
+			bytecodes.add(new Bytecode.CheckCast(type));
+			JvmType.Function ftype = new JvmType.Function(type, type);
+			bytecodes.add(new Bytecode.Invoke(WHILEYUTIL, "internal_copy",
+					ftype, Bytecode.STATIC));
+			bytecodes.add(new Bytecode.Store(r, type));
+			bytecodes.add(new Bytecode.Label(skip));
+		}
+	}
+	
 	protected void translate(Code.LoopEnd end,			
 			int freeSlot, ArrayList<Bytecode> bytecodes) {
 		bytecodes.add(new Bytecode.Goto(end.label + "$head"));
@@ -1061,6 +1267,11 @@ public class Wyil2JavaBuilder implements Builder {
 	private int translate(Code.ForAll c, int freeSlot,
 			ArrayList<Bytecode> bytecodes) {	
 		
+		Code.BinArithOp range = countedLoops.get(c.sourceOperand);
+		if (range != null) {
+			return translateCountedLoop(c, range, freeSlot, bytecodes);
+		}
+		
 		Type elementType = c.type.element();		
 
 		bytecodes.add(new Bytecode.Load(c.sourceOperand, convertType((Type) c.type)));
@@ -1068,6 +1279,7 @@ public class Wyil2JavaBuilder implements Builder {
 		bytecodes.add(new Bytecode.Invoke(WHILEYCOLLECTION, "iterator", ftype, Bytecode.STATIC));
 		ftype = new JvmType.Function(JAVA_UTIL_ITERATOR);
 		bytecodes.add(new Bytecode.Store(freeSlot, JAVA_UTIL_ITERATOR));
+		translateLoopCopies(c, bytecodes);
 		bytecodes.add(new Bytecode.Label(c.target + "$head"));
 		ftype = new JvmType.Function(T_BOOL);
 		bytecodes.add(new Bytecode.Load(freeSlot, JAVA_UTIL_ITERATOR));
@@ -1087,6 +1299,60 @@ public class Wyil2JavaBuilder implements Builder {
 		return freeSlot + 1;
 	}
 	
+	/**
+	 * Translate a <code>forall</code> loop over a range <code>lo..hi</code>
+	 * as a counting loop. This avoids materialising the range as a list of
+	 * integers. Since the range is constructed immediately before the loop,
+	 * its operands still hold the bounds.
+	 * 
+	 * @param c
+	 *            --- the loop being translated.
+	 * @param range
+	 *            --- the code which constructs the range.
+	 * @param freeSlot
+	 *            --- identifies the first unsused bytecode register.
+	 * @param bytecodes
+	 *            --- list of bytecodes to append to.
+	 * @return
+	 */
+	private int translateCountedLoop(Code.ForAll c, Code.BinArithOp range,
+			int freeSlot, ArrayList<Bytecode> bytecodes) {
+		int cursor = freeSlot;
+		int end = freeSlot + 1;
+		int step = freeSlot + 2;
+		bytecodes.add(new Bytecode.Load(range.leftOperand, WHILEYINT));
+		bytecodes.add(new Bytecode.Store(cursor, WHILEYINT));
+		bytecodes.add(new Bytecode.Load(range.rightOperand, WHILEYINT));
+		bytecodes.add(new Bytecode.Store(end, WHILEYINT));
+		bytecodes.add(new Bytecode.Load(cursor, WHILEYINT));
+		bytecodes.add(new Bytecode.Load(end, WHILEYINT));
+		JvmType.Function ftype = new JvmType.Function(WHILEYINT, WHILEYINT,
+				WHILEYINT);
+		bytecodes.add(new Bytecode.Invoke(WHILEYINTOPS, "step", ftype,
+				Bytecode.STATIC));
+		bytecodes.add(new Bytecode.Store(step, WHILEYINT));
+		translateLoopCopies(c, bytecodes);
+		
+		bytecodes.add(new Bytecode.Label(c.target + "$head"));
+		bytecodes.add(new Bytecode.Load(cursor, WHILEYINT));
+		bytecodes.add(new Bytecode.Load(end, WHILEYINT));
+		ftype = new JvmType.Function(T_BOOL, JAVA_LANG_OBJECT);
+		bytecodes.add(new Bytecode.Invoke(WHILEYINT, "equals", ftype,
+				Bytecode.VIRTUAL));
+		bytecodes.add(new Bytecode.If(Bytecode.If.NE, c.target));
+		bytecodes.add(new Bytecode.Load(cursor, WHILEYINT));
+		bytecodes.add(new Bytecode.Store(c.indexOperand, WHILEYINT));
+		bytecodes.add(new Bytecode.Load(cursor, WHILEYINT));
+		bytecodes.add(new Bytecode.Load(step, WHILEYINT));
+		addArithOp(Type.T_INT, "add", bytecodes);
+		bytecodes.add(new Bytecode.Store(cursor, WHILEYINT));
+		
+		// we need to increase the freeSlot, since we've allocated three slots
+		// to hold the loop state.
+		
+		return freeSlot + 3;
+	}
+	
 	private void translate(Code.Goto c, int freeSlot,
 			ArrayList<Bytecode> bytecodes) {
 		bytecodes.add(new Bytecode.Goto(c.target));
@@ -1166,7 +1432,9 @@ public class Wyil2JavaBuilder implements Builder {
 		}			
 		
 		JvmType.Function ftype = new JvmType.Function(WHILEYLIST,leftType,rightType);
-		bytecodes.add(new Bytecode.Invoke(WHILEYLIST, "append", ftype,
+		String operation = uniqueness.isInPlace(codeIndex) ? "internal_append"
+				: "append";
+		bytecodes.add(new Bytecode.Invoke(WHILEYLIST, operation, ftype,
 				Bytecode.STATIC));	
 		bytecodes.add(new Bytecode.Store(c.target, WHILEYLIST));
 	}
@@ -1189,7 +1457,9 @@ public class Wyil2JavaBuilder implements Builder {
 		
 		JvmType.Function ftype = new JvmType.Function(WHILEYLIST, WHILEYLIST,
 				WHILEYINT, WHILEYINT);
-		bytecodes.add(new Bytecode.Invoke(WHILEYLIST, "sublist", ftype,
+		String operation = uniqueness.isInPlace(codeIndex) ? "internal_sublist"
+				: "sublist";
+		bytecodes.add(new Bytecode.Invoke(WHILEYLIST, operation, ftype,
 				Bytecode.STATIC));
 		
 		bytecodes.add(new Bytecode.Store(c.target, WHILEYLIST));
@@ -1216,8 +1486,9 @@ public class Wyil2JavaBuilder implements Builder {
 		
 		bytecodes.add(new Bytecode.Load(c.operand, WHILEYRECORD));
 		
-		bytecodes.add(new Bytecode.LoadConst(c.field));
-		JvmType.Function ftype = new JvmType.Function(JAVA_LANG_OBJECT,WHILEYRECORD,JAVA_LANG_STRING);
+		int index = fieldIndex(c.type, c.field);
+		addFieldAccess(c.field, index, bytecodes);
+		JvmType.Function ftype = fieldAccessType(JAVA_LANG_OBJECT, index);
 		bytecodes.add(new Bytecode.Invoke(WHILEYRECORD,"get",ftype,Bytecode.STATIC));						
 		addReadConversion(c.fieldType(),bytecodes);
 		
@@ -1226,6 +1497,12 @@ public class Wyil2JavaBuilder implements Builder {
 
 	private void translate(Code.BinArithOp c, Block.Entry stmt, int freeSlot,
 			ArrayList<Bytecode> bytecodes) {				
+		if (c.kind == Code.BinArithKind.RANGE
+				&& countedLoops.containsKey(c.target)) {
+			// this range is never materialised, since the loop which follows
+			// iterates over it directly.
+			return;
+		}
 						
 		JvmType type = convertType(c.type);
 		JvmType.Function ftype = new JvmType.Function(type,type);
@@ -1257,24 +1534,19 @@ public class Wyil2JavaBuilder implements Builder {
 		// second, apply operation
 		switch(c.kind) {
 		case ADD:			
-			bytecodes.add(new Bytecode.Invoke((JvmType.Clazz)type, "add", ftype,
-					Bytecode.VIRTUAL));
+			addArithOp(c.type, "add", bytecodes);
 			break;
 		case SUB:			
-			bytecodes.add(new Bytecode.Invoke((JvmType.Clazz)type, "subtract", ftype,
-					Bytecode.VIRTUAL));
+			addArithOp(c.type, "subtract", bytecodes);
 			break;
 		case MUL:			
-			bytecodes.add(new Bytecode.Invoke((JvmType.Clazz)type, "multiply", ftype,
-					Bytecode.VIRTUAL));
+			addArithOp(c.type, "multiply", bytecodes);
 			break;
 		case DIV:			
-			bytecodes.add(new Bytecode.Invoke((JvmType.Clazz)type, "divide", ftype,
-					Bytecode.VIRTUAL));			
+			addArithOp(c.type, "divide", bytecodes);
 			break;
 		case REM:									
-				bytecodes.add(new Bytecode.Invoke((JvmType.Clazz) type,
-						"remainder", ftype, Bytecode.VIRTUAL));			
+			addArithOp(c.type, "remainder", bytecodes);
 			break;
 		case RANGE:
 			ftype = new JvmType.Function(WHILEYLIST,WHILEYINT,WHILEYINT);
@@ -1368,6 +1640,10 @@ public class Wyil2JavaBuilder implements Builder {
 			internalFailure("Unknown set operation encountered: ",filename,stmt);
 			return; // dead-code
 		}
+		
+		if(uniqueness.isInPlace(codeIndex)) {
+			operation = "internal_" + operation;
+		}
 					
 		bytecodes.add(new Bytecode.Invoke(WHILEYSET, operation, ftype,
 				Bytecode.STATIC));
@@ -1451,27 +1727,57 @@ public class Wyil2JavaBuilder implements Builder {
 				name = "denominator";
 				break;
 		}
-		JvmType.Function ftype = new JvmType.Function(targetType);
 		bytecodes.add(new Bytecode.Load(c.operand, srcType));
-		bytecodes.add(new Bytecode.Invoke((JvmType.Clazz) srcType, name,
-				ftype, Bytecode.VIRTUAL));		
+		if (c.type instanceof Type.Int) {
+			// integer negation has a fast path for small values
+			JvmType.Function ftype = new JvmType.Function(WHILEYINT, WHILEYINT);
+			bytecodes.add(new Bytecode.Invoke(WHILEYINTOPS, name, ftype,
+					Bytecode.STATIC));
+		} else {
+			JvmType.Function ftype = new JvmType.Function(targetType);
+			bytecodes.add(new Bytecode.Invoke((JvmType.Clazz) srcType, name,
+					ftype, Bytecode.VIRTUAL));
+		}
 		bytecodes.add(new Bytecode.Store(c.target, targetType));
 	}
 	
+	/**
+	 * Apply an arithmetic operation to the two operands on top of the stack.
+	 * For integers, this goes through <code>WyInt</code>, which performs the
+	 * operation on <code>long</code>s whenever the operands are small enough.
+	 * 
+	 * @param type
+	 *            --- type of operands.
+	 * @param name
+	 *            --- name of operation.
+	 * @param bytecodes
+	 *            --- list of bytecodes to append to.
+	 */
+	private void addArithOp(Type type, String name,
+			ArrayList<Bytecode> bytecodes) {
+		if (type instanceof Type.Int) {
+			JvmType.Function ftype = new JvmType.Function(WHILEYINT,
+					WHILEYINT, WHILEYINT);
+			bytecodes.add(new Bytecode.Invoke(WHILEYINTOPS, name, ftype,
+					Bytecode.STATIC));
+		} else {
+			JvmType.Clazz jt = (JvmType.Clazz) convertType(type);
+			JvmType.Function ftype = new JvmType.Function(jt, jt);
+			bytecodes.add(new Bytecode.Invoke(jt, name, ftype,
+					Bytecode.VIRTUAL));
+		}
+	}
+	
 	private void translate(Code.NewObject c, int freeSlot,
 			ArrayList<Bytecode> bytecodes) {			
 		JvmType type = convertType(c.type);		
 		bytecodes.add(new Bytecode.New(WHILEYOBJECT));			
 		bytecodes.add(new Bytecode.Dup(WHILEYOBJECT));	
-		bytecodes.add(new Bytecode.Dup(WHILEYOBJECT));	
 		bytecodes.add(new Bytecode.Load(c.operand, convertType(c.type.element())));
 		addWriteConversion(c.type.element(),bytecodes);
 		JvmType.Function ftype = new JvmType.Function(T_VOID,JAVA_LANG_OBJECT);
 		bytecodes.add(new Bytecode.Invoke(WHILEYOBJECT, "<init>", ftype,
 				Bytecode.SPECIAL));
-		ftype = new JvmType.Function(T_VOID);			
-		bytecodes.add(new Bytecode.Invoke(WHILEYOBJECT, "start", ftype,
-				Bytecode.VIRTUAL));
 		bytecodes.add(new Bytecode.Store(c.target, type));
 	}
 	
@@ -1489,14 +1795,9 @@ public class Wyil2JavaBuilder implements Builder {
 	}
 	
 	protected void translate(Code.NewList c, int freeSlot, ArrayList<Bytecode> bytecodes) {
-		bytecodes.add(new Bytecode.New(WHILEYLIST));		
-		bytecodes.add(new Bytecode.Dup(WHILEYLIST));
-		bytecodes.add(new Bytecode.LoadConst(c.operands.length));
-		JvmType.Function ftype = new JvmType.Function(T_VOID,T_INT);
-		bytecodes.add(new Bytecode.Invoke(WHILEYLIST, "<init>", ftype,
-				Bytecode.SPECIAL));
+		constructList(c.type.element(), c.operands.length, bytecodes);
 		
-		ftype = new JvmType.Function(WHILEYLIST, WHILEYLIST, JAVA_LANG_OBJECT);
+		JvmType.Function ftype = new JvmType.Function(WHILEYLIST, WHILEYLIST, JAVA_LANG_OBJECT);
 		for (int i = 0; i != c.operands.length; ++i) {
 			bytecodes.add(new Bytecode.Load(c.operands[i], convertType(c.type
 					.element())));
@@ -1508,6 +1809,33 @@ public class Wyil2JavaBuilder implements Builder {
 		bytecodes.add(new Bytecode.Store(c.target, WHILEYLIST));
 	}
 		
+	/**
+	 * Construct an empty list with a given capacity. Lists of bytes are
+	 * constructed so as to hold their items unboxed.
+	 * 
+	 * @param element
+	 *            --- the element type of the list.
+	 * @param capacity
+	 *            --- the number of items the list will initially hold.
+	 * @param bytecodes
+	 */
+	private void constructList(Type element, int capacity,
+			ArrayList<Bytecode> bytecodes) {
+		if (element.equals(Type.T_BYTE)) {
+			bytecodes.add(new Bytecode.LoadConst(capacity));
+			JvmType.Function ftype = new JvmType.Function(WHILEYLIST, T_INT);
+			bytecodes.add(new Bytecode.Invoke(WHILEYLIST, "newBytes", ftype,
+					Bytecode.STATIC));
+		} else {
+			bytecodes.add(new Bytecode.New(WHILEYLIST));
+			bytecodes.add(new Bytecode.Dup(WHILEYLIST));
+			bytecodes.add(new Bytecode.LoadConst(capacity));
+			JvmType.Function ftype = new JvmType.Function(T_VOID, T_INT);
+			bytecodes.add(new Bytecode.Invoke(WHILEYLIST, "<init>", ftype,
+					Bytecode.SPECIAL));
+		}
+	}
+	
 	protected void translate(Code.NewMap c, int freeSlot,
 			ArrayList<Bytecode> bytecodes) {
 		
@@ -1532,25 +1860,33 @@ public class Wyil2JavaBuilder implements Builder {
 	}
 	
 	private void translate(Code.NewRecord code, int freeSlot,
+			HashMap<JvmConstant,Integer> constants,
 			ArrayList<Bytecode> bytecodes) {
-		construct(WHILEYRECORD, freeSlot, bytecodes);				
-		JvmType.Function ftype = new JvmType.Function(JAVA_LANG_OBJECT,
-				JAVA_LANG_OBJECT, JAVA_LANG_OBJECT);
-		
 		HashMap<String,Type> fields = code.type.fields();
 		ArrayList<String> keys = new ArrayList<String>(fields.keySet());
 		Collections.sort(keys);
+		
+		bytecodes.add(new Bytecode.New(WHILEYRECORD));
+		bytecodes.add(new Bytecode.Dup(WHILEYRECORD));
+		int id = JvmShape.get(keys, constants);
+		bytecodes.add(new Bytecode.GetField(owner, "shape$" + id,
+				JAVA_LANG_STRING_ARRAY, Bytecode.STATIC));
+		bytecodes.add(new Bytecode.LoadConst(code.operands.length));
+		bytecodes.add(new Bytecode.New(JAVA_LANG_OBJECT_ARRAY));
 		for (int i = 0; i != code.operands.length; i++) {
 			int register = code.operands[i];
 			String key = keys.get(i);
 			Type fieldType = fields.get(key);				
-			bytecodes.add(new Bytecode.Dup(WHILEYRECORD));
-			bytecodes.add(new Bytecode.LoadConst(key));
+			bytecodes.add(new Bytecode.Dup(JAVA_LANG_OBJECT_ARRAY));
+			bytecodes.add(new Bytecode.LoadConst(i));
 			bytecodes.add(new Bytecode.Load(register, convertType(fieldType)));
 			addWriteConversion(fieldType,bytecodes);			
-			bytecodes.add(new Bytecode.Invoke(WHILEYRECORD,"put",ftype,Bytecode.VIRTUAL));						
-			bytecodes.add(new Bytecode.Pop(JAVA_LANG_OBJECT));
+			bytecodes.add(new Bytecode.ArrayStore(JAVA_LANG_OBJECT_ARRAY));
 		}
+		JvmType.Function ftype = new JvmType.Function(T_VOID,
+				JAVA_LANG_STRING_ARRAY, JAVA_LANG_OBJECT_ARRAY);
+		bytecodes.add(new Bytecode.Invoke(WHILEYRECORD, "<init>", ftype,
+				Bytecode.SPECIAL));
 		
 		bytecodes.add(new Bytecode.Store(code.target, WHILEYRECORD));
 	}
@@ -1672,22 +2008,37 @@ public class Wyil2JavaBuilder implements Builder {
 		
 		Type.FunctionOrMethod ft = c.type;		
 		JvmType.Clazz owner = (JvmType.Clazz) convertType(ft);
+		JvmType.Function type;
 		bytecodes.add(new Bytecode.Load(c.operand,convertType(ft)));
-		bytecodes.add(new Bytecode.LoadConst(ft.params().size()));
-		bytecodes.add(new Bytecode.New(JAVA_LANG_OBJECT_ARRAY));
-				
-		for (int i = 0; i != c.operands.length; ++i) {			
-			int register = c.operands[i];
-			Type pt = c.type.params().get(i);
-			JvmType jpt = convertType(pt);
-			bytecodes.add(new Bytecode.Dup(JAVA_LANG_OBJECT_ARRAY));
-			bytecodes.add(new Bytecode.LoadConst(i));
-			bytecodes.add(new Bytecode.Load(register, jpt));
-			addWriteConversion(pt,bytecodes);
-			bytecodes.add(new Bytecode.ArrayStore(JAVA_LANG_OBJECT_ARRAY));
-		}		
-						
-		JvmType.Function type = new JvmType.Function(JAVA_LANG_OBJECT,JAVA_LANG_OBJECT_ARRAY);		
+		
+		if (c.operands.length <= MAX_DIRECT_CALL_ARITY) {
+			// small arities are passed directly, avoiding the argument array.
+			ArrayList<JvmType> paramTypes = new ArrayList<JvmType>();
+			for (int i = 0; i != c.operands.length; ++i) {
+				Type pt = c.type.params().get(i);
+				bytecodes.add(new Bytecode.Load(c.operands[i], convertType(pt)));
+				addWriteConversion(pt, bytecodes);
+				paramTypes.add(JAVA_LANG_OBJECT);
+			}
+			type = new JvmType.Function(JAVA_LANG_OBJECT, paramTypes);
+		} else {
+			bytecodes.add(new Bytecode.LoadConst(ft.params().size()));
+			bytecodes.add(new Bytecode.New(JAVA_LANG_OBJECT_ARRAY));
+
+			for (int i = 0; i != c.operands.length; ++i) {
+				int register = c.operands[i];
+				Type pt = c.type.params().get(i);
+				JvmType jpt = convertType(pt);
+				bytecodes.add(new Bytecode.Dup(JAVA_LANG_OBJECT_ARRAY));
+				bytecodes.add(new Bytecode.LoadConst(i));
+				bytecodes.add(new Bytecode.Load(register, jpt));
+				addWriteConversion(pt, bytecodes);
+				bytecodes.add(new Bytecode.ArrayStore(JAVA_LANG_OBJECT_ARRAY));
+			}
+
+			type = new JvmType.Function(JAVA_LANG_OBJECT,
+					JAVA_LANG_OBJECT_ARRAY);
+		}
 		
 		bytecodes.add(new Bytecode.Invoke(owner, "call", type,
 				Bytecode.VIRTUAL));	
@@ -1787,7 +2138,7 @@ public class Wyil2JavaBuilder implements Builder {
 			bytecodes.add(new Bytecode.LoadConst(num.intValue()));				
 			bytecodes.add(new Bytecode.Conversion(T_INT,T_LONG));
 			JvmType.Function ftype = new JvmType.Function(WHILEYINT,T_LONG);
-			bytecodes.add(new Bytecode.Invoke(WHILEYINT, "valueOf", ftype,
+			bytecodes.add(new Bytecode.Invoke(WHILEYINTOPS, "valueOf", ftype,
 					Bytecode.STATIC));
 		} else if(num.bitLength() < 64) {			
 			bytecodes.add(new Bytecode.LoadConst(num.longValue()));				
@@ -1928,14 +2279,9 @@ public class Wyil2JavaBuilder implements Builder {
 
 	protected void translate(Constant.List lv, int freeSlot,
 			ArrayList<Bytecode> bytecodes) {		
-		bytecodes.add(new Bytecode.New(WHILEYLIST));		
-		bytecodes.add(new Bytecode.Dup(WHILEYLIST));
-		bytecodes.add(new Bytecode.LoadConst(lv.values.size()));
-		JvmType.Function ftype = new JvmType.Function(T_VOID,T_INT);
-		bytecodes.add(new Bytecode.Invoke(WHILEYLIST, "<init>", ftype,
-				Bytecode.SPECIAL));
+		constructList(lv.type().element(), lv.values.size(), bytecodes);
 		
-		ftype = new JvmType.Function(T_BOOL, JAVA_LANG_OBJECT);		
+		JvmType.Function ftype = new JvmType.Function(T_BOOL, JAVA_LANG_OBJECT);		
 		for (Constant e : lv.values) {	
 			bytecodes.add(new Bytecode.Dup(WHILEYLIST));
 			translate(e, freeSlot, bytecodes);
@@ -1968,19 +2314,107 @@ public class Wyil2JavaBuilder implements Builder {
 	
 	protected void translate(Constant.Record expr, int freeSlot,
 			ArrayList<Bytecode> bytecodes) {
-		JvmType.Function ftype = new JvmType.Function(JAVA_LANG_OBJECT,
-				JAVA_LANG_OBJECT, JAVA_LANG_OBJECT);
-		construct(WHILEYRECORD, freeSlot, bytecodes);
-		for (Map.Entry<String, Constant> e : expr.values.entrySet()) {
-			Type et = e.getValue().type();
-			bytecodes.add(new Bytecode.Dup(WHILEYRECORD));
-			bytecodes.add(new Bytecode.LoadConst(e.getKey()));
-			translate(e.getValue(), freeSlot, bytecodes);
-			addWriteConversion(et, bytecodes);
-			bytecodes.add(new Bytecode.Invoke(WHILEYRECORD, "put", ftype,
-					Bytecode.VIRTUAL));
-			bytecodes.add(new Bytecode.Pop(JAVA_LANG_OBJECT));
+		ArrayList<String> keys = new ArrayList<String>(expr.values.keySet());
+		Collections.sort(keys);
+		
+		bytecodes.add(new Bytecode.New(WHILEYRECORD));
+		bytecodes.add(new Bytecode.Dup(WHILEYRECORD));
+		// record constants are only translated when initialising the
+		// constant pool, so the shape is simply computed here.
+		translateShape(keys, bytecodes);		
+		bytecodes.add(new Bytecode.LoadConst(keys.size()));
+		bytecodes.add(new Bytecode.New(JAVA_LANG_OBJECT_ARRAY));
+		for (int i = 0; i != keys.size(); ++i) {
+			Constant value = expr.values.get(keys.get(i));
+			bytecodes.add(new Bytecode.Dup(JAVA_LANG_OBJECT_ARRAY));
+			bytecodes.add(new Bytecode.LoadConst(i));
+			translate(value, freeSlot, bytecodes);
+			addWriteConversion(value.type(), bytecodes);
+			bytecodes.add(new Bytecode.ArrayStore(JAVA_LANG_OBJECT_ARRAY));
 		}
+		JvmType.Function ftype = new JvmType.Function(T_VOID,
+				JAVA_LANG_STRING_ARRAY, JAVA_LANG_OBJECT_ARRAY);
+		bytecodes.add(new Bytecode.Invoke(WHILEYRECORD, "<init>", ftype,
+				Bytecode.SPECIAL));
+	}
+	
+	/**
+	 * Translate code which constructs the interned shape for a record with the
+	 * given (sorted) field names.
+	 * 
+	 * @param keys
+	 *            --- sorted field names.
+	 * @param bytecodes
+	 *            --- list of bytecodes to append to.
+	 */
+	private void translateShape(List<String> keys, ArrayList<Bytecode> bytecodes) {
+		bytecodes.add(new Bytecode.LoadConst(keys.size()));
+		bytecodes.add(new Bytecode.New(JAVA_LANG_STRING_ARRAY));
+		for (int i = 0; i != keys.size(); ++i) {
+			bytecodes.add(new Bytecode.Dup(JAVA_LANG_STRING_ARRAY));
+			bytecodes.add(new Bytecode.LoadConst(i));
+			bytecodes.add(new Bytecode.LoadConst(keys.get(i)));
+			bytecodes.add(new Bytecode.ArrayStore(JAVA_LANG_STRING_ARRAY));
+		}
+		JvmType.Function ftype = new JvmType.Function(JAVA_LANG_STRING_ARRAY,
+				JAVA_LANG_STRING_ARRAY);
+		bytecodes.add(new Bytecode.Invoke(WHILEYRECORD, "shape", ftype,
+				Bytecode.STATIC));
+	}
+	
+	/**
+	 * Determine the index of a field within the shape of any record of the
+	 * given type. This is known at compile time only for closed record types,
+	 * since a value of open record type may have additional fields. In any
+	 * other case, <code>-1</code> is returned.
+	 * 
+	 * @param type
+	 *            --- type of record being accessed.
+	 * @param field
+	 *            --- name of field being accessed.
+	 * @return
+	 */
+	private static int fieldIndex(Object type, String field) {
+		if (type instanceof Type.Record && !((Type.Record) type).isOpen()) {
+			ArrayList<String> keys = new ArrayList<String>(
+					((Type.Record) type).keys());
+			Collections.sort(keys);
+			return keys.indexOf(field);
+		}
+		return -1;
+	}
+
+	/**
+	 * Push the operands identifying a record field. These are the field name
+	 * and, if known, the index of the field within the record's shape.
+	 * 
+	 * @param field
+	 *            --- name of field being accessed.
+	 * @param index
+	 *            --- index of field, or <code>-1</code> if not known.
+	 * @param bytecodes
+	 *            --- list of bytecodes to append to.
+	 */
+	private static void addFieldAccess(String field, int index,
+			ArrayList<Bytecode> bytecodes) {
+		bytecodes.add(new Bytecode.LoadConst(field));
+		if (index >= 0) {
+			bytecodes.add(new Bytecode.LoadConst(index));
+		}
+	}
+	
+	private static JvmType.Function fieldAccessType(JvmType ret, int index,
+			JvmType... params) {
+		ArrayList<JvmType> paramTypes = new ArrayList<JvmType>();
+		paramTypes.add(WHILEYRECORD);
+		paramTypes.add(JAVA_LANG_STRING);
+		if (index >= 0) {
+			paramTypes.add(T_INT);
+		}
+		for (JvmType p : params) {
+			paramTypes.add(p);
+		}
+		return new JvmType.Function(ret, paramTypes);
 	}
 	
 	protected void translate(Constant.Map expr, int freeSlot,
@@ -2475,32 +2909,41 @@ public class Wyil2JavaBuilder implements Builder {
 	private void buildCoercion(Type.Record fromType, Type.Record toType, 
 			int freeSlot, HashMap<JvmConstant,Integer> constants,
 			ArrayList<Bytecode> bytecodes) {		
-		int oldSlot = freeSlot++;
-		int newSlot = freeSlot++;		
+		int oldSlot = freeSlot++;		
 		bytecodes.add(new Bytecode.Store(oldSlot,WHILEYRECORD));
-		construct(WHILEYRECORD,freeSlot,bytecodes);
-		bytecodes.add(new Bytecode.Store(newSlot,WHILEYRECORD));
 		Map<String,Type> toFields = toType.fields();
 		Map<String,Type> fromFields = fromType.fields();
-		for(String key : toFields.keySet()) {
+		ArrayList<String> keys = new ArrayList<String>(toFields.keySet());
+		Collections.sort(keys);
+		bytecodes.add(new Bytecode.New(WHILEYRECORD));
+		bytecodes.add(new Bytecode.Dup(WHILEYRECORD));
+		int id = JvmShape.get(keys, constants);
+		bytecodes.add(new Bytecode.GetField(owner, "shape$" + id,
+				JAVA_LANG_STRING_ARRAY, Bytecode.STATIC));
+		bytecodes.add(new Bytecode.LoadConst(keys.size()));
+		bytecodes.add(new Bytecode.New(JAVA_LANG_OBJECT_ARRAY));
+		for(int i=0;i!=keys.size();++i) {
+			String key = keys.get(i);
 			Type to = toFields.get(key);
-			Type from = fromFields.get(key);				
-			bytecodes.add(new Bytecode.Load(newSlot,WHILEYRECORD));
-			bytecodes.add(new Bytecode.LoadConst(key));
+			Type from = fromFields.get(key);
+			int index = fieldIndex(fromType, key);
+			bytecodes.add(new Bytecode.Dup(JAVA_LANG_OBJECT_ARRAY));
+			bytecodes.add(new Bytecode.LoadConst(i));
 			bytecodes.add(new Bytecode.Load(oldSlot,WHILEYRECORD));
-			bytecodes.add(new Bytecode.LoadConst(key));
-			JvmType.Function ftype = new JvmType.Function(JAVA_LANG_OBJECT,JAVA_LANG_OBJECT);			
-			bytecodes.add(new Bytecode.Invoke(WHILEYRECORD,"get",ftype,Bytecode.VIRTUAL));								
+			addFieldAccess(key, index, bytecodes);
+			JvmType.Function ftype = fieldAccessType(JAVA_LANG_OBJECT, index);			
+			bytecodes.add(new Bytecode.Invoke(WHILEYRECORD,"get",ftype,Bytecode.STATIC));								
 			// TODO: in cases when the read conversion is a no-op, we can do
 			// better here.
 			addReadConversion(from,bytecodes);							
 			addCoercion(from,to,freeSlot,constants,bytecodes);
 			addWriteConversion(from,bytecodes);
-			ftype = new JvmType.Function(JAVA_LANG_OBJECT,JAVA_LANG_OBJECT,JAVA_LANG_OBJECT);			
-			bytecodes.add(new Bytecode.Invoke(WHILEYRECORD,"put",ftype,Bytecode.VIRTUAL));
-			bytecodes.add(new Bytecode.Pop(JAVA_LANG_OBJECT));			
+			bytecodes.add(new Bytecode.ArrayStore(JAVA_LANG_OBJECT_ARRAY));
 		}
-		bytecodes.add(new Bytecode.Load(newSlot,WHILEYRECORD));		
+		JvmType.Function ftype = new JvmType.Function(T_VOID,
+				JAVA_LANG_STRING_ARRAY, JAVA_LANG_OBJECT_ARRAY);
+		bytecodes.add(new Bytecode.Invoke(WHILEYRECORD, "<init>", ftype,
+				Bytecode.SPECIAL));
 	}
 	
 	private void buildCoercion(Type.Union from, Type to, 
@@ -2726,13 +3169,22 @@ public class Wyil2JavaBuilder implements Builder {
 	private final static JvmType.Clazz WHILEYOBJECT = new JvmType.Clazz("wyjc.runtime", "WyObject");	
 	private final static JvmType.Clazz WHILEYEXCEPTION = new JvmType.Clazz("wyjc.runtime","WyException");	
 	private final static JvmType.Clazz WHILEYINT = new JvmType.Clazz("java.math","BigInteger");
+	private final static JvmType.Clazz WHILEYINTOPS = new JvmType.Clazz("wyjc.runtime","WyInt");
 	private final static JvmType.Clazz WHILEYRAT = new JvmType.Clazz("wyjc.runtime","WyRat");
 	private final static JvmType.Clazz WHILEYFUNCTION = new JvmType.Clazz("wyjc.runtime","WyFunction");
 	private final static JvmType.Clazz WHILEYMETHOD = new JvmType.Clazz("wyjc.runtime","WyMethod");
 	
+	/**
+	 * The largest number of arguments for which an indirect invocation calls
+	 * the function directly, rather than through an argument array (see
+	 * <code>WyFunctionOrMethod.call</code>).
+	 */
+	private final static int MAX_DIRECT_CALL_ARITY = 3;
+	
 	private static final JvmType.Clazz JAVA_LANG_CHARACTER = new JvmType.Clazz("java.lang","Character");
 	private static final JvmType.Clazz JAVA_LANG_SYSTEM = new JvmType.Clazz("java.lang","System");
 	private static final JvmType.Array JAVA_LANG_OBJECT_ARRAY = new JvmType.Array(JAVA_LANG_OBJECT);
+	private static final JvmType.Array JAVA_LANG_STRING_ARRAY = new JvmType.Array(JAVA_LANG_STRING);
 	private static final JvmType.Clazz JAVA_UTIL_LIST = new JvmType.Clazz("java.util","List");
 	private static final JvmType.Clazz JAVA_UTIL_SET = new JvmType.Clazz("java.util","Set");
 	//private static final JvmType.Clazz JAVA_LANG_REFLECT_METHOD = new JvmType.Clazz("java.lang.reflect","Method");
@@ -2885,6 +3337,34 @@ public class Wyil2JavaBuilder implements Builder {
 		}
 	}
 	
+	private static final class JvmShape extends JvmConstant {
+		public final List<String> fields;
+		public JvmShape(List<String> fields) {
+			this.fields = fields;
+		}
+		public boolean equals(Object o) {
+			if(o instanceof JvmShape) {
+				JvmShape s = (JvmShape) o;
+				return fields.equals(s.fields);
+			}
+			return false;
+		}
+		public int hashCode() {
+			return fields.hashCode();
+		}
+		public static int get(List<String> fields, HashMap<JvmConstant,Integer> constants) {
+			JvmShape vc = new JvmShape(fields);
+			Integer r = constants.get(vc);
+			if(r != null) {
+				return r;
+			} else {
+				int x = constants.size();
+				constants.put(vc, x);
+				return x;
+			}			
+		}
+	}
+	
 	private static class UnresolvedHandler {
 		public String start;
 		public String end;
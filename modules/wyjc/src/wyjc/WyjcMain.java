@@ -47,9 +47,27 @@ public class WyjcMain extends WycMain {
 
 	public static final OptArg[] EXTRA_OPTIONS = { 
 		new OptArg("classdir", "cd", OptArg.FILEDIR, "Specify where to place generated class files",
-			new File("."))
+			new File(".")),
+		new OptArg("target", OptArg.INT,
+			"Specify Java version of generated class files (e.g. 5, 6, 7 or 8)"),
+		new OptArg("persistent",
+			"Use persistent (structure sharing) lists, sets and maps")
 	};
 	
+	/**
+	 * The complete set of command-line options accepted by wyjc, which are the
+	 * default options of wyc extended with the above.
+	 */
+	public static final OptArg[] OPTIONS = new OptArg[WycMain.DEFAULT_OPTIONS.length
+			+ EXTRA_OPTIONS.length];
+
+	static {
+		System.arraycopy(WycMain.DEFAULT_OPTIONS, 0, OPTIONS, 0,
+				WycMain.DEFAULT_OPTIONS.length);
+		System.arraycopy(EXTRA_OPTIONS, 0, OPTIONS,
+				WycMain.DEFAULT_OPTIONS.length, EXTRA_OPTIONS.length);
+	}
+	
 	public WyjcMain(WyjcBuildTask builder, OptArg[] options) {
 		super(builder, options);
 	}
@@ -62,18 +80,17 @@ public class WyjcMain extends WycMain {
 		if (classDir != null) {
 			((WyjcBuildTask) builder).setClassDir(classDir);
 		}
+		
+		Integer target = (Integer) values.get("target");
+		if (target != null) {
+			((WyjcBuildTask) builder).setTarget(target);
+		}
+		
+		((WyjcBuildTask) builder).setPersistentCollections(values
+				.containsKey("persistent"));
 	}
 	
 	public static void main(String[] args) {
-		// first append options
-		OptArg[] options = new OptArg[WycMain.DEFAULT_OPTIONS.length
-				+ EXTRA_OPTIONS.length];
-		System.arraycopy(WycMain.DEFAULT_OPTIONS, 0, options, 0,
-				WycMain.DEFAULT_OPTIONS.length);
-		System.arraycopy(EXTRA_OPTIONS, 0, options,
-				WycMain.DEFAULT_OPTIONS.length, EXTRA_OPTIONS.length);
-
-		// now, run wyjc build task
-		System.exit(new WyjcMain(new WyjcBuildTask(), options).run(args));
+		System.exit(new WyjcMain(new WyjcBuildTask(), OPTIONS).run(args));
 	}
 }
@@ -0,0 +1,212 @@
+// Copyright (c) 2011, David J. Pearce (djp@ecs.vuw.ac.nz)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//    * Redistributions of source code must retain the above copyright
+//      notice, this list of conditions and the following disclaimer.
+//    * Redistributions in binary form must reproduce the above copyright
+//      notice, this list of conditions and the following disclaimer in the
+//      documentation and/or other materials provided with the distribution.
+//    * Neither the name of the <organization> nor the
+//      names of its contributors may be used to endorse or promote products
+//      derived from this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+// ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL DAVID J. PEARCE BE LIABLE FOR ANY
+// DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+// LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+// ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package wyjc.runtime;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * <p>
+ * A list of bytes, which are held unboxed in a <code>byte[]</code> array.
+ * Elements are presented as <code>java.lang.Byte</code> objects, all of which
+ * are cached by the JVM, and so reading an element never allocates.
+ * </p>
+ * 
+ * <p>
+ * A vector can be <i>forked</i> in constant time, after which both versions
+ * share the same storage. Storage which is shared is copied when either
+ * version is first updated. Thus, copying a large list of bytes which is
+ * then only read (e.g. to write it to a file) costs nothing.
+ * </p>
+ * 
+ * <p>
+ * Only <code>java.lang.Byte</code> elements can be stored. Attempting to
+ * store anything else results in a <code>ClassCastException</code>, and it is
+ * the responsibility of <code>WyList</code> to switch to a general
+ * representation beforehand.
+ * </p>
+ */
+public final class ByteVector extends AbstractList<Object> implements
+		RandomAccess {
+	private byte[] data;
+	private int size;
+
+	/**
+	 * Indicates whether <code>data</code> may be shared with another vector,
+	 * and so must be copied before being updated.
+	 */
+	private boolean shared;
+
+	public ByteVector() {
+		this(10);
+	}
+
+	public ByteVector(int capacity) {
+		this.data = new byte[Math.max(capacity, 1)];
+	}
+
+	/**
+	 * Construct a vector from the first <code>size</code> bytes of a given
+	 * array, which is not copied. The caller must not update the array
+	 * afterwards.
+	 * 
+	 * @param data
+	 *            --- the bytes.
+	 * @param size
+	 *            --- the number of bytes used.
+	 */
+	public ByteVector(byte[] data, int size) {
+		this.data = data;
+		this.size = size;
+	}
+
+	/**
+	 * Create a copy of this vector in constant time. Both versions share
+	 * their storage until one of them is updated.
+	 * 
+	 * @return
+	 */
+	public ByteVector fork() {
+		ByteVector v = new ByteVector(data, size);
+		v.shared = shared = true;
+		return v;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public Object get(int index) {
+		checkIndex(index);
+		return java.lang.Byte.valueOf(byteAt(index));
+	}
+
+	public byte byteAt(int index) {
+		return data[index];
+	}
+
+	public Object set(int index, Object value) {
+		checkIndex(index);
+		byte b = (java.lang.Byte) value;
+		editable(size);
+		byte old = data[index];
+		data[index] = b;
+		return java.lang.Byte.valueOf(old);
+	}
+
+	public boolean add(Object value) {
+		byte b = (java.lang.Byte) value;
+		editable(size + 1);
+		data[size++] = b;
+		modCount++;
+		return true;
+	}
+
+	public void add(int index, Object value) {
+		if (index < 0 || index > size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+					+ size);
+		}
+		byte b = (java.lang.Byte) value;
+		editable(size + 1);
+		System.arraycopy(data, index, data, index + 1, size - index);
+		data[index] = b;
+		size++;
+		modCount++;
+	}
+
+	public boolean addAll(Collection<?> c) {
+		if (c instanceof ByteVector) {
+			ByteVector v = (ByteVector) c;
+			int n = v.size;
+			editable(size + n);
+			System.arraycopy(v.data, 0, data, size, n);
+			size += n;
+			modCount++;
+			return n != 0;
+		} else {
+			return super.addAll(c);
+		}
+	}
+
+	public Object remove(int index) {
+		checkIndex(index);
+		editable(size);
+		byte old = data[index];
+		System.arraycopy(data, index + 1, data, index, size - index - 1);
+		size--;
+		modCount++;
+		return java.lang.Byte.valueOf(old);
+	}
+
+	protected void removeRange(int from, int to) {
+		editable(size);
+		System.arraycopy(data, to, data, from, size - to);
+		size -= to - from;
+		modCount++;
+	}
+
+	public void clear() {
+		data = new byte[10];
+		shared = false;
+		size = 0;
+		modCount++;
+	}
+
+	/**
+	 * Get a read-only view of the bytes in this vector, which does not copy
+	 * them.
+	 * 
+	 * @return
+	 */
+	public ByteBuffer toByteBuffer() {
+		return ByteBuffer.wrap(data, 0, size).asReadOnlyBuffer();
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+					+ size);
+		}
+	}
+
+	/**
+	 * Ensure that this vector's storage is an array of at least the given
+	 * capacity, which is not shared with any other vector.
+	 * 
+	 * @param capacity
+	 */
+	private void editable(int capacity) {
+		if (shared || capacity > data.length) {
+			int length = data.length;
+			if (capacity > length) {
+				length = Math.max(capacity, (length * 3) / 2 + 1);
+			}
+			data = Arrays.copyOf(data, length);
+			shared = false;
+		}
+	}
+}
@@ -0,0 +1,484 @@
+// Copyright (c) 2011, David J. Pearce (djp@ecs.vuw.ac.nz)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//    * Redistributions of source code must retain the above copyright
+//      notice, this list of conditions and the following disclaimer.
+//    * Redistributions in binary form must reproduce the above copyright
+//      notice, this list of conditions and the following disclaimer in the
+//      documentation and/or other materials provided with the distribution.
+//    * Neither the name of the <organization> nor the
+//      names of its contributors may be used to endorse or promote products
+//      derived from this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+// ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL DAVID J. PEARCE BE LIABLE FOR ANY
+// DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+// LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+// ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package wyjc.runtime;
+
+import java.util.*;
+
+/**
+ * <p>
+ * A map implemented as a persistent Hash Array Mapped Trie (HAMT). Each level
+ * of the trie consumes five bits of a key's hash code, and each node holds a
+ * bitmap indicating which of its 32 possible slots are occupied, along with a
+ * compact array of just those slots. Keys whose hash codes are identical are
+ * held together in a collision node. Lookups and updates therefore take
+ * <code>O(log<sub>32</sub> n)</code> time.
+ * </p>
+ * 
+ * <p>
+ * As for <code>PersistentVector</code>, a map can be <i>forked</i> in
+ * constant time, after which the two versions share their structure. Only the
+ * version which owns a node may update it in place and, since forking gives
+ * both versions fresh ownership, subsequent updates copy only the path from
+ * the root to the affected key.
+ * </p>
+ */
+public final class PersistentHashMap extends AbstractMap<Object, Object> {
+	private static final int BITS = 5;
+	private static final int MASK = (1 << BITS) - 1;
+
+	/**
+	 * Records the effect of an update on the trie.
+	 */
+	private static final class Change {
+		boolean found;
+		Object value;
+	}
+
+	private abstract static class Node {
+		Object owner;
+
+		Node(Object owner) {
+			this.owner = owner;
+		}
+
+		abstract Object find(int shift, int hash, Object key, Object notFound);
+
+		abstract Node assoc(Object owner, int shift, int hash, Object key,
+				Object value, Change change);
+
+		abstract Node without(Object owner, int shift, int hash, Object key,
+				Change change);
+
+		abstract void entries(ArrayList<Map.Entry<Object, Object>> entries);
+	}
+
+	/**
+	 * A node which maps the five bits of the hash code at its level to either
+	 * a key-value pair or a child node. The slots are held in pairs, where a
+	 * child node is indicated by a <code>null</code> key.
+	 */
+	private static final class BitmapNode extends Node {
+		int bitmap;
+		Object[] array;
+
+		BitmapNode(Object owner, int bitmap, Object[] array) {
+			super(owner);
+			this.bitmap = bitmap;
+			this.array = array;
+		}
+
+		private int index(int bit) {
+			return Integer.bitCount(bitmap & (bit - 1));
+		}
+
+		Object find(int shift, int hash, Object key, Object notFound) {
+			int bit = bitpos(hash, shift);
+			if ((bitmap & bit) == 0) {
+				return notFound;
+			}
+			int i = index(bit);
+			Object k = array[2 * i];
+			Object v = array[2 * i + 1];
+			if (k == null) {
+				return ((Node) v).find(shift + BITS, hash, key, notFound);
+			} else if (key.equals(k)) {
+				return v;
+			}
+			return notFound;
+		}
+
+		Node assoc(Object owner, int shift, int hash, Object key,
+				Object value, Change change) {
+			int bit = bitpos(hash, shift);
+			int i = index(bit);
+			if ((bitmap & bit) != 0) {
+				Object k = array[2 * i];
+				Object v = array[2 * i + 1];
+				if (k == null) {
+					Node n = ((Node) v).assoc(owner, shift + BITS, hash, key,
+							value, change);
+					if (n == v) {
+						return this;
+					}
+					BitmapNode r = editable(owner);
+					r.array[2 * i + 1] = n;
+					return r;
+				} else if (key.equals(k)) {
+					change.found = true;
+					change.value = v;
+					if (value == v) {
+						return this;
+					}
+					BitmapNode r = editable(owner);
+					r.array[2 * i + 1] = value;
+					return r;
+				} else {
+					Node n = create(owner, shift + BITS, k, v, hash, key, value);
+					BitmapNode r = editable(owner);
+					r.array[2 * i] = null;
+					r.array[2 * i + 1] = n;
+					return r;
+				}
+			} else {
+				int n = Integer.bitCount(bitmap);
+				Object[] narray = new Object[2 * (n + 1)];
+				System.arraycopy(array, 0, narray, 0, 2 * i);
+				narray[2 * i] = key;
+				narray[2 * i + 1] = value;
+				System.arraycopy(array, 2 * i, narray, 2 * (i + 1),
+						2 * (n - i));
+				BitmapNode r = editable(owner);
+				r.bitmap |= bit;
+				r.array = narray;
+				return r;
+			}
+		}
+
+		Node without(Object owner, int shift, int hash, Object key,
+				Change change) {
+			int bit = bitpos(hash, shift);
+			if ((bitmap & bit) == 0) {
+				return this;
+			}
+			int i = index(bit);
+			Object k = array[2 * i];
+			Object v = array[2 * i + 1];
+			if (k == null) {
+				Node n = ((Node) v).without(owner, shift + BITS, hash, key,
+						change);
+				if (n == v) {
+					return this;
+				} else if (n != null) {
+					BitmapNode r = editable(owner);
+					r.array[2 * i + 1] = n;
+					return r;
+				}
+			} else if (key.equals(k)) {
+				change.found = true;
+				change.value = v;
+			} else {
+				return this;
+			}
+			// at this point, the slot needs to be removed altogether
+			if (bitmap == bit) {
+				return null;
+			}
+			int n = Integer.bitCount(bitmap);
+			Object[] narray = new Object[2 * (n - 1)];
+			System.arraycopy(array, 0, narray, 0, 2 * i);
+			System.arraycopy(array, 2 * (i + 1), narray, 2 * i, 2 * (n - i - 1));
+			BitmapNode r = editable(owner);
+			r.bitmap ^= bit;
+			r.array = narray;
+			return r;
+		}
+
+		void entries(ArrayList<Map.Entry<Object, Object>> entries) {
+			for (int i = 0; i < array.length; i += 2) {
+				Object k = array[i];
+				Object v = array[i + 1];
+				if (k == null) {
+					((Node) v).entries(entries);
+				} else {
+					entries.add(new AbstractMap.SimpleImmutableEntry<Object, Object>(k, v));
+				}
+			}
+		}
+
+		private BitmapNode editable(Object owner) {
+			if (this.owner == owner) {
+				return this;
+			}
+			return new BitmapNode(owner, bitmap, array.clone());
+		}
+	}
+
+	/**
+	 * A node which holds key-value pairs whose keys all have the same hash
+	 * code.
+	 */
+	private static final class CollisionNode extends Node {
+		final int hash;
+		Object[] array;
+
+		CollisionNode(Object owner, int hash, Object[] array) {
+			super(owner);
+			this.hash = hash;
+			this.array = array;
+		}
+
+		private int indexOf(Object key) {
+			for (int i = 0; i < array.length; i += 2) {
+				if (key.equals(array[i])) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		Object find(int shift, int hash, Object key, Object notFound) {
+			int i = indexOf(key);
+			return i < 0 ? notFound : array[i + 1];
+		}
+
+		Node assoc(Object owner, int shift, int hash, Object key,
+				Object value, Change change) {
+			if (hash != this.hash) {
+				// nest this node inside a bitmap node which can distinguish
+				// the two hash codes.
+				BitmapNode n = new BitmapNode(owner, bitpos(this.hash, shift),
+						new Object[] { null, this });
+				return n.assoc(owner, shift, hash, key, value, change);
+			}
+			int i = indexOf(key);
+			CollisionNode r = editable(owner);
+			if (i >= 0) {
+				change.found = true;
+				change.value = array[i + 1];
+				r.array[i + 1] = value;
+			} else {
+				Object[] narray = new Object[array.length + 2];
+				System.arraycopy(array, 0, narray, 0, array.length);
+				narray[array.length] = key;
+				narray[array.length + 1] = value;
+				r.array = narray;
+			}
+			return r;
+		}
+
+		Node without(Object owner, int shift, int hash, Object key,
+				Change change) {
+			int i = indexOf(key);
+			if (i < 0) {
+				return this;
+			}
+			change.found = true;
+			change.value = array[i + 1];
+			if (array.length == 2) {
+				return null;
+			}
+			Object[] narray = new Object[array.length - 2];
+			System.arraycopy(array, 0, narray, 0, i);
+			System.arraycopy(array, i + 2, narray, i, array.length - i - 2);
+			CollisionNode r = editable(owner);
+			r.array = narray;
+			return r;
+		}
+
+		void entries(ArrayList<Map.Entry<Object, Object>> entries) {
+			for (int i = 0; i < array.length; i += 2) {
+				entries.add(new AbstractMap.SimpleImmutableEntry<Object, Object>(
+						array[i], array[i + 1]));
+			}
+		}
+
+		private CollisionNode editable(Object owner) {
+			if (this.owner == owner) {
+				return this;
+			}
+			return new CollisionNode(owner, hash, array.clone());
+		}
+	}
+
+	private static final Object NOT_FOUND = new Object();
+
+	/**
+	 * Identifies those nodes which this map owns, and hence can update in
+	 * place.
+	 */
+	private Object owner = new Object();
+	private int size;
+	private Node root;
+	// null is a valid key, but cannot be stored in the trie
+	private boolean hasNull;
+	private Object nullValue;
+
+	public PersistentHashMap() {
+		clear();
+	}
+
+	public PersistentHashMap(Map<?, ?> map) {
+		this();
+		putAll(map);
+	}
+
+	private PersistentHashMap(PersistentHashMap m) {
+		this.size = m.size;
+		this.root = m.root;
+		this.hasNull = m.hasNull;
+		this.nullValue = m.nullValue;
+	}
+
+	/**
+	 * Create a copy of this map in constant time. After this, neither version
+	 * owns any of the nodes which they share.
+	 * 
+	 * @return
+	 */
+	public PersistentHashMap fork() {
+		PersistentHashMap r = new PersistentHashMap(this);
+		this.owner = new Object();
+		return r;
+	}
+
+	// ================================================================================
+	// Map Operations
+	// ================================================================================
+
+	public int size() {
+		return size;
+	}
+
+	public boolean containsKey(Object key) {
+		if (key == null) {
+			return hasNull;
+		}
+		return root.find(0, key.hashCode(), key, NOT_FOUND) != NOT_FOUND;
+	}
+
+	public Object get(Object key) {
+		if (key == null) {
+			return nullValue;
+		}
+		Object r = root.find(0, key.hashCode(), key, NOT_FOUND);
+		return r == NOT_FOUND ? null : r;
+	}
+
+	public Object put(Object key, Object value) {
+		if (key == null) {
+			Object old = nullValue;
+			if (!hasNull) {
+				size++;
+			}
+			hasNull = true;
+			nullValue = value;
+			return old;
+		}
+		Change change = new Change();
+		root = root.assoc(owner, 0, key.hashCode(), key, value, change);
+		if (!change.found) {
+			size++;
+		}
+		return change.value;
+	}
+
+	public Object remove(Object key) {
+		if (key == null) {
+			Object old = nullValue;
+			if (hasNull) {
+				size--;
+			}
+			hasNull = false;
+			nullValue = null;
+			return old;
+		}
+		Change change = new Change();
+		Node n = root.without(owner, 0, key.hashCode(), key, change);
+		root = n != null ? n : new BitmapNode(owner, 0, new Object[0]);
+		if (change.found) {
+			size--;
+		}
+		return change.value;
+	}
+
+	public void clear() {
+		size = 0;
+		root = new BitmapNode(owner, 0, new Object[0]);
+		hasNull = false;
+		nullValue = null;
+	}
+
+	public Set<Map.Entry<Object, Object>> entrySet() {
+		return new AbstractSet<Map.Entry<Object, Object>>() {
+			public int size() {
+				return size;
+			}
+
+			public Iterator<Map.Entry<Object, Object>> iterator() {
+				return new EntryIterator();
+			}
+		};
+	}
+
+	/**
+	 * Iterates over a snapshot of the entries in this map, which allows
+	 * entries to be removed during iteration.
+	 */
+	private final class EntryIterator implements Iterator<Map.Entry<Object, Object>> {
+		private final ArrayList<Map.Entry<Object, Object>> entries = new ArrayList<Map.Entry<Object, Object>>();
+		private int index;
+
+		EntryIterator() {
+			if (hasNull) {
+				entries.add(new AbstractMap.SimpleImmutableEntry<Object, Object>(
+						null, nullValue));
+			}
+			root.entries(entries);
+		}
+
+		public boolean hasNext() {
+			return index < entries.size();
+		}
+
+		public Map.Entry<Object, Object> next() {
+			if (index >= entries.size()) {
+				throw new NoSuchElementException();
+			}
+			return entries.get(index++);
+		}
+
+		public void remove() {
+			if (index == 0) {
+				throw new IllegalStateException();
+			}
+			PersistentHashMap.this.remove(entries.get(index - 1).getKey());
+		}
+	}
+
+	// ================================================================================
+	// Helpers
+	// ================================================================================
+
+	private static int bitpos(int hash, int shift) {
+		return 1 << ((hash >>> shift) & MASK);
+	}
+
+	/**
+	 * Create a node holding two keys, which are known to be different.
+	 */
+	private static Node create(Object owner, int shift, Object key1,
+			Object value1, int hash2, Object key2, Object value2) {
+		int hash1 = key1.hashCode();
+		if (hash1 == hash2) {
+			return new CollisionNode(owner, hash1, new Object[] { key1,
+					value1, key2, value2 });
+		}
+		Change change = new Change();
+		Node n = new BitmapNode(owner, 0, new Object[0]);
+		n = n.assoc(owner, shift, hash1, key1, value1, change);
+		return n.assoc(owner, shift, hash2, key2, value2, change);
+	}
+}
@@ -0,0 +1,87 @@
+// Copyright (c) 2011, David J. Pearce (djp@ecs.vuw.ac.nz)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//    * Redistributions of source code must retain the above copyright
+//      notice, this list of conditions and the following disclaimer.
+//    * Redistributions in binary form must reproduce the above copyright
+//      notice, this list of conditions and the following disclaimer in the
+//      documentation and/or other materials provided with the distribution.
+//    * Neither the name of the <organization> nor the
+//      names of its contributors may be used to endorse or promote products
+//      derived from this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+// ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL DAVID J. PEARCE BE LIABLE FOR ANY
+// DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+// LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+// ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package wyjc.runtime;
+
+import java.util.*;
+
+/**
+ * A set implemented using a <code>PersistentHashMap</code>, which maps each
+ * element to itself. As such, a set can be forked in constant time, after
+ * which the two versions share their structure.
+ */
+public final class PersistentHashSet extends AbstractSet<Object> {
+	private final PersistentHashMap map;
+
+	public PersistentHashSet() {
+		this.map = new PersistentHashMap();
+	}
+
+	public PersistentHashSet(Collection<?> items) {
+		this();
+		addAll(items);
+	}
+
+	private PersistentHashSet(PersistentHashMap map) {
+		this.map = map;
+	}
+
+	/**
+	 * Create a copy of this set in constant time.
+	 * 
+	 * @return
+	 */
+	public PersistentHashSet fork() {
+		return new PersistentHashSet(map.fork());
+	}
+
+	public int size() {
+		return map.size();
+	}
+
+	public boolean contains(Object item) {
+		return map.containsKey(item);
+	}
+
+	public boolean add(Object item) {
+		int size = map.size();
+		map.put(item, item);
+		return map.size() != size;
+	}
+
+	public boolean remove(Object item) {
+		int size = map.size();
+		map.remove(item);
+		return map.size() != size;
+	}
+
+	public void clear() {
+		map.clear();
+	}
+
+	public Iterator<Object> iterator() {
+		return map.keySet().iterator();
+	}
+}
@@ -0,0 +1,299 @@
+// Copyright (c) 2011, David J. Pearce (djp@ecs.vuw.ac.nz)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//    * Redistributions of source code must retain the above copyright
+//      notice, this list of conditions and the following disclaimer.
+//    * Redistributions in binary form must reproduce the above copyright
+//      notice, this list of conditions and the following disclaimer in the
+//      documentation and/or other materials provided with the distribution.
+//    * Neither the name of the <organization> nor the
+//      names of its contributors may be used to endorse or promote products
+//      derived from this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+// ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL DAVID J. PEARCE BE LIABLE FOR ANY
+// DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+// LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+// ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package wyjc.runtime;
+
+import java.util.*;
+
+/**
+ * <p>
+ * A list implemented as a persistent bit-partitioned vector trie. Elements
+ * are held in the leaves of a trie with a branching factor of 32, whilst the
+ * last (up to) 32 elements are held separately in a <i>tail</i> to make
+ * appending cheap. Getting or setting an element therefore takes
+ * <code>O(log<sub>32</sub> n)</code> time.
+ * </p>
+ * 
+ * <p>
+ * The key property is that a vector can be <i>forked</i> in constant time,
+ * after which the two versions share their structure. Every node records the
+ * version which <i>owns</i> it, and only the owner may update a node in place.
+ * Forking gives both versions fresh ownership, so that subsequent updates
+ * copy only the path from the root to the element being updated, rather than
+ * the whole vector. A vector which is not shared (i.e. has not been forked
+ * since its nodes were created) is updated entirely in place.
+ * </p>
+ * 
+ * <p>
+ * Inserting or removing elements other than at the end is not supported
+ * efficiently, and simply rebuilds the vector.
+ * </p>
+ */
+public final class PersistentVector extends AbstractList<Object> implements
+		RandomAccess {
+	private static final int BITS = 5;
+	private static final int WIDTH = 1 << BITS;
+	private static final int MASK = WIDTH - 1;
+
+	private static final class Node {
+		final Object owner;
+		final Object[] array;
+
+		Node(Object owner, Object[] array) {
+			this.owner = owner;
+			this.array = array;
+		}
+
+		Node(Object owner) {
+			this(owner, new Object[WIDTH]);
+		}
+	}
+
+	/**
+	 * Identifies those nodes which this vector owns, and hence can update in
+	 * place.
+	 */
+	private Object owner = new Object();
+	private int size;
+	private int shift;
+	private Node root;
+	private Node tail;
+
+	public PersistentVector() {
+		clear();
+	}
+
+	public PersistentVector(int capacity) {
+		this();
+	}
+
+	public PersistentVector(Collection<?> items) {
+		this();
+		for (Object item : items) {
+			add(item);
+		}
+	}
+
+	private PersistentVector(PersistentVector v) {
+		this.size = v.size;
+		this.shift = v.shift;
+		this.root = v.root;
+		this.tail = v.tail;
+	}
+
+	/**
+	 * Create a copy of this vector in constant time. After this, neither
+	 * version owns any of the nodes which they share.
+	 * 
+	 * @return
+	 */
+	public PersistentVector fork() {
+		PersistentVector r = new PersistentVector(this);
+		this.owner = new Object();
+		return r;
+	}
+
+	// ================================================================================
+	// List Operations
+	// ================================================================================
+
+	public int size() {
+		return size;
+	}
+
+	public Object get(int index) {
+		checkIndex(index);
+		return leafFor(index)[index & MASK];
+	}
+
+	public Object set(int index, Object value) {
+		checkIndex(index);
+		Object[] leaf;
+		if (index >= tailOffset()) {
+			tail = editable(tail);
+			leaf = tail.array;
+		} else {
+			root = editable(root);
+			Node node = root;
+			for (int level = shift; level > 0; level -= BITS) {
+				int i = (index >>> level) & MASK;
+				Node child = editable((Node) node.array[i]);
+				node.array[i] = child;
+				node = child;
+			}
+			leaf = node.array;
+		}
+		Object old = leaf[index & MASK];
+		leaf[index & MASK] = value;
+		return old;
+	}
+
+	public boolean add(Object value) {
+		int i = size - tailOffset();
+		if (i < WIDTH) {
+			tail = editable(tail);
+			tail.array[i] = value;
+		} else {
+			// the tail is full, so push it into the trie
+			Node full = tail;
+			tail = new Node(owner);
+			tail.array[0] = value;
+			if ((size >>> BITS) > (1 << shift)) {
+				// the trie is full, so add another level
+				Node nroot = new Node(owner);
+				nroot.array[0] = root;
+				nroot.array[1] = newPath(shift, full);
+				root = nroot;
+				shift += BITS;
+			} else {
+				root = pushTail(shift, editable(root), full);
+			}
+		}
+		size++;
+		modCount++;
+		return true;
+	}
+
+	public void add(int index, Object value) {
+		if (index == size) {
+			add(value);
+		} else {
+			Object[] items = toArray();
+			if (index < 0 || index > items.length) {
+				throw new IndexOutOfBoundsException("Index: " + index
+						+ ", Size: " + size);
+			}
+			clear();
+			for (int i = 0; i != index; ++i) {
+				add(items[i]);
+			}
+			add(value);
+			for (int i = index; i != items.length; ++i) {
+				add(items[i]);
+			}
+		}
+	}
+
+	public Object remove(int index) {
+		checkIndex(index);
+		Object old = get(index);
+		removeRange(index, index + 1);
+		return old;
+	}
+
+	protected void removeRange(int from, int to) {
+		Object[] items = toArray();
+		clear();
+		for (int i = 0; i != from; ++i) {
+			add(items[i]);
+		}
+		for (int i = to; i < items.length; ++i) {
+			add(items[i]);
+		}
+	}
+
+	public void clear() {
+		size = 0;
+		shift = BITS;
+		root = new Node(owner);
+		tail = new Node(owner);
+		modCount++;
+	}
+
+	// ================================================================================
+	// Helpers
+	// ================================================================================
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+					+ size);
+		}
+	}
+
+	/**
+	 * Determine the index of the first element held in the tail.
+	 * 
+	 * @return
+	 */
+	private int tailOffset() {
+		if (size < WIDTH) {
+			return 0;
+		}
+		return ((size - 1) >>> BITS) << BITS;
+	}
+
+	private Object[] leafFor(int index) {
+		if (index >= tailOffset()) {
+			return tail.array;
+		}
+		Node node = root;
+		for (int level = shift; level > 0; level -= BITS) {
+			node = (Node) node.array[(index >>> level) & MASK];
+		}
+		return node.array;
+	}
+
+	/**
+	 * Get a version of the given node which this vector can update in place.
+	 * This is the node itself if it's owned by this vector, or a copy
+	 * otherwise.
+	 * 
+	 * @param node
+	 * @return
+	 */
+	private Node editable(Node node) {
+		if (node.owner == owner) {
+			return node;
+		}
+		return new Node(owner, node.array.clone());
+	}
+
+	private Node pushTail(int level, Node parent, Node leaf) {
+		int i = ((size - 1) >>> level) & MASK;
+		Node insert;
+		if (level == BITS) {
+			insert = leaf;
+		} else {
+			Node child = (Node) parent.array[i];
+			if (child != null) {
+				insert = pushTail(level - BITS, editable(child), leaf);
+			} else {
+				insert = newPath(level - BITS, leaf);
+			}
+		}
+		parent.array[i] = insert;
+		return parent;
+	}
+
+	private Node newPath(int level, Node leaf) {
+		if (level == 0) {
+			return leaf;
+		}
+		Node node = new Node(owner);
+		node.array[0] = newPath(level - BITS, leaf);
+		return node;
+	}
+}
@@ -0,0 +1,454 @@
+// Copyright (c) 2011, David J. Pearce (djp@ecs.vuw.ac.nz)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//    * Redistributions of source code must retain the above copyright
+//      notice, this list of conditions and the following disclaimer.
+//    * Redistributions in binary form must reproduce the above copyright
+//      notice, this list of conditions and the following disclaimer in the
+//      documentation and/or other materials provided with the distribution.
+//    * Neither the name of the <organization> nor the
+//      names of its contributors may be used to endorse or promote products
+//      derived from this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+// ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL DAVID J. PEARCE BE LIABLE FOR ANY
+// DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+// LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+// ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package wyjc.runtime;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import static wyil.lang.Type.K_VOID;
+import static wyil.lang.Type.K_ANY;
+import static wyil.lang.Type.K_NULL;
+import static wyil.lang.Type.K_BOOL;
+import static wyil.lang.Type.K_BYTE;
+import static wyil.lang.Type.K_CHAR;
+import static wyil.lang.Type.K_INT;
+import static wyil.lang.Type.K_RATIONAL;
+import static wyil.lang.Type.K_STRING;
+import static wyil.lang.Type.K_TUPLE;
+import static wyil.lang.Type.K_SET;
+import static wyil.lang.Type.K_LIST;
+import static wyil.lang.Type.K_MAP;
+import static wyil.lang.Type.K_RECORD;
+import static wyil.lang.Type.K_UNION;
+import static wyil.lang.Type.K_NEGATION;
+
+/**
+ * <p>
+ * A runtime type test, compiled from a given <code>WyType</code>. Rather than
+ * interpreting the type on every test, as <code>Util.instanceOf</code> once
+ * did, the type is compiled once into a tree of specialised predicates. In
+ * particular:
+ * </p>
+ * <ul>
+ * <li>Every predicate first checks the Java class of the value, and only then
+ * examines its contents.</li>
+ * <li>Element-wise loops are omitted where the element type is
+ * <code>any</code>, which the compiler exploits by erasing element types that
+ * are already known statically.</li>
+ * <li>A union dispatches on the Java class of the value, and so only tests
+ * those bounds which could possibly match.</li>
+ * </ul>
+ * 
+ * <p>
+ * Type tests are created via <code>WyType.test()</code>, which caches them
+ * with the type constant.
+ * </p>
+ */
+public abstract class TypeTest {
+
+	/**
+	 * Check whether a given value is an instance of the type this test was
+	 * compiled from.
+	 * 
+	 * @param value
+	 * @return
+	 */
+	public abstract boolean test(Object value);
+
+	/**
+	 * The Java class which every value accepted by this test must have, or
+	 * <code>null</code> if there is no such class.
+	 * 
+	 * @return
+	 */
+	Class<?> javaClass() {
+		return null;
+	}
+
+	/**
+	 * Compile a given type into a type test. Recursive types are compiled into
+	 * recursive tests.
+	 * 
+	 * @param type
+	 * @return
+	 */
+	static TypeTest compile(WyType type) {
+		return compile(type, new IdentityHashMap<WyType, TypeTest>());
+	}
+
+	private static TypeTest compile(WyType type,
+			IdentityHashMap<WyType, TypeTest> compiled) {
+		TypeTest test = compiled.get(type);
+		if (test != null) {
+			return test;
+		}
+		switch (type.kind) {
+		case K_ANY:
+			return ANY;
+		case K_VOID:
+			return VOID;
+		case K_NULL:
+			return NULL;
+		case K_BOOL:
+			return BOOL;
+		case K_BYTE:
+			return BYTE;
+		case K_CHAR:
+			return CHAR;
+		case K_INT:
+			return INT;
+		case K_RATIONAL:
+			return REAL;
+		case K_STRING:
+			return STRING;
+		case K_LIST: {
+			WyType.List t = (WyType.List) type;
+			ListTest r = new ListTest(t.nonEmpty);
+			compiled.put(type, r);
+			r.element = compile(t.element, compiled);
+			return r;
+		}
+		case K_SET: {
+			WyType.Set t = (WyType.Set) type;
+			SetTest r = new SetTest(t.nonEmpty);
+			compiled.put(type, r);
+			r.element = compile(t.element, compiled);
+			return r;
+		}
+		case K_MAP: {
+			WyType.Dictionary t = (WyType.Dictionary) type;
+			MapTest r = new MapTest();
+			compiled.put(type, r);
+			r.key = compile(t.key, compiled);
+			r.value = compile(t.value, compiled);
+			return r;
+		}
+		case K_TUPLE: {
+			WyType.Tuple t = (WyType.Tuple) type;
+			TupleTest r = new TupleTest(t.types.length);
+			compiled.put(type, r);
+			for (int i = 0; i != t.types.length; ++i) {
+				r.elements[i] = compile(t.types[i], compiled);
+			}
+			return r;
+		}
+		case K_RECORD: {
+			WyType.Record t = (WyType.Record) type;
+			RecordTest r = new RecordTest(t.names, t.isOpen);
+			compiled.put(type, r);
+			for (int i = 0; i != t.types.length; ++i) {
+				r.fields[i] = compile(t.types[i], compiled);
+			}
+			return r;
+		}
+		case K_NEGATION: {
+			WyType.Negation t = (WyType.Negation) type;
+			NegationTest r = new NegationTest();
+			compiled.put(type, r);
+			r.element = compile(t.element, compiled);
+			return r;
+		}
+		case K_UNION: {
+			WyType.Union t = (WyType.Union) type;
+			UnionTest r = new UnionTest();
+			compiled.put(type, r);
+			TypeTest[] bounds = new TypeTest[t.bounds.length];
+			for (int i = 0; i != bounds.length; ++i) {
+				bounds[i] = compile(t.bounds[i], compiled);
+			}
+			r.setBounds(bounds);
+			return r;
+		}
+		default:
+			// references, functions, etc are never matched at runtime.
+			return VOID;
+		}
+	}
+
+	// ================================================================================
+	// Primitive Tests
+	// ================================================================================
+
+	private static final TypeTest ANY = new TypeTest() {
+		public boolean test(Object value) {
+			return true;
+		}
+	};
+
+	private static final TypeTest VOID = new TypeTest() {
+		public boolean test(Object value) {
+			return false;
+		}
+	};
+
+	private static final TypeTest NULL = new TypeTest() {
+		public boolean test(Object value) {
+			return value == null;
+		}
+	};
+
+	private static final TypeTest BOOL = new ClassTest(Boolean.class);
+	private static final TypeTest BYTE = new ClassTest(Byte.class);
+	private static final TypeTest CHAR = new ClassTest(Character.class);
+	private static final TypeTest INT = new ClassTest(BigInteger.class);
+	private static final TypeTest REAL = new ClassTest(WyRat.class);
+	private static final TypeTest STRING = new ClassTest(String.class);
+
+	private static final class ClassTest extends TypeTest {
+		private final Class<?> clazz;
+
+		public ClassTest(Class<?> clazz) {
+			this.clazz = clazz;
+		}
+
+		public boolean test(Object value) {
+			return clazz.isInstance(value);
+		}
+
+		Class<?> javaClass() {
+			return clazz;
+		}
+	}
+
+	// ================================================================================
+	// Compound Tests
+	// ================================================================================
+
+	private static final class ListTest extends TypeTest {
+		private final boolean nonEmpty;
+		private TypeTest element;
+
+		public ListTest(boolean nonEmpty) {
+			this.nonEmpty = nonEmpty;
+		}
+
+		public boolean test(Object value) {
+			if (!(value instanceof WyList)) {
+				return false;
+			}
+			WyList list = (WyList) value;
+			int size = list.size();
+			if (size == 0) {
+				return !nonEmpty;
+			} else if (element == ANY) {
+				return true;
+			} else if (element == BYTE && list.isBytes()) {
+				return true;
+			}
+			for (int i = 0; i != size; ++i) {
+				if (!element.test(list.get(i))) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		Class<?> javaClass() {
+			return WyList.class;
+		}
+	}
+
+	private static final class SetTest extends TypeTest {
+		private final boolean nonEmpty;
+		private TypeTest element;
+
+		public SetTest(boolean nonEmpty) {
+			this.nonEmpty = nonEmpty;
+		}
+
+		public boolean test(Object value) {
+			if (!(value instanceof WySet)) {
+				return false;
+			}
+			WySet set = (WySet) value;
+			if (set.isEmpty()) {
+				return !nonEmpty;
+			} else if (element == ANY) {
+				return true;
+			}
+			for (Object item : set) {
+				if (!element.test(item)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		Class<?> javaClass() {
+			return WySet.class;
+		}
+	}
+
+	private static final class MapTest extends TypeTest {
+		private TypeTest key;
+		private TypeTest value;
+
+		public boolean test(Object v) {
+			if (!(v instanceof WyMap)) {
+				return false;
+			}
+			WyMap map = (WyMap) v;
+			if (map.isEmpty() || (key == ANY && value == ANY)) {
+				return true;
+			}
+			for (java.util.Map.Entry<Object, Object> e : map.entrySet()) {
+				if (!key.test(e.getKey()) || !value.test(e.getValue())) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		Class<?> javaClass() {
+			return WyMap.class;
+		}
+	}
+
+	private static final class TupleTest extends TypeTest {
+		private final TypeTest[] elements;
+
+		public TupleTest(int size) {
+			this.elements = new TypeTest[size];
+		}
+
+		public boolean test(Object value) {
+			if (!(value instanceof WyTuple)) {
+				return false;
+			}
+			WyTuple tuple = (WyTuple) value;
+			if (tuple.size() != elements.length) {
+				return false;
+			}
+			for (int i = 0; i != elements.length; ++i) {
+				if (!elements[i].test(tuple.get(i))) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		Class<?> javaClass() {
+			return WyTuple.class;
+		}
+	}
+
+	private static final class RecordTest extends TypeTest {
+		private final String[] names;
+		private final TypeTest[] fields;
+		private final boolean isOpen;
+
+		public RecordTest(String[] names, boolean isOpen) {
+			this.names = names;
+			this.fields = new TypeTest[names.length];
+			this.isOpen = isOpen;
+		}
+
+		public boolean test(Object value) {
+			if (!(value instanceof WyRecord)) {
+				return false;
+			}
+			WyRecord record = (WyRecord) value;
+			if (!isOpen && names.length != record.size()) {
+				return false;
+			}
+			for (int i = 0; i != names.length; ++i) {
+				String name = names[i];
+				if (!record.containsKey(name)
+						|| !fields[i].test(record.get(name))) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		Class<?> javaClass() {
+			return WyRecord.class;
+		}
+	}
+
+	private static final class NegationTest extends TypeTest {
+		private TypeTest element;
+
+		public boolean test(Object value) {
+			return !element.test(value);
+		}
+	}
+
+	/**
+	 * A union of tests. Where every bound requires a particular Java class
+	 * (which is the common case), the bounds are grouped by class and the
+	 * value's class selects which of them to try.
+	 */
+	private static final class UnionTest extends TypeTest {
+		private TypeTest[] bounds;
+		private IdentityHashMap<Class<?>, TypeTest[]> dispatch;
+
+		public void setBounds(TypeTest[] bounds) {
+			this.bounds = bounds;
+			IdentityHashMap<Class<?>, ArrayList<TypeTest>> groups = new IdentityHashMap<Class<?>, ArrayList<TypeTest>>();
+			for (TypeTest bound : bounds) {
+				Class<?> clazz = bound.javaClass();
+				if (clazz == null || clazz == BigInteger.class) {
+					// cannot dispatch on this bound (integers may be
+					// represented by subclasses of BigInteger).
+					return;
+				}
+				ArrayList<TypeTest> group = groups.get(clazz);
+				if (group == null) {
+					group = new ArrayList<TypeTest>();
+					groups.put(clazz, group);
+				}
+				group.add(bound);
+			}
+			dispatch = new IdentityHashMap<Class<?>, TypeTest[]>();
+			for (java.util.Map.Entry<Class<?>, ArrayList<TypeTest>> e : groups
+					.entrySet()) {
+				dispatch.put(e.getKey(),
+						e.getValue().toArray(new TypeTest[e.getValue().size()]));
+			}
+		}
+
+		public boolean test(Object value) {
+			TypeTest[] candidates = bounds;
+			if (dispatch != null) {
+				if (value == null) {
+					return false;
+				}
+				candidates = dispatch.get(value.getClass());
+				if (candidates == null) {
+					return false;
+				}
+			}
+			for (TypeTest bound : candidates) {
+				if (bound.test(value)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+}
@@ -29,6 +29,7 @@ import java.lang.reflect.Method;
 import java.math.*;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 
 import static wyil.lang.Type.K_VOID;
@@ -50,7 +51,12 @@ import static wyil.lang.Type.K_NEGATION;
 
 public class Util {
 
-	private static final boolean debug = false;
+	/**
+	 * Determines whether statistics on the number of clones and in-place
+	 * updates are printed on exit. This is enabled by running with
+	 * <code>-Dwyjc.stats=true</code>.
+	 */
+	private static final boolean debug = Boolean.getBoolean("wyjc.stats");
 	private static final boolean logRefCounts = false;
 	private static final ArrayList<Object[]> refCounts = new ArrayList();
 	private static long startTime;
@@ -90,6 +96,7 @@ public class Util {
 					avg = (avg / (totalClones));
 					System.err.println("--------------------------------------------------");
 					System.err.println("Total clones: " + totalClones + " / " + (totalClones+totalStrongUpdates) + " (" + ratio + "%)");
+					System.err.println("Total in-place updates: " + totalStrongUpdates + " / " + (totalClones+totalStrongUpdates));
 					System.err.println("Average Clone Size: " + totalElems + " / " + totalClones + " (" + avg + ")");
 					avg = total_ref_count;
 					avg = avg / total_population;
@@ -105,6 +112,23 @@ public class Util {
 		}
 	}	
 	
+	/**
+	 * Determines whether lists, sets and maps created from now on are
+	 * represented using persistent data structures. These can be copied in
+	 * constant time, after which updates only copy the affected path rather
+	 * than the whole collection.
+	 */
+	static boolean persistentCollections = false;
+	
+	/**
+	 * Select persistent data structures for all lists, sets and maps created
+	 * from now on. This is called at the start of programs compiled with
+	 * persistent collections enabled.
+	 */
+	public static void usePersistentCollections() {
+		persistentCollections = true;
+	}
+	
 	private static long total_ref_count = 0;	
 	private static long total_population = 0; // number of update operations
 	private static int nlist_clones = 0;
@@ -185,7 +209,7 @@ public class Util {
 	}
 	
 	public static BigInteger stringlength(final String lhs) {
-		return BigInteger.valueOf(lhs.length());
+		return WyInt.valueOf(lhs.length());
 	}
 	
 	public static String substring(final String lhs, final BigInteger _start, final BigInteger _end) {
@@ -213,13 +237,12 @@ public class Util {
 	public static WyList range(BigInteger start, BigInteger end) {
 		WyList l = new WyList();
 		
-		long st = start.longValue();
-		long en = start.longValue();
-		if (BigInteger.valueOf(st).equals(start)
-				&& BigInteger.valueOf(en).equals(end)) {
+		if (start.bitLength() < 63 && end.bitLength() < 63) {
+			long st = start.longValue();
+			long en = end.longValue();
 			int dir = st < en ? 1 : -1;
 			while(st != en) {
-				l.add(BigInteger.valueOf(st));
+				l.add(WyInt.valueOf(st));
 				st = st + dir;
 			}					
 		} else {
@@ -274,7 +297,7 @@ public class Util {
 	public static WyList str2il(String str) {
 		WyList r = new WyList(str.length());
 		for(int i=0;i!=str.length();++i) {
-			r.add(BigInteger.valueOf(str.charAt(i)));
+			r.add(WyInt.valueOf(str.charAt(i)));
 		}
 		return r;
 	}
@@ -301,6 +324,35 @@ public class Util {
 		System.out.print(str);			
 	}
 		
+	/**
+	 * Copy a compound value, so that it may subsequently be updated in place.
+	 * This is used by the compiler on entry to a loop which updates a
+	 * variable in place, when the variable's value may be shared (see
+	 * <code>wyil.util.dfa.UniquenessAnalysis</code>).
+	 * 
+	 * @param list
+	 * @return
+	 */
+	public static WyList internal_copy(WyList list) {
+		countClone(list);
+		return new WyList(list);
+	}
+	
+	public static WySet internal_copy(WySet set) {
+		countClone(set);
+		return new WySet(set);
+	}
+	
+	public static WyMap internal_copy(WyMap dict) {
+		countClone(dict);
+		return new WyMap(dict);
+	}
+	
+	public static WyRecord internal_copy(WyRecord record) {
+		countClone(record);
+		return new WyRecord(record);
+	}
+	
 	/**
 	 * Increment the reference count for an object. In some cases, this may
 	 * have no effect. In other cases, the current reference count will be
@@ -450,159 +502,12 @@ public class Util {
 	}
 	
 	/**
-	 * The <code>instanceOf</code> method implements a runtime type test. 
+	 * The <code>instanceOf</code> method implements a runtime type test. This
+	 * uses the test compiled from the type, which is cached with it (see
+	 * <code>TypeTest</code>).
 	 */
 	public static boolean instanceOf(Object obj, WyType t) {			
-		switch(t.kind) {
-			case K_ANY:
-				return true;
-			case K_VOID:
-				return false;
-			case K_NULL:
-				return obj == null;
-			case K_BOOL:
-				return obj instanceof Boolean;
-			case K_BYTE:
-				return obj instanceof Byte;
-			case K_CHAR:
-				return obj instanceof Character;
-			case K_INT:
-				return obj instanceof BigInteger;
-			case K_RATIONAL:
-				return obj instanceof WyRat;
-			case K_STRING:
-				return obj instanceof String;
-			case K_LIST:
-			{
-				if(obj instanceof WyList) {
-					WyList ol = (WyList) obj;
-					WyType.List tl = (WyType.List) t;
-					if(tl.nonEmpty && ol.isEmpty()) {
-						return false;
-					}
-					WyType el = tl.element;
-					if(el.kind == K_ANY) {
-						return true;
-					} else if(el.kind == K_VOID) {
-						return ol.isEmpty();
-					} else {
-						for(Object elem : ol) { 
-							if(!instanceOf(elem,el)) {
-								return false;
-							}
-						}
-						return true;
-					}
-				}
-				break;
-			}
-			case K_SET:
-			{
-				if(obj instanceof WySet) {
-					WySet ol = (WySet) obj;
-					WyType.Set tl = (WyType.Set) t;
-					WyType el = tl.element;
-					if(el.kind == K_ANY) {
-						return true;
-					} else if(el.kind == K_VOID) {
-						return ol.isEmpty();
-					} else {
-						for(Object elem : ol) { 
-							if(!instanceOf(elem,el)) {
-								return false;
-							}
-						}
-						return true;
-					}
-				}
-				break;
-			}
-			case K_TUPLE:
-			{				
-				if(obj instanceof WyTuple) {
-					WyTuple ol = (WyTuple) obj;
-					WyType.Tuple tl = (WyType.Tuple) t;
-					WyType[] types = tl.types;
-					if(types.length == ol.size()) {						
-						int i=0;
-						for(Object o : ol) { 
-							if(!instanceOf(o,types[i++])) {
-								return false;
-							}
-						}						
-						return true;					
-					}
-				}
-				break;
-			}
-			case K_MAP:
-			{
-				if(obj instanceof WyMap) {
-					WyMap ol = (WyMap) obj;
-					WyType.Dictionary tl = (WyType.Dictionary) t;
-					WyType key = tl.key;
-					WyType value = tl.value;
-					
-					if (key.kind == K_ANY && value.kind == K_ANY) {
-						return true;						
-					} else if(key.kind == K_VOID || value.kind == K_VOID) {
-						return ol.isEmpty();
-					} else {
-						for (java.util.Map.Entry<Object, Object> elem : ol
-								.entrySet()) {
-							if (!instanceOf(elem.getKey(), key)
-									|| !instanceOf(elem.getValue(), value)) {
-								return false;
-							}
-						}
-						return true;
-					}
-				}
-				break;
-			}
-			case K_RECORD:
-			{
-				if(obj instanceof WyRecord) {
-					WyRecord ol = (WyRecord) obj;
-					WyType.Record tl = (WyType.Record) t;
-					String[] names = tl.names;
-					WyType[] types = tl.types;					
-					if(!tl.isOpen && names.length != ol.size()) {
-						return false;
-					}
-					for(int i=0;i!=names.length;++i) {
-						String name = names[i];
-						if(ol.containsKey(name)) {
-							WyType type = types[i];
-							Object val = ol.get(name);						
-							if(!instanceOf(val,type)) {
-								return false;
-							}
-						} else {
-							return false;
-						}
-					}
-					return true;
-				}
-				break;
-			}
-			case K_NEGATION:
-			{
-				WyType.Negation not = (WyType.Negation) t;
-				return !instanceOf(obj,not.element);
-			}
-			case K_UNION:
-			{
-				WyType.Union un = (WyType.Union) t;
-				for(WyType bound : un.bounds) {
-					if(instanceOf(obj,bound)) {
-						return true;
-					}
-				}		
-				break;
-			}
-		}		
-		return false;
+		return t.test().test(obj);
 	}
 
 	/**
@@ -984,29 +889,30 @@ public class Util {
 	}
 
 	public static int compare(WyRecord o1, WyRecord o2) {
-		ArrayList<String> mKeys = new ArrayList<String>(o1.keySet());
-		ArrayList<String> tKeys = new ArrayList<String>(o2.keySet());
-		Collections.sort(mKeys);
-		Collections.sort(tKeys);
+		// shapes are already sorted
+		String[] mKeys = o1.fieldNames();
+		String[] tKeys = o2.fieldNames();
+		Object[] mVals = o1.fieldValues();
+		Object[] tVals = o2.fieldValues();
 
-		for(int i=0;i!=Math.min(mKeys.size(),tKeys.size());++i) {
-			String mk = mKeys.get(i);
-			String tk = tKeys.get(i);
+		for(int i=0;i!=Math.min(mKeys.length,tKeys.length);++i) {
+			String mk = mKeys[i];
+			String tk = tKeys[i];
 			int c = mk.compareTo(tk);
 			if(c != 0) {
 				return c;
 			}
-			String mv = o1.get(mk).toString();
-			String tv = o2.get(tk).toString();
+			String mv = mVals[i].toString();
+			String tv = tVals[i].toString();
 			c = mv.compareTo(tv);
 			if(c != 0) {
 				return c;
 			}
 		}
 
-		if(mKeys.size() < tKeys.size()) {
+		if(mKeys.length < tKeys.length) {
 			return -1;
-		} else if(mKeys.size() > tKeys.size()) {
+		} else if(mKeys.length > tKeys.length) {
 			return 1;
 		} else {
 			return 0;
@@ -1017,11 +923,10 @@ public class Util {
 	public static WyRecord systemConsole(String[] args) {
 		// Not sure what the default value should be yet!!!
 		WyObject sysout = new WyObject(null);
-		WyRecord data = new WyRecord();
+		HashMap<String,Object> data = new HashMap<String,Object>();
 		data.put("out", sysout);		
 		data.put("args",fromStringList(args));
 		WyRecord console = new WyRecord(data);
-		sysout.start();		
 		return console;
 	}
 	
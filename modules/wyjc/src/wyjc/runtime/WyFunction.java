@@ -25,15 +25,15 @@
 
 package wyjc.runtime;
 
-import java.lang.reflect.Method;
+import java.lang.invoke.MethodHandle;
 
 public class WyFunction extends WyFunctionOrMethod {
-	WyFunction(Method method, Object... bindings) {
+	WyFunction(MethodHandle method, Object... bindings) {
 		super(method,bindings);
 	}
 	
 	public static WyFunction create(String clazz, String name, Object[] bindings) {
-		Method m = find(clazz,name);
+		MethodHandle m = find(clazz,name);
 		return new WyFunction(m, bindings);
 	}
 }
@@ -25,34 +25,145 @@
 
 package wyjc.runtime;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * <p>
+ * A function or method value, which is represented by a method handle. Any
+ * parameters bound when the value was created are inserted into the handle
+ * once, so that calls do not need to copy or merge argument arrays. Handles
+ * are adapted to take and return <code>Object</code>, so that small arities
+ * can be called directly without an argument array at all.
+ * </p>
+ * 
+ * @author David J. Pearce
+ * 
+ */
 public abstract class WyFunctionOrMethod {
-	private Method method;
-	private Object[] bindings;
-	
-	public WyFunctionOrMethod(Method method, Object... bindings) {
-		this.method = method;
-		this.bindings = bindings;
-	}
-	
-	public Object call(Object[] parameters) throws InvocationTargetException,
-			IllegalAccessException {
+	/**
+	 * Caches the (generic) method handle for each target, so that the target
+	 * is resolved at most once, rather than every time a lambda is created.
+	 */
+	private static final ConcurrentHashMap<String, MethodHandle> handles = new ConcurrentHashMap<String, MethodHandle>();
+
+	private final MethodHandle handle;
+	private MethodHandle spreader;
+
+	public WyFunctionOrMethod(MethodHandle handle, Object... bindings) {
 		if (bindings != null) {
-			Object[] copyOfBindings = bindings.clone();
-			for (int i = 0, j = 0; i != bindings.length; ++i) {
-				if (bindings[i] == null) {
-					copyOfBindings[i] = parameters[j++];
+			// insert from the right, so that the positions of earlier
+			// parameters are unaffected.
+			for (int i = bindings.length - 1; i >= 0; --i) {
+				if (bindings[i] != null) {
+					handle = MethodHandles.insertArguments(handle, i,
+							bindings[i]);
 				}
 			}
-			parameters = copyOfBindings;
 		}
+		this.handle = handle;
+	}
+
+	public Object call(Object[] parameters) throws InvocationTargetException {
+		MethodHandle h = spreader;
+		if (h == null) {
+			h = handle.asSpreader(Object[].class, handle.type()
+					.parameterCount());
+			spreader = h;
+		}
+		try {
+			return h.invokeExact(parameters);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new InvocationTargetException(e);
+		}
+	}
+
+	public Object call() throws InvocationTargetException {
+		try {
+			return handle.invokeExact();
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new InvocationTargetException(e);
+		}
+	}
+
+	public Object call(Object p1) throws InvocationTargetException {
+		try {
+			return handle.invokeExact(p1);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new InvocationTargetException(e);
+		}
+	}
+
+	public Object call(Object p1, Object p2) throws InvocationTargetException {
+		try {
+			return handle.invokeExact(p1, p2);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new InvocationTargetException(e);
+		}
+	}
+
+	public Object call(Object p1, Object p2, Object p3)
+			throws InvocationTargetException {
+		try {
+			return handle.invokeExact(p1, p2, p3);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new InvocationTargetException(e);
+		}
+	}
+
+	/**
+	 * Find the method handle for a given static method, adapted so that all
+	 * parameters and the return are of type <code>Object</code>.
+	 * 
+	 * @param clazz
+	 *            --- the class containing the method.
+	 * @param name
+	 *            --- the (mangled) method name.
+	 * @return
+	 */
+	protected static MethodHandle find(String clazz, String name) {
+		String key = clazz + ":" + name;
+		MethodHandle handle = handles.get(key);
+		if (handle == null) {
+			Method m = findMethod(clazz, name);
+			try {
+				handle = MethodHandles.publicLookup().unreflect(m);
+			} catch (IllegalAccessException e) {
+				throw new RuntimeException("Method Not Accessible: " + clazz
+						+ ":" + name);
+			}
+			handle = handle.asType(MethodType.genericMethodType(handle
+					.type().parameterCount()));
+			handles.put(key, handle);
+		}
+		return handle;
+	}
 
-		return method.invoke(null, parameters);
-	}	
-	
-	protected static Method find(String clazz, String name) {
+	private static Method findMethod(String clazz, String name) {
 		try {
 			Class cl = Class.forName(clazz);
 			for (Method m : cl.getDeclaredMethods()) {
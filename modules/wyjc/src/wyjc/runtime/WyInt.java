@@ -0,0 +1,140 @@
+// Copyright (c) 2011, David J. Pearce (djp@ecs.vuw.ac.nz)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//    * Redistributions of source code must retain the above copyright
+//      notice, this list of conditions and the following disclaimer.
+//    * Redistributions in binary form must reproduce the above copyright
+//      notice, this list of conditions and the following disclaimer in the
+//      documentation and/or other materials provided with the distribution.
+//    * Neither the name of the <organization> nor the
+//      names of its contributors may be used to endorse or promote products
+//      derived from this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+// ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL DAVID J. PEARCE BE LIABLE FOR ANY
+// DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+// LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+// ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package wyjc.runtime;
+
+import java.math.BigInteger;
+
+/**
+ * <p>
+ * Provides fast paths for the common operations on Whiley integers, which are
+ * represented as <code>BigInteger</code>s. In practice, almost all integer
+ * values fit comfortably into a <code>long</code> and, when the operands of an
+ * operation do, it can be performed directly on <code>long</code>s without
+ * risk of overflow. Only when this is not possible is the (much slower)
+ * <code>BigInteger</code> operation used.
+ * </p>
+ * 
+ * <p>
+ * In addition, a table of small integer values is maintained, which is used
+ * for the results of such operations. This avoids repeatedly allocating the
+ * same values, which is a significant cost in tight loops (e.g. for loop
+ * counters and list indices).
+ * </p>
+ */
+public final class WyInt {
+	private static final int CACHE_MIN = -128;
+	private static final int CACHE_MAX = 1024;
+	private static final BigInteger[] cache = new BigInteger[CACHE_MAX - CACHE_MIN + 1];
+	
+	static {
+		for(int i=0;i!=cache.length;++i) {
+			cache[i] = BigInteger.valueOf(i + CACHE_MIN);
+		}
+	}
+	
+	private WyInt() {}
+	
+	/**
+	 * Obtain the integer with a given value, using a cached instance for small
+	 * values.
+	 * 
+	 * @param value
+	 * @return
+	 */
+	public static BigInteger valueOf(long value) {
+		if(value >= CACHE_MIN && value <= CACHE_MAX) {
+			return cache[(int) value - CACHE_MIN];
+		}
+		return BigInteger.valueOf(value);
+	}
+	
+	// ================================================================================
+	// Arithmetic Operations
+	// ================================================================================	 	
+
+	public static BigInteger add(BigInteger lhs, BigInteger rhs) {
+		if(lhs.bitLength() < 63 && rhs.bitLength() < 63) {
+			return valueOf(lhs.longValue() + rhs.longValue());
+		}
+		return lhs.add(rhs);
+	}
+	
+	public static BigInteger subtract(BigInteger lhs, BigInteger rhs) {
+		if(lhs.bitLength() < 63 && rhs.bitLength() < 63) {
+			return valueOf(lhs.longValue() - rhs.longValue());
+		}
+		return lhs.subtract(rhs);
+	}
+	
+	public static BigInteger multiply(BigInteger lhs, BigInteger rhs) {
+		if(lhs.bitLength() < 32 && rhs.bitLength() < 32) {
+			return valueOf(lhs.longValue() * rhs.longValue());
+		}
+		return lhs.multiply(rhs);
+	}
+	
+	public static BigInteger divide(BigInteger lhs, BigInteger rhs) {
+		// division by zero is left to BigInteger, so that the error reported
+		// is unchanged.
+		if(lhs.bitLength() < 63 && rhs.bitLength() < 63 && rhs.signum() != 0) {
+			return valueOf(lhs.longValue() / rhs.longValue());
+		}
+		return lhs.divide(rhs);
+	}
+	
+	public static BigInteger remainder(BigInteger lhs, BigInteger rhs) {
+		if(lhs.bitLength() < 63 && rhs.bitLength() < 63 && rhs.signum() != 0) {
+			return valueOf(lhs.longValue() % rhs.longValue());
+		}
+		return lhs.remainder(rhs);
+	}
+	
+	public static BigInteger negate(BigInteger value) {
+		if(value.bitLength() < 63) {
+			return valueOf(-value.longValue());
+		}
+		return value.negate();
+	}
+	
+	// ================================================================================
+	// Ranges
+	// ================================================================================	 	
+
+	/**
+	 * Determine the step taken when iterating over the range
+	 * <code>start..end</code>. Such ranges are traversed in descending order
+	 * when <code>start</code> is greater than <code>end</code>.
+	 * 
+	 * @param start
+	 *            --- first value in range (inclusive).
+	 * @param end
+	 *            --- last value in range (exclusive).
+	 * @return
+	 */
+	public static BigInteger step(BigInteger start, BigInteger end) {
+		return start.compareTo(end) <= 0 ? BigInteger.ONE : valueOf(-1);
+	}
+}
@@ -26,10 +26,11 @@
 package wyjc.runtime;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Map;
 
-public final class WyList extends java.util.ArrayList {		
+public final class WyList extends java.util.AbstractList implements java.util.RandomAccess {		
 	/**
 	 * The reference count is use to indicate how many variables are currently
 	 * referencing this compound structure. This is useful for making imperative
@@ -38,25 +39,176 @@ public final class WyList extends java.util.ArrayList {
 	 */
 	int refCount = 100; // temporary measure 
 	
+	/**
+	 * The items of this list. These are held in a
+	 * <code>PersistentVector</code> when persistent collections are enabled,
+	 * or an <code>ArrayList</code> otherwise. Lists of bytes are held unboxed
+	 * in a <code>ByteVector</code> instead, until something other than a byte
+	 * is stored in them.
+	 */
+	private java.util.List items;
+	
 	// ================================================================================
 	// Generic Operations
 	// ================================================================================	 	
 	
 	public WyList() {
-		super();				
+		if(Util.persistentCollections) {
+			items = new PersistentVector();
+		} else {
+			items = new ArrayList();
+		}
 	}
 	
 	public WyList(int size) {
-		super(size);			
+		if(Util.persistentCollections) {
+			items = new PersistentVector();
+		} else {
+			items = new ArrayList(size);
+		}
+	}
+	
+	/**
+	 * Construct a list of bytes from the first <code>size</code> elements of
+	 * a given array, which is not copied. The caller must not update the
+	 * array afterwards.
+	 * 
+	 * @param bytes
+	 *            --- the bytes.
+	 * @param size
+	 *            --- the number of bytes used.
+	 */
+	public WyList(byte[] bytes, int size) {
+		items = new ByteVector(bytes, size);
+	}
+	
+	private WyList(ByteVector items) {
+		this.items = items;
 	}
 	
 	WyList(java.util.Collection items) {
-		super(items);			
-		for(Object o : items) {
-			Util.incRefs(o);
+		if(items instanceof WyList && ((WyList) items).isBytes()) {
+			// In this case, the two lists share their bytes until either is
+			// updated.
+			this.items = ((ByteVector) ((WyList) items).items).fork();
+		} else if(items instanceof WyList && ((WyList) items).isPersistent()) {
+			// In this case, the two lists share their items, which are not
+			// updated in place through a persistent list.
+			this.items = ((PersistentVector) ((WyList) items).items).fork();
+		} else {
+			if(Util.persistentCollections) {
+				this.items = new PersistentVector(items);
+			} else {
+				this.items = new ArrayList(items);
+			}
+			for(Object o : items) {
+				Util.incRefs(o);
+			}
+		}
+	}
+	
+	boolean isPersistent() {
+		return items instanceof PersistentVector;
+	}
+	
+	/**
+	 * Check whether this list holds its items as unboxed bytes.
+	 * 
+	 * @return
+	 */
+	public boolean isBytes() {
+		return items instanceof ByteVector;
+	}
+	
+	/**
+	 * Get a read-only view of the items in this list, which must all be
+	 * bytes. This does not copy the items if they are held unboxed.
+	 * 
+	 * @return
+	 */
+	public java.nio.ByteBuffer toByteBuffer() {
+		if(items instanceof ByteVector) {
+			return ((ByteVector) items).toByteBuffer();
+		} 
+		byte[] bytes = new byte[items.size()];
+		for(int i=0;i!=bytes.length;++i) {
+			bytes[i] = (Byte) items.get(i);
+		}
+		return java.nio.ByteBuffer.wrap(bytes);
+	}
+	
+	public int size() {
+		return items.size();
+	}
+	
+	public Object get(int index) {
+		return items.get(index);
+	}
+	
+	public Object set(int index, Object item) {
+		generalise(item);
+		return items.set(index, item);
+	}
+	
+	public boolean add(Object item) {
+		generalise(item);
+		return items.add(item);
+	}
+	
+	public void add(int index, Object item) {
+		generalise(item);
+		items.add(index, item);
+	}
+	
+	public boolean addAll(java.util.Collection c) {
+		if(c instanceof WyList && ((WyList) c).isBytes()) {
+			if(items.isEmpty() && !(items instanceof ByteVector)) {
+				// adopt the representation of the bytes being appended.
+				items = new ByteVector(c.size());
+			}
+			if(items instanceof ByteVector) {
+				return items.addAll(((WyList) c).items);
+			}
+		} else if(items instanceof ByteVector) {
+			for(Object o : c) {
+				generalise(o);
+			}
+		}
+		return items.addAll(c);
+	}
+	
+	/**
+	 * Switch from an unboxed representation to a general one, if the given
+	 * item cannot be stored in the former.
+	 * 
+	 * @param item
+	 */
+	private void generalise(Object item) {
+		if(items instanceof ByteVector && !(item instanceof Byte)) {
+			if(Util.persistentCollections) {
+				items = new PersistentVector(items);
+			} else {
+				items = new ArrayList(items);
+			}
 		}
 	}
 	
+	public Object remove(int index) {
+		return items.remove(index);
+	}
+	
+	public void clear() {
+		items.clear();
+	}
+	
+	public java.util.Iterator iterator() {
+		return items.iterator();
+	}
+	
+	protected void removeRange(int start, int end) {
+		items.subList(start, end).clear();
+	}
+	
 	public String toString() {
 		String r = "[";
 		boolean firstTime=true;
@@ -88,6 +240,10 @@ public final class WyList extends java.util.ArrayList {
 		} else {
 			Util.nlist_inplace_updates++;
 		}
+		return update(list,index,value);
+	}
+	
+	private static WyList update(WyList list, final BigInteger index, final Object value) {
 		Object v = list.set(index.intValue(),value);
 		Util.decRefs(v);
 		Util.incRefs(value);
@@ -96,44 +252,21 @@ public final class WyList extends java.util.ArrayList {
 	
 	public static WyList sublist(final WyList list, final BigInteger start, final BigInteger end) {
 		Util.countRefs(list);
-		int st = start.intValue();
-		int en = end.intValue();	
-		
 		if(list.refCount == 0) {
-			Util.nlist_inplace_updates++;
-			if(st <= en) {
-				for(int i=0;i!=st;++i) {
-					Util.decRefs(list.get(i));
-				}
-				for(int i=en;i!=list.size();++i) {
-					Util.decRefs(list.get(i));
-				}
-				list.removeRange(0,st);
-				list.removeRange(en-st,list.size());
-				return list;
-			} else {
-				for(int i=0;i!=en;++i) {
-					Util.decRefs(list.get(i));
-				}
-				for(int i=st;i!=list.size();++i) {
-					Util.decRefs(list.get(i));
-				}
-				list.removeRange(0,en);
-				list.removeRange(st-en,list.size());
-				Collections.reverse(list);
-				return list;
-			}
+			return internal_sublist(list,start,end);
 		} else {								
+			int st = start.intValue();
+			int en = end.intValue();	
 			WyList r;		
 			if(st <= en) {
-				r = new WyList(en-st);
+				r = list.isBytes() ? newBytes(en-st) : new WyList(en-st);
 				for (int i = st; i != en; ++i) {
 					Object item = list.get(i);
 					Util.incRefs(item);
 					r.add(item);
 				}	
 			} else {
-				r = new WyList(st-en);
+				r = list.isBytes() ? newBytes(st-en) : new WyList(st-en);
 				for (int i = (st-1); i >= en; --i) {
 					Object item = list.get(i);
 					Util.incRefs(item);
@@ -146,7 +279,7 @@ public final class WyList extends java.util.ArrayList {
 	}
 	
 	public static BigInteger length(WyList list) {						
-		return BigInteger.valueOf(list.size());
+		return WyInt.valueOf(list.size());
 	}
 	
 	public static WyList append(WyList lhs, WyList rhs) {
@@ -158,7 +291,10 @@ public final class WyList extends java.util.ArrayList {
 			Util.countClone(lhs);			
 			lhs = new WyList(lhs);				
 		} 
-		
+		return appendAll(lhs,rhs);
+	}
+	
+	private static WyList appendAll(WyList lhs, WyList rhs) {
 		lhs.addAll(rhs);
 		
 		for(Object o : rhs) {
@@ -194,10 +330,82 @@ public final class WyList extends java.util.ArrayList {
 		return list;
 	}
 	
+	// ================================================================================
+	// In-place Operations
+	// ================================================================================	 
+	
+	// The following methods are not intended for public consumption. They are
+	// used internally by the compiler to update a list in place, when it has
+	// determined that no other variable or value refers to the list (see
+	// wyil.util.dfa.UniquenessAnalysis).
+	
+	public static WyList internal_set(WyList list, final BigInteger index, final Object value) {
+		Util.nlist_inplace_updates++;
+		return update(list,index,value);
+	}
+	
+	public static WyList internal_sublist(final WyList list, final BigInteger start, final BigInteger end) {
+		Util.nlist_inplace_updates++;
+		int st = start.intValue();
+		int en = end.intValue();	
+		if(st <= en) {
+			for(int i=0;i!=st;++i) {
+				Util.decRefs(list.get(i));
+			}
+			for(int i=en;i!=list.size();++i) {
+				Util.decRefs(list.get(i));
+			}
+			list.removeRange(0,st);
+			list.removeRange(en-st,list.size());
+			return list;
+		} else {
+			for(int i=0;i!=en;++i) {
+				Util.decRefs(list.get(i));
+			}
+			for(int i=st;i!=list.size();++i) {
+				Util.decRefs(list.get(i));
+			}
+			list.removeRange(0,en);
+			list.removeRange(st-en,list.size());
+			Collections.reverse(list);
+			return list;
+		}
+	}
+	
+	public static WyList internal_append(WyList lhs, WyList rhs) {
+		Util.nlist_inplace_updates++;
+		return appendAll(lhs,rhs);
+	}
+	
+	public static WyList internal_append(WyList list, final Object item) {
+		Util.nlist_inplace_updates++;
+		list.add(item);
+		Util.incRefs(item);
+		return list;
+	}
+	
+	public static WyList internal_append(final Object item, WyList list) {
+		Util.nlist_inplace_updates++;
+		list.add(0,item);
+		Util.incRefs(item);
+		return list;
+	}
+	
 	public static int size(final WyList list) {		
 		return list.size();
 	}
 	
+	/**
+	 * This method is not intended for public consumption. It is used internally
+	 * by the compiler to construct a list of bytes, which are held unboxed.
+	 * 
+	 * @param size
+	 * @return
+	 */
+	public static WyList newBytes(int size) {
+		return new WyList(new ByteVector(size));
+	}
+	
 	/**
 	 * This method is not intended for public consumption. It is used internally
 	 * by the compiler during object construction only.
@@ -221,7 +429,9 @@ public final class WyList extends java.util.ArrayList {
 	 */
 	public static Object internal_get(WyList list, BigInteger index) {		
 		Object item = list.get(index.intValue());
-		if(list.refCount > 0) {
+		// the items of a persistent list may be shared with other versions of
+		// it, and so must never be updated in place.
+		if(list.refCount > 0 || list.isPersistent()) {
 			Util.incRefs(item);			
 		} 
 		return item;
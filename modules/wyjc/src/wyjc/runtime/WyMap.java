@@ -28,7 +28,7 @@ package wyjc.runtime;
 import java.math.BigInteger;
 import java.util.*;
 
-public final class WyMap extends java.util.HashMap<Object,Object> {	
+public final class WyMap extends java.util.AbstractMap<Object,Object> {	
 	/**
 	 * The reference count is use to indicate how many variables are currently
 	 * referencing this compound structure. This is useful for making imperative
@@ -37,22 +37,71 @@ public final class WyMap extends java.util.HashMap<Object,Object> {
 	 */
 	int refCount = 100;  // temporary measure
 
+	/**
+	 * The entries of this map. These are held in a
+	 * <code>PersistentHashMap</code> when persistent collections are enabled,
+	 * or a <code>HashMap</code> otherwise.
+	 */
+	private final Map<Object,Object> items;
+	
 	// ================================================================================
 	// Generic Operations
 	// ================================================================================	 	
 	
 	public WyMap() {
-		
+		if(Util.persistentCollections) {
+			items = new PersistentHashMap();
+		} else {
+			items = new HashMap<Object,Object>();
+		}
 	}
 	
 	WyMap(WyMap dict) {
-		super(dict);
-		for(Map.Entry e : dict.entrySet()) {
-			Util.incRefs(e.getKey());
-			Util.incRefs(e.getValue());
+		if(dict.isPersistent()) {
+			// In this case, the two maps share their entries, which are not
+			// updated in place through a persistent map.
+			this.items = ((PersistentHashMap) dict.items).fork();
+		} else {
+			this.items = new HashMap<Object,Object>(dict.items);
+			for(Map.Entry e : dict.entrySet()) {
+				Util.incRefs(e.getKey());
+				Util.incRefs(e.getValue());
+			}
 		}
 	}
 	
+	boolean isPersistent() {
+		return items instanceof PersistentHashMap;
+	}
+	
+	public int size() {
+		return items.size();
+	}
+	
+	public boolean containsKey(Object key) {
+		return items.containsKey(key);
+	}
+	
+	public Object get(Object key) {
+		return items.get(key);
+	}
+	
+	public Object put(Object key, Object value) {
+		return items.put(key, value);
+	}
+	
+	public Object remove(Object key) {
+		return items.remove(key);
+	}
+	
+	public void clear() {
+		items.clear();
+	}
+	
+	public Set<Map.Entry<Object,Object>> entrySet() {
+		return items.entrySet();
+	}
+	
 	public String toString() {
 		String r = "{";
 		boolean firstTime=true;
@@ -92,6 +141,26 @@ public final class WyMap extends java.util.HashMap<Object,Object> {
 		} else {
 			Util.ndict_inplace_updates++;
 		}
+		return update(dict, key, value);
+	}
+	
+	/**
+	 * This method is not intended for public consumption. It is used
+	 * internally by the compiler to update a map in place, when it has
+	 * determined that no other variable or value refers to the map (see
+	 * <code>wyil.util.dfa.UniquenessAnalysis</code>).
+	 * 
+	 * @param dict
+	 * @param key
+	 * @param value
+	 * @return
+	 */
+	public static WyMap internal_put(WyMap dict, Object key, Object value) {
+		Util.ndict_inplace_updates++;
+		return update(dict, key, value);
+	}
+	
+	private static WyMap update(WyMap dict, Object key, Object value) {
 		Object val = dict.put(key, value);
 		if(val != null) {
 			Util.decRefs(val);			
@@ -103,7 +172,7 @@ public final class WyMap extends java.util.HashMap<Object,Object> {
 	}
 	
 	public static BigInteger length(WyMap dict) {		
-		return BigInteger.valueOf(dict.size());
+		return WyInt.valueOf(dict.size());
 	}
 	
 	public static final class Iterator implements java.util.Iterator {
@@ -137,7 +206,9 @@ public final class WyMap extends java.util.HashMap<Object,Object> {
 	 */
 	public static Object internal_get(WyMap dict, Object key) {			
 		Object item = dict.get(key);
-		if(dict.refCount > 0) {
+		// the values of a persistent map may be shared with other versions of
+		// it, and so must never be updated in place.
+		if(dict.refCount > 0 || dict.isPersistent()) {
 			Util.incRefs(item);			
 		} 
 		return item;
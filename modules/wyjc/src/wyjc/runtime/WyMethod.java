@@ -25,15 +25,15 @@
 
 package wyjc.runtime;
 
-import java.lang.reflect.Method;
+import java.lang.invoke.MethodHandle;
 
 public class WyMethod extends WyFunctionOrMethod {
-	WyMethod(Method method, Object... bindings) {
+	WyMethod(MethodHandle method, Object... bindings) {
 		super(method, bindings);
 	}
 
 	public static WyMethod create(String clazz, String name, Object[] bindings) {
-		Method m = find(clazz, name);
+		MethodHandle m = find(clazz, name);
 		return new WyMethod(m, bindings);
 	}
 }
@@ -25,17 +25,101 @@
 
 package wyjc.runtime;
 
-import java.util.*;
-import java.lang.reflect.*;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * An actor, which holds some state and processes the messages sent to it one
+ * at a time. Actors are lightweight: they do not have their own threads.
+ * Instead, an actor with pending messages is scheduled onto a shared
+ * work-stealing pool, where it processes a batch of messages before giving up
+ * its thread to another actor. Thus, an idle actor costs no more than its
+ * mailbox, and programs can create very many of them.
+ * </p>
+ * 
+ * <p>
+ * The scheduler is configured using the following system properties:
+ * </p>
+ * <ul>
+ * <li><code>wyjc.actors.threads</code> --- the number of threads in the pool
+ * (default: the number of available processors).</li>
+ * <li><code>wyjc.actors.mailbox</code> --- the maximum number of pending
+ * messages per actor, or <code>0</code> for no limit (default: 1024).</li>
+ * <li><code>wyjc.actors.overflow</code> --- what happens when a message is
+ * sent to an actor whose mailbox is full. This is either <code>block</code>,
+ * where the sender waits until there is room (default), or <code>fail</code>,
+ * where an <code>IllegalStateException</code> is thrown.</li>
+ * </ul>
+ * 
+ * @author David J. Pearce
+ * 
+ */
+public final class WyObject implements Runnable {
+
+	/**
+	 * The policy applied when a message is sent to an actor whose mailbox is
+	 * full.
+	 */
+	public enum Overflow {
+		BLOCK, FAIL
+	}
+
+	/**
+	 * The pool onto which all actors are scheduled. This operates in FIFO
+	 * mode, since actors are never joined.
+	 */
+	private static final ForkJoinPool scheduler = new ForkJoinPool(
+			Integer.getInteger("wyjc.actors.threads", Runtime.getRuntime()
+					.availableProcessors()),
+			ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+
+	private static final int mailboxBound = Integer.getInteger(
+			"wyjc.actors.mailbox", 1024);
+
+	private static final Overflow overflow = Overflow.valueOf(System
+			.getProperty("wyjc.actors.overflow", "block").toUpperCase());
+
+	/**
+	 * The maximum number of messages an actor processes before rescheduling
+	 * itself, which prevents a busy actor from starving others.
+	 */
+	private static final int BATCH = 64;
+
+	/**
+	 * The actor currently processing a message on this thread (if any).
+	 */
+	private static final ThreadLocal<WyObject> current = new ThreadLocal<WyObject>();
+
+	/**
+	 * Caches the method handles used to dispatch messages given as reflective
+	 * methods.
+	 */
+	private static final ConcurrentHashMap<Method, MethodHandle> handles = new ConcurrentHashMap<Method, MethodHandle>();
 
-public final class WyObject extends Thread {
 	private Object state;
-	private ArrayBlockingQueue<Message> queue = new ArrayBlockingQueue<Message>(10); 
-	
+	private final ConcurrentLinkedQueue<Message> mailbox = new ConcurrentLinkedQueue<Message>();
+
+	/**
+	 * The number of messages in the mailbox. The actor is scheduled whenever
+	 * this becomes non-zero.
+	 */
+	private final AtomicInteger pending = new AtomicInteger();
+
+	/**
+	 * The free space in the mailbox, or <code>null</code> if it is unbounded.
+	 */
+	private final Semaphore capacity;
+
 	public WyObject(Object c) {
-		state = c;			
-		setDaemon(true);
+		state = c;
+		capacity = mailboxBound > 0 ? new Semaphore(mailboxBound) : null;
 	}
 
 	public Object state() {
@@ -49,14 +133,14 @@ public final class WyObject extends Thread {
 	
 	/**
 	 * Send a message asynchronously to this actor. If the mailbox is full, then
-	 * this will in fact block.
+	 * this will either block or fail, according to the overflow policy.
 	 * 
 	 * @param method --- the "message"
 	 * @param arguments --- the message "arguments"
 	 */
-	public void asyncSend(Method method, Object[] arguments) {		
+	public void asyncSend(MethodHandle method, Object[] arguments) {		
 		arguments[0] = this;		
-		queue.add(new Message(method,arguments,false));
+		send(new Message(method, arguments, false));
 	}
 
 	/**
@@ -68,51 +152,66 @@ public final class WyObject extends Thread {
 	 * @param arguments
 	 *            --- the message "arguments"
 	 */
-	public void vSyncSend(Method method, Object[] arguments) {
-		arguments[0] = this;
-		Message m = new Message(method, arguments, true);
-		queue.add(m);
-		m.get(); // discard return value
+	public void vSyncSend(MethodHandle method, Object[] arguments) {
+		syncSend(method, arguments); // discard return value
 	}
 	
 	/**
 	 * Send a message synchronously to this actor. This will block the sender
-	 * until the message is received, and a return value generated.
+	 * until the message is received, and a return value generated. Any
+	 * exception raised by the message is rethrown in the sender.
 	 * 
 	 * @param method
 	 *            --- the "message"
 	 * @param arguments
 	 *            --- the message "arguments"
 	 */
-	public Object syncSend(Method method, Object[] arguments) {
+	public Object syncSend(MethodHandle method, Object[] arguments) {
 		arguments[0] = this;
-		Message m = new Message(method,arguments,true);
-		queue.add(m);
+		Message m = new Message(method, arguments, true);
+		if (current.get() == this) {
+			// an actor sending to itself must not wait for its own mailbox.
+			m.dispatch();
+		} else {
+			send(m);
+		}
 		return m.get();
 	}
-		
-	public void run() {		
-		// this is where the action happens
-		while(1==1) {
-			try {				
-				Message m = queue.take();
-				Object r = m.method.invoke(null, m.arguments);
-				if(m.synchronous){
-					m.set(r);
-				} 
-			} catch(InterruptedException e) {
-				// do nothing I guess
-			} catch(IllegalAccessException e) {
-				// do nothing I guess
-			} catch(InvocationTargetException ex) {
-				// not sure what to do!
-				Throwable e = ex.getCause();
-				if(e instanceof RuntimeException) {
-					RuntimeException re = (RuntimeException) e;
-					throw re;
+	
+	public void asyncSend(Method method, Object[] arguments) {
+		asyncSend(handle(method), arguments);
+	}
+	
+	public void vSyncSend(Method method, Object[] arguments) {
+		vSyncSend(handle(method), arguments);
+	}
+	
+	public Object syncSend(Method method, Object[] arguments) {
+		return syncSend(handle(method), arguments);
+	}
+	
+	/**
+	 * Process a batch of pending messages. This is called by the scheduler,
+	 * and should not be called directly.
+	 */
+	public void run() {
+		WyObject old = current.get();
+		current.set(this);
+		try {
+			for (int i = 0; i != BATCH; ++i) {
+				Message m = mailbox.poll();
+				if (m.reserved) {
+					capacity.release();
+				}
+				m.dispatch();
+				if (pending.decrementAndGet() == 0) {
+					return; // nothing left to do
 				}
-				// do nothing I guess
 			}
+			// more messages are pending, so give other actors a turn.
+			scheduler.execute(this);
+		} finally {
+			current.set(old);
 		}
 	}
 	
@@ -120,31 +219,141 @@ public final class WyObject extends Thread {
 		return state + "@" + System.identityHashCode(this);
 	}
 	
-	private final static class Message {
-		public final Method method;
+	private void send(Message m) {
+		if (capacity != null && current.get() != this) {
+			// an actor sending to itself must not wait for its own mailbox.
+			reserve();
+			m.reserved = true;
+		}
+		mailbox.offer(m);
+		if (pending.getAndIncrement() == 0) {
+			scheduler.execute(this);
+		}
+	}
+
+	/**
+	 * Reserve space in this actor's mailbox for a message, according to the
+	 * overflow policy.
+	 */
+	private void reserve() {
+		if (capacity.tryAcquire()) {
+			return;
+		} else if (overflow == Overflow.FAIL) {
+			throw new IllegalStateException("mailbox full for " + this);
+		}
+		boolean interrupted = false;
+		ForkJoinPool.ManagedBlocker blocker = new ForkJoinPool.ManagedBlocker() {
+			private boolean acquired = false;
+
+			public boolean block() throws InterruptedException {
+				if (!acquired) {
+					capacity.acquire();
+					acquired = true;
+				}
+				return true;
+			}
+
+			public boolean isReleasable() {
+				return acquired || (acquired = capacity.tryAcquire());
+			}
+		};
+		while (true) {
+			try {
+				// this allows the pool to compensate for a blocked worker.
+				ForkJoinPool.managedBlock(blocker);
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	private static MethodHandle handle(Method method) {
+		MethodHandle handle = handles.get(method);
+		if (handle == null) {
+			try {
+				handle = MethodHandles.publicLookup().unreflect(method);
+			} catch (IllegalAccessException e) {
+				throw new IllegalArgumentException(e);
+			}
+			handles.put(method, handle);
+		}
+		return handle;
+	}
+	
+	private final static class Message implements ForkJoinPool.ManagedBlocker {
+		public final MethodHandle method;
 		public final Object[] arguments;
 		public final boolean synchronous;
-		public volatile boolean ready = false;
-		public volatile Object result;
+		public boolean reserved;
+		private boolean ready = false;
+		private Object result;
+		private Throwable exception;
 		
-		public Message(Method method, Object[] arguments, boolean synchronous) {
+		public Message(MethodHandle method, Object[] arguments, boolean synchronous) {
 			this.method = method;
 			this.arguments = arguments;
 			this.synchronous = synchronous;			
 		}				
 		
-		public synchronized Object get() {
-			while(!ready) {
+		public void dispatch() {
+			try {
+				Object r = method.invokeWithArguments(arguments);
+				if (synchronous) {
+					set(r, null);
+				}
+			} catch (Throwable e) {
+				if (synchronous) {
+					set(null, e);
+				} else {
+					// there is no-one to report this to, so treat it as
+					// uncaught and carry on with the next message.
+					Thread t = Thread.currentThread();
+					t.getUncaughtExceptionHandler().uncaughtException(t, e);
+				}
+			}
+		}
+		
+		public Object get() {
+			boolean interrupted = false;
+			while (!isReleasable()) {
 				try {
-					wait();
-				} catch(InterruptedException e) {				
+					// this allows the pool to compensate for a blocked worker.
+					ForkJoinPool.managedBlock(this);
+				} catch (InterruptedException e) {
+					interrupted = true;
 				}
 			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			if (exception instanceof RuntimeException) {
+				throw (RuntimeException) exception;
+			} else if (exception instanceof Error) {
+				throw (Error) exception;
+			} else if (exception != null) {
+				throw new RuntimeException(exception);
+			}
 			return result;
 		}
 		
-		public synchronized void set(Object result) {
-			this.result = result; 
+		public synchronized boolean isReleasable() {
+			return ready;
+		}
+		
+		public synchronized boolean block() throws InterruptedException {
+			while (!ready) {
+				wait();
+			}
+			return true;
+		}
+		
+		private synchronized void set(Object result, Throwable exception) {
+			this.result = result;
+			this.exception = exception;
 			this.ready = true;
 			notifyAll();
 		}
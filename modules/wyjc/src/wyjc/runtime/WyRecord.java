@@ -27,7 +27,28 @@ package wyjc.runtime;
 
 import java.util.*;
 
-public final class WyRecord extends HashMap<String,Object> {	
+/**
+ * <p>
+ * A record value. Rather than holding its fields in a hash table, a record is
+ * represented by its <i>shape</i> --- the sorted array of its field names ---
+ * and a parallel array of field values. Shapes are interned, so that all
+ * records with the same set of fields share the same shape array, and field
+ * names within a shape are interned strings.
+ * </p>
+ * 
+ * <p>
+ * This allows generated code to access a field of a record whose type is
+ * closed using a fixed index into the values array, which is determined at
+ * compile time. Since a value of open record type may have additional fields
+ * (and, hence, a different shape), the index is checked against the shape
+ * first and, if it does not match, the field is located by a binary search
+ * instead.
+ * </p>
+ * 
+ * @author David J. Pearce
+ * 
+ */
+public final class WyRecord extends AbstractMap<String,Object> {	
 	/**
 	 * The reference count is use to indicate how many variables are currently
 	 * referencing this compound structure. This is useful for making imperative
@@ -36,31 +57,190 @@ public final class WyRecord extends HashMap<String,Object> {
 	 */
 	int refCount = 100; // temporary measure
 	
-	public WyRecord() {}
+	/**
+	 * The interned shape of this record, which gives its field names in sorted
+	 * order.
+	 */
+	private String[] fields;
+	
+	/**
+	 * The field values of this record, which correspond to the field names
+	 * given in its shape.
+	 */
+	private Object[] values;
+	
+	public WyRecord() {
+		this.fields = shape();
+		this.values = new Object[0];
+	}
+	
+	/**
+	 * Construct a record from a shape and a corresponding array of values.
+	 * The shape must have been obtained from <code>shape()</code>, and the
+	 * values array is not copied.
+	 * 
+	 * @param fields
+	 *            --- interned shape of the record.
+	 * @param values
+	 *            --- field values in the order given by the shape.
+	 */
+	public WyRecord(String[] fields, Object[] values) {
+		this.fields = fields;
+		this.values = values;
+	}
 	
-	WyRecord(HashMap<String,Object> r) {
-		super(r);
-		for(Object item : r.values()) {
+	public WyRecord(Map<String,Object> r) {
+		this.fields = shape(r.keySet().toArray(new String[r.size()]));
+		this.values = new Object[fields.length];
+		for(int i=0;i!=fields.length;++i) {
+			Object item = r.get(fields[i]);
+			values[i] = item;
 			Util.incRefs(item);
 		}
 	}
 	
+	WyRecord(WyRecord r) {
+		this.fields = r.fields;
+		this.values = r.values.clone();
+		for(Object item : values) {
+			Util.incRefs(item);
+		}
+	}
+	
+	// ================================================================================
+	// Shapes
+	// ================================================================================	 	
+
+	private static final HashMap<List<String>,String[]> shapes = new HashMap<List<String>,String[]>();
+	
+	/**
+	 * Obtain the interned shape for a given set of field names, which need
+	 * not be sorted.
+	 * 
+	 * @param fields
+	 *            --- the field names.
+	 * @return
+	 */
+	public static String[] shape(String... fields) {
+		fields = fields.clone();
+		Arrays.sort(fields);
+		List<String> key = Arrays.asList(fields);
+		synchronized(shapes) {
+			String[] shape = shapes.get(key);
+			if(shape == null) {
+				for(int i=0;i!=fields.length;++i) {
+					fields[i] = fields[i].intern();
+				}
+				shape = fields;
+				shapes.put(key, shape);
+			}
+			return shape;
+		}
+	}
+	
+	private int indexOf(Object field) {
+		if(field instanceof String) {
+			int i = Arrays.binarySearch(fields, (String) field);
+			return i < 0 ? -1 : i;
+		}
+		return -1;
+	}
+	
+	private int indexOf(int index, String field) {
+		if(index < fields.length && fields[index] == field) {
+			return index;
+		}
+		return indexOf(field);
+	}
+	
 	// ================================================================================
 	// Generic Operations
 	// ================================================================================	 	
-		
+
+	public int size() {
+		return fields.length;
+	}
+	
+	public boolean containsKey(Object field) {
+		return indexOf(field) >= 0;
+	}
+	
+	public Object get(Object field) {
+		int i = indexOf(field);
+		return i < 0 ? null : values[i];
+	}
+	
+	public Object put(String field, Object value) {
+		int i = indexOf(field);
+		if(i >= 0) {
+			Object old = values[i];
+			values[i] = value;
+			return old;
+		} 
+		HashMap<String,Object> map = new HashMap<String,Object>(this);
+		map.put(field, value);
+		fields = shape(map.keySet().toArray(new String[map.size()]));
+		values = new Object[fields.length];
+		for(int j=0;j!=fields.length;++j) {
+			values[j] = map.get(fields[j]);
+		}
+		return null;
+	}
+	
+	public Set<Map.Entry<String,Object>> entrySet() {
+		return new AbstractSet<Map.Entry<String,Object>>() {
+			public int size() {
+				return fields.length;
+			}
+			public Iterator<Map.Entry<String,Object>> iterator() {
+				return new Iterator<Map.Entry<String,Object>>() {
+					private int index = 0;
+					public boolean hasNext() {
+						return index < fields.length;
+					}
+					public Map.Entry<String,Object> next() {
+						if(index >= fields.length) {
+							throw new NoSuchElementException();
+						}
+						Map.Entry<String,Object> e = new AbstractMap.SimpleImmutableEntry<String,Object>(
+								fields[index], values[index]);
+						index++;
+						return e;
+					}
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
+	}
+	
+	public boolean equals(Object o) {
+		if(o instanceof WyRecord) {
+			WyRecord r = (WyRecord) o;
+			return fields == r.fields && Arrays.equals(values, r.values);
+		}
+		return super.equals(o);
+	}
+	
+	public int hashCode() {
+		int hash = 0;
+		for(int i=0;i!=fields.length;++i) {
+			Object value = values[i];
+			hash += fields[i].hashCode() ^ (value == null ? 0 : value.hashCode());
+		}
+		return hash;
+	}
+	
 	public String toString() {
 		String r = "{";
 		boolean firstTime = true;
-
-		ArrayList<String> ss = new ArrayList<String>(keySet());
-		Collections.sort(ss);
-		for (String s : ss) {
+		for (int i=0;i!=fields.length;++i) {
 			if (!firstTime) {
 				r = r + ",";
 			}
 			firstTime = false;
-			r = r + s + ":" + whiley.lang.Any$native.toString(get(s));
+			r = r + fields[i] + ":" + whiley.lang.Any$native.toString(values[i]);
 		}
 		return r + "}";
 	}
@@ -75,7 +255,48 @@ public final class WyRecord extends HashMap<String,Object> {
 		return item;
 	}
 	
+	/**
+	 * Get a field of a record whose index within the record's shape is
+	 * expected to be known. This is used for records of closed type, where
+	 * the shape is determined at compile time.
+	 * 
+	 * @param record
+	 *            --- record being accessed.
+	 * @param field
+	 *            --- interned field name.
+	 * @param index
+	 *            --- expected index of field within the record's shape.
+	 * @return
+	 */
+	public static Object get(final WyRecord record, final String field, final int index) {
+		int i = record.indexOf(index, field);
+		Object item = i < 0 ? null : record.values[i];
+		Util.incRefs(item);
+		return item;
+	}
+	
 	public static WyRecord put(WyRecord record, final String field, final Object value) {
+		int i = record.indexOf(field);
+		if(i < 0) {
+			Util.countRefs(record);
+			Util.countClone(record);
+			record = new WyRecord(record);
+			record.put(field, value);
+			Util.incRefs(value);
+			return record;
+		}
+		return update(record, i, value);
+	}
+	
+	public static WyRecord put(WyRecord record, final String field, final int index, final Object value) {
+		int i = record.indexOf(index, field);
+		if(i < 0) {
+			return put(record, field, value);
+		}
+		return update(record, i, value);
+	}
+	
+	private static WyRecord update(WyRecord record, int i, final Object value) {
 		Util.countRefs(record);
 		if(record.refCount > 0) {
 			Util.countClone(record);			
@@ -83,12 +304,48 @@ public final class WyRecord extends HashMap<String,Object> {
 		} else {
 			Util.nrecord_strong_updates++;
 		}
-		Object val = record.put(field, value);
+		return assign(record, i, value);
+	}
+	
+	private static WyRecord assign(WyRecord record, int i, final Object value) {
+		Object val = record.values[i];
+		record.values[i] = value;
 		Util.decRefs(val); // decrement overwritten value
 		Util.incRefs(value);
 		return record;
 	}
 	
+	/**
+	 * This method is not intended for public consumption. It is used
+	 * internally by the compiler to update a record in place, when it has
+	 * determined that no other variable or value refers to the record (see
+	 * <code>wyil.util.dfa.UniquenessAnalysis</code>).
+	 * 
+	 * @param record
+	 * @param field
+	 * @param value
+	 * @return
+	 */
+	public static WyRecord internal_put(WyRecord record, final String field, final Object value) {
+		Util.nrecord_strong_updates++;
+		int i = record.indexOf(field);
+		if(i < 0) {			
+			record.put(field, value);
+			Util.incRefs(value);
+			return record;
+		}
+		return assign(record, i, value);
+	}
+	
+	public static WyRecord internal_put(WyRecord record, final String field, final int index, final Object value) {
+		int i = record.indexOf(index, field);
+		if(i < 0) {
+			return internal_put(record, field, value);
+		}
+		Util.nrecord_strong_updates++;
+		return assign(record, i, value);
+	}
+	
 	public static Object internal_get(final WyRecord record, final String field) {
 		Object item = record.get(field);
 		if(record.refCount > 0) {
@@ -96,4 +353,25 @@ public final class WyRecord extends HashMap<String,Object> {
 		}
 		return item;		
 	}
+	
+	public static Object internal_get(final WyRecord record, final String field, final int index) {
+		int i = record.indexOf(index, field);
+		Object item = i < 0 ? null : record.values[i];
+		if(record.refCount > 0) {
+			Util.incRefs(item);
+		}
+		return item;		
+	}
+	
+	// ================================================================================
+	// Shape Access
+	// ================================================================================	 	
+
+	String[] fieldNames() {
+		return fields;
+	}
+	
+	Object[] fieldValues() {
+		return values;
+	}
 }
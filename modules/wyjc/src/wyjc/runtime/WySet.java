@@ -29,7 +29,7 @@ import java.math.BigInteger;
 import java.util.*;
 
 
-public final class WySet extends java.util.HashSet {	
+public final class WySet extends java.util.AbstractSet {	
 	/**
 	 * The reference count is use to indicate how many variables are currently
 	 * referencing this compound structure. This is useful for making imperative
@@ -38,21 +38,61 @@ public final class WySet extends java.util.HashSet {
 	 */
 	int refCount = 100;  // temporary measure 
 
+	/**
+	 * The items of this set. These are held in a
+	 * <code>PersistentHashSet</code> when persistent collections are enabled,
+	 * or a <code>HashSet</code> otherwise.
+	 */
+	private final java.util.Set items;
+	
 	// ================================================================================
 	// Generic Operations
 	// ================================================================================	 	
 		
 	public WySet() {		
-			
+		if(Util.persistentCollections) {
+			items = new PersistentHashSet();
+		} else {
+			items = new HashSet();
+		}
 	}
 	
-	private WySet(java.util.Collection items) {
-		super(items);
-		for(Object o : items) {
-			Util.incRefs(o);
+	WySet(WySet set) {
+		if(set.items instanceof PersistentHashSet) {
+			// In this case, the two sets share their items.
+			this.items = ((PersistentHashSet) set.items).fork();
+		} else {
+			this.items = new HashSet(set.items);
+			for(Object o : set.items) {
+				Util.incRefs(o);
+			}
 		}
 	}	
 	
+	public int size() {
+		return items.size();
+	}
+	
+	public boolean contains(Object item) {
+		return items.contains(item);
+	}
+	
+	public boolean add(Object item) {
+		return items.add(item);
+	}
+	
+	public boolean remove(Object item) {
+		return items.remove(item);
+	}
+	
+	public void clear() {
+		items.clear();
+	}
+	
+	public Iterator iterator() {
+		return items.iterator();
+	}
+	
 	public String toString() {
 		String r = "{";
 		boolean firstTime=true;
@@ -96,6 +136,10 @@ public final class WySet extends java.util.HashSet {
 			Util.countClone(lhs);
 			lhs = new WySet(lhs);
 		}		
+		return unionAll(lhs,rhs);
+	}
+	
+	private static WySet unionAll(WySet lhs, WySet rhs) {
 		lhs.addAll(rhs);
 		for(Object o : rhs) {
 			Util.incRefs(o);
@@ -112,6 +156,10 @@ public final class WySet extends java.util.HashSet {
 			Util.countClone(lhs);			
 			lhs = new WySet(lhs);			
 		}
+		return unionItem(lhs,rhs);
+	}
+	
+	private static WySet unionItem(WySet lhs, Object rhs) {
 		lhs.add(rhs);
 		Util.incRefs(rhs);
 		return lhs;
@@ -126,9 +174,7 @@ public final class WySet extends java.util.HashSet {
 			Util.countClone(rhs);			
 			rhs = new WySet(rhs);			
 		}		
-		rhs.add(lhs);
-		Util.incRefs(lhs);
-		return rhs;
+		return unionItem(rhs,lhs);
 	}
 	
 	public static WySet difference(WySet lhs, WySet rhs) {
@@ -141,6 +187,10 @@ public final class WySet extends java.util.HashSet {
 			Util.countClone(lhs);
 			lhs = new WySet(lhs);
 		}			
+		return differenceAll(lhs,rhs);
+	}
+	
+	private static WySet differenceAll(WySet lhs, WySet rhs) {
 		lhs.removeAll(rhs);
 		for(Object o : rhs) {
 			Util.decRefs(o); // because of constructor increment	
@@ -156,10 +206,14 @@ public final class WySet extends java.util.HashSet {
 			Util.countClone(lhs);
 			lhs = new WySet(lhs);
 		}	
+		return differenceItem(lhs,rhs);
+	}	
+	
+	private static WySet differenceItem(WySet lhs, Object rhs) {
 		lhs.remove(rhs);
 		Util.decRefs(rhs); // because of constructor increment		
 		return lhs;
-	}	
+	}
 	
 	public static WySet intersect(WySet lhs, WySet rhs) {
 		Util.countRefs(lhs);
@@ -175,6 +229,10 @@ public final class WySet extends java.util.HashSet {
 			Util.countClone(lhs);
 			lhs = new WySet(lhs);
 		}	
+		return intersectAll(lhs,rhs);
+	}
+	
+	private static WySet intersectAll(WySet lhs, WySet rhs) {
 		lhs.retainAll(rhs);
 		for(Object o : rhs) {
 			if(!lhs.contains(o)) {
@@ -193,19 +251,7 @@ public final class WySet extends java.util.HashSet {
 			Util.countClone(lhs);
 			lhs = new WySet(lhs);
 		}
-		
-		for(Object o : lhs) {
-			Util.decRefs(o);
-		}
-		
-		lhs.clear();
-		
-		if(lhs.contains(rhs)) {			
-			Util.incRefs(rhs);
-			lhs.add(rhs);
-		} 
-				
-		return lhs;
+		return intersectItem(lhs,rhs);
 	}
 	
 	public static WySet intersect(Object lhs, WySet rhs) {		
@@ -217,23 +263,75 @@ public final class WySet extends java.util.HashSet {
 			Util.countClone(rhs);
 			rhs = new WySet(rhs);
 		}
-		
-		for(Object o : rhs) {
+		return intersectItem(rhs,lhs);
+	}
+	
+	private static WySet intersectItem(WySet lhs, Object rhs) {
+		for(Object o : lhs) {
 			Util.decRefs(o);
 		}
 		
-		rhs.clear();
+		lhs.clear();
 		
-		if(rhs.contains(lhs)) {			
-			Util.incRefs(lhs);
-			rhs.add(lhs);
+		if(lhs.contains(rhs)) {			
+			Util.incRefs(rhs);
+			lhs.add(rhs);
 		} 
 				
-		return rhs;
-	}	
+		return lhs;
+	}
+	
+	// ================================================================================
+	// In-place Operations
+	// ================================================================================	 
+	
+	// The following methods are not intended for public consumption. They are
+	// used internally by the compiler to update a set in place, when it has
+	// determined that no other variable or value refers to the set (see
+	// wyil.util.dfa.UniquenessAnalysis).
+	
+	public static WySet internal_union(WySet lhs, WySet rhs) {
+		Util.nset_inplace_updates++;
+		return unionAll(lhs,rhs);
+	}
+	
+	public static WySet internal_union(WySet lhs, Object rhs) {
+		Util.nset_inplace_updates++;
+		return unionItem(lhs,rhs);
+	}
+	
+	public static WySet internal_union(Object lhs, WySet rhs) {
+		Util.nset_inplace_updates++;
+		return unionItem(rhs,lhs);
+	}
+	
+	public static WySet internal_difference(WySet lhs, WySet rhs) {
+		Util.nset_inplace_updates++;
+		return differenceAll(lhs,rhs);
+	}
+	
+	public static WySet internal_difference(WySet lhs, Object rhs) {
+		Util.nset_inplace_updates++;
+		return differenceItem(lhs,rhs);
+	}
+	
+	public static WySet internal_intersect(WySet lhs, WySet rhs) {
+		Util.nset_inplace_updates++;
+		return intersectAll(lhs,rhs);
+	}
+	
+	public static WySet internal_intersect(WySet lhs, Object rhs) {
+		Util.nset_inplace_updates++;
+		return intersectItem(lhs,rhs);
+	}
+	
+	public static WySet internal_intersect(Object lhs, WySet rhs) {
+		Util.nset_inplace_updates++;
+		return intersectItem(rhs,lhs);
+	}
 	
 	public static BigInteger length(WySet set) {		
-		return BigInteger.valueOf(set.size());
+		return WyInt.valueOf(set.size());
 	}
 	
 	/**
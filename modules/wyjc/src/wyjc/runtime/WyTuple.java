@@ -88,7 +88,7 @@ public final class WyTuple extends java.util.ArrayList {
 	}
 		
 	public static BigInteger length(WyTuple tuple) {		
-		return BigInteger.valueOf(tuple.size());
+		return WyInt.valueOf(tuple.size());
 	}
 	
 	public static int size(final WyTuple list) {
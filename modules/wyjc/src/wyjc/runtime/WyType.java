@@ -56,10 +56,31 @@ public abstract class WyType {
 	
 	public final int kind;
 	
+	/**
+	 * The compiled test for this type, which is created when it is first
+	 * needed.
+	 */
+	private TypeTest test;
+	
 	private WyType(int kind) {
 		this.kind = kind;
 	}
 	
+	/**
+	 * Get the compiled runtime test for this type.
+	 * 
+	 * @return
+	 */
+	public final TypeTest test() {
+		TypeTest t = test;
+		if(t == null) {
+			// compiling twice in a race is harmless.
+			t = TypeTest.compile(this);
+			test = t;
+		}
+		return t;
+	}
+	
 	public static final Void VOID = new Void();
 	public static final Any ANY = new Any();
 	public static final Meta META = new Meta();
@@ -26,9 +26,12 @@
 package wyjc.testing;
 
 import wyc.WycMain;
+import wyjc.WyjcMain;
 import wyjc.util.WyjcBuildTask;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 import static org.junit.Assert.fail;
 
@@ -95,6 +98,74 @@ public class TestHarness {
 		}
 	}
 	
+	/**
+	 * Compile a test case so that it uses persistent (structure sharing)
+	 * lists, sets and maps, and then execute it whilst comparing its output
+	 * against the sample output. The test fails if either it does not
+	 * compile, or running it does not produce the sample output. Any class
+	 * files for the test are removed beforehand, so that it is always
+	 * recompiled, and afterwards, so that they are not picked up by other
+	 * tests.
+	 * 
+	 * @param name
+	 *            Name of the test to run. This must correspond to an executable
+	 *            Java file in the srcPath of the same name.
+	 */
+	protected void runPersistentTest(String name) {
+		runWyjcTest(name, new String[0], "-persistent");
+	}
+
+	/**
+	 * Compile a test case so that its class files target a given version of
+	 * Java, and then execute it with every class verified whilst comparing
+	 * its output against the sample output. For Java 6 onwards, this checks
+	 * the StackMapTable frames generated for each method. The test fails if
+	 * either it does not compile, or running it does not produce the sample
+	 * output (e.g. because a class fails verification). As for
+	 * <code>runPersistentTest()</code>, any class files for the test are
+	 * removed beforehand and afterwards.
+	 * 
+	 * @param name
+	 *            Name of the test to run. This must correspond to an executable
+	 *            Java file in the srcPath of the same name.
+	 * @param target
+	 *            The version of Java to target (e.g. 8).
+	 */
+	protected void runTargetTest(String name, int target) {
+		runWyjcTest(name, new String[] { "-Xverify:all" }, "-target",
+				Integer.toString(target));
+	}
+
+	/**
+	 * Compile a test case using the given wyjc options, and then execute it
+	 * using the given JVM options whilst comparing its output against the
+	 * sample output. Any class files for the test are removed beforehand, so
+	 * that it is always recompiled, and afterwards, so that they are not
+	 * picked up by other tests.
+	 */
+	private void runWyjcTest(String name, String[] jvmOptions,
+			String... options) {
+		String filename = sourcepath + File.separatorChar + name + ".whiley";
+		deleteClassFiles(sourcepath, name);
+		try {
+			ArrayList<String> args = new ArrayList<String>(Arrays.asList(
+					"-wd", sourcepath, "-wyildir", sourcepath, "-cd",
+					sourcepath, "-wp", WYRT_PATH));
+			args.addAll(Arrays.asList(options));
+			args.add(filename);
+			if (new WyjcMain(new WyjcBuildTask(), WyjcMain.OPTIONS).run(args
+					.toArray(new String[args.size()])) != WycMain.SUCCESS) {
+				fail("couldn't compile test!");
+			} else {
+				String output = run(sourcepath, name, jvmOptions);
+				compare(output, outputPath + File.separatorChar + name + "."
+						+ outputExtension);
+			}
+		} finally {
+			deleteClassFiles(sourcepath, name);
+		}
+	}
+	
 	/**
 	 * Compile and execute a test case with verification enabled, whilst
 	 * comparing its output against the sample output. The test fails if either
@@ -149,13 +220,31 @@ public class TestHarness {
 		return new WycMain(new WyjcBuildTask(), WycMain.DEFAULT_OPTIONS).run(args);
 	}
 	
-	private static String run(String path, String name) {
+	private static void deleteClassFiles(String path, final String name) {
+		File[] files = new File(path).listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String f) {
+				return f.equals(name + ".class")
+						|| (f.startsWith(name + "$") && f.endsWith(".class"));
+			}
+		});
+		if (files != null) {
+			for (File f : files) {
+				f.delete();
+			}
+		}
+	}
+	
+	private static String run(String path, String name, String... jvmOptions) {
 		try {
 			// We need to have
 			String classpath = "." + File.pathSeparator + WYBS_PATH + File.pathSeparator + WYIL_PATH
 					+ File.pathSeparator + WYJC_PATH + File.pathSeparator + WYRL_PATH;
 			classpath = classpath.replace('/', File.separatorChar);
-			String tmp = "java -cp " + classpath + " " + name;
+			String tmp = "java";
+			for (String option : jvmOptions) {
+				tmp += " " + option;
+			}
+			tmp += " -cp " + classpath + " " + name;
 			Process p = Runtime.getRuntime().exec(tmp, null, new File(path));
 
 			StringBuffer syserr = new StringBuffer();
@@ -29,6 +29,6 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
-@Suite.SuiteClasses( { RuntimeValidTests.class, ExtendedValidTests.class, ExtendedRuntimeInvalidTests.class })
+@Suite.SuiteClasses( { RuntimeValidTests.class, ExtendedValidTests.class, ExtendedRuntimeInvalidTests.class, PersistentValidTests.class, TargetValidTests.class })
 public class AllTests {
 }
@@ -0,0 +1,139 @@
+// Copyright (c) 2011, David J. Pearce (djp@ecs.vuw.ac.nz)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//    * Redistributions of source code must retain the above copyright
+//      notice, this list of conditions and the following disclaimer.
+//    * Redistributions in binary form must reproduce the above copyright
+//      notice, this list of conditions and the following disclaimer in the
+//      documentation and/or other materials provided with the distribution.
+//    * Neither the name of the <organization> nor the
+//      names of its contributors may be used to endorse or promote products
+//      derived from this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+// ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL DAVID J. PEARCE BE LIABLE FOR ANY
+// DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+// LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+// ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package wyjc.testing.tests;
+
+import org.junit.*;
+import wyjc.testing.TestHarness;
+
+/**
+ * Runs the valid tests which make heavy use of lists, sets and maps, but with
+ * persistent (structure sharing) collections. These must produce exactly the
+ * same output as when the default collections are used.
+ */
+public class PersistentValidTests extends TestHarness {
+ public PersistentValidTests() {
+  super("../../tests/base/valid","../../tests/base/valid","sysout");
+ }
+
+ @Test public void Dictionary_Valid_1_PersistentTest() { runPersistentTest("Dictionary_Valid_1"); }
+ @Test public void Dictionary_Valid_2_PersistentTest() { runPersistentTest("Dictionary_Valid_2"); }
+ @Test public void Dictionary_Valid_3_PersistentTest() { runPersistentTest("Dictionary_Valid_3"); }
+ @Test public void Dictionary_Valid_4_PersistentTest() { runPersistentTest("Dictionary_Valid_4"); }
+ @Test public void Dictionary_Valid_5_PersistentTest() { runPersistentTest("Dictionary_Valid_5"); }
+ @Test public void Dictionary_Valid_6_PersistentTest() { runPersistentTest("Dictionary_Valid_6"); }
+ @Test public void Dictionary_Valid_7_PersistentTest() { runPersistentTest("Dictionary_Valid_7"); }
+ @Test public void Dictionary_Valid_8_PersistentTest() { runPersistentTest("Dictionary_Valid_8"); }
+ @Test public void Dictionary_Valid_9_PersistentTest() { runPersistentTest("Dictionary_Valid_9"); }
+ @Test public void Dictionary_Valid_10_PersistentTest() { runPersistentTest("Dictionary_Valid_10"); }
+ @Test public void Dictionary_Valid_11_PersistentTest() { runPersistentTest("Dictionary_Valid_11"); }
+ @Test public void Dictionary_Valid_12_PersistentTest() { runPersistentTest("Dictionary_Valid_12"); }
+ @Test public void Dictionary_Valid_13_PersistentTest() { runPersistentTest("Dictionary_Valid_13"); }
+ @Test public void Dictionary_Valid_14_PersistentTest() { runPersistentTest("Dictionary_Valid_14"); }
+ @Test public void Dictionary_Valid_15_PersistentTest() { runPersistentTest("Dictionary_Valid_15"); }
+ @Test public void Dictionary_Valid_16_PersistentTest() { runPersistentTest("Dictionary_Valid_16"); }
+ @Test public void Dictionary_Valid_17_PersistentTest() { runPersistentTest("Dictionary_Valid_17"); }
+ @Test public void ListAccess_Valid_1_PersistentTest() { runPersistentTest("ListAccess_Valid_1"); }
+ @Test public void ListAccess_Valid_2_PersistentTest() { runPersistentTest("ListAccess_Valid_2"); }
+ @Test public void ListAccess_Valid_3_PersistentTest() { runPersistentTest("ListAccess_Valid_3"); }
+ @Test public void ListAppend_Valid_1_PersistentTest() { runPersistentTest("ListAppend_Valid_1"); }
+ @Test public void ListAppend_Valid_2_PersistentTest() { runPersistentTest("ListAppend_Valid_2"); }
+ @Test public void ListAppend_Valid_3_PersistentTest() { runPersistentTest("ListAppend_Valid_3"); }
+ @Test public void ListAppend_Valid_4_PersistentTest() { runPersistentTest("ListAppend_Valid_4"); }
+ @Test public void ListAppend_Valid_5_PersistentTest() { runPersistentTest("ListAppend_Valid_5"); }
+ @Test public void ListAppend_Valid_6_PersistentTest() { runPersistentTest("ListAppend_Valid_6"); }
+ @Test public void ListAppend_Valid_7_PersistentTest() { runPersistentTest("ListAppend_Valid_7"); }
+ @Test public void ListAppend_Valid_8_PersistentTest() { runPersistentTest("ListAppend_Valid_8"); }
+ @Test public void ListAppend_Valid_9_PersistentTest() { runPersistentTest("ListAppend_Valid_9"); }
+ @Test public void ListAppend_Valid_10_PersistentTest() { runPersistentTest("ListAppend_Valid_10"); }
+ @Test public void ListAssign_Valid_1_PersistentTest() { runPersistentTest("ListAssign_Valid_1"); }
+ @Test public void ListAssign_Valid_2_PersistentTest() { runPersistentTest("ListAssign_Valid_2"); }
+ @Test public void ListAssign_Valid_3_PersistentTest() { runPersistentTest("ListAssign_Valid_3"); }
+ @Test public void ListAssign_Valid_4_PersistentTest() { runPersistentTest("ListAssign_Valid_4"); }
+ @Test public void ListAssign_Valid_5_PersistentTest() { runPersistentTest("ListAssign_Valid_5"); }
+ @Test public void ListAssign_Valid_6_PersistentTest() { runPersistentTest("ListAssign_Valid_6"); }
+ @Test public void ListAssign_Valid_7_PersistentTest() { runPersistentTest("ListAssign_Valid_7"); }
+ @Test public void ListAssign_Valid_8_PersistentTest() { runPersistentTest("ListAssign_Valid_8"); }
+ @Test public void ListAssign_Valid_9_PersistentTest() { runPersistentTest("ListAssign_Valid_9"); }
+ @Test public void ListAssign_Valid_10_PersistentTest() { runPersistentTest("ListAssign_Valid_10"); }
+ @Test public void ListAssign_Valid_11_PersistentTest() { runPersistentTest("ListAssign_Valid_11"); }
+ @Test public void ListConversion_Valid_1_PersistentTest() { runPersistentTest("ListConversion_Valid_1"); }
+ @Test public void ListElemOf_Valid_1_PersistentTest() { runPersistentTest("ListElemOf_Valid_1"); }
+ @Test public void ListEmpty_Valid_1_PersistentTest() { runPersistentTest("ListEmpty_Valid_1"); }
+ @Test public void ListEquals_Valid_1_PersistentTest() { runPersistentTest("ListEquals_Valid_1"); }
+ @Test public void ListGenerator_Valid_1_PersistentTest() { runPersistentTest("ListGenerator_Valid_1"); }
+ @Test public void ListGenerator_Valid_2_PersistentTest() { runPersistentTest("ListGenerator_Valid_2"); }
+ @Test public void ListGenerator_Valid_3_PersistentTest() { runPersistentTest("ListGenerator_Valid_3"); }
+ @Test public void ListLength_Valid_1_PersistentTest() { runPersistentTest("ListLength_Valid_1"); }
+ @Test public void ListLength_Valid_2_PersistentTest() { runPersistentTest("ListLength_Valid_2"); }
+ @Test public void ListSublist_Valid_1_PersistentTest() { runPersistentTest("ListSublist_Valid_1"); }
+ @Test public void ListSublist_Valid_2_PersistentTest() { runPersistentTest("ListSublist_Valid_2"); }
+ @Test public void ListSublist_Valid_3_PersistentTest() { runPersistentTest("ListSublist_Valid_3"); }
+ @Test public void ListSublist_Valid_4_PersistentTest() { runPersistentTest("ListSublist_Valid_4"); }
+ @Test public void SetAssign_Valid_1_PersistentTest() { runPersistentTest("SetAssign_Valid_1"); }
+ @Test public void SetComprehension_Valid_1_PersistentTest() { runPersistentTest("SetComprehension_Valid_1"); }
+ @Test public void SetComprehension_Valid_2_PersistentTest() { runPersistentTest("SetComprehension_Valid_2"); }
+ @Test public void SetComprehension_Valid_3_PersistentTest() { runPersistentTest("SetComprehension_Valid_3"); }
+ @Test public void SetComprehension_Valid_4_PersistentTest() { runPersistentTest("SetComprehension_Valid_4"); }
+ @Test public void SetComprehension_Valid_5_PersistentTest() { runPersistentTest("SetComprehension_Valid_5"); }
+ @Test public void SetComprehension_Valid_6_PersistentTest() { runPersistentTest("SetComprehension_Valid_6"); }
+ @Test public void SetComprehension_Valid_7_PersistentTest() { runPersistentTest("SetComprehension_Valid_7"); }
+ @Test public void SetComprehension_Valid_8_PersistentTest() { runPersistentTest("SetComprehension_Valid_8"); }
+ @Test public void SetComprehension_Valid_9_PersistentTest() { runPersistentTest("SetComprehension_Valid_9"); }
+ @Test public void SetComprehension_Valid_10_PersistentTest() { runPersistentTest("SetComprehension_Valid_10"); }
+ @Test public void SetConversion_Valid_1_PersistentTest() { runPersistentTest("SetConversion_Valid_1"); }
+ @Test public void SetDefine_Valid_1_PersistentTest() { runPersistentTest("SetDefine_Valid_1"); }
+ @Test public void SetDifference_Valid_1_PersistentTest() { runPersistentTest("SetDifference_Valid_1"); }
+ @Test public void SetElemOf_Valid_1_PersistentTest() { runPersistentTest("SetElemOf_Valid_1"); }
+ @Test public void SetEmpty_Valid_1_PersistentTest() { runPersistentTest("SetEmpty_Valid_1"); }
+ @Test public void SetGenerator_Valid_1_PersistentTest() { runPersistentTest("SetGenerator_Valid_1"); }
+ @Test public void SetIntersection_Valid_1_PersistentTest() { runPersistentTest("SetIntersection_Valid_1"); }
+ @Test public void SetIntersection_Valid_2_PersistentTest() { runPersistentTest("SetIntersection_Valid_2"); }
+ @Test public void SetIntersection_Valid_3_PersistentTest() { runPersistentTest("SetIntersection_Valid_3"); }
+ @Test public void SetIntersect_Valid_1_PersistentTest() { runPersistentTest("SetIntersect_Valid_1"); }
+ @Test public void SetIntersect_Valid_2_PersistentTest() { runPersistentTest("SetIntersect_Valid_2"); }
+ @Test public void SetLength_Valid_1_PersistentTest() { runPersistentTest("SetLength_Valid_1"); }
+ @Test public void SetSubset_Valid_1_PersistentTest() { runPersistentTest("SetSubset_Valid_1"); }
+ @Test public void SetSubset_Valid_3_PersistentTest() { runPersistentTest("SetSubset_Valid_3"); }
+ @Test public void SetSubset_Valid_4_PersistentTest() { runPersistentTest("SetSubset_Valid_4"); }
+ @Test public void SetSubset_Valid_5_PersistentTest() { runPersistentTest("SetSubset_Valid_5"); }
+ @Test public void SetSubset_Valid_6_PersistentTest() { runPersistentTest("SetSubset_Valid_6"); }
+ @Test public void SetUnion_Valid_1_PersistentTest() { runPersistentTest("SetUnion_Valid_1"); }
+ @Test public void SetUnion_Valid_2_PersistentTest() { runPersistentTest("SetUnion_Valid_2"); }
+ @Test public void SetUnion_Valid_3_PersistentTest() { runPersistentTest("SetUnion_Valid_3"); }
+ @Test public void SetUnion_Valid_4_PersistentTest() { runPersistentTest("SetUnion_Valid_4"); }
+ @Test public void SetUnion_Valid_5_PersistentTest() { runPersistentTest("SetUnion_Valid_5"); }
+ @Test public void SetUnion_Valid_6_PersistentTest() { runPersistentTest("SetUnion_Valid_6"); }
+ @Test public void SetUnion_Valid_7_PersistentTest() { runPersistentTest("SetUnion_Valid_7"); }
+ @Test public void SetUnion_Valid_8_PersistentTest() { runPersistentTest("SetUnion_Valid_8"); }
+ @Test public void SetUnion_Valid_9_PersistentTest() { runPersistentTest("SetUnion_Valid_9"); }
+ @Test public void String_Valid_1_PersistentTest() { runPersistentTest("String_Valid_1"); }
+ @Test public void String_Valid_2_PersistentTest() { runPersistentTest("String_Valid_2"); }
+ @Test public void String_Valid_3_PersistentTest() { runPersistentTest("String_Valid_3"); }
+ @Test public void String_Valid_4_PersistentTest() { runPersistentTest("String_Valid_4"); }
+ @Test public void String_Valid_5_PersistentTest() { runPersistentTest("String_Valid_5"); }
+ @Test public void String_Valid_6_PersistentTest() { runPersistentTest("String_Valid_6"); }
+ @Test public void String_Valid_7_PersistentTest() { runPersistentTest("String_Valid_7"); }
+}
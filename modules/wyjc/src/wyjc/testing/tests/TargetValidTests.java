@@ -0,0 +1,172 @@
+// Copyright (c) 2011, David J. Pearce (djp@ecs.vuw.ac.nz)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//    * Redistributions of source code must retain the above copyright
+//      notice, this list of conditions and the following disclaimer.
+//    * Redistributions in binary form must reproduce the above copyright
+//      notice, this list of conditions and the following disclaimer in the
+//      documentation and/or other materials provided with the distribution.
+//    * Neither the name of the <organization> nor the
+//      names of its contributors may be used to endorse or promote products
+//      derived from this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+// ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL DAVID J. PEARCE BE LIABLE FOR ANY
+// DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+// LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+// ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package wyjc.testing.tests;
+
+import org.junit.*;
+import wyjc.testing.TestHarness;
+
+/**
+ * Runs the valid tests which make heavy use of control flow (e.g. loops,
+ * switches, exceptions and lambdas), but with class files targeting Java 8
+ * and every class verified when they are executed. Thus, the StackMapTable
+ * frames generated must be accepted by the type-checking verifier, and the
+ * tests must still produce the sample output.
+ */
+public class TargetValidTests extends TestHarness {
+ public TargetValidTests() {
+  super("../../tests/base/valid","../../tests/base/valid","sysout");
+ }
+
+ @Test public void Byte_Valid_1_TargetTest() { runTargetTest("Byte_Valid_1", 8); }
+ @Test public void Byte_Valid_2_TargetTest() { runTargetTest("Byte_Valid_2", 8); }
+ @Test public void Byte_Valid_3_TargetTest() { runTargetTest("Byte_Valid_3", 8); }
+ @Test public void Byte_Valid_4_TargetTest() { runTargetTest("Byte_Valid_4", 8); }
+ @Test public void Byte_Valid_5_TargetTest() { runTargetTest("Byte_Valid_5", 8); }
+ @Test public void Byte_Valid_6_TargetTest() { runTargetTest("Byte_Valid_6", 8); }
+ @Test public void Byte_Valid_7_TargetTest() { runTargetTest("Byte_Valid_7", 8); }
+ @Test public void Byte_Valid_8_TargetTest() { runTargetTest("Byte_Valid_8", 8); }
+ @Test public void Byte_Valid_9_TargetTest() { runTargetTest("Byte_Valid_9", 8); }
+ @Test public void Cast_Valid_1_TargetTest() { runTargetTest("Cast_Valid_1", 8); }
+ @Test public void Cast_Valid_2_TargetTest() { runTargetTest("Cast_Valid_2", 8); }
+ @Test public void Cast_Valid_3_TargetTest() { runTargetTest("Cast_Valid_3", 8); }
+ @Test public void Cast_Valid_4_TargetTest() { runTargetTest("Cast_Valid_4", 8); }
+ @Test public void Cast_Valid_5_TargetTest() { runTargetTest("Cast_Valid_5", 8); }
+ @Test public void Coercion_Valid_1_TargetTest() { runTargetTest("Coercion_Valid_1", 8); }
+ @Test public void Coercion_Valid_2_TargetTest() { runTargetTest("Coercion_Valid_2", 8); }
+ @Test public void Coercion_Valid_3_TargetTest() { runTargetTest("Coercion_Valid_3", 8); }
+ @Test public void Coercion_Valid_4_TargetTest() { runTargetTest("Coercion_Valid_4", 8); }
+ @Test public void Coercion_Valid_6_TargetTest() { runTargetTest("Coercion_Valid_6", 8); }
+ @Test public void Coercion_Valid_7_TargetTest() { runTargetTest("Coercion_Valid_7", 8); }
+ @Test public void Coercion_Valid_8_TargetTest() { runTargetTest("Coercion_Valid_8", 8); }
+ @Test public void Complex_Valid_1_TargetTest() { runTargetTest("Complex_Valid_1", 8); }
+ @Test public void Complex_Valid_2_TargetTest() { runTargetTest("Complex_Valid_2", 8); }
+ @Test public void Complex_Valid_3_TargetTest() { runTargetTest("Complex_Valid_3", 8); }
+ @Test public void ConstrainedInt_Valid_1_TargetTest() { runTargetTest("ConstrainedInt_Valid_1", 8); }
+ @Test public void ConstrainedInt_Valid_2_TargetTest() { runTargetTest("ConstrainedInt_Valid_2", 8); }
+ @Test public void ConstrainedInt_Valid_3_TargetTest() { runTargetTest("ConstrainedInt_Valid_3", 8); }
+ @Test public void ConstrainedInt_Valid_4_TargetTest() { runTargetTest("ConstrainedInt_Valid_4", 8); }
+ @Test public void ConstrainedInt_Valid_5_TargetTest() { runTargetTest("ConstrainedInt_Valid_5", 8); }
+ @Test public void ConstrainedInt_Valid_6_TargetTest() { runTargetTest("ConstrainedInt_Valid_6", 8); }
+ @Test public void ConstrainedInt_Valid_7_TargetTest() { runTargetTest("ConstrainedInt_Valid_7", 8); }
+ @Test public void ConstrainedInt_Valid_8_TargetTest() { runTargetTest("ConstrainedInt_Valid_8", 8); }
+ @Test public void ConstrainedInt_Valid_9_TargetTest() { runTargetTest("ConstrainedInt_Valid_9", 8); }
+ @Test public void ConstrainedInt_Valid_10_TargetTest() { runTargetTest("ConstrainedInt_Valid_10", 8); }
+ @Test public void ConstrainedInt_Valid_11_TargetTest() { runTargetTest("ConstrainedInt_Valid_11", 8); }
+ @Test public void DoWhile_Valid_1_TargetTest() { runTargetTest("DoWhile_Valid_1", 8); }
+ @Test public void DoWhile_Valid_2_TargetTest() { runTargetTest("DoWhile_Valid_2", 8); }
+ @Test public void DoWhile_Valid_4_TargetTest() { runTargetTest("DoWhile_Valid_4", 8); }
+ @Test public void For_Valid_1_TargetTest() { runTargetTest("For_Valid_1", 8); }
+ @Test public void For_Valid_2_TargetTest() { runTargetTest("For_Valid_2", 8); }
+ @Test public void For_Valid_3_TargetTest() { runTargetTest("For_Valid_3", 8); }
+ @Test public void For_Valid_4_TargetTest() { runTargetTest("For_Valid_4", 8); }
+ @Test public void For_Valid_6_TargetTest() { runTargetTest("For_Valid_6", 8); }
+ @Test public void For_Valid_7_TargetTest() { runTargetTest("For_Valid_7", 8); }
+ @Test public void For_Valid_9_TargetTest() { runTargetTest("For_Valid_9", 8); }
+ @Test public void For_Valid_10_TargetTest() { runTargetTest("For_Valid_10", 8); }
+ @Test public void For_Valid_11_TargetTest() { runTargetTest("For_Valid_11", 8); }
+ @Test public void For_Valid_12_TargetTest() { runTargetTest("For_Valid_12", 8); }
+ @Test public void For_Valid_13_TargetTest() { runTargetTest("For_Valid_13", 8); }
+ @Test public void FunctionRef_Valid_1_TargetTest() { runTargetTest("FunctionRef_Valid_1", 8); }
+ @Test public void FunctionRef_Valid_4_TargetTest() { runTargetTest("FunctionRef_Valid_4", 8); }
+ @Test public void FunctionRef_Valid_5_TargetTest() { runTargetTest("FunctionRef_Valid_5", 8); }
+ @Test public void FunctionRef_Valid_7_TargetTest() { runTargetTest("FunctionRef_Valid_7", 8); }
+ @Test public void FunctionRef_Valid_8_TargetTest() { runTargetTest("FunctionRef_Valid_8", 8); }
+ @Test public void FunctionRef_Valid_9_TargetTest() { runTargetTest("FunctionRef_Valid_9", 8); }
+ @Test public void IfElse_Valid_1_TargetTest() { runTargetTest("IfElse_Valid_1", 8); }
+ @Test public void IfElse_Valid_2_TargetTest() { runTargetTest("IfElse_Valid_2", 8); }
+ @Test public void IfElse_Valid_3_TargetTest() { runTargetTest("IfElse_Valid_3", 8); }
+ @Test public void IfElse_Valid_4_TargetTest() { runTargetTest("IfElse_Valid_4", 8); }
+ @Test public void Lambda_Valid_1_TargetTest() { runTargetTest("Lambda_Valid_1", 8); }
+ @Test public void Lambda_Valid_2_TargetTest() { runTargetTest("Lambda_Valid_2", 8); }
+ @Test public void Lambda_Valid_3_TargetTest() { runTargetTest("Lambda_Valid_3", 8); }
+ @Test public void Lambda_Valid_4_TargetTest() { runTargetTest("Lambda_Valid_4", 8); }
+ @Test public void Lambda_Valid_6_TargetTest() { runTargetTest("Lambda_Valid_6", 8); }
+ @Test public void Lambda_Valid_7_TargetTest() { runTargetTest("Lambda_Valid_7", 8); }
+ @Test public void Lambda_Valid_8_TargetTest() { runTargetTest("Lambda_Valid_8", 8); }
+ @Test public void MessageSend_Valid_3_TargetTest() { runTargetTest("MessageSend_Valid_3", 8); }
+ @Test public void MessageSend_Valid_4_TargetTest() { runTargetTest("MessageSend_Valid_4", 8); }
+ @Test public void MessageSend_Valid_5_TargetTest() { runTargetTest("MessageSend_Valid_5", 8); }
+ @Test public void MessageSend_Valid_6_TargetTest() { runTargetTest("MessageSend_Valid_6", 8); }
+ @Test public void MessageSend_Valid_7_TargetTest() { runTargetTest("MessageSend_Valid_7", 8); }
+ @Test public void MethodRef_Valid_1_TargetTest() { runTargetTest("MethodRef_Valid_1", 8); }
+ @Test public void MethodRef_Valid_2_TargetTest() { runTargetTest("MethodRef_Valid_2", 8); }
+ @Test public void Process_Valid_1_TargetTest() { runTargetTest("Process_Valid_1", 8); }
+ @Test public void Process_Valid_2_TargetTest() { runTargetTest("Process_Valid_2", 8); }
+ @Test public void Process_Valid_3_TargetTest() { runTargetTest("Process_Valid_3", 8); }
+ @Test public void Process_Valid_4_TargetTest() { runTargetTest("Process_Valid_4", 8); }
+ @Test public void Process_Valid_5_TargetTest() { runTargetTest("Process_Valid_5", 8); }
+ @Test public void Process_Valid_6_TargetTest() { runTargetTest("Process_Valid_6", 8); }
+ @Test public void Process_Valid_7_TargetTest() { runTargetTest("Process_Valid_7", 8); }
+ @Test public void Process_Valid_8_TargetTest() { runTargetTest("Process_Valid_8", 8); }
+ @Test public void Process_Valid_9_TargetTest() { runTargetTest("Process_Valid_9", 8); }
+ @Test public void Process_Valid_10_TargetTest() { runTargetTest("Process_Valid_10", 8); }
+ @Test public void Process_Valid_11_TargetTest() { runTargetTest("Process_Valid_11", 8); }
+ @Test public void Process_Valid_12_TargetTest() { runTargetTest("Process_Valid_12", 8); }
+ @Test public void RecordAssign_Valid_1_TargetTest() { runTargetTest("RecordAssign_Valid_1", 8); }
+ @Test public void RecordAssign_Valid_2_TargetTest() { runTargetTest("RecordAssign_Valid_2", 8); }
+ @Test public void RecordAssign_Valid_3_TargetTest() { runTargetTest("RecordAssign_Valid_3", 8); }
+ @Test public void RecordAssign_Valid_4_TargetTest() { runTargetTest("RecordAssign_Valid_4", 8); }
+ @Test public void RecordAssign_Valid_5_TargetTest() { runTargetTest("RecordAssign_Valid_5", 8); }
+ @Test public void RecordAssign_Valid_6_TargetTest() { runTargetTest("RecordAssign_Valid_6", 8); }
+ @Test public void RecordAssign_Valid_7_TargetTest() { runTargetTest("RecordAssign_Valid_7", 8); }
+ @Test public void Switch_Valid_1_TargetTest() { runTargetTest("Switch_Valid_1", 8); }
+ @Test public void Switch_Valid_2_TargetTest() { runTargetTest("Switch_Valid_2", 8); }
+ @Test public void Switch_Valid_3_TargetTest() { runTargetTest("Switch_Valid_3", 8); }
+ @Test public void Switch_Valid_4_TargetTest() { runTargetTest("Switch_Valid_4", 8); }
+ @Test public void Switch_Valid_5_TargetTest() { runTargetTest("Switch_Valid_5", 8); }
+ @Test public void Switch_Valid_6_TargetTest() { runTargetTest("Switch_Valid_6", 8); }
+ @Test public void Switch_Valid_7_TargetTest() { runTargetTest("Switch_Valid_7", 8); }
+ @Test public void Switch_Valid_8_TargetTest() { runTargetTest("Switch_Valid_8", 8); }
+ @Test public void Switch_Valid_9_TargetTest() { runTargetTest("Switch_Valid_9", 8); }
+ @Test public void TryCatch_Valid_1_TargetTest() { runTargetTest("TryCatch_Valid_1", 8); }
+ @Test public void UnionType_Valid_1_TargetTest() { runTargetTest("UnionType_Valid_1", 8); }
+ @Test public void UnionType_Valid_2_TargetTest() { runTargetTest("UnionType_Valid_2", 8); }
+ @Test public void UnionType_Valid_4_TargetTest() { runTargetTest("UnionType_Valid_4", 8); }
+ @Test public void UnionType_Valid_5_TargetTest() { runTargetTest("UnionType_Valid_5", 8); }
+ @Test public void UnionType_Valid_6_TargetTest() { runTargetTest("UnionType_Valid_6", 8); }
+ @Test public void UnionType_Valid_7_TargetTest() { runTargetTest("UnionType_Valid_7", 8); }
+ @Test public void UnionType_Valid_8_TargetTest() { runTargetTest("UnionType_Valid_8", 8); }
+ @Test public void UnionType_Valid_9_TargetTest() { runTargetTest("UnionType_Valid_9", 8); }
+ @Test public void UnionType_Valid_10_TargetTest() { runTargetTest("UnionType_Valid_10", 8); }
+ @Test public void UnionType_Valid_11_TargetTest() { runTargetTest("UnionType_Valid_11", 8); }
+ @Test public void UnionType_Valid_12_TargetTest() { runTargetTest("UnionType_Valid_12", 8); }
+ @Test public void UnionType_Valid_13_TargetTest() { runTargetTest("UnionType_Valid_13", 8); }
+ @Test public void UnionType_Valid_14_TargetTest() { runTargetTest("UnionType_Valid_14", 8); }
+ @Test public void UnionType_Valid_15_TargetTest() { runTargetTest("UnionType_Valid_15", 8); }
+ @Test public void UnionType_Valid_16_TargetTest() { runTargetTest("UnionType_Valid_16", 8); }
+ @Test public void UnionType_Valid_17_TargetTest() { runTargetTest("UnionType_Valid_17", 8); }
+ @Test public void UnionType_Valid_18_TargetTest() { runTargetTest("UnionType_Valid_18", 8); }
+ @Test public void While_Valid_1_TargetTest() { runTargetTest("While_Valid_1", 8); }
+ @Test public void While_Valid_2_TargetTest() { runTargetTest("While_Valid_2", 8); }
+ @Test public void While_Valid_3_TargetTest() { runTargetTest("While_Valid_3", 8); }
+ @Test public void While_Valid_4_TargetTest() { runTargetTest("While_Valid_4", 8); }
+ @Test public void While_Valid_5_TargetTest() { runTargetTest("While_Valid_5", 8); }
+ @Test public void While_Valid_6_TargetTest() { runTargetTest("While_Valid_6", 8); }
+ @Test public void While_Valid_7_TargetTest() { runTargetTest("While_Valid_7", 8); }
+ @Test public void While_Valid_8_TargetTest() { runTargetTest("While_Valid_8", 8); }
+ @Test public void While_Valid_9_TargetTest() { runTargetTest("While_Valid_9", 8); }
+ @Test public void While_Valid_10_TargetTest() { runTargetTest("While_Valid_10", 8); }
+}
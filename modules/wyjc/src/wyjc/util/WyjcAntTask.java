@@ -68,6 +68,18 @@ public class WyjcAntTask extends WycAntTask {
 		myBuilder.setClassDir(dir);		
 	}
 	
+	public void setTarget(int target) {
+		try {
+			myBuilder.setTarget(target);
+		} catch (IllegalArgumentException e) {
+			throw new BuildException(e.getMessage());
+		}
+	}
+	
+	public void setPersistent(boolean persistent) {
+		myBuilder.setPersistentCollections(persistent);
+	}
+	
 	public WyjcAntTask() {
 		super(new WyjcBuildTask());
 		this.myBuilder = (WyjcBuildTask) builder;
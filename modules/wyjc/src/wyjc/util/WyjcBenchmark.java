@@ -0,0 +1,132 @@
+// Copyright (c) 2011, David J. Pearce (djp@ecs.vuw.ac.nz)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//    * Redistributions of source code must retain the above copyright
+//      notice, this list of conditions and the following disclaimer.
+//    * Redistributions in binary form must reproduce the above copyright
+//      notice, this list of conditions and the following disclaimer in the
+//      documentation and/or other materials provided with the distribution.
+//    * Neither the name of the <organization> nor the
+//      names of its contributors may be used to endorse or promote products
+//      derived from this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+// ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL DAVID J. PEARCE BE LIABLE FOR ANY
+// DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+// LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+// ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package wyjc.util;
+
+import java.io.*;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+
+/**
+ * A simple benchmark for measuring how long compiled Whiley programs take to
+ * run. Each class given on the command-line is loaded from the given class
+ * path, and its <code>main</code> method is run repeatedly with the given
+ * arguments. Output from the program is discarded whilst it is being timed,
+ * and the average time taken for each program is reported. A number of warmup
+ * iterations are performed first, to give the JIT a chance.
+ * 
+ * <pre>
+ * usage: java wyjc.util.WyjcBenchmark [-i iterations] [-cp path] Class ... [-- args]
+ * </pre>
+ * 
+ * For example, the following runs the matrix multiply example on its input:
+ * 
+ * <pre>
+ * java wyjc.util.WyjcBenchmark -cp examples matrix-multiply -- examples/matrix-multiply.input
+ * </pre>
+ */
+public class WyjcBenchmark {
+	private static final int WARMUP_ITERATIONS = 10;
+
+	public static void main(String[] args) throws Exception {
+		int iterations = 50;
+		ArrayList<URL> classpath = new ArrayList<URL>();
+		ArrayList<String> classes = new ArrayList<String>();
+		String[] programArgs = new String[0];
+
+		for (int i = 0; i != args.length; ++i) {
+			if (args[i].equals("-i")) {
+				iterations = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-cp")) {
+				for (String dir : args[++i].split(File.pathSeparator)) {
+					classpath.add(new File(dir).toURI().toURL());
+				}
+			} else if (args[i].equals("--")) {
+				programArgs = new String[args.length - i - 1];
+				System.arraycopy(args, i + 1, programArgs, 0,
+						programArgs.length);
+				break;
+			} else {
+				classes.add(args[i]);
+			}
+		}
+
+		if (classes.isEmpty()) {
+			System.out.println("usage: java wyjc.util.WyjcBenchmark [-i iterations] [-cp path] Class ... [-- args]");
+			return;
+		}
+
+		ClassLoader loader = new URLClassLoader(
+				classpath.toArray(new URL[classpath.size()]),
+				WyjcBenchmark.class.getClassLoader());
+		PrintStream out = System.out;
+		long total = 0;
+
+		for (String name : classes) {
+			Method main = loader.loadClass(name).getMethod("main",
+					String[].class);
+			for (int i = 0; i != WARMUP_ITERATIONS; ++i) {
+				run(main, programArgs);
+			}
+			long time = 0;
+			for (int i = 0; i != iterations; ++i) {
+				time += run(main, programArgs);
+			}
+			time = time / iterations;
+			total += time;
+			out.println(name + ": " + (time / 1000) + "us per iteration");
+		}
+
+		out.println("Total: " + (total / 1000) + "us per iteration");
+	}
+
+	/**
+	 * Run a program once, discarding its output, and return the time taken in
+	 * nanoseconds.
+	 * 
+	 * @param main
+	 *            --- the main method of the program.
+	 * @param args
+	 *            --- the arguments to pass to the program.
+	 * @return
+	 * @throws Exception
+	 */
+	private static long run(Method main, String[] args) throws Exception {
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			public void write(int b) {
+			}
+		}));
+		try {
+			long start = System.nanoTime();
+			main.invoke(null, (Object) args.clone());
+			return System.nanoTime() - start;
+		} finally {
+			System.setOut(out);
+		}
+	}
+}
@@ -57,6 +57,22 @@ public class WyjcBuildTask extends wyc.util.WycBuildTask {
 	 */
 	protected DirectoryRoot classDir;
 	
+	/**
+	 * The version of the class files to be generated.
+	 */
+	protected int classVersion = 49;
+
+	/**
+	 * The range of Java versions which can be targeted.
+	 */
+	public static final int MIN_TARGET = 5;
+	public static final int MAX_TARGET = 8;
+	
+	/**
+	 * Determines whether generated programs use persistent collections.
+	 */
+	protected boolean persistentCollections = false;
+	
 	public WyjcBuildTask() {
 		super(new Registry());
 	}
@@ -88,6 +104,31 @@ public class WyjcBuildTask extends wyc.util.WycBuildTask {
 				registry);
 	}
 		
+	public void setClassVersion(int classVersion) {
+		this.classVersion = classVersion;
+	}
+
+	/**
+	 * Set the version of Java targeted by the generated class files. Only
+	 * those versions whose class files can be generated are accepted.
+	 * 
+	 * @param target
+	 *            --- the Java version (e.g. 5, 6, 7 or 8).
+	 */
+	public void setTarget(int target) {
+		if (target < MIN_TARGET || target > MAX_TARGET) {
+			throw new IllegalArgumentException("unsupported target " + target
+					+ "; supported targets are " + MIN_TARGET + " to "
+					+ MAX_TARGET);
+		}
+		// Java 5 corresponds to class file version 49, and so on.
+		setClassVersion(44 + target);
+	}
+	
+	public void setPersistentCollections(boolean persistentCollections) {
+		this.persistentCollections = persistentCollections;
+	}
+	
 	@Override
 	protected void addBuildRules(StandardProject project) {
 		// Add default build rule for converting whiley files into wyil files. 
@@ -97,6 +138,8 @@ public class WyjcBuildTask extends wyc.util.WycBuildTask {
 		// the Wyil2JavaBuilder.
 		
 		Wyil2JavaBuilder jbuilder = new Wyil2JavaBuilder();
+		jbuilder.setClassVersion(classVersion);
+		jbuilder.setPersistentCollections(persistentCollections);
 
 		if (verbose) {
 			jbuilder.setLogger(new Logger.Default(System.err));
@@ -129,5 +172,13 @@ public class WyjcBuildTask extends wyc.util.WycBuildTask {
 		super.flush();
 		classDir.flush();
 	}
+	
+	@Override
+	protected void refresh() throws Exception {
+		if (project != null) {
+			super.refresh();
+			classDir.refresh();
+		}
+	}
 }		
 
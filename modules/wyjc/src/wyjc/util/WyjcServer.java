@@ -0,0 +1,33 @@
+package wyjc.util;
+
+import java.io.File;
+import java.io.IOException;
+
+import wyc.WycMain;
+import wyc.util.WycServer;
+import wyjc.WyjcMain;
+
+/**
+ * A long-running compile server for the Whiley-to-Java Compiler. This is
+ * identical to <code>WycServer</code>, except that it builds class files
+ * using a <code>WyjcBuildTask</code>.
+ */
+public class WyjcServer extends WycServer {
+
+	public WyjcServer() {
+		super(WyjcMain.OPTIONS);
+	}
+
+	@Override
+	protected WycMain create() {
+		WyjcBuildTask builder = new WyjcBuildTask();
+		builder.setResident(true);
+		return new WyjcMain(builder, options);
+	}
+
+	public static void main(String[] args) throws IOException {
+		File file = args.length > 0 ? new File(args[0])
+				: defaultServerFile("wyjc");
+		new WyjcServer().serve(file);
+	}
+}
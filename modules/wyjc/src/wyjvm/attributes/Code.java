@@ -255,9 +255,10 @@ public class Code implements BytecodeAttribute {
 
 		// The insnOffsets is used to map the statement index to the
 		// corresponding bytecodes. This is used in determining the start and
-		// end offsets for the exception handlers
+		// end offsets for the exception handlers. The final element holds the
+		// length of the code array.
 
-		int[] insnOffsets = new int[bytecodes.size()];
+		int[] insnOffsets = new int[bytecodes.size() + 1];
 		
 		boolean guestimate = true;
 		
@@ -312,7 +313,8 @@ public class Code implements BytecodeAttribute {
 				} else {
 					offset += b.toBytes(offset, labelOffsets, constantPool).length;
 				}				
-			}						
+			}
+			insnOffsets[bytecodes.size()] = offset;
 		}
 
 		// === CREATE BYTECODE BYTES ===
@@ -441,23 +443,37 @@ public class Code implements BytecodeAttribute {
 			
 			// Now, update the handlers appropriately					
 			int end = start + rw.length;
-			for (Handler h : handlers) {				
+			for (int i = 0; i != handlers.size(); ++i) {
+				Handler h = handlers.get(i);
 				int hstart = h.start;
 				int hend = h.end;
-				if (hstart <= start && hend > start) {
-					hend -= diff;
+				if (hend <= start) {
+					// handler entirely before rewrite, so unaffected
 				} else if (hstart >= end) {
 					hstart -= diff;
 					hend -= diff;
-				} else if ((hstart < end && hend >= end)
-						|| (hstart < start && hend >= start)) {					
+				} else if (hstart <= start && hend >= end) {
+					hend -= diff;
+				} else {					
 					throw new RuntimeException(
 							"Attempt to optimise an instruction that partially straddles an exception boundary!");
 				}
-				h.start = hstart;
-				h.end = hend;
+				if (hstart == hend) {
+					// handler no longer covers any bytecodes
+					handlers.remove(i--);
+				} else {
+					h.start = hstart;
+					h.end = hend;
+				}
 			}											
 		}
+		
+		// Finally, update those attributes which refer to bytecodes. 
+		for (BytecodeAttribute a : attributes) {
+			if (a instanceof BytecodeMapAttribute) {
+				((BytecodeMapAttribute) a).apply(rewrites);
+			}
+		}
 	}
 	
 	public void print(PrintWriter output,
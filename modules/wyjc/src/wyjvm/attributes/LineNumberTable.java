@@ -51,7 +51,35 @@ public class LineNumberTable implements Code.BytecodeMapAttribute {
 	}
 	
 	public void apply(List<Code.Rewrite> rewrites) {
-		// FIXME: this should be implemented		
+		ArrayList<Entry> nentries = new ArrayList<Entry>();
+		for (Entry e : entries) {
+			int start = e.start;
+			int offset = 0;
+			for (Code.Rewrite rw : rewrites) {
+				if (rw.start + rw.length <= e.start) {
+					offset += rw.length - rw.bytecodes.length;
+				} else {
+					if (rw.start <= e.start) {
+						// This entry lies within the rewritten region. If its
+						// bytecode was removed, then it moves to the first
+						// bytecode following the region.
+						start = rw.start
+								+ Math.min(e.start - rw.start,
+										rw.bytecodes.length);
+					}
+					break;
+				}
+			}
+			start -= offset;
+			// Where two entries now start at the same bytecode, the latter
+			// takes precedence since it describes the bytecode which remains.
+			int last = nentries.size() - 1;
+			if (last >= 0 && nentries.get(last).start == start) {
+				nentries.remove(last);
+			}
+			nentries.add(new Entry(start, e.line));
+		}
+		entries = nentries;
 	}
 	
 	public List<Entry> entries() {
@@ -71,10 +99,19 @@ public class LineNumberTable implements Code.BytecodeMapAttribute {
 	public void write(int[] bytecodeOffsets, BinaryOutputStream writer,
 			Map<Constant.Info, Integer> constantPool, ClassLoader loader)
 			throws IOException {
-		writer.write_u16(constantPool.get(new Constant.Utf8("LineNumberTable")));
-		writer.write_u32(2 + (4 * entries.size()));
-		writer.write_u16(entries.size());	
+		// Entries which no longer refer to an instruction (e.g. because the
+		// code they described was eliminated) must be dropped.
+		int codeLength = bytecodeOffsets[bytecodeOffsets.length - 1];
+		ArrayList<Entry> valid = new ArrayList<Entry>();
 		for(Entry e : entries) {
+			if(bytecodeOffsets[e.start] < codeLength) {
+				valid.add(e);
+			}
+		}
+		writer.write_u16(constantPool.get(new Constant.Utf8("LineNumberTable")));
+		writer.write_u32(2 + (4 * valid.size()));
+		writer.write_u16(valid.size());	
+		for(Entry e : valid) {
 			writer.write_u16(bytecodeOffsets[e.start]);
 			writer.write_u16(e.line);
 		}
@@ -25,13 +25,15 @@
 
 package wyjvm.attributes;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import wybs.io.BinaryOutputStream;
-import wyjvm.lang.BytecodeAttribute;
 import wyjvm.lang.Constant;
 import wyjvm.lang.Constant.Info;
 import wyjvm.lang.JvmType;
@@ -41,11 +43,18 @@ import wyjvm.lang.JvmType;
  * (either explicitly or implicitly) a bytecode offset, the verification types
  * for the local variables, and the verification types for the operand stack.
  * 
+ * <p>
+ * Frames are held against bytecode indices, rather than offsets, since the
+ * latter are not known until the class file is written. Every frame is
+ * written as a <code>full_frame</code>; whilst the more compact frame kinds
+ * would produce smaller class files, this is always valid.
+ * </p>
+ * 
  * @author David J. Pearce
  * 
  */
-public class StackMapTable implements BytecodeAttribute {
-	private final Frame[] frames;
+public class StackMapTable implements Code.BytecodeMapAttribute {
+	private Frame[] frames;
 	
 	public StackMapTable(Frame[] frames) {
 		this.frames = frames.clone(); 
@@ -54,31 +63,142 @@ public class StackMapTable implements BytecodeAttribute {
 
 	@Override
 	public String name() {
-		// FIXME: put back the right name when the attribute is written properly
-		// to disk.
-		return "StackMapTable2";
+		return "StackMapTable";
 	}
 
+	@Override
+	public void apply(List<Code.Rewrite> rewrites) {
+		ArrayList<Frame> nframes = new ArrayList<Frame>();
+		int pos = 0;
+		for (Code.Rewrite rw : rewrites) {
+			while (pos < rw.start) {
+				nframes.add(frames[pos++]);
+			}
+			// Frames within a rewritten region are kept only where a
+			// bytecode remains in that position.
+			for (int i = 0; i != rw.bytecodes.length; ++i) {
+				nframes.add(i < rw.length ? frames[pos + i] : null);
+			}
+			pos += rw.length;
+		}
+		while (pos < frames.length) {
+			nframes.add(frames[pos++]);
+		}
+		frames = nframes.toArray(new Frame[nframes.size()]);
+	}
+	
 	@Override
 	public void write(BinaryOutputStream writer,
 			Map<Info, Integer> constantPool, ClassLoader loader)
 			throws IOException {
-		// TODO: implement me!		
-		// only empty attribute written
+		// should never be called
+	}
+	
+	@Override
+	public void write(int[] bytecodeOffsets, BinaryOutputStream writer,
+			Map<Info, Integer> constantPool, ClassLoader loader)
+			throws IOException {
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		BinaryOutputStream fout = new BinaryOutputStream(bout);
+		int codeLength = bytecodeOffsets[bytecodeOffsets.length - 1];
+		int count = 0;
+		int last = -1;
+		Frame pending = null;
+		int pendingOffset = -1;
+		for (int i = 0; i != frames.length; ++i) {
+			Frame frame = frames[i];
+			int offset = bytecodeOffsets[i];
+			if (frame == null || offset == codeLength) {
+				continue;
+			} else if (pending != null && offset != pendingOffset) {
+				write(pending, pendingOffset - last - 1, fout, constantPool);
+				last = pendingOffset;
+				count++;
+			}
+			// Labels do not occupy any space in the bytecode array, hence
+			// several frames may map to the same offset. In such case, the
+			// last one is taken since control flows through the others to it.
+			pending = frame;
+			pendingOffset = offset;
+		}
+		if (pending != null) {
+			write(pending, pendingOffset - last - 1, fout, constantPool);
+			count++;
+		}
+		byte[] bytes = bout.toByteArray();
 		writer.write_u16(constantPool.get(new Constant.Utf8(name())));
-		writer.write_u32(0);
+		writer.write_u32(2 + bytes.length);
+		writer.write_u16(count);
+		writer.write(bytes);
 	}
 
+	private static void write(Frame frame, int delta,
+			BinaryOutputStream writer, Map<Info, Integer> constantPool)
+			throws IOException {
+		List<JvmType> locals = frame.locals();
+		writer.write_u8(FULL_FRAME);
+		writer.write_u16(delta);
+		writer.write_u16(locals.size());
+		for (JvmType t : locals) {
+			write(t, writer, constantPool);
+		}
+		writer.write_u16(frame.numStackItems);
+		for (int i = 0; i != frame.numStackItems; ++i) {
+			write(frame.types[frame.numLocals + i], writer, constantPool);
+		}
+	}
+
+	private static void write(JvmType type, BinaryOutputStream writer,
+			Map<Info, Integer> constantPool) throws IOException {
+		if (type instanceof JvmType.Null) {
+			writer.write_u8(ITEM_Null);
+		} else if (type instanceof JvmType.Reference) {
+			writer.write_u8(ITEM_Object);
+			writer.write_u16(constantPool.get(Constant
+					.buildClass((JvmType.Reference) type)));
+		} else if (type instanceof JvmType.Long) {
+			writer.write_u8(ITEM_Long);
+		} else if (type instanceof JvmType.Double) {
+			writer.write_u8(ITEM_Double);
+		} else if (type instanceof JvmType.Float) {
+			writer.write_u8(ITEM_Float);
+		} else if (type instanceof JvmType.Int || type instanceof JvmType.Bool
+				|| type instanceof JvmType.Char || type instanceof JvmType.Byte
+				|| type instanceof JvmType.Short) {
+			writer.write_u8(ITEM_Integer);
+		} else {
+			// includes void, which indicates an unusable local variable
+			writer.write_u8(ITEM_Top);
+		}
+	}
+	
 	@Override
 	public void addPoolItems(Set<Info> constantPool, ClassLoader loader) {
-		// TODO: implement me!
 		Constant.addPoolItem(new Constant.Utf8(name()), constantPool);
+		for (Frame frame : frames) {
+			if (frame != null) {
+				for (int i = 0; i != frame.types.length; ++i) {
+					JvmType t = frame.types[i];
+					if (t instanceof JvmType.Reference
+							&& !(t instanceof JvmType.Null)) {
+						Constant.addPoolItem(
+								Constant.buildClass((JvmType.Reference) t),
+								constantPool);
+					}
+				}
+			}
+		}
 	}
 
 	@Override
 	public void print(PrintWriter output, Map<Info, Integer> constantPool,
 			ClassLoader loader) throws IOException {
-		// TODO: implement me!		
+		output.println("  StackMapTable:");
+		for (int i = 0; i != frames.length; ++i) {
+			if (frames[i] != null) {
+				output.println("   " + i + ": " + frames[i]);
+			}
+		}
 	}
 	
 	/**
@@ -87,12 +207,22 @@ public class StackMapTable implements BytecodeAttribute {
 	 * by <code>Code.bytecodes</code>.
 	 * 
 	 * @param index
-	 * @return
+	 * @return --- the frame, or null if no frame is recorded at that index.
 	 */
 	public Frame frameAt(int index) {
 		return frames[index];
 	}
 	
+	private static final int FULL_FRAME = 255;
+	
+	private static final int ITEM_Top = 0;
+	private static final int ITEM_Integer = 1;
+	private static final int ITEM_Float = 2;
+	private static final int ITEM_Double = 3;
+	private static final int ITEM_Long = 4;
+	private static final int ITEM_Null = 5;
+	private static final int ITEM_Object = 7;
+	
 	/**
 	 * Represents a full stack frame.
 	 * 
@@ -129,6 +259,28 @@ public class StackMapTable implements BytecodeAttribute {
 			}
 		}
 		
+		/**
+		 * Returns the local variable types in the form they are written to a
+		 * class file. That is, the second slot of each long or double is
+		 * omitted, as are any unusable variables at the end.
+		 * 
+		 * @return
+		 */
+		public List<JvmType> locals() {
+			ArrayList<JvmType> locals = new ArrayList<JvmType>();
+			int size = 0;
+			for (int i = 0; i < numLocals; ++i) {
+				JvmType t = types[i];
+				locals.add(t);
+				if (t instanceof JvmType.Long || t instanceof JvmType.Double) {
+					i = i + 1;
+				}
+				if (!(t instanceof JvmType.Void)) {
+					size = locals.size();
+				}
+			}
+			return locals.subList(0, size);
+		}
 
 		public String toString() {
 			String r = "[";
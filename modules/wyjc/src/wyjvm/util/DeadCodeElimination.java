@@ -89,10 +89,29 @@ public class DeadCodeElimination {
 		HashSet<Integer> visited = new HashSet<Integer>();
 		HashMap<String,Integer> labelMap = buildLabelMap(bytecodes); 		
 		visit(0,visited,labelMap,bytecodes);
-		// now, visit handlers as well
-		for(Code.Handler handler : code.handlers()) {
-			int target = labelMap.get(handler.label);
-			visit(target,visited,labelMap,bytecodes);
+		// now, visit handlers as well. A handler is only reachable if some
+		// bytecode it covers is reachable, and visiting a handler may make
+		// others reachable. Therefore, we iterate until no change.
+		boolean changed = true;
+		while(changed) {
+			changed = false;
+			for(Code.Handler handler : code.handlers()) {
+				int target = labelMap.get(handler.label);
+				if(!visited.contains(target) && isReachable(handler,visited,bytecodes)) {
+					visit(target,visited,labelMap,bytecodes);
+					changed = true;
+				}
+			}
+		}
+		
+		// Any handler which was not reached is removed, since its code will be
+		// eliminated.
+		Iterator<Code.Handler> iter = code.handlers().iterator();
+		while(iter.hasNext()) {
+			Code.Handler handler = iter.next();
+			if(!visited.contains(labelMap.get(handler.label))) {
+				iter.remove();
+			}
 		}
 		
 		// Second, for any unreachable bytecode, add a rewrite which simply
@@ -148,6 +167,18 @@ public class DeadCodeElimination {
 		}
 	}
 	
+	protected static boolean isReachable(Code.Handler handler,
+			HashSet<Integer> visited, List<Bytecode> bytecodes) {
+		for (int i = handler.start; i < handler.end; ++i) {
+			// labels cannot throw exceptions
+			if (visited.contains(i)
+					&& !(bytecodes.get(i) instanceof Bytecode.Label)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
 	protected HashMap<String,Integer> buildLabelMap(List<Bytecode> bytecodes) {
 		HashMap<String,Integer> map = new HashMap<String,Integer>();
 		for(int i=0;i!=bytecodes.size();++i) {
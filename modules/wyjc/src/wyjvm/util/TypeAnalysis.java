@@ -24,8 +24,11 @@
 // SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package wyjvm.util;
 
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 
+import wybs.util.Pair;
 import wyjvm.attributes.Code;
 import wyjvm.attributes.StackMapTable;
 import wyjvm.lang.Bytecode;
@@ -82,6 +85,28 @@ import wyjvm.util.dfa.ForwardFlowAnalysis;
  */
 public class TypeAnalysis extends ForwardFlowAnalysis<TypeAnalysis.Store>{
 	private ClassFile.Method method; // currently being analysed
+	private JvmType.Clazz owner; // class enclosing method being analysed
+	
+	/**
+	 * The class loader used to resolve the class hierarchy. This is needed to
+	 * determine the least common supertype of two class types at a join
+	 * point.
+	 */
+	private final ClassLoader loader;
+	
+	/**
+	 * Caches classes loaded via the class loader, where null indicates the
+	 * class could not be loaded.
+	 */
+	private final HashMap<String, Class<?>> classes = new HashMap<String, Class<?>>();
+	
+	public TypeAnalysis() {
+		this(TypeAnalysis.class.getClassLoader());
+	}
+	
+	public TypeAnalysis(ClassLoader loader) {
+		this.loader = loader;
+	}
 	
 	/**
 	 * Apply the analysis to every method in a classfile, creating the necessary
@@ -90,9 +115,12 @@ public class TypeAnalysis extends ForwardFlowAnalysis<TypeAnalysis.Store>{
 	 * @param cf
 	 */
 	public void apply(ClassFile cf) {
+		this.owner = cf.type();
 		for (ClassFile.Method method : cf.methods()) {
-			Store[] stores = apply(method);
-			addStackMapTable(method,stores);
+			if (method.attribute(Code.class) != null) {
+				Store[] stores = apply(method);
+				addStackMapTable(method, stores);
+			}
 		}
 	}
 	
@@ -117,14 +145,19 @@ public class TypeAnalysis extends ForwardFlowAnalysis<TypeAnalysis.Store>{
 		if(existing != null) {
 			attr.attributes().remove(existing);
 		}
+		// A frame is required at the target of every branch and exception
+		// handler, and after every unconditional branch. Since all such
+		// locations are marked with a label, we simply record a frame for
+		// each reachable label.
+		List<Bytecode> bytecodes = attr.bytecodes();
 		StackMapTable.Frame[] frames = new StackMapTable.Frame[stores.length];
 		for (int i = 0; i != frames.length; ++i) {
 			Store store = stores[i];
-			if(store != null) {
+			if(store != null && bytecodes.get(i) instanceof Bytecode.Label) {
 				frames[i] = new StackMapTable.Frame(store.maxLocals, store.stack - store.maxLocals,
 						store.types);
 			} else {
-				// dead code
+				// dead code, or no frame required
 			}
 		}
 		attr.attributes().add(new StackMapTable(frames));
@@ -136,10 +169,14 @@ public class TypeAnalysis extends ForwardFlowAnalysis<TypeAnalysis.Store>{
 		List<JvmType> paramTypes = method.type().parameterTypes();
 		JvmType[] types = new JvmType[attr.maxLocals() + attr.maxStack()];
 		int index = 0;
+		if (!method.isStatic()) {
+			types[index++] = owner;
+		}
 		for (JvmType t : paramTypes) {
 			types[index] = normalise(t);
 			if (t instanceof JvmType.Long || t instanceof JvmType.Double) {
 				// for some reason, longs and doubles occupy two slots.
+				types[index + 1] = JvmTypes.T_VOID;
 				index = index + 2;
 			} else {
 				index = index + 1;
@@ -161,9 +198,9 @@ public class TypeAnalysis extends ForwardFlowAnalysis<TypeAnalysis.Store>{
 		store = store.clone();
 		checkMinStack(1,index,orig);
 		JvmType type = store.pop();
-		checkIsSubtype(normalise(code.type),type,index,orig);
+		checkIsKind(code.type,type,index,orig);
 		store.set(code.slot,type);
-		return store; 
+		return store;
 	}
 
 	@Override
@@ -172,7 +209,7 @@ public class TypeAnalysis extends ForwardFlowAnalysis<TypeAnalysis.Store>{
 		store = store.clone();
 		checkMaxStack(1,index,orig);
 		JvmType type = store.get(code.slot);		
-		checkIsSubtype(normalise(code.type),type,index,orig);
+		checkIsKind(code.type,type,index,orig);
 		store.push(type);
 		return store;
 	}
@@ -259,8 +296,11 @@ public class TypeAnalysis extends ForwardFlowAnalysis<TypeAnalysis.Store>{
 	public void transfer(int index, Return code, Store store) {		
 		if(code.type != null) {
 			checkMinStack(1,index,store);
-			checkIsSubtype(normalise(code.type),store.top(),index,store);
+			checkIsKind(code.type,store.top(),index,store);
 			checkIsSubtype(normalise(method.type().returnType()),store.top(),index,store);
+		} else if(!method.type().returnType().equals(JvmTypes.T_VOID)) {
+			throw new VerificationException(method, index, store,
+					"method expects a return value");
 		}
 	}
 
@@ -337,8 +377,27 @@ public class TypeAnalysis extends ForwardFlowAnalysis<TypeAnalysis.Store>{
 		checkMinStack(2,index,orig);
 		JvmType rhs = store.pop();
 		JvmType lhs = store.pop();
-		checkIsSubtype(normalise(code.type),lhs,index,orig);
-		checkIsSubtype(normalise(code.type),rhs,index,orig);
+		checkIsKind(code.type,lhs,index,orig);
+		checkIsKind(code.type,rhs,index,orig);
+		return store;
+	}
+
+	@Override
+	public Store transfer(int index, Bytecode.Switch code, Store store) {
+		Store orig = store;
+		store = store.clone();
+		checkMinStack(1, index, orig);
+		checkIsSubtype(JvmTypes.T_INT, store.pop(), index, orig);
+		return store;
+	}
+	
+	@Override
+	public Store transfer(int index, Code.Handler handler, Store store) {
+		// On entry to a handler, the operand stack holds exactly the thrown
+		// exception; local variables are unchanged.
+		store = store.clone();
+		store.stack = store.maxLocals;
+		store.push(handler.exception);
 		return store;
 	}
 
@@ -378,7 +437,7 @@ public class TypeAnalysis extends ForwardFlowAnalysis<TypeAnalysis.Store>{
 		store = store.clone();
 		checkMinStack(1,index,orig);
 		JvmType type = store.pop();
-		if(type instanceof JvmType.Array) {
+		if(!(type instanceof JvmType.Array)) {
 			throw new VerificationException(method, index, orig,
 					"arraylength requires array type, found " + type);
 		}
@@ -420,7 +479,7 @@ public class TypeAnalysis extends ForwardFlowAnalysis<TypeAnalysis.Store>{
 		store = store.clone();
 		checkMinStack(1,index,orig);
 		JvmType type = store.pop();
-		checkIsSubtype(code.type,type,index,orig);
+		checkIsReference(type,index,orig);
 		store.push(code.type);
 		return store;
 	}
@@ -445,7 +504,7 @@ public class TypeAnalysis extends ForwardFlowAnalysis<TypeAnalysis.Store>{
 		store = store.clone();		
 		checkMinStack(1,index,orig);
 		JvmType type = store.pop();
-		checkIsSubtype(code.type,type,index,orig);
+		checkIsReference(type,index,orig);
 		store.push(JvmTypes.T_INT);
 		return store;
 	}
@@ -521,8 +580,8 @@ public class TypeAnalysis extends ForwardFlowAnalysis<TypeAnalysis.Store>{
 		checkMinStack(2,index,orig);
 		JvmType lhs = store.pop();
 		JvmType rhs = store.pop();
-		checkIsSubtype(JvmTypes.T_LONG,lhs,index,orig);
-		checkIsSubtype(JvmTypes.T_LONG,rhs,index,orig);
+		checkIsSubtype(code.type,lhs,index,orig);
+		checkIsSubtype(code.type,rhs,index,orig);
 		store.push(JvmTypes.T_INT);
 		return store;
 	}
@@ -560,6 +619,18 @@ public class TypeAnalysis extends ForwardFlowAnalysis<TypeAnalysis.Store>{
 	}
 
 
+	@Override
+	protected void merge(int index, Store store, HashSet<Integer> worklist,
+			Store[] stores) {
+		if (stores[index] == null) {
+			// Stores are updated in place when merged, and several transfer
+			// functions return their incoming store unchanged. Therefore, we
+			// must copy here to prevent two bytecodes sharing a store.
+			store = store.clone();
+		}
+		super.merge(index, store, worklist, stores);
+	}
+
 	@Override
 	public boolean merge(int index, Store original, Store update) {
 		if (original.stack != update.stack) {
@@ -573,26 +644,30 @@ public class TypeAnalysis extends ForwardFlowAnalysis<TypeAnalysis.Store>{
 		for(int i=0;i!=original.stack;++i) {
 			JvmType ot = original_types[i];
 			JvmType ut = update_types[i];
-			changed |= !isSubtype(ot,ut);
-			original_types[i] = join(ot,ut);
+			JvmType jt = join(ot,ut);
+			changed |= !jt.equals(ot);
+			original_types[i] = jt;
 		}
 		
 		return changed;
 	}
 	
 	protected JvmType join(JvmType t1, JvmType t2) {
-		if (t1.equals(t2)) {
+		if (isSubtype(t1, t2)) {
 			return t1;
-		} else if (t1 instanceof JvmType.Array && t2 instanceof JvmType.Array) {
-			JvmType.Array a1 = (JvmType.Array) t1;
-			JvmType.Array a2 = (JvmType.Array) t2;
-			// FIXME: can we do better here?
-			if (a1.element().equals(a2.element())) {
-				return a1;
+		} else if (isSubtype(t2, t1)) {
+			return t2;
+		} else if (t1 instanceof JvmType.Clazz && t2 instanceof JvmType.Clazz) {
+			// Walk up the class hierarchy from t1 until we find a supertype of
+			// t2. This must terminate at java.lang.Object at the latest.
+			JvmType.Clazz c = superClass((JvmType.Clazz) t1);
+			while (c != null && !isSubtype(c, t2)) {
+				c = superClass(c);
 			}
+			return c != null ? c : JvmTypes.JAVA_LANG_OBJECT;
 		} else if (t1 instanceof JvmType.Reference
 				&& t2 instanceof JvmType.Reference) {
-			// FIXME: could do a lot better here.
+			// FIXME: could do better for arrays here.
 			return JvmTypes.JAVA_LANG_OBJECT;
 		}
 
@@ -657,6 +732,30 @@ public class TypeAnalysis extends ForwardFlowAnalysis<TypeAnalysis.Store>{
 		}
 	}	
 	
+	/**
+	 * Check t2 is compatible with the kind of value expected by a bytecode of
+	 * type t1. Bytecodes operating on references (e.g. aload) only require
+	 * some reference is given, whilst those operating on primitives require
+	 * the exact type. If not, throw a VerificationException.
+	 */
+	protected void checkIsKind(JvmType t1, JvmType t2, int index, Store store) {
+		if (t1 instanceof JvmType.Reference) {
+			checkIsReference(t2, index, store);
+		} else {
+			checkIsSubtype(normalise(t1), t2, index, store);
+		}
+	}
+	
+	/**
+	 * Check type is a reference type. If not, throw a VerificationException.
+	 */
+	protected void checkIsReference(JvmType type, int index, Store store) {
+		if (!(type instanceof JvmType.Reference)) {
+			throw new VerificationException(method, index, store,
+					"expected reference type, found type " + type);
+		}
+	}
+	
 	/**
 	 * Determine whether t1 is a supertype of t2 (i.e. t1 :> t2). 
 	 */
@@ -666,10 +765,12 @@ public class TypeAnalysis extends ForwardFlowAnalysis<TypeAnalysis.Store>{
 		} else if(t1 instanceof JvmType.Array && t2 instanceof JvmType.Array) {
 			JvmType.Array a1 = (JvmType.Array) t1;
 			JvmType.Array a2 = (JvmType.Array) t2;
-			// FIXME: can we do better here?
-			if(a1.element().equals(a2.element())) {
-				return true;
-			}
+			JvmType e1 = a1.element();
+			JvmType e2 = a2.element();
+			// arrays of references are covariant
+			return e1.equals(e2)
+					|| (e1 instanceof JvmType.Reference
+							&& e2 instanceof JvmType.Reference && isSubtype(e1, e2));
 		} else if (t1.equals(JvmTypes.JAVA_LANG_OBJECT)
 				&& t2 instanceof JvmType.Array) {
 			return true;
@@ -677,11 +778,78 @@ public class TypeAnalysis extends ForwardFlowAnalysis<TypeAnalysis.Store>{
 				&& t2 instanceof JvmType.Null) {
 			return true;
 		} else if(t1 instanceof JvmType.Clazz && t2 instanceof JvmType.Clazz) {
-			// FIXME: could do a lot better here.
-			return true;
+			String name = className((JvmType.Clazz) t1);
+			if (name.equals("java.lang.Object")) {
+				return true;
+			}
+			Class<?> c1 = load((JvmType.Clazz) t1);
+			if (c1 != null && c1.isInterface()) {
+				// the verifier treats interface types as java.lang.Object
+				return true;
+			}
+			for (JvmType.Clazz c = (JvmType.Clazz) t2; c != null; c = superClass(c)) {
+				if (className(c).equals(name)) {
+					return true;
+				}
+			}
 		}
 		return false;
 	}
+	
+	/**
+	 * Determine the direct superclass of a given class. Classes which cannot
+	 * be loaded (e.g. the class currently being generated) are assumed to
+	 * extend <code>java.lang.Object</code>.
+	 * 
+	 * @param type
+	 * @return --- the superclass, or null if type is java.lang.Object.
+	 */
+	protected JvmType.Clazz superClass(JvmType.Clazz type) {
+		Class<?> c = load(type);
+		if (c == null) {
+			return className(type).equals("java.lang.Object") ? null
+					: JvmTypes.JAVA_LANG_OBJECT;
+		} else if (c.isInterface()) {
+			return JvmTypes.JAVA_LANG_OBJECT;
+		}
+		Class<?> s = c.getSuperclass();
+		if (s == null) {
+			return null;
+		}
+		String name = s.getName();
+		int idx = name.lastIndexOf('.');
+		String pkg = idx < 0 ? "" : name.substring(0, idx);
+		return new JvmType.Clazz(pkg, name.substring(idx + 1).split("\\$"));
+	}
+	
+	private Class<?> load(JvmType.Clazz type) {
+		String name = className(type);
+		if (classes.containsKey(name)) {
+			return classes.get(name);
+		}
+		Class<?> c;
+		try {
+			c = Class.forName(name, false, loader);
+		} catch (ClassNotFoundException e) {
+			c = null;
+		} catch (LinkageError e) {
+			c = null;
+		}
+		classes.put(name, c);
+		return c;
+	}
+	
+	private static String className(JvmType.Clazz type) {
+		StringBuilder r = new StringBuilder(type.pkg());
+		String separator = r.length() == 0 ? "" : ".";
+		for (Pair<String, List<JvmType.Reference>> c : type.components()) {
+			r.append(separator);
+			r.append(c.first());
+			// nested classes are separated by '$' in their binary name
+			separator = "$";
+		}
+		return r.toString();
+	}
 	/**
 	 * Indicates that the bytecode being analysis is malformed in some manner.
 	 * 
@@ -759,6 +927,15 @@ public class TypeAnalysis extends ForwardFlowAnalysis<TypeAnalysis.Store>{
 		
 		public void set(int slot, JvmType type) {			
 			types[slot] = type;
+			if (type instanceof JvmType.Long || type instanceof JvmType.Double) {
+				// wide types occupy two slots
+				types[slot + 1] = JvmTypes.T_VOID;
+			}
+			if (slot > 0
+					&& (types[slot - 1] instanceof JvmType.Long || types[slot - 1] instanceof JvmType.Double)) {
+				// overwrote second half of a wide type
+				types[slot - 1] = JvmTypes.T_VOID;
+			}
 		}
 		
 		public JvmType top() {
@@ -25,6 +25,7 @@
 
 package wyjvm.util.dfa;
 
+import wybs.util.Pair;
 import wyjvm.attributes.Code;
 import wyjvm.lang.*;
 
@@ -52,6 +53,7 @@ public abstract class ForwardFlowAnalysis<T> {
 					"cannot apply forward flow analysis on method without code attribute");
 		}
 		List<Bytecode> bytecodes = attr.bytecodes();
+		List<Code.Handler> handlers = attr.handlers();
 		
 		// Holds the indices of bytecodes still to be processed. When this set
 		// is emtpy, we're done.
@@ -77,6 +79,16 @@ public abstract class ForwardFlowAnalysis<T> {
 			Bytecode bytecode = bytecodes.get(index);
 			T store = stores[index];
 			
+			// First, propagate the incoming store along any exceptional edges
+			// leaving this bytecode.
+			for (Code.Handler handler : handlers) {
+				if (handler.start <= index && index < handler.end) {
+					T handlerStore = transfer(index, handler, store);
+					merge(labels.get(handler.label), handlerStore, worklist,
+							stores);
+				}
+			}
+			
 			if(bytecode instanceof Bytecode.Label) {
 				// basically, a no-op
 				merge(index+1,store,worklist,stores);
@@ -97,7 +109,12 @@ public abstract class ForwardFlowAnalysis<T> {
 				merge(index+1,falseBranch,worklist,stores);
 				merge(labels.get(i.label),trueBranch,worklist,stores);
 			} else if(bytecode instanceof Bytecode.Switch) {
-				// TODO
+				Bytecode.Switch sw = (Bytecode.Switch) bytecode;
+				store = transfer(index,sw,store);
+				merge(labels.get(sw.defaultLabel),store,worklist,stores);
+				for (Pair<Integer, String> c : sw.cases) {
+					merge(labels.get(c.second()), store, worklist, stores);
+				}
 			} else if(bytecode instanceof Bytecode.Return) {
 				transfer(index,(Bytecode.Return) bytecode,store);
 			} else if(bytecode instanceof Bytecode.Throw) {
@@ -614,6 +631,36 @@ public abstract class ForwardFlowAnalysis<T> {
 	 */
 	public abstract T transfer(int index, boolean branch, Bytecode.IfCmp code, T store);
 	
+	/**
+	 * Generate an updated a abstract store by apply the abstract effect(s) of
+	 * a switch bytecode to an incoming store. The resulting store is
+	 * propagated to every case of the switch, including the default.
+	 * 
+	 * @param index
+	 *            --- index in bytecode array of bytecode being analysed.
+	 * @param bytecode
+	 *            --- bytecode to be analysed.
+	 * @param store
+	 *            --- incoming abstract store.
+	 * @return
+	 */
+	public abstract T transfer(int index, Bytecode.Switch code, T store);
+	
+	/**
+	 * Generate the abstract store which holds on entry to an exception
+	 * handler, when an exception is thrown by a bytecode covered by that
+	 * handler.
+	 * 
+	 * @param index
+	 *            --- index in bytecode array of bytecode being analysed.
+	 * @param handler
+	 *            --- handler covering the bytecode.
+	 * @param store
+	 *            --- abstract store holding immediately before the bytecode.
+	 * @return
+	 */
+	public abstract T transfer(int index, Code.Handler handler, T store);
+	
 	/**
 	 * Merge one abstract store into another to form a store at a join point in
 	 * the control-flow graph.
@@ -114,19 +114,17 @@ public class Automata {
 					// initially indicated as not to traverse.
 		} else {
 			marking[start] = 4;
-			Automaton.State state = automaton.get(start);
-			if (state instanceof Automaton.Term) {
-				Automaton.Term term = (Automaton.Term) state;
-				if (term.contents != Automaton.K_VOID) {
-					traverse(automaton, term.contents, marking);
+			if (automaton.getKind(start) >= 0) {
+				int contents = automaton.getContents(start);
+				if (contents != Automaton.K_VOID) {
+					traverse(automaton, contents, marking);
 				}
-			} else if (state instanceof Automaton.Collection) {
-				Automaton.Collection compound = (Automaton.Collection) state;
-				int[] children = compound.children;
-				for (int i = 0; i != compound.length; ++i) {
-					traverse(automaton, children[i], marking);
+			} else {
+				int size = automaton.getSize(start);
+				for (int i = 0; i != size; ++i) {
+					traverse(automaton, automaton.getChild(start, i), marking);
 				}
-			} 
+			}
 			marking[start] -= 3;
 		}
 	}
@@ -162,17 +160,16 @@ public class Automata {
 		if (!visited.get(node)) {
 			// we've not visited this node before.
 			visited.set(node,true);
-			Automaton.State state = automaton.get(node);
-			if (state instanceof Automaton.Term) {
-				Automaton.Term term = (Automaton.Term) state;
-				if (term.contents != Automaton.K_VOID) {
-					topologicalSort(automaton, term.contents, visited, stack);
+			if (automaton.getKind(node) >= 0) {
+				int contents = automaton.getContents(node);
+				if (contents != Automaton.K_VOID) {
+					topologicalSort(automaton, contents, visited, stack);
 				}
-			} else if (state instanceof Automaton.Collection) {
-				Automaton.Collection compound = (Automaton.Collection) state;
-				int[] children = compound.children;
-				for (int i = 0; i != compound.length; ++i) {
-					topologicalSort(automaton, children[i], visited, stack);
+			} else {
+				int size = automaton.getSize(node);
+				for (int i = 0; i != size; ++i) {
+					topologicalSort(automaton, automaton.getChild(node, i),
+							visited, stack);
 				}
 			}
 			stack.push(node);
@@ -247,19 +244,18 @@ public class Automata {
 		visited.set(index);
 		onStack.set(index);
 
-		Automaton.State state = automaton.get(index);
-		if (state instanceof Automaton.Term) {
-			Automaton.Term term = (Automaton.Term) state;
-			if (term.contents != Automaton.K_VOID) {
-				if (!isAcyclic(term.contents, onStack, visited, automaton)) {
+		if (automaton.getKind(index) >= 0) {
+			int contents = automaton.getContents(index);
+			if (contents != Automaton.K_VOID) {
+				if (!isAcyclic(contents, onStack, visited, automaton)) {
 					return false;
 				}
 			}
-		} else if (state instanceof Automaton.Collection) {
-			Automaton.Collection compound = (Automaton.Collection) state;
-			int[] children = compound.children;
-			for (int i = 0; i != compound.length; ++i) {
-				if (!isAcyclic(children[i], onStack, visited, automaton)) {
+		} else {
+			int size = automaton.getSize(index);
+			for (int i = 0; i != size; ++i) {
+				if (!isAcyclic(automaton.getChild(index, i), onStack, visited,
+						automaton)) {
 					return false;
 				}
 			}
@@ -293,21 +289,20 @@ public class Automata {
 			return true;
 		} else if (start >= 0 && storage[start] == 0) {
 			// this root not yet visited.
-			Automaton.State state = automaton.get(start);
 			storage[start] = 1; // visited
 
-			if (state instanceof Automaton.Term) {
-				Automaton.Term term = (Automaton.Term) state;
-				if (term.contents != Automaton.K_VOID) {
-					if (reachable(automaton, term.contents, search, storage)) {
+			if (automaton.getKind(start) >= 0) {
+				int contents = automaton.getContents(start);
+				if (contents != Automaton.K_VOID) {
+					if (reachable(automaton, contents, search, storage)) {
 						return true;
 					}
 				}
-			} else if (state instanceof Automaton.Collection) {
-				Automaton.Collection compound = (Automaton.Collection) state;
-				int[] children = compound.children;
-				for (int i = 0; i != compound.length; ++i) {
-					if (reachable(automaton, children[i], search, storage)) {
+			} else {
+				int size = automaton.getSize(start);
+				for (int i = 0; i != size; ++i) {
+					if (reachable(automaton, automaton.getChild(start, i),
+							search, storage)) {
 						return true;
 					}
 				}
@@ -355,8 +350,7 @@ public class Automata {
 		final int size = automaton.nStates();
 		
 		for (int i = 0; i != size; ++i) {
-			Automaton.State i_state = automaton.get(i);
-			if(i_state != null) {
+			if(automaton.getKind(i) != Automaton.K_VOID) {
 				int classRep = i;
 				// determine the unique representative for this equivalence
 				// class.
@@ -409,39 +403,28 @@ public class Automata {
 	 * Check whether two states are equivalent in a given automaton and current set of equivalences.
 	 */
 	private final static boolean equivalent(Automaton automaton, BinaryMatrix equivs, int i, int j) {
-		Automaton.State is = automaton.get(i);
-		Automaton.State js = automaton.get(j);
-		if(is == null || js == null) {
+		int kind = automaton.getKind(i);
+		if(kind == Automaton.K_VOID || automaton.getKind(j) == Automaton.K_VOID) {
 			return false;
-		} else if(is.kind != js.kind) {
+		} else if(kind != automaton.getKind(j)) {
 			return false;
-		} else if(is instanceof Automaton.Constant) {
-			Automaton.Constant<?> ic = (Automaton.Constant<?>) is;
-			Automaton.Constant<?> jc = (Automaton.Constant<?>) js;
-			return ic.value.equals(jc.value);
-		} else if(is instanceof Automaton.Term) {
-			Automaton.Term it = (Automaton.Term) is;
-			Automaton.Term jt = (Automaton.Term) js;
-			int it_contents = it.contents;
-			int jt_contents = jt.contents;
+		} else if(kind >= 0) {
+			int it_contents = automaton.getContents(i);
+			int jt_contents = automaton.getContents(j);
 			if(it_contents < 0 || jt_contents < 0) {
 				return it_contents == jt_contents;
 			} else {
 				return equivs.get(it_contents, jt_contents);
 			}
-		} else if(is instanceof Automaton.List) {
-			Automaton.List il = (Automaton.List) is;
-			Automaton.List jl = (Automaton.List) js;
-			int il_size = il.size();
-			int jl_size = jl.size();
+		} else if(kind == Automaton.K_LIST) {
+			int il_size = automaton.getSize(i);
+			int jl_size = automaton.getSize(j);
 			if(il_size != jl_size) {
 				return false;
 			}
-			int[] il_children = il.children;
-			int[] jl_children = jl.children;
 			for (int k = 0; k != il_size; ++k) {
-				int il_child = il_children[k];
-				int jl_child = jl_children[k];
+				int il_child = automaton.getChild(i, k);
+				int jl_child = automaton.getChild(j, k);
 				if (il_child < 0 || jl_child < 0) {
 					// virtual node case 
 					if(il_child != jl_child) {
@@ -452,23 +435,19 @@ public class Automata {
 				}
 			}
 			return true;
-		} else {
+		} else if(kind == Automaton.K_BAG || kind == Automaton.K_SET) {
 			// this is the most expensive case (sadly)
-			Automaton.Collection ic = (Automaton.Collection) is;
-			Automaton.Collection jc = (Automaton.Collection) js;
-			int ic_size = ic.size();
-			int jc_size = jc.size();
-			if (ic instanceof Automaton.Bag && ic_size != jc_size) {
+			int ic_size = automaton.getSize(i);
+			int jc_size = automaton.getSize(j);
+			if (kind == Automaton.K_BAG && ic_size != jc_size) {
 				return false;
 			} 
-			int[] ic_children = ic.children;
-			int[] jc_children = jc.children;
 			// First, check every node in s1 has equivalent in s2
 			for(int k=0;k!=ic_size;++k) {
-				int ic_child = ic_children[k];
+				int ic_child = automaton.getChild(i, k);
 				boolean matched = false;
 				for(int l=0;l!=jc_size;++l) {
-					int jc_child = jc_children[l];					
+					int jc_child = automaton.getChild(j, l);
 					if (ic_child == jc_child
 							|| (ic_child >= 0 && jc_child >= 0 && equivs.get(
 									ic_child, jc_child))) {
@@ -483,10 +462,10 @@ public class Automata {
 
 			// Second, check every node in s2 has equivalent in s1
 			for(int k=0;k!=jc_size;++k) {
-				int jc_child = jc_children[k];
+				int jc_child = automaton.getChild(j, k);
 				boolean matched = false;
 				for(int l=0;l!=ic_size;++l) {
-					int ic_child = ic_children[l];
+					int ic_child = automaton.getChild(i, l);
 					if (ic_child == jc_child
 							|| (ic_child >= 0 && jc_child >= 0 && equivs.get(
 									ic_child, jc_child))) {
@@ -499,7 +478,11 @@ public class Automata {
 				}
 			}
 			return true;
-		}				
+		} else {
+			Automaton.Constant<?> ic = automaton.getConstant(i);
+			Automaton.Constant<?> jc = automaton.getConstant(j);
+			return ic.value.equals(jc.value);
+		}
 	}
 	
 	/**
@@ -543,25 +526,27 @@ public class Automata {
 	private static void extend(int index, Morphism candidate,
 			ArrayList<Morphism> candidates, Automaton automaton) {
 		
-		State s = automaton.get(candidate.i2n[index]);
+		int node = candidate.i2n[index];
+		int kind = automaton.getKind(node);
 		
-		if(s instanceof Automaton.Term) {
-			Automaton.Term t = (Automaton.Term) s; 
-			if(!candidate.isAllocated(t.contents)) {
-				candidate.allocate(t.contents);
+		if(kind >= 0) {
+			int contents = automaton.getContents(node);
+			if(!candidate.isAllocated(contents)) {
+				candidate.allocate(contents);
 			}
-		} else if(s instanceof Automaton.List) { 						
+		} else if(kind == Automaton.K_LIST) { 						
 			// easy, deterministic collection case
-			Automaton.List l = (Automaton.List) s;
+			int size = automaton.getSize(node);
 			
-			for(int child : l.children) {
+			for(int i = 0; i != size; ++i) {
+				int child = automaton.getChild(node, i);
 				if(!candidate.isAllocated(child)) {
 					candidate.allocate(child);
 				}
 			}
-		} else if(s instanceof Automaton.Collection) {
+		} else if(kind == Automaton.K_BAG || kind == Automaton.K_SET) {
 			// harder, non-deterministic collection case
-			Automaton.Collection l = (Automaton.Collection) s; 
+			Automaton.Collection l = (Automaton.Collection) automaton.get(node); 
 			
 			// This loop is why the algorithm has exponential running time.			
 			ArrayList<int[]> permutations = permutations(l.children,l.children.length);
@@ -647,29 +632,20 @@ public class Automata {
 		int size = Math.min(morph1.free,morph2.free);
 		
 		for(int i=0;i!=size;++i) {					
-			State s1 = automaton.get(morph1.i2n[i]);
-			State s2 = automaton.get(morph2.i2n[i]);
+			int n1 = morph1.i2n[i];
+			int n2 = morph2.i2n[i];
+			int kind = automaton.getKind(n1);
+			int s2kind = automaton.getKind(n2);
 			
-			if(s1.kind < s2.kind) {
+			if(kind < s2kind) {
 				return true;
-			} else if(s1.kind > s2.kind) {
+			} else if(kind > s2kind) {
 				return false;
 			} 
 			
-			if(s1 instanceof Automaton.Constant) {
-				Automaton.Constant c1 = (Automaton.Constant) s1;
-				Automaton.Constant c2 = (Automaton.Constant) s2;
-				Comparable o1 = (Comparable) c1.value;
-				Comparable o2 = (Comparable) c2.value;				
-				int c = o1.compareTo(o2);
-				if(c != 0) {
-					return c < 0;
-				}
-			} else if(s1 instanceof Automaton.Term) {				
-				Automaton.Term t1 = (Automaton.Term) s1;
-				Automaton.Term t2 = (Automaton.Term) s2;
-				int t1child = t1.contents;
-				int t2child = t2.contents;
+			if(kind >= 0) {				
+				int t1child = automaton.getContents(n1);
+				int t2child = automaton.getContents(n2);
 				if(t1child >= 0 && t2child >= 0) {
 					// non-virtual nodes
 					t1child = morph1.n2i[t1child];
@@ -680,23 +656,22 @@ public class Automata {
 				} else if(t1child > t2child) {
 					return false;
 				}				
-			} else if(s1 instanceof Automaton.Collection) {
-				Automaton.Collection c1 = (Automaton.Collection) s1;
-				Automaton.Collection c2 = (Automaton.Collection) s2;
-				int[] s1children = c1.children;
-				int[] s2children = c2.children;				
-				if(s1children.length < s2children.length) {
+			} else if(kind == Automaton.K_LIST || kind == Automaton.K_BAG
+					|| kind == Automaton.K_SET) {
+				int s1length = automaton.getSize(n1);
+				int s2length = automaton.getSize(n2);
+				if(s1length < s2length) {
 					return true;
-				} else if(s1children.length > s2children.length) {
+				} else if(s1length > s2length) {
 					return false;
 				}
 				
-				int length = s1children.length;		
+				int length = s1length;		
 				
-				if(s1.kind == Automaton.K_LIST) {			
+				if(kind == Automaton.K_LIST) {			
 					for(int j=0;j!=length;++j) {
-						int s1child = s1children[j];
-						int s2child = s2children[j];
+						int s1child = automaton.getChild(n1, j);
+						int s2child = automaton.getChild(n2, j);
 						if(s1child >= 0 && s2child >= 0) {
 							// non-virtual nodes
 							s1child = morph1.n2i[s1child];
@@ -717,8 +692,8 @@ public class Automata {
 					// use as the "shift".  
 					int shift = 0;
 					for(int j=0;j!=length;++j) {
-						shift = Math.min(shift, s1children[j]);
-						shift = Math.min(shift, s2children[j]);
+						shift = Math.min(shift, automaton.getChild(n1, j));
+						shift = Math.min(shift, automaton.getChild(n2, j));
 					}
 					
 					// Second, we can now determine the "spectra" for these two
@@ -728,8 +703,8 @@ public class Automata {
 					BitSet s1Visited = new BitSet(automaton.nStates() - shift);
 					BitSet s2Visited = new BitSet(automaton.nStates() - shift);
 					for(int j=0;j!=length;++j) {
-						int s1child = s1children[j];
-						int s2child = s2children[j];
+						int s1child = automaton.getChild(n1, j);
+						int s2child = automaton.getChild(n2, j);
 						if(s1child >= 0) { s1child = morph1.n2i[s1child]; }						
 						if(s2child >= 0) { s2child = morph2.n2i[s2child]; }
 						if(s1child != Integer.MAX_VALUE) {				
@@ -759,7 +734,14 @@ public class Automata {
 						return s1i < s2i;
 					}
 				}						
-			} 
+			} else if(kind != Automaton.K_VOID) {
+				Comparable o1 = (Comparable) automaton.getConstant(n1).value;
+				Comparable o2 = (Comparable) automaton.getConstant(n2).value;
+				int c = o1.compareTo(o2);
+				if(c != 0) {
+					return c < 0;
+				}
+			}
 		}
 		
 		// Ok, they're identical thus far!
@@ -146,6 +146,17 @@ import wyautl.util.BinaryMatrix;
  * child node using a negative index.
  * </p>
  * </li>
+ * <li>
+ * <p>
+ * <b>Representation.</b> States are not held as individual objects. Instead,
+ * the kind and payload of every state are held in parallel arrays, with the
+ * children of all collections held in a shared pool and the values of all
+ * constants held in a constant pool. Thus, <code>get()</code> constructs a
+ * view of a state on demand. Code which only inspects states should use
+ * <code>getKind()</code>, <code>getContents()</code>, <code>getSize()</code>
+ * and <code>getChild()</code> instead, since these create no objects.
+ * </p>
+ * </li>
  * </ul>
  * 
  * @author David J. Pearce
@@ -164,16 +175,67 @@ public final class Automaton {
 	private static final int DEFAULT_NUM_ROOTS = 1;
 
 	/**
-	 * The number of used slots in the states array. It follows that
-	 * <code>nStates <= states.length</code> always holds.
+	 * An internal configuration parameter
+	 */
+	private static final int DEFAULT_POOL_SIZE = 16;
+
+	/**
+	 * An internal configuration parameter
+	 */
+	private static final int DEFAULT_NUM_CONSTANTS = 4;
+
+	/**
+	 * The number of used slots in the state arrays. It follows that
+	 * <code>nStates <= kinds.length</code> always holds.
 	 */
 	private int nStates;
 
 	/**
-	 * The array of automaton states. <b>NOTES:</b> this may not contain
-	 * <code>null</code> values.
+	 * The kind of each state. A slot which holds no state (e.g. one eliminated
+	 * by <code>minimise()</code>) is marked with <code>K_VOID</code>, as are
+	 * all slots at or beyond <code>nStates</code>.
+	 */
+	private int[] kinds;
+
+	/**
+	 * The payload of each state, whose meaning is determined by its kind. For
+	 * a term, this is the index of its child (or <code>K_VOID</code> if it has
+	 * none); for a collection, it is the offset of its first child in the
+	 * child pool; finally, for a constant, it is the index of its value in the
+	 * constant pool.
+	 */
+	private int[] data;
+
+	/**
+	 * The number of children of each collection state, or zero for any other
+	 * kind of state.
+	 */
+	private int[] lengths;
+
+	/**
+	 * The child pool. The children of each collection state occupy a
+	 * contiguous region of this array, which is owned by that state alone.
+	 * Regions which are no longer owned by any state are reclaimed when the
+	 * pool is repacked.
+	 */
+	private int[] pool;
+
+	/**
+	 * The number of used slots in the child pool.
+	 */
+	private int poolSize;
+
+	/**
+	 * The constant pool, which holds the value of every constant state.
+	 * Constants are immutable and, hence, are shared freely with the states
+	 * passed to <code>add()</code> and returned from <code>get()</code>.
+	 */
+	private Constant<?>[] constants;
+
+	/**
+	 * The number of used slots in the constant pool.
 	 */
-	private State[] states;
+	private int nConstants;
 
 	/**
 	 * The number of used slots in the markers array. It follows that
@@ -186,27 +248,71 @@ public final class Automaton {
 	 */
 	private int[] roots;
 
+	/**
+	 * An open-addressing hash index from states to their indices, which is
+	 * used by <code>add()</code> to find an existing equivalent state without
+	 * scanning the entire states array. Each slot holds a state index plus
+	 * one, with zero marking an empty slot. Every state covered by the index
+	 * is recorded, including any equivalent to another (e.g. as a result of
+	 * <code>set()</code>), so that removing one of them leaves the others
+	 * findable. Operations which modify states in place (e.g.
+	 * <code>rewrite()</code>) remove the entries of the states they change
+	 * beforehand, and insert them again afterwards.
+	 * This is <code>null</code> until the first call to <code>add()</code>.
+	 */
+	private int[] index;
+
+	/**
+	 * The number of occupied slots in the index.
+	 */
+	private int indexSize;
+
+	/**
+	 * The number of states covered by the index. States at or beyond this
+	 * (e.g. those copied from another automaton by <code>addAll()</code>) are
+	 * not in the index, and are inserted on the next call to
+	 * <code>add()</code>.
+	 */
+	private int indexed;
+
 	public Automaton() {
-		this.states = new Automaton.State[DEFAULT_NUM_STATES];
-		this.roots = new int[DEFAULT_NUM_ROOTS];
+		this(DEFAULT_NUM_STATES);
 	}
 
 	public Automaton(Automaton automaton) {
 		this.nStates = automaton.nStates;
-		this.states = new State[automaton.states.length];
-		for (int i = 0; i != states.length; ++i) {
-			Automaton.State ith = automaton.states[i];
-			if (ith != null) {
-				states[i] = ith.clone();
-			}
-		}
+		this.kinds = Arrays.copyOf(automaton.kinds, automaton.kinds.length);
+		this.data = Arrays.copyOf(automaton.data, automaton.data.length);
+		this.lengths = Arrays.copyOf(automaton.lengths, automaton.lengths.length);
+		this.pool = Arrays.copyOf(automaton.pool, automaton.pool.length);
+		this.poolSize = automaton.poolSize;
+		this.constants = Arrays.copyOf(automaton.constants,
+				automaton.constants.length);
+		this.nConstants = automaton.nConstants;
 		this.nRoots = automaton.nRoots;
 		this.roots = Arrays.copyOf(automaton.roots, nRoots);
+		if (automaton.index != null) {
+			this.index = Arrays.copyOf(automaton.index, automaton.index.length);
+			this.indexSize = automaton.indexSize;
+			this.indexed = automaton.indexed;
+		}
 	}
 
 	public Automaton(State[] states) {
+		this(Math.max(states.length, DEFAULT_NUM_STATES));
 		this.nStates = states.length;
-		this.states = states;
+		for (int i = 0; i != states.length; ++i) {
+			store(i, states[i]);
+		}
+	}
+
+	private Automaton(int capacity) {
+		this.kinds = new int[capacity];
+		this.data = new int[capacity];
+		this.lengths = new int[capacity];
+		Arrays.fill(kinds, K_VOID);
+		this.pool = new int[DEFAULT_POOL_SIZE];
+		this.constants = new Constant<?>[DEFAULT_NUM_CONSTANTS];
 		this.roots = new int[DEFAULT_NUM_ROOTS];
 	}
 
@@ -228,15 +334,13 @@ public final class Automaton {
 	public int nTransitions() {
 		int count = 0;
 		for (int i = 0; i != nStates; ++i) {
-			State s = states[i];
-			if (s instanceof Automaton.Term) {
-				Automaton.Term t = (Automaton.Term) s;
-				if (t.contents != Automaton.K_VOID) {
+			int kind = kinds[i];
+			if (kind >= 0) {
+				if (data[i] != Automaton.K_VOID) {
 					count++;
 				}
-			} else if (s instanceof Automaton.Collection) {
-				Automaton.Collection c = (Automaton.Collection) s;
-				count += c.children.length;
+			} else if (isCollection(kind)) {
+				count += lengths[i];
 			}
 		}
 		return count;
@@ -254,7 +358,19 @@ public final class Automaton {
 	}
 
 	/**
+	 * <p>
 	 * Return the state at a given index into the automaton.
+	 * </p>
+	 * <p>
+	 * <b>NOTE:</b> states are not held as objects within the automaton and,
+	 * hence, the returned state is constructed on demand (except for
+	 * constants, which are shared). Modifying the returned state has no effect
+	 * on the automaton, and <code>set()</code> must be used instead. Where
+	 * only the kind or the children of a state are needed, the methods
+	 * <code>getKind()</code>, <code>getContents()</code>,
+	 * <code>getSize()</code> and <code>getChild()</code> should be preferred,
+	 * since they do not create any objects.
+	 * </p>
 	 * 
 	 * @param index
 	 *            --- Index of state to return where
@@ -275,7 +391,100 @@ public final class Automaton {
 			}
 		}
 
-		return states[index];
+		int kind = kinds[index];
+		switch (kind) {
+		case K_VOID:
+			return null;
+		case K_BOOL:
+		case K_INT:
+		case K_REAL:
+		case K_STRING:
+			return constants[data[index]];
+		case K_LIST:
+			return new List(children(index));
+		case K_BAG: {
+			int[] children = children(index);
+			return new Bag(children, children.length);
+		}
+		case K_SET: {
+			int[] children = children(index);
+			return new Set(children, children.length);
+		}
+		default:
+			return new Term(kind, data[index]);
+		}
+	}
+
+	/**
+	 * Return the kind of the state at a given index into the automaton,
+	 * without constructing that state. As for <code>get()</code>, the index
+	 * may refer to a virtual state. If there is no state at the given index,
+	 * then <code>K_VOID</code> is returned.
+	 *
+	 * @param index
+	 *            --- Index of state where <code>index < nStates()</code>.
+	 * @return
+	 */
+	public int getKind(int index) {
+		if (index >= 0) {
+			return kinds[index];
+		} else if (index <= K_FREE) {
+			return K_FREE - index;
+		} else if (index <= K_LIST) {
+			return index; // empty collection
+		} else {
+			return K_VOID;
+		}
+	}
+
+	/**
+	 * Return the child of the term at a given index into the automaton, or
+	 * <code>K_VOID</code> if it has none.
+	 *
+	 * @param index
+	 *            --- Index of a term state.
+	 * @return
+	 */
+	public int getContents(int index) {
+		return index >= 0 ? data[index] : K_VOID;
+	}
+
+	/**
+	 * Return the number of children of the collection at a given index into
+	 * the automaton.
+	 *
+	 * @param index
+	 *            --- Index of a collection state.
+	 * @return
+	 */
+	public int getSize(int index) {
+		return index >= 0 ? lengths[index] : 0;
+	}
+
+	/**
+	 * Return a given child of the collection at a given index into the
+	 * automaton.
+	 *
+	 * @param index
+	 *            --- Index of a collection state.
+	 * @param child
+	 *            --- Position of the child to return, where
+	 *            <code>0 <= child < getSize(index)</code>.
+	 * @return
+	 */
+	public int getChild(int index, int child) {
+		return pool[data[index] + child];
+	}
+
+	/**
+	 * Return the constant at a given index into the automaton.
+	 *
+	 * @param index
+	 *            --- Index of a constant state.
+	 * @return
+	 */
+	public Constant<?> getConstant(int index) {
+		return constants[data[index]];
 	}
 
 	/**
@@ -299,7 +508,13 @@ public final class Automaton {
 	 *            --- state to replace existing state with.
 	 */
 	public void set(int index, State state) {
-		states[index] = state;
+		if (isIndexed(index)) {
+			removeFromIndex(index);
+		}
+		store(index, state);
+		if (isIndexed(index)) {
+			insertIntoIndex(index);
+		}
 	}
 
 	/**
@@ -340,15 +555,37 @@ public final class Automaton {
 
 		// Second, check to see whether there already exists an equivalent
 		// state.
-		for (int i = 0; i != nStates; ++i) {
-			State ith = states[i];
-			if (ith != null && ith.equals(state)) {
-				return i; // match
+		if (index == null) {
+			buildIndex();
+		} else {
+			for (; indexed < nStates; ++indexed) {
+				if (kinds[indexed] != K_VOID) {
+					insertIntoIndex(indexed);
+				}
+			}
+		}
+		int mask = index.length - 1;
+		int match = -1;
+		for (int slot = hash(state.hashCode()) & mask;; slot = (slot + 1) & mask) {
+			int entry = index[slot];
+			if (entry == 0) {
+				break;
+			} else if ((match < 0 || entry - 1 < match)
+					&& equalsAt(entry - 1, state)) {
+				// keep looking, since an equivalent state with a lower index
+				// may follow.
+				match = entry - 1;
 			}
 		}
+		if (match >= 0) {
+			return match;
+		}
 
 		// Finally, allocate a new state!
-		return internalAdd(state);
+		int i = internalAdd(state);
+		insertIntoIndex(i);
+		indexed = nStates;
+		return i;
 	}
 
 	/**
@@ -380,7 +617,7 @@ public final class Automaton {
 			for (int i = 0; i != automaton_nStates; ++i) {
 				int index = binding[i];
 				if (index != K_VOID) {
-					states[index].remap(binding);
+					remapState(index, binding);
 				}
 			}
 			// map root from automaton space to this space.
@@ -396,17 +633,44 @@ public final class Automaton {
 	
 	public void swap(final Automaton other) {
 		int other_nstates = other.nStates;
-		Automaton.State[] other_states = other.states;
+		int[] other_kinds = other.kinds;
+		int[] other_data = other.data;
+		int[] other_lengths = other.lengths;
+		int[] other_pool = other.pool;
+		int other_poolsize = other.poolSize;
+		Constant<?>[] other_constants = other.constants;
+		int other_nconstants = other.nConstants;
 		int other_nroots = other.nRoots;
 		int[] other_roots = other.roots;
-		other.states = states;
+		int[] other_index = other.index;
+		int other_indexsize = other.indexSize;
+		int other_indexed = other.indexed;
 		other.nStates = nStates;
+		other.kinds = kinds;
+		other.data = data;
+		other.lengths = lengths;
+		other.pool = pool;
+		other.poolSize = poolSize;
+		other.constants = constants;
+		other.nConstants = nConstants;
 		other.roots = roots;
 		other.nRoots = nRoots;
-		this.states = other_states;
+		other.index = index;
+		other.indexSize = indexSize;
+		other.indexed = indexed;
 		this.nStates = other_nstates;
+		this.kinds = other_kinds;
+		this.data = other_data;
+		this.lengths = other_lengths;
+		this.pool = other_pool;
+		this.poolSize = other_poolsize;
+		this.constants = other_constants;
+		this.nConstants = other_nconstants;
 		this.roots = other_roots;
 		this.nRoots = other_nroots;
+		this.index = other_index;
+		this.indexSize = other_indexsize;
+		this.indexed = other_indexed;
 	}
 	
 	/**
@@ -442,8 +706,10 @@ public final class Automaton {
 			}
 			map[from] = to;
 			for (int i = 0; i < nStates; ++i) {
-				State s = states[i];
-				if(s != null) { s.remap(map); }
+				if (kinds[i] != K_VOID) {
+					unindexRemapped(i, map);
+					remapState(i, map);
+				}
 			}
 			// map root markers
 			for (int i = 0; i != nRoots; ++i) {
@@ -487,7 +753,7 @@ public final class Automaton {
 			for (int i = 0; i != initialNumStates; ++i) {
 				int index = binding[i];
 				if (index != K_VOID && i != search) {					
-					states[index].remap(binding);
+					remapState(index, binding);
 				}			
 			}		
 			source = binding[source];
@@ -548,7 +814,7 @@ public final class Automaton {
 		for (int i = 0; i != initialNumStates; ++i) {
 			int index = binding[i];
 			if (index != K_VOID && mapping[i] == i) {					
-				states[index].remap(binding);
+				remapState(index, binding);
 			}
 		}		
 		source = binding[source];	
@@ -604,19 +870,24 @@ public final class Automaton {
 	/**
 	 * Set the number of states to be a given number. If this is less than the
 	 * current number of states, then one or more states may be eliminated.
+	 * Storage used by states eliminated in this way is reclaimed immediately,
+	 * provided no other states were modified since they were added. Thus,
+	 * rolling back a sequence of <code>add()</code> calls is cheap.
 	 * 
 	 * @param nStates
 	 */
 	public void resize(int nStates) {
 		if (nStates < this.nStates) {
 			for (int i = this.nStates-1; i >= nStates; --i) {
-				states[i] = null; // nullify
+				if (isIndexed(i)) {
+					removeFromIndex(i);
+				}
+				release(i); // nullify
 			}
-		} else if (nStates > states.length) {
+			indexed = Math.min(indexed, nStates);
+		} else if (nStates > kinds.length) {
 			// need more capacity.
-			State[] nstates = new State[nStates * 2];
-			System.arraycopy(states, 0, nstates, 0, nStates);
-			states = nstates;
+			grow(nStates * 2);
 		}		
 		this.nStates = nStates;
 	}
@@ -696,8 +967,12 @@ public final class Automaton {
 	 */
 	public void remap(int[] binding) {
 		for(int i=0;i!=nStates;++i) {
-			states[i].remap(binding);
+			if (kinds[i] != K_VOID) {
+				unindexRemapped(i, binding);
+				remapState(i, binding);
+			}
 		}
+		reindex();
 		for (int i = 0; i != nRoots; ++i) {
 			int root = roots[i];
 			if (root >= 0) {
@@ -738,18 +1013,17 @@ public final class Automaton {
 	
 	private void sanityCheck() {
 		for(int i=0;i!=nStates;++i) {
-			State state = states[i];
-			if(state instanceof Term) {
-				Term t = (Term) state;
-				if(t.contents >= nStates) {
+			int kind = kinds[i];
+			if(kind >= 0) {
+				int contents = data[i];
+				if(contents >= nStates) {
 					throw new IllegalArgumentException("Invalid Automaton");
-				} else if(t.contents < 0 && t.contents > K_FREE) {
-					throw new IllegalArgumentException("Invalid Automaton (" + state + ")");
+				} else if(contents < 0 && contents > K_FREE) {
+					throw new IllegalArgumentException("Invalid Automaton (" + get(i) + ")");
 				}
-			} else if(state instanceof Collection) {
-				Collection c = (Collection) state;
-				for(int j=0;j!=c.size();++j) {
-					if(c.children[j] >= nStates) {
+			} else if(isCollection(kind)) {
+				for(int j=0;j!=lengths[i];++j) {
+					if(pool[data[i] + j] >= nStates) {
 						throw new IllegalArgumentException("Invalid Automaton");
 					}
 				}
@@ -768,9 +1042,8 @@ public final class Automaton {
 	public int hashCode() {
 		int r = 0;
 		for (int i = 0; i != nStates; ++i) {
-			State ith = states[i];
-			if(ith != null) {
-				r = r + ith.hashCode();
+			if(kinds[i] != K_VOID) {
+				r = r + hashAt(i);
 			}
 		}
 		return r;
@@ -787,18 +1060,11 @@ public final class Automaton {
 	public boolean equals(Object o) {
 		if (o instanceof Automaton) {
 			Automaton a = (Automaton) o;
-			State[] cs = a.states;
 			if (a.nStates != nStates || a.nRoots != nRoots) {
 				return false;
 			}
 			for (int i = 0; i != nStates; ++i) {
-				State si = states[i];
-				State ci = cs[i];
-				if (si == null) {
-					if (ci != null) {
-						return false;
-					}
-				} else if (!si.equals(ci)) {
+				if (!equalsAt(i, a, i)) {
 					return false;
 				}
 			}
@@ -824,18 +1090,18 @@ public final class Automaton {
 			if (i != 0) {
 				r = r + ", ";
 			}
-			Automaton.State state = states[i];
+			int kind = kinds[i];
 			r = r + "#" + i + " ";
 			
-			if (state instanceof Term) {
-				Term t = (Term) state;
-				if (t.contents == K_VOID) {
-					r = r + t.kind;
+			if (kind >= 0) {
+				int contents = data[i];
+				if (contents == K_VOID) {
+					r = r + kind;
 				} else {
-					r = r + t.kind + "(" + t.contents + ")";
+					r = r + kind + "(" + contents + ")";
 				}
-			} else if(state != null){
-				r = r + state.toString();
+			} else if(kind != K_VOID){
+				r = r + get(i).toString();
 			} else {
 				r = r + "null";
 			}
@@ -1233,6 +1499,15 @@ public final class Automaton {
 			Arrays.sort(this.children);
 		}
 
+		/**
+		 * Construct a bag from the first <code>length</code> elements of an
+		 * array, which are already sorted.
+		 */
+		private Bag(int[] children, int length) {
+			super(K_BAG, children);
+			this.length = length;
+		}
+
 		public boolean remap(int[] map) {
 			if (super.remap(map)) {
 				Arrays.sort(children, 0, length);
@@ -1287,6 +1562,15 @@ public final class Automaton {
 			sortAndRemoveDuplicates();
 		}
 
+		/**
+		 * Construct a set from the first <code>length</code> elements of an
+		 * array, which are already sorted and free of duplicates.
+		 */
+		private Set(int[] children, int length) {
+			super(K_SET, children);
+			this.length = length;
+		}
+
 		public boolean remap(int[] map) {
 			if (super.remap(map)) {
 				sortAndRemoveDuplicates();
@@ -1476,8 +1760,7 @@ public final class Automaton {
 		int automaton_nstates = automaton.nStates();
 		for (int i = 0; i != automaton_nstates; ++i) {
 			if (binding[i] > 0) {
-				Automaton.State state = automaton.get(i);
-				binding[i] = internalAdd(state.clone());
+				binding[i] = internalCopy(automaton, i);
 			} else {
 				binding[i] = K_VOID;
 			}
@@ -1505,24 +1788,59 @@ public final class Automaton {
 		Automata.eliminateUnreachableStates(this,0,nStates,binding);
 		
 		int j=0;
+		int nIndexed = 0;
 		for(int i=0;i!=nStates;++i) {
-			State ith = states[i];
-			if(ith != null) {		
+			if(kinds[i] != K_VOID) {
 				binding[i] = j;
-				states[j++] = ith;				
+				kinds[j] = kinds[i];
+				data[j] = data[i];
+				lengths[j] = lengths[i];
+				j++;
 			} 
+			if(i < indexed) {
+				nIndexed = j;
+			}
 		}
 		
+		Arrays.fill(kinds, j, nStates, K_VOID);
 		nStates = j;
+		indexed = nIndexed;
 		
 		for(int i=0;i!=nStates;++i) {
-			states[i].remap(binding);
+			remapState(i, binding);
 		}
 		for (int i = 0; i != nRoots; ++i) {
 			int root = roots[i];
 			if (root >= 0) {
 				roots[i] = binding[root];
 			}
+		}
+
+		// Move the entries of the index to where their states now are. Since
+		// the children of these states have also moved, they must be inserted
+		// again rather than updated in place.
+		if (index != null) {
+			int[] entries = new int[indexSize];
+			int nEntries = 0;
+			for (int slot = 0; slot != index.length; ++slot) {
+				if (index[slot] != 0) {
+					entries[nEntries++] = binding[index[slot] - 1];
+					index[slot] = 0;
+				}
+			}
+			indexSize = 0;
+			for (int k = 0; k != nEntries; ++k) {
+				insertIntoIndex(entries[k]);
+			}
+		}
+
+		// Finally, reclaim the storage used by eliminated states if this is
+		// a significant proportion of either pool.
+		if (liveChildren() << 1 < poolSize) {
+			repackChildren(pool.length);
+		}
+		if (liveConstants() << 1 < nConstants) {
+			repackConstants(constants.length);
 		}	
 	}	
 	
@@ -1564,14 +1882,19 @@ public final class Automaton {
 				// This state has be subsumed by another state which was the
 				// representative for its equivalence class. Therefore, the
 				// state must now be unreachable.
-				states[i] = null;
-			} else if(states[i] != null) {
+				if (isIndexed(i)) {
+					removeFromIndex(i);
+				}
+				release(i);
+			} else if(kinds[i] != K_VOID) {
 				// This state is the unique representative for its equivalence
 				// class. Therefore, retain it whilst remapping all of its
 				// references appropriately. 
-				states[i].remap(binding);
+				unindexRemapped(i, binding);
+				remapState(i, binding);
 			}
 		}
+		reindex();
 
 		// Second, remap the root references so that they also refer to the
 		// unique representatives. 
@@ -1589,18 +1912,551 @@ public final class Automaton {
 	 * equivalent states.
 	 */
 	private int internalAdd(Automaton.State state) {
-		if (nStates == states.length) {
+		if (nStates == kinds.length) {
 			// oh dear, need to increase space
-			State[] nstates = nStates == 0 ? new State[DEFAULT_NUM_STATES]
-					: new State[nStates * 2];
-			System.arraycopy(states, 0, nstates, 0, nStates);
-			states = nstates;
+			grow(nStates * 2);
 		}
 
-		states[nStates] = state;
+		store(nStates, state);
 		return nStates++;
 	}
 
+	/**
+	 * Copy a state from a given automaton (which may be this automaton) onto
+	 * the end of the states array, expanding that as necessary. As for
+	 * <code>internalAdd()</code>, the state is not collapsed with respect to
+	 * any equivalent states.
+	 *
+	 * @param automaton
+	 *            --- automaton to copy the state from.
+	 * @param i
+	 *            --- index of the state to copy.
+	 */
+	private int internalCopy(Automaton automaton, int i) {
+		if (nStates == kinds.length) {
+			grow(nStates * 2);
+		}
+		int j = nStates;
+		int kind = automaton.kinds[i];
+		if (isCollection(kind)) {
+			int length = automaton.lengths[i];
+			// NOTE: this may repack the pool which, when copying from this
+			// automaton, changes the offset of the state being copied.
+			int offset = allocateChildren(length);
+			System.arraycopy(automaton.pool, automaton.data[i], pool, offset,
+					length);
+			data[j] = offset;
+			lengths[j] = length;
+		} else if (isConstant(kind)) {
+			data[j] = allocateConstant(automaton.constants[automaton.data[i]]);
+			lengths[j] = 0;
+		} else {
+			data[j] = automaton.data[i];
+			lengths[j] = 0;
+		}
+		kinds[j] = kind;
+		return nStates++;
+	}
+
+	/**
+	 * Write a given state into a given slot, copying its contents into the
+	 * state arrays and pools. Any storage owned by the state previously held
+	 * in the slot is either reused or released.
+	 *
+	 * @param index
+	 *            --- slot to write the state into.
+	 * @param state
+	 *            --- state to be written, which may be <code>null</code>.
+	 */
+	private void store(int index, State state) {
+		if (state instanceof Term) {
+			release(index);
+			kinds[index] = state.kind;
+			data[index] = ((Term) state).contents;
+		} else if (state instanceof Collection) {
+			Collection c = (Collection) state;
+			int length = c.length;
+			int offset;
+			if (isCollection(kinds[index]) && lengths[index] >= length) {
+				// reuse the existing region in place
+				offset = data[index];
+			} else {
+				release(index);
+				offset = allocateChildren(length);
+			}
+			System.arraycopy(c.children, 0, pool, offset, length);
+			kinds[index] = c.kind;
+			data[index] = offset;
+			lengths[index] = length;
+		} else if (state instanceof Constant) {
+			Constant<?> c = (Constant<?>) state;
+			if (!isConstant(c.kind)) {
+				throw new IllegalArgumentException("invalid constant kind ("
+						+ c.kind + ")");
+			} else if (isConstant(kinds[index])) {
+				// reuse the existing slot in place
+				constants[data[index]] = c;
+			} else {
+				release(index);
+				data[index] = allocateConstant(c);
+			}
+			kinds[index] = c.kind;
+		} else {
+			release(index);
+		}
+	}
+
+	/**
+	 * Clear the slot at a given index. The storage owned by the state it held
+	 * is reclaimed immediately if this lies at the end of its pool, which is
+	 * always the case when the most recently added states are discarded in
+	 * reverse order (e.g. by <code>resize()</code>). Otherwise, it is
+	 * reclaimed when the pool is next repacked.
+	 *
+	 * @param index
+	 *            --- slot to be cleared.
+	 */
+	private void release(int index) {
+		int kind = kinds[index];
+		if (isCollection(kind)) {
+			if (data[index] + lengths[index] == poolSize) {
+				poolSize = data[index];
+			}
+		} else if (isConstant(kind)) {
+			if (data[index] == nConstants - 1) {
+				constants[--nConstants] = null;
+			}
+		}
+		kinds[index] = K_VOID;
+		data[index] = 0;
+		lengths[index] = 0;
+	}
+
+	/**
+	 * Remap the children of the state at a given index according to a given
+	 * binding. Sets and bags are then sorted and, in the case of sets,
+	 * duplicates are removed.
+	 *
+	 * @param index
+	 *            --- index of a (non-null) state.
+	 * @param map
+	 *            --- mapping from old indices to new indices.
+	 */
+	private void remapState(int index, int[] map) {
+		int kind = kinds[index];
+		if (kind >= 0) {
+			int contents = data[index];
+			if (contents >= 0) {
+				data[index] = map[contents];
+			}
+		} else if (isCollection(kind)) {
+			int start = data[index];
+			int end = start + lengths[index];
+			boolean changed = false;
+			for (int i = start; i != end; ++i) {
+				int ochild = pool[i];
+				if (ochild >= 0) {
+					int nchild = map[ochild];
+					pool[i] = nchild;
+					changed |= nchild != ochild;
+				}
+			}
+			if (changed && kind != K_LIST) {
+				Arrays.sort(pool, start, end);
+				if (kind == K_SET) {
+					lengths[index] = removeDuplicates(pool, start, end) - start;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Determine whether remapping the state at a given index according to a
+	 * given binding changes it, in which case it is removed from the index
+	 * beforehand. It must then be inserted again afterwards (e.g. by
+	 * <code>reindex()</code>).
+	 *
+	 * @param index
+	 *            --- index of a (non-null) state.
+	 * @param map
+	 *            --- mapping from old indices to new indices.
+	 */
+	private void unindexRemapped(int index, int[] map) {
+		if (!isIndexed(index)) {
+			return;
+		}
+		int kind = kinds[index];
+		if (kind >= 0) {
+			int contents = data[index];
+			if (contents >= 0 && map[contents] != contents) {
+				removeFromIndex(index);
+			}
+		} else if (isCollection(kind)) {
+			int start = data[index];
+			int end = start + lengths[index];
+			for (int i = start; i != end; ++i) {
+				int child = pool[i];
+				if (child >= 0 && map[child] != child) {
+					removeFromIndex(index);
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Return a copy of the children of the collection at a given index.
+	 */
+	private int[] children(int index) {
+		int offset = data[index];
+		return Arrays.copyOfRange(pool, offset, offset + lengths[index]);
+	}
+
+	/**
+	 * Determine the hashCode of the (non-null) state at a given index. This
+	 * must agree with the <code>hashCode()</code> of its view, since both are
+	 * used with the index.
+	 */
+	private int hashAt(int index) {
+		int kind = kinds[index];
+		if (kind >= 0) {
+			return data[index] * kind;
+		} else if (isCollection(kind)) {
+			int hashCode = kind;
+			int offset = data[index];
+			int end = offset + lengths[index];
+			for (int i = offset; i != end; ++i) {
+				hashCode ^= pool[i];
+			}
+			return hashCode;
+		} else {
+			return constants[data[index]].hashCode();
+		}
+	}
+
+	/**
+	 * Check whether the state at a given index is identical to a given state.
+	 */
+	private boolean equalsAt(int index, State state) {
+		int kind = kinds[index];
+		if (kind != state.kind) {
+			return false;
+		} else if (kind >= 0) {
+			return data[index] == ((Term) state).contents;
+		} else if (isCollection(kind)) {
+			Collection c = (Collection) state;
+			int length = lengths[index];
+			if (length != c.length) {
+				return false;
+			}
+			int[] children = c.children;
+			int offset = data[index];
+			for (int i = 0; i != length; ++i) {
+				if (pool[offset + i] != children[i]) {
+					return false;
+				}
+			}
+			return true;
+		} else {
+			return constants[data[index]].equals(state);
+		}
+	}
+
+	/**
+	 * Check whether the state at a given index is identical to the state at a
+	 * given index in a given automaton (which may be this automaton). Two
+	 * empty slots are considered identical.
+	 */
+	private boolean equalsAt(int index, Automaton automaton, int other) {
+		int kind = kinds[index];
+		if (kind != automaton.kinds[other]) {
+			return false;
+		} else if (kind >= 0) {
+			return data[index] == automaton.data[other];
+		} else if (isCollection(kind)) {
+			int length = lengths[index];
+			if (length != automaton.lengths[other]) {
+				return false;
+			}
+			int[] other_pool = automaton.pool;
+			int offset = data[index];
+			int other_offset = automaton.data[other];
+			for (int i = 0; i != length; ++i) {
+				if (pool[offset + i] != other_pool[other_offset + i]) {
+					return false;
+				}
+			}
+			return true;
+		} else if (kind == K_VOID) {
+			return true;
+		} else {
+			return constants[data[index]]
+					.equals(automaton.constants[automaton.data[other]]);
+		}
+	}
+
+	/**
+	 * Expand the state arrays to a given capacity.
+	 */
+	private void grow(int capacity) {
+		int old = kinds.length;
+		capacity = Math.max(capacity, DEFAULT_NUM_STATES);
+		kinds = Arrays.copyOf(kinds, capacity);
+		data = Arrays.copyOf(data, capacity);
+		lengths = Arrays.copyOf(lengths, capacity);
+		Arrays.fill(kinds, old, capacity, K_VOID);
+	}
+
+	/**
+	 * Allocate a region of a given length at the end of the child pool. If
+	 * there is insufficient space, the pool is first repacked and, if it is
+	 * more than half full of live children, expanded.
+	 *
+	 * @param length
+	 *            --- number of children to allocate space for.
+	 * @return --- offset of the allocated region.
+	 */
+	private int allocateChildren(int length) {
+		if (poolSize + length > pool.length) {
+			int required = liveChildren() + length;
+			int capacity = Math.max(pool.length, DEFAULT_POOL_SIZE);
+			while (required << 1 > capacity) {
+				capacity <<= 1;
+			}
+			repackChildren(capacity);
+		}
+		int offset = poolSize;
+		poolSize += length;
+		return offset;
+	}
+
+	/**
+	 * Copy the regions owned by all states into a fresh child pool of a given
+	 * capacity, thereby discarding any garbage.
+	 */
+	private void repackChildren(int capacity) {
+		int[] npool = new int[capacity];
+		int size = 0;
+		for (int i = 0; i != nStates; ++i) {
+			if (isCollection(kinds[i])) {
+				int length = lengths[i];
+				System.arraycopy(pool, data[i], npool, size, length);
+				data[i] = size;
+				size += length;
+			}
+		}
+		pool = npool;
+		poolSize = size;
+	}
+
+	private int liveChildren() {
+		int count = 0;
+		for (int i = 0; i != nStates; ++i) {
+			if (isCollection(kinds[i])) {
+				count += lengths[i];
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Allocate a slot at the end of the constant pool for a given constant,
+	 * repacking and expanding the pool as necessary.
+	 *
+	 * @param constant
+	 *            --- constant to be placed in the pool.
+	 * @return --- index of the allocated slot.
+	 */
+	private int allocateConstant(Constant<?> constant) {
+		if (nConstants == constants.length) {
+			int required = liveConstants() + 1;
+			int capacity = Math.max(constants.length, DEFAULT_NUM_CONSTANTS);
+			while (required << 1 > capacity) {
+				capacity <<= 1;
+			}
+			repackConstants(capacity);
+		}
+		constants[nConstants] = constant;
+		return nConstants++;
+	}
+
+	/**
+	 * Copy the constants of all states into a fresh constant pool of a given
+	 * capacity, thereby discarding any garbage.
+	 */
+	private void repackConstants(int capacity) {
+		Constant<?>[] nconstants = new Constant<?>[capacity];
+		int size = 0;
+		for (int i = 0; i != nStates; ++i) {
+			if (isConstant(kinds[i])) {
+				nconstants[size] = constants[data[i]];
+				data[i] = size++;
+			}
+		}
+		constants = nconstants;
+		nConstants = size;
+	}
+
+	private int liveConstants() {
+		int count = 0;
+		for (int i = 0; i != nStates; ++i) {
+			if (isConstant(kinds[i])) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static boolean isCollection(int kind) {
+		return kind <= K_LIST && kind >= K_SET;
+	}
+
+	private static boolean isConstant(int kind) {
+		return kind <= K_BOOL && kind >= K_STRING;
+	}
+
+	/**
+	 * Build the state index from scratch. Where there are several equivalent
+	 * states (e.g. as a result of <code>set()</code>), all of them are
+	 * recorded and <code>add()</code> returns the one with the lowest index,
+	 * just as a linear scan would.
+	 */
+	private void buildIndex() {
+		int capacity = 16;
+		while (capacity < (nStates << 1)) {
+			capacity <<= 1;
+		}
+		index = new int[capacity];
+		indexSize = 0;
+		for (int i = 0; i != nStates; ++i) {
+			if (kinds[i] != K_VOID) {
+				insertIntoIndex(i);
+			}
+		}
+		indexed = nStates;
+	}
+
+	/**
+	 * Check whether the state at a given index is covered by the index. That
+	 * is, whether it is recorded there.
+	 */
+	private boolean isIndexed(int i) {
+		return index != null && i < indexed && kinds[i] != K_VOID;
+	}
+
+	/**
+	 * Insert again all states covered by the index, after their entries were
+	 * removed because they were changed in place.
+	 */
+	private void reindex() {
+		if (index != null) {
+			for (int i = 0; i != indexed; ++i) {
+				if (kinds[i] != K_VOID) {
+					insertIntoIndex(i);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Record a given (non-null) state in the index, unless it is already
+	 * recorded there. The index is kept at most half full.
+	 * 
+	 * @param i
+	 *            --- index of the state.
+	 */
+	private void insertIntoIndex(int i) {
+		if ((indexSize + 1) << 1 > index.length) {
+			growIndex();
+		}
+		int mask = index.length - 1;
+		for (int slot = hash(hashAt(i)) & mask;; slot = (slot + 1) & mask) {
+			int entry = index[slot];
+			if (entry == 0) {
+				index[slot] = i + 1;
+				indexSize++;
+				return;
+			} else if (entry == i + 1) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Double the capacity of the index, moving its entries accordingly.
+	 */
+	private void growIndex() {
+		int[] old = index;
+		index = new int[old.length << 1];
+		int mask = index.length - 1;
+		for (int entry : old) {
+			if (entry != 0) {
+				int slot = hash(hashAt(entry - 1)) & mask;
+				while (index[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				index[slot] = entry;
+			}
+		}
+	}
+
+	/**
+	 * Remove a given state from the index (if present). Entries following it
+	 * in the same probe sequence are shifted back, so that no lookup is cut
+	 * short by the newly emptied slot.
+	 * 
+	 * @param i
+	 *            --- index of the state being removed.
+	 */
+	private void removeFromIndex(int i) {
+		int mask = index.length - 1;
+		int slot = hash(hashAt(i)) & mask;
+		while (index[slot] != i + 1) {
+			if (index[slot] == 0) {
+				return; // not indexed
+			}
+			slot = (slot + 1) & mask;
+		}
+		int gap = slot;
+		for (slot = (gap + 1) & mask; index[slot] != 0; slot = (slot + 1) & mask) {
+			int home = hash(hashAt(index[slot] - 1)) & mask;
+			// move this entry into the gap, unless its home slot lies
+			// (cyclically) after the gap and at or before its current slot.
+			if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+				index[gap] = index[slot];
+				gap = slot;
+			}
+		}
+		index[gap] = 0;
+		indexSize--;
+	}
+
+	/**
+	 * Scramble the hashcode of a state, since those of terms and collections
+	 * are poorly distributed in their lower bits.
+	 */
+	private static int hash(int hashCode) {
+		int h = hashCode * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Remove adjacent duplicates from a sorted region of an array, returning
+	 * the new end of the region.
+	 */
+	private static int removeDuplicates(int[] items, int start, int end) {
+		if (start == end) {
+			return end;
+		}
+		int j = start + 1;
+		for (int i = start + 1; i < end; ++i) {
+			if (items[i] != items[j - 1]) {
+				items[j++] = items[i];
+			}
+		}
+		return j;
+	}
+
 	private static int[] sortedRemoveAll(int[] lhs, int lhs_len, int[] rhs,
 			int rhs_len) {
 		boolean[] marks = new boolean[lhs_len];
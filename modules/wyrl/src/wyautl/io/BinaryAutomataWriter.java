@@ -81,6 +81,7 @@ public class BinaryAutomataWriter {
 			Automaton.Int i = (Automaton.Int) state;
 			byte[] bytes = i.value.toByteArray();
 			output.write_uv(bytes.length);
+			output.write(bytes);
 		} else if (state instanceof Automaton.Real) {
 			Automaton.Real r = (Automaton.Real) state;
 			BigRational br = r.value;
@@ -91,6 +92,7 @@ public class BinaryAutomataWriter {
 
 			byte[] denbytes = br.denominator().toByteArray();
 			output.write_uv(denbytes.length);
+			output.write(denbytes);
 
 		} else if (state instanceof Automaton.Strung) {
 			Automaton.Strung str = (Automaton.Strung) state;
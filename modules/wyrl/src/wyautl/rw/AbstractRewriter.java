@@ -30,7 +30,6 @@ import java.util.Comparator;
 import wyautl.core.Automata;
 import wyautl.core.Automaton;
 import wyautl.core.Schema;
-import wyautl.core.Automaton.State;
 import wyautl.rw.Rewriter.Stats;
 
 public abstract class AbstractRewriter implements Rewriter {
@@ -87,6 +86,24 @@ public abstract class AbstractRewriter implements Rewriter {
 	 */
 	protected int numProbes;
 
+	/**
+	 * The limit on the wall-clock time (in milliseconds) permitted for a single
+	 * call to <code>apply()</code>. A value of zero indicates no limit.
+	 */
+	private long maxTime;
+
+	/**
+	 * The limit on the number of states the automaton being rewritten may
+	 * grow to. A value of zero indicates no limit.
+	 */
+	private int maxStates;
+
+	/**
+	 * The time at which the current call to <code>apply()</code> must give
+	 * up.
+	 */
+	private long deadline = Long.MAX_VALUE;
+
 	/**
 	 * Temporary space used for the various automata operations.
 	 */
@@ -96,6 +113,25 @@ public abstract class AbstractRewriter implements Rewriter {
 		this.schema = schema;		
 	}	
 		
+	/**
+	 * Set the limit on the wall-clock time (in milliseconds) permitted for a
+	 * single call to <code>apply()</code>. After this point is reached, the
+	 * method will return at the next probe (i.e. even if there are more
+	 * reductions that could be applied). A value of zero indicates no limit.
+	 */
+	public void setMaxTime(long maxTime) {
+		this.maxTime = maxTime;
+	}
+
+	/**
+	 * Set the limit on the number of states the automaton being rewritten may
+	 * grow to. After this point is reached, <code>apply()</code> will return
+	 * at the next probe. A value of zero indicates no limit.
+	 */
+	public void setMaxStates(int maxStates) {
+		this.maxStates = maxStates;
+	}
+
 	@Override
 	public Rewriter.Stats getStats() {
 		return new Stats(numProbes, numReductionActivations,
@@ -115,6 +151,43 @@ public abstract class AbstractRewriter implements Rewriter {
 		this.numInferenceSuccesses = 0;
 	}
 	
+	/**
+	 * This method should be called at the beginning of <code>apply()</code>,
+	 * in order to start the clock against which the time limit is measured.
+	 */
+	protected final void startLimits() {
+		if (maxTime > 0) {
+			deadline = System.currentTimeMillis() + maxTime;
+		} else {
+			deadline = Long.MAX_VALUE;
+		}
+	}
+
+	/**
+	 * This method should be called before every probe made during rewriting.
+	 * It counts the probe and checks whether any of the limits on rewriting
+	 * have been reached, in which case <code>LimitReached</code> is thrown.
+	 * This also provides a point at which rewriting can be cancelled by
+	 * interrupting the thread performing it. Since reading the clock is
+	 * relatively expensive, the time limit is only checked periodically.
+	 * 
+	 * @param automaton
+	 *            The automaton being rewritten.
+	 * @param maxProbes
+	 *            The limit on the number of probes permitted.
+	 */
+	protected final void checkLimits(Automaton automaton, int maxProbes) {
+		if (numProbes++ == maxProbes) {
+			throw new LimitReached();
+		} else if (maxStates > 0 && automaton.nStates() > maxStates) {
+			throw new LimitReached();
+		} else if ((numProbes & 0x3F) == 0
+				&& (System.currentTimeMillis() > deadline || Thread
+						.currentThread().isInterrupted())) {
+			throw new LimitReached();
+		}
+	}
+
 	/**
 	 * This method should be used to apply a given activation of an inference
 	 * rule onto an automaton during rewriting.
@@ -286,25 +359,23 @@ public abstract class AbstractRewriter implements Rewriter {
 		
 		Automata.eliminateUnreachableStates(automaton, 0, nStates, tmp);	
 		
-		// Second, we compact the automaton down.
+		// Second, we determine whether any state below the pivot was
+		// eliminated and how many states remain.
 		
 		boolean changed = false;
 		int j=0;
 		for(int i=0;i!=nStates;++i) {
-			State ith = automaton.get(i);
-			if(ith != null) {		
-				tmp[i] = j;
-				automaton.set(j++,ith);				
+			if(automaton.getKind(i) != Automaton.K_VOID) {		
+				j++;
 			} else if(i < pivot) {
 				changed = true;
 			}
 		}
 		
-		// Third, trim and remap the automaton. Note, at this point, j holds the
-		// number of states in the compacted automaton.
+		// Third, compact the automaton down. This preserves the order of the
+		// remaining states and, hence, leaves j states.
 		
-		automaton.resize(j);
-		automaton.remap(tmp);
+		automaton.compact();
 						
 		return changed || j != pivot;
 	}	
@@ -382,14 +453,15 @@ public abstract class AbstractRewriter implements Rewriter {
 	}
 
 	/**
-	 * Signals that a limit on number of permitted probes has been reached. This
-	 * is used simply to prevent rewriting from continuing for ever. In
+	 * Signals that a limit on rewriting (i.e. on the number of permitted
+	 * probes, the time taken or the size of the automaton) has been reached.
+	 * This is used simply to prevent rewriting from continuing for ever. In
 	 * other words, it's a simple form of timeout.
 	 * 
 	 * @author David J. Pearce
 	 * 
 	 */
-	protected static final class MaxProbesReached extends RuntimeException {
+	protected static final class LimitReached extends RuntimeException {
 
 	}	
 }
@@ -0,0 +1,61 @@
+// Copyright (c) 2011, David J. Pearce (djp@ecs.vuw.ac.nz)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//    * Redistributions of source code must retain the above copyright
+//      notice, this list of conditions and the following disclaimer.
+//    * Redistributions in binary form must reproduce the above copyright
+//      notice, this list of conditions and the following disclaimer in the
+//      documentation and/or other materials provided with the distribution.
+//    * Neither the name of the <organization> nor the
+//      names of its contributors may be used to endorse or promote products
+//      derived from this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+// ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL DAVID J. PEARCE BE LIABLE FOR ANY
+// DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+// LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+// ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package wyautl.rw;
+
+import wyautl.core.Automaton;
+
+/**
+ * A rewrite rule which groups together several rules whose patterns have the
+ * same root term. A dispatch rule examines a state once to determine which of
+ * its rules could match it, rather than each rule examining the state in turn.
+ * Activations are always made against the rules dispatched to, never against
+ * the dispatch rule itself.
+ */
+public interface DispatchRule extends RewriteRule {
+
+	/**
+	 * Get the rules this rule dispatches to, in the order in which they are
+	 * probed. There are at most 64 of them.
+	 * 
+	 * @return
+	 */
+	public RewriteRule[] rules();
+
+	/**
+	 * Determine which of the rules this rule dispatches to could match a given
+	 * state. Any rule which is not a candidate is guaranteed to produce no
+	 * activations when probed on the state.
+	 * 
+	 * @param automaton
+	 *            --- automaton containing the state.
+	 * @param root
+	 *            --- state to be matched.
+	 * @return --- a bit mask where bit <code>i</code> is set if the
+	 *         <code>i</code>th rule returned by <code>rules()</code> is a
+	 *         candidate.
+	 */
+	public long candidates(Automaton automaton, int root);
+}
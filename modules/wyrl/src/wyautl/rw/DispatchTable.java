@@ -0,0 +1,169 @@
+// Copyright (c) 2011, David J. Pearce (djp@ecs.vuw.ac.nz)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//    * Redistributions of source code must retain the above copyright
+//      notice, this list of conditions and the following disclaimer.
+//    * Redistributions in binary form must reproduce the above copyright
+//      notice, this list of conditions and the following disclaimer in the
+//      documentation and/or other materials provided with the distribution.
+//    * Neither the name of the <organization> nor the
+//      names of its contributors may be used to endorse or promote products
+//      derived from this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+// ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL DAVID J. PEARCE BE LIABLE FOR ANY
+// DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+// LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+// ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package wyautl.rw;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import wyautl.core.Automaton;
+import wyautl.core.Schema;
+import wyrl.core.Pattern;
+
+/**
+ * <p>
+ * Maps each kind of term to the rewrite rules whose patterns have a root of
+ * that kind. Any <code>DispatchRule</code> is expanded into the rules it
+ * dispatches to, so that rewriters probe (and count probes for) every such rule
+ * exactly as they would if the rules had not been grouped. However, the
+ * dispatch rule is retained so that rules which cannot match a given state are
+ * not actually probed.
+ * </p>
+ */
+final class DispatchTable {
+
+	/**
+	 * The rules for each kind, in the order in which they should be probed.
+	 */
+	private final RewriteRule[][] rules;
+
+	/**
+	 * The dispatch rule (if any) responsible for the rules of each kind.
+	 */
+	private final DispatchRule[] dispatchers;
+
+	/**
+	 * For each kind with a dispatch rule, maps the position of each rule in
+	 * <code>rules()</code> of the dispatch rule to its position in the table.
+	 */
+	private final int[][] positions;
+
+	public DispatchTable(RewriteRule[] rules, Schema schema,
+			Comparator<RewriteRule> comparator) {
+		this.rules = new RewriteRule[schema.size()][];
+		this.dispatchers = new DispatchRule[schema.size()];
+		this.positions = new int[schema.size()][];
+		for (int i = 0; i != this.rules.length; ++i) {
+			Schema.Term term = schema.get(i);
+			ArrayList<RewriteRule> tmp = new ArrayList<RewriteRule>();
+			DispatchRule dispatcher = null;
+			int nDispatchers = 0;
+			for (int j = 0; j != rules.length; ++j) {
+				RewriteRule ir = rules[j];
+				Pattern.Term pt = ir.pattern();
+				if (pt.name.equals(term.name)) {
+					if (ir instanceof DispatchRule) {
+						dispatcher = (DispatchRule) ir;
+						nDispatchers++;
+						tmp.addAll(Arrays.asList(dispatcher.rules()));
+					} else {
+						tmp.add(ir);
+					}
+				}
+			}
+			RewriteRule[] rs = tmp.toArray(new RewriteRule[tmp.size()]);
+			Arrays.sort(rs, comparator);
+			this.rules[i] = rs;
+			// The candidates of a dispatch rule can only be used when it is
+			// responsible for every rule of this kind.
+			if (nDispatchers == 1 && rs.length == dispatcher.rules().length) {
+				RewriteRule[] drs = dispatcher.rules();
+				int[] position = new int[drs.length];
+				for (int j = 0; j != drs.length; ++j) {
+					for (int k = 0; k != rs.length; ++k) {
+						if (rs[k] == drs[j]) {
+							position[j] = k;
+						}
+					}
+				}
+				this.dispatchers[i] = dispatcher;
+				this.positions[i] = position;
+			}
+		}
+	}
+
+	/**
+	 * Get the rules which should be probed, in order, for a given kind of
+	 * term.
+	 * 
+	 * @param kind
+	 * @return
+	 */
+	public RewriteRule[] get(int kind) {
+		return rules[kind];
+	}
+
+	/**
+	 * Determine which of the rules for a given state's kind could match it.
+	 * 
+	 * @param automaton
+	 *            --- automaton containing the state.
+	 * @param root
+	 *            --- state to be matched.
+	 * @param kind
+	 *            --- kind of the state.
+	 * @return --- a bit mask where bit <code>j</code> is set if the
+	 *         <code>j</code>th rule returned by <code>get(kind)</code> is a
+	 *         candidate. If there are more than 64 rules, all bits are set.
+	 */
+	public long candidates(Automaton automaton, int root, int kind) {
+		DispatchRule dispatcher = dispatchers[kind];
+		if (dispatcher == null) {
+			return -1L;
+		}
+		long mask = dispatcher.candidates(automaton, root);
+		int[] position = positions[kind];
+		long r = 0L;
+		for (int j = 0; j != position.length; ++j) {
+			if ((mask & (1L << j)) != 0) {
+				r |= 1L << position[j];
+			}
+		}
+		return r;
+	}
+
+	/**
+	 * Expand any dispatch rules in a given array into the rules they dispatch
+	 * to, for rewriters which do not use a dispatch table.
+	 * 
+	 * @param rules
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T extends RewriteRule> T[] expand(T[] rules) {
+		ArrayList<T> tmp = new ArrayList<T>();
+		for (T r : rules) {
+			if (r instanceof DispatchRule) {
+				for (RewriteRule dr : ((DispatchRule) r).rules()) {
+					tmp.add((T) dr);
+				}
+			} else {
+				tmp.add(r);
+			}
+		}
+		return tmp.toArray(Arrays.copyOf(rules, 0));
+	}
+}
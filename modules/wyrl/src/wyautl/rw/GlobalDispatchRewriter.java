@@ -32,7 +32,7 @@ import java.util.Comparator;
 import wyautl.core.Automata;
 import wyautl.core.Automaton;
 import wyautl.core.Schema;
-import wyautl.rw.AbstractRewriter.MaxProbesReached;
+import wyautl.rw.AbstractRewriter.LimitReached;
 import wyautl.rw.AbstractRewriter.MinRuleComparator;
 import wyrl.core.Pattern;
 
@@ -101,8 +101,8 @@ public class GlobalDispatchRewriter extends AbstractRewriter implements Rewriter
 		super(schema);
 		Arrays.sort(inferences, comparator);
 		Arrays.sort(reductions, comparator);			
-		this.inferences = inferences;
-		this.reductions = reductions;
+		this.inferences = DispatchTable.expand(inferences);
+		this.reductions = DispatchTable.expand(reductions);
 		this.maxProbes = maxProbes;
 	}
 	
@@ -119,6 +119,8 @@ public class GlobalDispatchRewriter extends AbstractRewriter implements Rewriter
 	@Override
 	public boolean apply(Automaton automaton) {
 
+		startLimits();
+
 		// First, make sure the automaton is minimised and compacted.
 		
 		automaton.minimise();
@@ -137,15 +139,13 @@ public class GlobalDispatchRewriter extends AbstractRewriter implements Rewriter
 					InferenceRule ir = inferences[j];
 					inferenceWorklist.clear();
 					for (int i = 0; i < automaton.nStates(); ++i) {
-						Automaton.State state = automaton.get(i);
+						int kind = automaton.getKind(i);
 
 						// Check whether this state is a term or not (since only
 						// term's can be the root of a match).
-						if (state instanceof Automaton.Term) {
+						if (kind >= 0) {
 
-							if (numProbes++ == maxProbes) {
-								throw new MaxProbesReached();
-							}
+							checkLimits(automaton, maxProbes);
 							ir.probe(automaton, i, inferenceWorklist);
 
 							for (int k = 0; k != inferenceWorklist.size(); ++k) {
@@ -172,9 +172,9 @@ public class GlobalDispatchRewriter extends AbstractRewriter implements Rewriter
 					}
 				}
 			}
-		} catch (MaxProbesReached e) {
+		} catch (LimitReached e) {
 
-			// If we get here, then the maximum number of probes was reached
+			// If we get here, then a limit on rewriting was reached
 			// before rewriting could complete. Effectively, this is a simple
 			// form of timeout.
 
@@ -196,15 +196,13 @@ public class GlobalDispatchRewriter extends AbstractRewriter implements Rewriter
 				reductionWorklist.clear();
 
 				for (int i = pivot; i < nStates; ++i) {
-					Automaton.State state = automaton.get(i);
+					int kind = automaton.getKind(i);
 
 					// Check whether this state is a term or not (since only
 					// term's
 					// can be the root of a match).
-					if (state instanceof Automaton.Term) {
-						if (numProbes++ == maxProbes) {
-							throw new MaxProbesReached();
-						}
+					if (kind >= 0) {
+						checkLimits(automaton, maxProbes);
 						rr.probe(automaton, i, reductionWorklist);
 
 						for (int k = 0; k != reductionWorklist.size(); ++k) {
@@ -0,0 +1,513 @@
+// Copyright (c) 2011, David J. Pearce (djp@ecs.vuw.ac.nz)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//    * Redistributions of source code must retain the above copyright
+//      notice, this list of conditions and the following disclaimer.
+//    * Redistributions in binary form must reproduce the above copyright
+//      notice, this list of conditions and the following disclaimer in the
+//      documentation and/or other materials provided with the distribution.
+//    * Neither the name of the <organization> nor the
+//      names of its contributors may be used to endorse or promote products
+//      derived from this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+// ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL DAVID J. PEARCE BE LIABLE FOR ANY
+// DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+// LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+// ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package wyautl.rw;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+
+import wyautl.core.Automaton;
+import wyautl.core.Schema;
+
+/**
+ * <p>
+ * An implementation of <code>RewriteSystem</code> which uses the same static
+ * dispatch table as <code>StaticDispatchRewriter</code>, but which avoids
+ * re-probing states that cannot have changed. Specifically, after a reduction
+ * is applied, <code>StaticDispatchRewriter</code> restarts its search from the
+ * pivot point, probing every state again. However, the outcome of probing a
+ * state depends only on the states reachable from it. Therefore, this rewriter
+ * maintains a <i>dirty set</i> of states which have not been probed since
+ * something reachable from them last changed, and only these are probed.
+ * </p>
+ * 
+ * <p>
+ * To determine which states are affected by a reduction, a <i>reverse-edge
+ * index</i> (mapping each state to its parents) is maintained. A reduction
+ * rewrites the state it was activated on (the <i>root</i>) and may, as a
+ * result, eliminate other states. Only ancestors of these states (and any
+ * states newly allocated) can have changed. Furthermore, only their edges need
+ * be added to the index, which is therefore updated incrementally rather than
+ * rebuilt after each reduction. Since the dirty states are probed
+ * in the same order as <code>StaticDispatchRewriter</code> would probe them,
+ * and since the states skipped are exactly those which would not activate,
+ * the same sequence of reductions is applied and, hence, the same normal form
+ * is produced. However, fewer probes are required to get there which means
+ * that, for the same limit on probes, rewriting can proceed further.
+ * </p>
+ * 
+ * <p>
+ * <b>NOTE:</b> this relies on reduction rules always rewriting the state they
+ * were activated on (as the rules generated by wyrl do).
+ * </p>
+ * 
+ * <p>
+ * <b>NOTE:</b> this is not designed to be used in a concurrent setting.
+ * </p>
+ */
+public class IncrementalRewriter extends AbstractRewriter implements Rewriter {
+
+	/**
+	 * The dispatch table for inference rules.
+	 */
+	private final DispatchTable inferenceDispatchTable;
+
+	/**
+	 * The list of available reduction rules.
+	 */
+	private final DispatchTable reductionDispatchTable;
+
+	/**
+	 * Temporary list of reduction activations used.
+	 */
+	private final ArrayList<Activation> reductionWorklist = new ArrayList<Activation>();
+	
+	/**
+	 * Temporary list of inference activations used.
+	 */	
+	private final ArrayList<Activation> inferenceWorklist = new ArrayList<Activation>();
+		
+	/**
+	 * Provies a the limit on the number of probes which are permitted during a
+	 * single call to <code>apply()</code>. After this point is reached, the
+	 * method will return immediately (i.e. even if there are more reductions
+	 * that could be applied). The default value is currently 100000.
+	 */
+	private int maxProbes;
+	
+	/**
+	 * The set of states which must be (re-)probed for reductions.
+	 */
+	private final BitSet dirty = new BitSet();
+	
+	/**
+	 * The set of states visited when propagating a change to ancestors.
+	 */
+	private final BitSet visited = new BitSet();
+	
+	/**
+	 * Temporary worklist used when propagating a change to ancestors.
+	 */
+	private int[] stack = new int[16];
+	
+	/**
+	 * The number of states in the automaton when the reverse-edge index was
+	 * last built.
+	 */
+	private int nIndexed;
+	
+	/**
+	 * The number of edges in the reverse-edge index when it was last built.
+	 */
+	private int nEdges;
+	
+	/**
+	 * The reverse-edge index. The parents of state <code>i</code> are held in
+	 * <code>parents[parentStart[i]]</code> up to (but not including)
+	 * <code>parents[parentStart[i+1]]</code>.
+	 */
+	private int[] parentStart = new int[1];
+	private int[] parents = new int[0];
+	
+	/**
+	 * Parents recorded since the reverse-edge index was last built. The
+	 * additional parents of state <code>i</code> form a list starting at
+	 * <code>extraHead[i]</code> and linked through <code>extraNext</code>
+	 * (with <code>-1</code> marking the end). Parents which no longer refer to
+	 * a state are not removed from either part of the index. This is safe,
+	 * since it can only cause additional states to be marked dirty.
+	 */
+	private int[] extraHead = new int[0];
+	private int[] extraParent = new int[16];
+	private int[] extraNext = new int[16];
+	private int nExtra;
+	
+	public IncrementalRewriter(InferenceRule[] inferences,
+			ReductionRule[] reductions, Schema schema) {
+		this(inferences, reductions, schema,
+				new MinRuleComparator<RewriteRule>(), 100000);
+	}
+
+	public IncrementalRewriter(InferenceRule[] inferences,
+			ReductionRule[] reductions, Schema schema, int maxProbes) {
+		this(inferences, reductions, schema,
+				new MinRuleComparator<RewriteRule>(), maxProbes);
+	}
+
+	public IncrementalRewriter(InferenceRule[] inferences,
+			ReductionRule[] reductions, Schema schema,
+			Comparator<RewriteRule> comparator, int maxProbes) {
+		super(schema);
+		this.inferenceDispatchTable = new DispatchTable(inferences, schema,
+				comparator);
+		this.reductionDispatchTable = new DispatchTable(reductions, schema,
+				comparator);
+		this.maxProbes = maxProbes;
+	}
+	
+	/**
+	 * Set the limit on the number of probes which are permitted during a single
+	 * call to <code>apply()</code>. After this point is reached, the method
+	 * will return immediately (i.e. even if there are more reductions that
+	 * could be applied).
+	 */	
+	public void setMaxProbes(int maxProbes) {
+		this.maxProbes = maxProbes;
+	}
+	
+	@Override
+	public boolean apply(Automaton automaton) {
+
+		startLimits();
+
+		// First, make sure the automaton is minimised and compacted.
+		
+		automaton.minimise();
+		automaton.compact();
+
+		// Second, continue to apply inference rules until a fixed point is
+		// reached. NOTE: a successful inference compacts the automaton, which
+		// renumbers its states. Therefore, the search for inferences is
+		// restarted from scratch, as for StaticDispatchRewriter.
+		try {
+			boolean changed = true;
+			while (changed) {
+
+				doPartialReduction(automaton, 0);
+				changed = false;
+
+				outer: for (int i = 0; i < automaton.nStates(); ++i) {
+					int kind = automaton.getKind(i);
+
+					// Check whether this state is a term or not (since only
+					// term's can be the root of a match).
+					if (kind >= 0) {
+						RewriteRule[] inferences = inferenceDispatchTable.get(kind);
+						long candidates = inferenceDispatchTable.candidates(
+								automaton, i, kind);
+						for (int j = 0; j != inferences.length; ++j) {
+							RewriteRule ir = inferences[j];
+							inferenceWorklist.clear();
+							checkLimits(automaton, maxProbes);
+							if ((candidates & (1L << j)) != 0) {
+								ir.probe(automaton, i, inferenceWorklist);
+							}
+
+							for (int k = 0; k != inferenceWorklist.size(); ++k) {
+								Activation activation = inferenceWorklist
+										.get(k);
+								
+								if (applyInference(automaton, activation)) {
+									changed = true;
+									break outer;
+								}
+							}
+						}
+					}
+				}
+			}
+		} catch (LimitReached e) {
+			
+			// If we get here, then a limit on rewriting was reached
+			// before rewriting could complete. Effectively, this is a simple
+			// form of timeout.
+			
+			return false;
+		}
+
+		return true;
+	}
+	
+	@Override
+	protected final boolean doPartialReduction(Automaton automaton, int pivot) {
+		int nStates = automaton.nStates();
+		dirty.clear();
+		dirty.set(pivot, nStates);
+		buildReverseIndex(automaton);
+		
+		int i = dirty.nextSetBit(pivot);
+		
+		outer: while (i >= 0 && i < automaton.nStates()) {
+			dirty.clear(i);
+			int kind = automaton.getKind(i);
+
+			// Check whether this state is a term or not (since only term's
+			// can be the root of a match).
+			if (kind >= 0) {
+
+				RewriteRule[] reductions = reductionDispatchTable.get(kind);
+				long candidates = reductionDispatchTable.candidates(automaton,
+						i, kind);
+				for (int j = 0; j != reductions.length; ++j) {
+					RewriteRule rr = reductions[j];
+					reductionWorklist.clear();
+
+					checkLimits(automaton, maxProbes);
+					if ((candidates & (1L << j)) != 0) {
+						rr.probe(automaton, i, reductionWorklist);
+					}
+
+					for (int k = 0; k != reductionWorklist.size(); ++k) {
+						Activation activation = reductionWorklist.get(k);
+
+						if (applyPartialReduction(automaton, pivot, activation)) {
+							// The automaton has changed, so mark everything
+							// affected as dirty and resume from the first
+							// dirty state (just as StaticDispatchRewriter
+							// resumes from the pivot).
+							markDirty(automaton, i);
+							i = dirty.nextSetBit(pivot);
+							continue outer;
+						}
+					}
+				}
+			}
+			
+			i = dirty.nextSetBit(i + 1);
+		}
+
+		// Finally, compact the automaton down by eliminating any unreachable
+		// states and compacting the automaton down.
+
+		return completePartialReduction(automaton, pivot);
+	}
+
+	/**
+	 * Following a successful reduction activated on a given root, mark all
+	 * states which may now activate differently as dirty. These are: the root
+	 * and its ancestors; any newly allocated states; and, any states merged
+	 * away by minimisation (together with their ancestors). Rather than
+	 * rebuilding the reverse-edge index, only the edges of the states visited
+	 * here are (re-)recorded, since no other state can have changed its
+	 * children. A state merged away is always a parent of some child of the
+	 * state it was merged with and, hence, is found when that state's edges
+	 * are recorded.
+	 * 
+	 * @param automaton
+	 *            --- the automaton after the reduction was applied.
+	 * @param root
+	 *            --- the state on which the reduction was activated.
+	 */
+	private void markDirty(Automaton automaton, int root) {
+		int nStates = automaton.nStates();
+		ensureCapacity(nStates);
+		visited.clear();
+		int sp = push(0, root);
+		for (int i = nIndexed; i < nStates; ++i) {
+			if (automaton.getKind(i) != Automaton.K_VOID && !visited.get(i)) {
+				sp = push(sp, i);
+			}
+		}
+		while (sp > 0) {
+			int state = stack[--sp];
+			dirty.set(state);
+			// First, the ancestors of this state may now activate differently.
+			if (state < nIndexed) {
+				for (int k = parentStart[state]; k != parentStart[state + 1]; ++k) {
+					int parent = parents[k];
+					if (!visited.get(parent)) {
+						sp = push(sp, parent);
+					}
+				}
+			}
+			for (int k = extraHead[state]; k != -1; k = extraNext[k]) {
+				int parent = extraParent[k];
+				if (!visited.get(parent)) {
+					sp = push(sp, parent);
+				}
+			}
+			// Second, the children of this state may have changed.
+			int kind = state < nStates ? automaton.getKind(state)
+					: Automaton.K_VOID;
+			if (kind >= 0) {
+				int child = automaton.getContents(state);
+				if (child >= 0) {
+					sp = recordEdge(automaton, state, child, sp);
+				}
+			} else if (kind != Automaton.K_VOID) {
+				int size = automaton.getSize(state);
+				for (int j = 0; j != size; ++j) {
+					int child = automaton.getChild(state, j);
+					if (child >= 0) {
+						sp = recordEdge(automaton, state, child, sp);
+					}
+				}
+			}
+		}
+		// Finally, rebuild the index from scratch once enough edges have
+		// accumulated outside of it.
+		if (nExtra > nEdges) {
+			buildReverseIndex(automaton);
+		}
+	}
+
+	/**
+	 * Record that a given state is a parent of a given child, unless this is
+	 * already known. At the same time, any eliminated state recorded as a
+	 * parent of the child is pushed onto the worklist, since it may have been
+	 * merged with the given parent and, hence, its parents now refer to that.
+	 * 
+	 * @param automaton
+	 * @param parent
+	 * @param child
+	 * @param sp
+	 *            --- current top of worklist stack.
+	 * @return the new top of the worklist stack.
+	 */
+	private int recordEdge(Automaton automaton, int parent, int child, int sp) {
+		int nStates = automaton.nStates();
+		boolean found = false;
+		if (child < nIndexed) {
+			for (int k = parentStart[child]; k != parentStart[child + 1]; ++k) {
+				int p = parents[k];
+				found |= p == parent;
+				if (!visited.get(p)
+						&& (p >= nStates || automaton.getKind(p) == Automaton.K_VOID)) {
+					sp = push(sp, p);
+				}
+			}
+		}
+		for (int k = extraHead[child]; k != -1; k = extraNext[k]) {
+			int p = extraParent[k];
+			found |= p == parent;
+			if (!visited.get(p)
+					&& (p >= nStates || automaton.getKind(p) == Automaton.K_VOID)) {
+				sp = push(sp, p);
+			}
+		}
+		if (!found) {
+			if (nExtra == extraParent.length) {
+				extraParent = Arrays.copyOf(extraParent, nExtra * 2);
+				extraNext = Arrays.copyOf(extraNext, nExtra * 2);
+			}
+			extraParent[nExtra] = parent;
+			extraNext[nExtra] = extraHead[child];
+			extraHead[child] = nExtra++;
+		}
+		return sp;
+	}
+
+	/**
+	 * Push a state onto the worklist stack, marking it as visited.
+	 * 
+	 * @param sp
+	 *            --- current top of worklist stack.
+	 * @param state
+	 * @return the new top of the worklist stack.
+	 */
+	private int push(int sp, int state) {
+		if (sp == stack.length) {
+			stack = Arrays.copyOf(stack, sp * 2);
+		}
+		stack[sp] = state;
+		visited.set(state);
+		return sp + 1;
+	}
+
+	/**
+	 * Ensure there is room to record additional parents for every state in
+	 * an automaton of the given size.
+	 * 
+	 * @param nStates
+	 */
+	private void ensureCapacity(int nStates) {
+		if (extraHead.length < nStates) {
+			int old = extraHead.length;
+			extraHead = Arrays.copyOf(extraHead, nStates * 2);
+			Arrays.fill(extraHead, old, extraHead.length, -1);
+		}
+	}
+	
+	/**
+	 * Construct the reverse-edge index for the automaton in its current
+	 * state.
+	 * 
+	 * @param automaton
+	 */
+	private void buildReverseIndex(Automaton automaton) {
+		int nStates = automaton.nStates();
+		if (parentStart.length < nStates + 1) {
+			parentStart = new int[(nStates + 1) * 2];
+		}
+		Arrays.fill(parentStart, 0, nStates + 1, 0);
+		// First, count the parents of each state.
+		int nEdges = 0;
+		for (int i = 0; i != nStates; ++i) {
+			int kind = automaton.getKind(i);
+			if (kind >= 0) {
+				int child = automaton.getContents(i);
+				if (child >= 0) {
+					parentStart[child + 1]++;
+					nEdges++;
+				}
+			} else {
+				int size = automaton.getSize(i);
+				for (int j = 0; j != size; ++j) {
+					int child = automaton.getChild(i, j);
+					if (child >= 0) {
+						parentStart[child + 1]++;
+						nEdges++;
+					}
+				}
+			}
+		}
+		for (int i = 0; i != nStates; ++i) {
+			parentStart[i + 1] += parentStart[i];
+		}
+		// Second, fill in the parents of each state. This uses the start of
+		// the following state as a cursor, which is then restored.
+		if (parents.length < nEdges) {
+			parents = new int[nEdges * 2];
+		}
+		for (int i = 0; i != nStates; ++i) {
+			int kind = automaton.getKind(i);
+			if (kind >= 0) {
+				int child = automaton.getContents(i);
+				if (child >= 0) {
+					parents[parentStart[child]++] = i;
+				}
+			} else {
+				int size = automaton.getSize(i);
+				for (int j = 0; j != size; ++j) {
+					int child = automaton.getChild(i, j);
+					if (child >= 0) {
+						parents[parentStart[child]++] = i;
+					}
+				}
+			}
+		}
+		for (int i = nStates; i > 0; --i) {
+			parentStart[i] = parentStart[i - 1];
+		}
+		parentStart[0] = 0;
+		nIndexed = nStates;
+		this.nEdges = nEdges;
+		ensureCapacity(nStates);
+		Arrays.fill(extraHead, 0, nStates, -1);
+		nExtra = 0;
+	}
+}
@@ -95,8 +95,8 @@ public final class RandomRewriter extends AbstractRewriter implements Rewriter {
 		super(schema);
 		Arrays.sort(inferences, comparator);
 		Arrays.sort(reductions, comparator);		
-		this.inferences = Arrays.asList(inferences);
-		this.reductions = Arrays.asList(reductions);
+		this.inferences = Arrays.asList(DispatchTable.expand(inferences));
+		this.reductions = Arrays.asList(DispatchTable.expand(reductions));
 		this.maxProbes = maxProbes;
 	}
 	
@@ -113,6 +113,8 @@ public final class RandomRewriter extends AbstractRewriter implements Rewriter {
 	@Override
 	public boolean apply(Automaton automaton) {
 
+		startLimits();
+
 		// First, make sure the automaton is minimised and compacted.
 		
 		automaton.minimise();
@@ -128,17 +130,15 @@ public final class RandomRewriter extends AbstractRewriter implements Rewriter {
 				changed = false;
 				Collections.shuffle(inferences);
 				outer: for (int i = 0; i < automaton.nStates(); ++i) {
-					Automaton.State state = automaton.get(i);
+					int kind = automaton.getKind(i);
 
 					// Check whether this state is a term or not (since only
 					// term's can be the root of a match).
-					if (state instanceof Automaton.Term) {
+					if (kind >= 0) {
 						for (int j = 0; j != inferences.size(); ++j) {
 							InferenceRule ir = inferences.get(j);
 							inferenceWorklist.clear();
-							if (numProbes++ == maxProbes) {
-								throw new MaxProbesReached();
-							}
+							checkLimits(automaton, maxProbes);
 							ir.probe(automaton, i, inferenceWorklist);
 
 							for (int k = 0; k != inferenceWorklist.size(); ++k) {
@@ -161,9 +161,9 @@ public final class RandomRewriter extends AbstractRewriter implements Rewriter {
 					}
 				}
 			}
-		} catch (MaxProbesReached e) {
+		} catch (LimitReached e) {
 			
-			// If we get here, then the maximum number of probes was reached
+			// If we get here, then a limit on rewriting was reached
 			// before rewriting could complete. Effectively, this is a simple
 			// form of timeout.
 			
@@ -182,17 +182,17 @@ public final class RandomRewriter extends AbstractRewriter implements Rewriter {
 			int nStates = automaton.nStates();
 			Collections.shuffle(reductions);
 			outer: for (int i = pivot; i < nStates; ++i) {
-				Automaton.State state = automaton.get(i);
+				int kind = automaton.getKind(i);
 
 				// Check whether this state is a term or not (since only term's
 				// can be the root of a match).				
-				if (state instanceof Automaton.Term) {	
+				if (kind >= 0) {	
 
 					for (int j = 0; j != reductions.size(); ++j) {
 						ReductionRule rr = reductions.get(j);
 						reductionWorklist.clear();
 
-						if(numProbes++ == maxProbes) { throw new MaxProbesReached(); }
+						checkLimits(automaton, maxProbes);
 						rr.probe(automaton, i, reductionWorklist);
 
 						for (int k = 0; k != reductionWorklist.size(); ++k) {						
@@ -0,0 +1,327 @@
+// Copyright (c) 2011, David J. Pearce (djp@ecs.vuw.ac.nz)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//    * Redistributions of source code must retain the above copyright
+//      notice, this list of conditions and the following disclaimer.
+//    * Redistributions in binary form must reproduce the above copyright
+//      notice, this list of conditions and the following disclaimer in the
+//      documentation and/or other materials provided with the distribution.
+//    * Neither the name of the <organization> nor the
+//      names of its contributors may be used to endorse or promote products
+//      derived from this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+// ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL DAVID J. PEARCE BE LIABLE FOR ANY
+// DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+// LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+// ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package wyautl.rw;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import wyautl.core.Automaton;
+import wyautl.core.Schema;
+import wyautl.io.BinaryAutomataReader;
+import wyautl.io.BinaryAutomataWriter;
+import wybs.io.BinaryInputStream;
+import wybs.io.BinaryOutputStream;
+
+/**
+ * <p>
+ * A bounded cache mapping automata to the normal forms produced by rewriting
+ * them under a given set of rules. Clients (e.g. the verifier or the subtype
+ * checker) often rewrite exactly the same automaton more than once, and
+ * rewriting to a fixpoint is by far the most expensive part of this. Since
+ * rewriting is deterministic for a given set of rules, a previously computed
+ * normal form can simply be reused.
+ * </p>
+ * 
+ * <p>
+ * Automata are identified by their structure and, hence, should be minimised
+ * and compacted before being used as a key. Isomorphic automata whose states
+ * are ordered differently are treated as distinct, which simply results in a
+ * cache miss. Only normal forms for which rewriting actually reached a
+ * fixpoint should be recorded, since an incomplete rewrite depends upon the
+ * limits in effect at the time.
+ * </p>
+ * 
+ * <p>
+ * The cache is safe for concurrent use. When the number of entries exceeds the
+ * given limit, the least recently used entry is discarded. The contents of the
+ * cache can be written to a file and read back in a later build. Each file
+ * records a fingerprint of the rules and schema used to produce it and, when
+ * these no longer match, the file is ignored.
+ * </p>
+ */
+public final class RewriteCache {
+	private static final int MAGIC = 0x57595243; // "WYRC"
+
+	private final RewriteRule[] rules;
+	private final Schema schema;
+	private final LinkedHashMap<Key, Automaton> cache;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private byte[] fingerprint;
+
+	/**
+	 * Construct a cache for the normal forms produced by a given set of rules.
+	 * 
+	 * @param inferences
+	 *            --- the inference rules used for rewriting.
+	 * @param reductions
+	 *            --- the reduction rules used for rewriting.
+	 * @param schema
+	 *            --- the schema of the automata being rewritten.
+	 * @param limit
+	 *            --- maximum number of entries held in the cache.
+	 */
+	public RewriteCache(InferenceRule[] inferences,
+			ReductionRule[] reductions, Schema schema, final int limit) {
+		this.rules = new RewriteRule[inferences.length + reductions.length];
+		System.arraycopy(inferences, 0, rules, 0, inferences.length);
+		System.arraycopy(reductions, 0, rules, inferences.length,
+				reductions.length);
+		this.schema = schema;
+		this.cache = new LinkedHashMap<Key, Automaton>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<Key, Automaton> e) {
+				return size() > limit;
+			}
+		};
+	}
+
+	/**
+	 * Lookup the normal form previously recorded for a given automaton, or
+	 * return <code>null</code> if there is none. The returned automaton is
+	 * shared and must not be modified.
+	 * 
+	 * @param automaton
+	 *            --- a minimised and compacted automaton.
+	 * @return
+	 */
+	public Automaton get(Automaton automaton) {
+		Automaton result;
+		Key key = new Key(automaton);
+		synchronized (cache) {
+			result = cache.get(key);
+		}
+		if (result != null) {
+			hits.incrementAndGet();
+		} else {
+			misses.incrementAndGet();
+		}
+		return result;
+	}
+
+	/**
+	 * Record the normal form of a given automaton. The cache takes ownership
+	 * of both automata and, hence, neither should be modified afterwards.
+	 * 
+	 * @param automaton
+	 *            --- a minimised and compacted automaton.
+	 * @param normalForm
+	 *            --- the result of rewriting that automaton to a fixpoint.
+	 */
+	public void put(Automaton automaton, Automaton normalForm) {
+		Key key = new Key(automaton);
+		synchronized (cache) {
+			cache.put(key, normalForm);
+		}
+	}
+
+	public void clear() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	public int size() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+	public long hits() {
+		return hits.get();
+	}
+
+	public long misses() {
+		return misses.get();
+	}
+
+	public String toString() {
+		return "rewrite cache: " + hits.get() + " hit(s), " + misses.get()
+				+ " miss(es), " + size() + " entries";
+	}
+
+	// ======================================================================
+	// Persistence
+	// ======================================================================
+
+	/**
+	 * Read entries previously written to a given file into this cache. If the
+	 * file does not exist, or was written for a different set of rules, then
+	 * nothing is read.
+	 * 
+	 * @param file
+	 * @throws IOException
+	 */
+	public void read(File file) throws IOException {
+		if (!file.exists()) {
+			return;
+		}
+		BinaryInputStream input = new BinaryInputStream(new FileInputStream(
+				file));
+		try {
+			if (input.read_u32() != MAGIC) {
+				throw new IOException("invalid rewrite cache: " + file);
+			}
+			byte[] expected = fingerprint();
+			byte[] actual = new byte[input.read_uv()];
+			input.read(actual);
+			if (!Arrays.equals(expected, actual)) {
+				return; // rules have changed
+			}
+			BinaryAutomataReader reader = new BinaryAutomataReader(input,
+					schema);
+			int nEntries = input.read_uv();
+			for (int i = 0; i != nEntries; ++i) {
+				Automaton automaton = reader.read();
+				Automaton normalForm = reader.read();
+				put(automaton, normalForm);
+			}
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Write the entries of this cache to a given file, least recently used
+	 * first. The file is written in full and then moved into place, so that
+	 * concurrent readers never see a partially written cache.
+	 * 
+	 * @param file
+	 * @throws IOException
+	 */
+	public void write(File file) throws IOException {
+		Key[] keys;
+		Automaton[] normalForms;
+		synchronized (cache) {
+			keys = cache.keySet().toArray(new Key[cache.size()]);
+			normalForms = cache.values().toArray(new Automaton[cache.size()]);
+		}
+		File tmp = File.createTempFile(file.getName(), ".tmp",
+				file.getAbsoluteFile().getParentFile());
+		BinaryOutputStream output = new BinaryOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tmp)));
+		try {
+			output.write_u32(MAGIC);
+			byte[] fingerprint = fingerprint();
+			output.write_uv(fingerprint.length);
+			output.write(fingerprint);
+			BinaryAutomataWriter writer = new BinaryAutomataWriter(output,
+					schema);
+			output.write_uv(keys.length);
+			for (int i = 0; i != keys.length; ++i) {
+				writer.write(keys[i].automaton);
+				writer.write(normalForms[i]);
+			}
+		} finally {
+			output.close();
+		}
+		if (!tmp.renameTo(file)) {
+			// renaming over an existing file fails on some platforms
+			file.delete();
+			if (!tmp.renameTo(file)) {
+				tmp.delete();
+				throw new IOException("unable to write rewrite cache: " + file);
+			}
+		}
+	}
+
+	/**
+	 * Compute a digest identifying the rules and schema used by this cache.
+	 * This is computed from the class files of the rules, since their
+	 * patterns alone do not determine what they rewrite to.
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	private synchronized byte[] fingerprint() throws IOException {
+		if (fingerprint == null) {
+			MessageDigest digest;
+			try {
+				digest = MessageDigest.getInstance("SHA-1");
+			} catch (NoSuchAlgorithmException e) {
+				throw new IOException(e.getMessage());
+			}
+			for (int i = 0; i != schema.size(); ++i) {
+				digest.update(schema.get(i).name.getBytes("UTF-8"));
+			}
+			byte[] buffer = new byte[4096];
+			for (RewriteRule rule : rules) {
+				Class<?> c = rule.getClass();
+				digest.update(c.getName().getBytes("UTF-8"));
+				InputStream in = c.getResourceAsStream("/"
+						+ c.getName().replace('.', '/') + ".class");
+				if (in == null) {
+					continue;
+				}
+				try {
+					int n;
+					while ((n = in.read(buffer)) != -1) {
+						digest.update(buffer, 0, n);
+					}
+				} finally {
+					in.close();
+				}
+			}
+			fingerprint = digest.digest();
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * An automaton used as a key in the cache. Its hashcode is computed once
+	 * up front, since hashing an automaton requires traversing all of its
+	 * states.
+	 */
+	private static final class Key {
+		private final Automaton automaton;
+		private final int hashCode;
+
+		public Key(Automaton automaton) {
+			this.automaton = automaton;
+			int hash = automaton.hashCode();
+			for (int i = 0; i != automaton.nRoots(); ++i) {
+				hash = (hash * 31) + automaton.getRoot(i);
+			}
+			this.hashCode = hash;
+		}
+
+		public int hashCode() {
+			return hashCode;
+		}
+
+		public boolean equals(Object o) {
+			if (o instanceof Key) {
+				Key k = (Key) o;
+				return hashCode == k.hashCode && automaton.equals(k.automaton);
+			}
+			return false;
+		}
+	}
+}
@@ -26,13 +26,11 @@
 package wyautl.rw;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Comparator;
 
 import wyautl.core.Automata;
 import wyautl.core.Automaton;
 import wyautl.core.Schema;
-import wyrl.core.Pattern;
 
 /**
  * <p>
@@ -55,12 +53,12 @@ public class StaticDispatchRewriter extends AbstractRewriter implements Rewriter
 	/**
 	 * The dispatch table for inference rules.
 	 */
-	private final RewriteRule[][] inferenceDispatchTable;
+	private final DispatchTable inferenceDispatchTable;
 
 	/**
 	 * The list of available reduction rules.
 	 */
-	private final RewriteRule[][] reductionDispatchTable;
+	private final DispatchTable reductionDispatchTable;
 
 	/**
 	 * Temporary list of reduction activations used.
@@ -102,10 +100,10 @@ public class StaticDispatchRewriter extends AbstractRewriter implements Rewriter
 			ReductionRule[] reductions, Schema schema,
 			Comparator<RewriteRule> comparator, int maxProbes) {
 		super(schema);
-		this.inferenceDispatchTable = constructDispatchTable(inferences,
-				schema, comparator);
-		this.reductionDispatchTable = constructDispatchTable(reductions,
-				schema, comparator);
+		this.inferenceDispatchTable = new DispatchTable(inferences, schema,
+				comparator);
+		this.reductionDispatchTable = new DispatchTable(reductions, schema,
+				comparator);
 		this.maxProbes = maxProbes;
 	}
 	
@@ -122,6 +120,8 @@ public class StaticDispatchRewriter extends AbstractRewriter implements Rewriter
 	@Override
 	public boolean apply(Automaton automaton) {
 
+		startLimits();
+
 		// First, make sure the automaton is minimised and compacted.
 		
 		automaton.minimise();
@@ -137,19 +137,21 @@ public class StaticDispatchRewriter extends AbstractRewriter implements Rewriter
 				changed = false;
 
 				outer: for (int i = 0; i < automaton.nStates(); ++i) {
-					Automaton.State state = automaton.get(i);
+					int kind = automaton.getKind(i);
 
 					// Check whether this state is a term or not (since only
 					// term's can be the root of a match).
-					if (state instanceof Automaton.Term) {
-						RewriteRule[] inferences = inferenceDispatchTable[state.kind];
+					if (kind >= 0) {
+						RewriteRule[] inferences = inferenceDispatchTable.get(kind);
+						long candidates = inferenceDispatchTable.candidates(
+								automaton, i, kind);
 						for (int j = 0; j != inferences.length; ++j) {
 							RewriteRule ir = inferences[j];
 							inferenceWorklist.clear();
-							if (numProbes++ == maxProbes) {
-								throw new MaxProbesReached();
+							checkLimits(automaton, maxProbes);
+							if ((candidates & (1L << j)) != 0) {
+								ir.probe(automaton, i, inferenceWorklist);
 							}
-							ir.probe(automaton, i, inferenceWorklist);
 
 							for (int k = 0; k != inferenceWorklist.size(); ++k) {
 								Activation activation = inferenceWorklist
@@ -171,9 +173,9 @@ public class StaticDispatchRewriter extends AbstractRewriter implements Rewriter
 					}
 				}
 			}
-		} catch (MaxProbesReached e) {
+		} catch (LimitReached e) {
 			
-			// If we get here, then the maximum number of probes was reached
+			// If we get here, then a limit on rewriting was reached
 			// before rewriting could complete. Effectively, this is a simple
 			// form of timeout.
 			
@@ -191,19 +193,23 @@ public class StaticDispatchRewriter extends AbstractRewriter implements Rewriter
 			changed = false;
 			int nStates = automaton.nStates();
 			outer: for (int i = pivot; i < nStates; ++i) {
-				Automaton.State state = automaton.get(i);
+				int kind = automaton.getKind(i);
 
 				// Check whether this state is a term or not (since only term's
 				// can be the root of a match).				
-				if (state instanceof Automaton.Term) {	
+				if (kind >= 0) {	
 
-					RewriteRule[] reductions = reductionDispatchTable[state.kind];
+					RewriteRule[] reductions = reductionDispatchTable.get(kind);
+					long candidates = reductionDispatchTable.candidates(
+							automaton, i, kind);
 					for (int j = 0; j != reductions.length; ++j) {
 						RewriteRule rr = reductions[j];
 						reductionWorklist.clear();
 
-						if(numProbes++ == maxProbes) { throw new MaxProbesReached(); }
-						rr.probe(automaton, i, reductionWorklist);
+						checkLimits(automaton, maxProbes);
+						if ((candidates & (1L << j)) != 0) {
+							rr.probe(automaton, i, reductionWorklist);
+						}
 
 						for (int k = 0; k != reductionWorklist.size(); ++k) {						
 							Activation activation = reductionWorklist.get(k);
@@ -235,24 +241,4 @@ public class StaticDispatchRewriter extends AbstractRewriter implements Rewriter
 		
 		return completePartialReduction(automaton,pivot); 
 	}	
-	
-	private static RewriteRule[][] constructDispatchTable(RewriteRule[] rules,
-			Schema schema, Comparator<RewriteRule> comparator) {
-		RewriteRule[][] table = new RewriteRule[schema.size()][];
-		for (int i = 0; i != table.length; ++i) {
-			Schema.Term term = schema.get(i);
-			ArrayList<RewriteRule> tmp = new ArrayList<RewriteRule>();
-			for (int j = 0; j != rules.length; ++j) {
-				RewriteRule ir = rules[j];
-				Pattern.Term pt = ir.pattern();
-				if (pt.name.equals(term.name)) {
-					tmp.add(ir);
-				}
-			}
-			RewriteRule[] rs = tmp.toArray(new RewriteRule[tmp.size()]);
-			Arrays.sort(rs, comparator);
-			table[i] = rs;
-		}
-		return table;
-	}	
 }
@@ -43,6 +43,7 @@ public class Main {
 		
 		int optIndex = 0;
 		boolean verbose = false;
+		boolean dispatch = false;
 		OutputStream fout = System.out;
 		
 		while(optIndex < args.length && args[optIndex].startsWith("-")) {
@@ -50,6 +51,12 @@ public class Main {
 			if(arg.equals("-verbose")) {
 				optIndex++;
 				verbose = true;
+			} else if(arg.equals("-dispatch")) {
+				optIndex++;
+				dispatch = true;
+			} else {
+				System.out.println("unknown option: " + arg);
+				System.exit(1);
 			}
 		}
 		
@@ -64,7 +71,9 @@ public class Main {
 					new TypeExpansion().expand(sf);
 					new TypeInference().infer(sf);
 					BufferedOutputStream bout = new BufferedOutputStream(fout,65536);					
-					new JavaFileWriter(bout).write(sf);					
+					JavaFileWriter writer = new JavaFileWriter(bout);
+					writer.setDispatch(dispatch);
+					writer.write(sf);					
 				} catch (SyntaxError e) {
 					outputSourceError(e.filename(), e.start(), e.end(),
 							e.getMessage());
@@ -26,11 +26,9 @@ public final class Types {
 
 		public final void probe(Automaton automaton, int root, List<Activation> activations) {
 			int r0 = root;
-			Automaton.State s0 = automaton.get(r0);
-			if(s0.kind == K_Not) {
-				Automaton.Term t0 = (Automaton.Term) s0;
-				int r1 = t0.contents;
-				if(Runtime.accepts(type0,automaton,automaton.get(r1), SCHEMA)) {
+			if(automaton.getKind(r0) == K_Not) {
+				int r1 = automaton.getContents(r0);
+				if(Runtime.acceptsState(type0,automaton,r1, SCHEMA)) {
 					int[] state = {r0, r1};
 					activations.add(new Activation(this,null,state));
 				}
@@ -61,11 +59,9 @@ public final class Types {
 
 		public final void probe(Automaton automaton, int root, List<Activation> activations) {
 			int r0 = root;
-			Automaton.State s0 = automaton.get(r0);
-			if(s0.kind == K_Not) {
-				Automaton.Term t0 = (Automaton.Term) s0;
-				int r1 = t0.contents;
-				if(Runtime.accepts(type1,automaton,automaton.get(r1), SCHEMA)) {
+			if(automaton.getKind(r0) == K_Not) {
+				int r1 = automaton.getContents(r0);
+				if(Runtime.acceptsState(type1,automaton,r1, SCHEMA)) {
 					int[] state = {r0, r1};
 					activations.add(new Activation(this,null,state));
 				}
@@ -96,16 +92,10 @@ public final class Types {
 
 		public final void probe(Automaton automaton, int root, List<Activation> activations) {
 			int r0 = root;
-			Automaton.State s0 = automaton.get(r0);
-			if(s0.kind == K_Not) {
-				Automaton.Term t0 = (Automaton.Term) s0;
-				int r1 = t0.contents;
-				Automaton.State s1 = automaton.get(r1);
-				if(s1.kind == K_Or) {
-					Automaton.Term t1 = (Automaton.Term) s1;
-					int r2 = t1.contents;
-					Automaton.State s2 = automaton.get(r2);
-					Automaton.Collection c2 = (Automaton.Collection) s2;
+			if(automaton.getKind(r0) == K_Not) {
+				int r1 = automaton.getContents(r0);
+				if(automaton.getKind(r1) == K_Or) {
+					int r2 = automaton.getContents(r1);
 					int[] state = {r0, r1, r2, 0};
 					activations.add(new Activation(this,null,state));
 				}
@@ -141,7 +131,7 @@ public final class Types {
 			return false;
 		}
 
-		public final int minimum() { return 1; }
+		public final int minimum() { return 2; }
 		public final int maximum() { return Integer.MAX_VALUE; }
 	}
 	// Not(And({$15<Type> es...}))
@@ -151,16 +141,10 @@ public final class Types {
 
 		public final void probe(Automaton automaton, int root, List<Activation> activations) {
 			int r0 = root;
-			Automaton.State s0 = automaton.get(r0);
-			if(s0.kind == K_Not) {
-				Automaton.Term t0 = (Automaton.Term) s0;
-				int r1 = t0.contents;
-				Automaton.State s1 = automaton.get(r1);
-				if(s1.kind == K_And) {
-					Automaton.Term t1 = (Automaton.Term) s1;
-					int r2 = t1.contents;
-					Automaton.State s2 = automaton.get(r2);
-					Automaton.Collection c2 = (Automaton.Collection) s2;
+			if(automaton.getKind(r0) == K_Not) {
+				int r1 = automaton.getContents(r0);
+				if(automaton.getKind(r1) == K_And) {
+					int r2 = automaton.getContents(r1);
 					int[] state = {r0, r1, r2, 0};
 					activations.add(new Activation(this,null,state));
 				}
@@ -196,7 +180,7 @@ public final class Types {
 			return false;
 		}
 
-		public final int minimum() { return 1; }
+		public final int minimum() { return 2; }
 		public final int maximum() { return Integer.MAX_VALUE; }
 	}
 	// term $7<And($5<^{$2<^Type>...}>)>
@@ -217,15 +201,11 @@ public final class Types {
 
 		public final void probe(Automaton automaton, int root, List<Activation> activations) {
 			int r0 = root;
-			Automaton.State s0 = automaton.get(r0);
-			if(s0.kind == K_And) {
-				Automaton.Term t0 = (Automaton.Term) s0;
-				int r1 = t0.contents;
-				Automaton.State s1 = automaton.get(r1);
-				Automaton.Collection c1 = (Automaton.Collection) s1;
-				if(c1.size() == 1) {
-					for(int r3=0;r3!=c1.size();++r3) {
-						int r2 = c1.get(r3);
+			if(automaton.getKind(r0) == K_And) {
+				int r1 = automaton.getContents(r0);
+				if(automaton.getSize(r1) == 1) {
+					for(int r3=0;r3!=automaton.getSize(r1);++r3) {
+						int r2 = automaton.getChild(r1, r3);
 						int[] state = {r0, r1, r2, r3};
 						activations.add(new Activation(this,null,state));
 					}
@@ -247,7 +227,7 @@ public final class Types {
 			return false;
 		}
 
-		public final int minimum() { return 1; }
+		public final int minimum() { return 2; }
 		public final int maximum() { return Integer.MAX_VALUE; }
 	}
 	// And({And({$15<Type> xs...}), $15<Type> ys...})
@@ -257,21 +237,13 @@ public final class Types {
 
 		public final void probe(Automaton automaton, int root, List<Activation> activations) {
 			int r0 = root;
-			Automaton.State s0 = automaton.get(r0);
-			if(s0.kind == K_And) {
-				Automaton.Term t0 = (Automaton.Term) s0;
-				int r1 = t0.contents;
-				Automaton.State s1 = automaton.get(r1);
-				Automaton.Collection c1 = (Automaton.Collection) s1;
-				if(c1.size() >= 1) {
-					for(int r3=0;r3!=c1.size();++r3) {
-						int r2 = c1.get(r3);
-						Automaton.State s2 = automaton.get(r2);
-						if(s2.kind == K_And) {
-							Automaton.Term t2 = (Automaton.Term) s2;
-							int r4 = t2.contents;
-							Automaton.State s4 = automaton.get(r4);
-							Automaton.Collection c4 = (Automaton.Collection) s4;
+			if(automaton.getKind(r0) == K_And) {
+				int r1 = automaton.getContents(r0);
+				if(automaton.getSize(r1) >= 1) {
+					for(int r3=0;r3!=automaton.getSize(r1);++r3) {
+						int r2 = automaton.getChild(r1, r3);
+						if(automaton.getKind(r2) == K_And) {
+							int r4 = automaton.getContents(r2);
 							int[] state = {r0, r1, r2, r3, r4, 0, 0};
 							activations.add(new Activation(this,null,state));
 						}
@@ -310,7 +282,7 @@ public final class Types {
 			return false;
 		}
 
-		public final int minimum() { return 1; }
+		public final int minimum() { return 3; }
 		public final int maximum() { return Integer.MAX_VALUE; }
 	}
 	// And({Or({$15<Type> xs...}), $15<Type> ys...})
@@ -320,21 +292,13 @@ public final class Types {
 
 		public final void probe(Automaton automaton, int root, List<Activation> activations) {
 			int r0 = root;
-			Automaton.State s0 = automaton.get(r0);
-			if(s0.kind == K_And) {
-				Automaton.Term t0 = (Automaton.Term) s0;
-				int r1 = t0.contents;
-				Automaton.State s1 = automaton.get(r1);
-				Automaton.Collection c1 = (Automaton.Collection) s1;
-				if(c1.size() >= 1) {
-					for(int r3=0;r3!=c1.size();++r3) {
-						int r2 = c1.get(r3);
-						Automaton.State s2 = automaton.get(r2);
-						if(s2.kind == K_Or) {
-							Automaton.Term t2 = (Automaton.Term) s2;
-							int r4 = t2.contents;
-							Automaton.State s4 = automaton.get(r4);
-							Automaton.Collection c4 = (Automaton.Collection) s4;
+			if(automaton.getKind(r0) == K_And) {
+				int r1 = automaton.getContents(r0);
+				if(automaton.getSize(r1) >= 1) {
+					for(int r3=0;r3!=automaton.getSize(r1);++r3) {
+						int r2 = automaton.getChild(r1, r3);
+						if(automaton.getKind(r2) == K_Or) {
+							int r4 = automaton.getContents(r2);
 							int[] state = {r0, r1, r2, r3, r4, 0, 0};
 							activations.add(new Activation(this,null,state));
 						}
@@ -382,7 +346,7 @@ public final class Types {
 			return false;
 		}
 
-		public final int minimum() { return 1; }
+		public final int minimum() { return 3; }
 		public final int maximum() { return Integer.MAX_VALUE; }
 	}
 	// term $7<Or($5<^{$2<^Type>...}>)>
@@ -403,15 +367,11 @@ public final class Types {
 
 		public final void probe(Automaton automaton, int root, List<Activation> activations) {
 			int r0 = root;
-			Automaton.State s0 = automaton.get(r0);
-			if(s0.kind == K_Or) {
-				Automaton.Term t0 = (Automaton.Term) s0;
-				int r1 = t0.contents;
-				Automaton.State s1 = automaton.get(r1);
-				Automaton.Collection c1 = (Automaton.Collection) s1;
-				if(c1.size() == 1) {
-					for(int r3=0;r3!=c1.size();++r3) {
-						int r2 = c1.get(r3);
+			if(automaton.getKind(r0) == K_Or) {
+				int r1 = automaton.getContents(r0);
+				if(automaton.getSize(r1) == 1) {
+					for(int r3=0;r3!=automaton.getSize(r1);++r3) {
+						int r2 = automaton.getChild(r1, r3);
 						int[] state = {r0, r1, r2, r3};
 						activations.add(new Activation(this,null,state));
 					}
@@ -433,7 +393,7 @@ public final class Types {
 			return false;
 		}
 
-		public final int minimum() { return 1; }
+		public final int minimum() { return 2; }
 		public final int maximum() { return Integer.MAX_VALUE; }
 	}
 	// Or({Or({$15<Type> xs...}), $15<Type> ys...})
@@ -443,21 +403,13 @@ public final class Types {
 
 		public final void probe(Automaton automaton, int root, List<Activation> activations) {
 			int r0 = root;
-			Automaton.State s0 = automaton.get(r0);
-			if(s0.kind == K_Or) {
-				Automaton.Term t0 = (Automaton.Term) s0;
-				int r1 = t0.contents;
-				Automaton.State s1 = automaton.get(r1);
-				Automaton.Collection c1 = (Automaton.Collection) s1;
-				if(c1.size() >= 1) {
-					for(int r3=0;r3!=c1.size();++r3) {
-						int r2 = c1.get(r3);
-						Automaton.State s2 = automaton.get(r2);
-						if(s2.kind == K_Or) {
-							Automaton.Term t2 = (Automaton.Term) s2;
-							int r4 = t2.contents;
-							Automaton.State s4 = automaton.get(r4);
-							Automaton.Collection c4 = (Automaton.Collection) s4;
+			if(automaton.getKind(r0) == K_Or) {
+				int r1 = automaton.getContents(r0);
+				if(automaton.getSize(r1) >= 1) {
+					for(int r3=0;r3!=automaton.getSize(r1);++r3) {
+						int r2 = automaton.getChild(r1, r3);
+						if(automaton.getKind(r2) == K_Or) {
+							int r4 = automaton.getContents(r2);
 							int[] state = {r0, r1, r2, r3, r4, 0, 0};
 							activations.add(new Activation(this,null,state));
 						}
@@ -496,7 +448,7 @@ public final class Types {
 			return false;
 		}
 
-		public final int minimum() { return 1; }
+		public final int minimum() { return 3; }
 		public final int maximum() { return Integer.MAX_VALUE; }
 	}
 	// term Any
@@ -530,16 +482,12 @@ public final class Types {
 
 		public final void probe(Automaton automaton, int root, List<Activation> activations) {
 			int r0 = root;
-			Automaton.State s0 = automaton.get(r0);
-			if(s0.kind == K_And) {
-				Automaton.Term t0 = (Automaton.Term) s0;
-				int r1 = t0.contents;
-				Automaton.State s1 = automaton.get(r1);
-				Automaton.Collection c1 = (Automaton.Collection) s1;
-				if(c1.size() >= 1) {
-					for(int r3=0;r3!=c1.size();++r3) {
-						int r2 = c1.get(r3);
-						if(Runtime.accepts(type1,automaton,automaton.get(r2), SCHEMA)) {
+			if(automaton.getKind(r0) == K_And) {
+				int r1 = automaton.getContents(r0);
+				if(automaton.getSize(r1) >= 1) {
+					for(int r3=0;r3!=automaton.getSize(r1);++r3) {
+						int r2 = automaton.getChild(r1, r3);
+						if(Runtime.acceptsState(type1,automaton,r2, SCHEMA)) {
 							int[] state = {r0, r1, r2, r3, 0};
 							activations.add(new Activation(this,null,state));
 						}
@@ -570,7 +518,7 @@ public final class Types {
 			return false;
 		}
 
-		public final int minimum() { return 1; }
+		public final int minimum() { return 2; }
 		public final int maximum() { return Integer.MAX_VALUE; }
 	}
 	// And({Any, $15<Type> xs...})
@@ -580,16 +528,12 @@ public final class Types {
 
 		public final void probe(Automaton automaton, int root, List<Activation> activations) {
 			int r0 = root;
-			Automaton.State s0 = automaton.get(r0);
-			if(s0.kind == K_And) {
-				Automaton.Term t0 = (Automaton.Term) s0;
-				int r1 = t0.contents;
-				Automaton.State s1 = automaton.get(r1);
-				Automaton.Collection c1 = (Automaton.Collection) s1;
-				if(c1.size() >= 1) {
-					for(int r3=0;r3!=c1.size();++r3) {
-						int r2 = c1.get(r3);
-						if(Runtime.accepts(type0,automaton,automaton.get(r2), SCHEMA)) {
+			if(automaton.getKind(r0) == K_And) {
+				int r1 = automaton.getContents(r0);
+				if(automaton.getSize(r1) >= 1) {
+					for(int r3=0;r3!=automaton.getSize(r1);++r3) {
+						int r2 = automaton.getChild(r1, r3);
+						if(Runtime.acceptsState(type0,automaton,r2, SCHEMA)) {
 							int[] state = {r0, r1, r2, r3, 0};
 							activations.add(new Activation(this,null,state));
 						}
@@ -621,7 +565,7 @@ public final class Types {
 			return false;
 		}
 
-		public final int minimum() { return 1; }
+		public final int minimum() { return 2; }
 		public final int maximum() { return Integer.MAX_VALUE; }
 	}
 	// And({Proton a1, Proton a2, $15<Type> ts...})
@@ -631,20 +575,16 @@ public final class Types {
 
 		public final void probe(Automaton automaton, int root, List<Activation> activations) {
 			int r0 = root;
-			Automaton.State s0 = automaton.get(r0);
-			if(s0.kind == K_And) {
-				Automaton.Term t0 = (Automaton.Term) s0;
-				int r1 = t0.contents;
-				Automaton.State s1 = automaton.get(r1);
-				Automaton.Collection c1 = (Automaton.Collection) s1;
-				if(c1.size() >= 2) {
-					for(int r3=0;r3!=c1.size();++r3) {
-						int r2 = c1.get(r3);
-						if(Runtime.accepts(type3,automaton,automaton.get(r2), SCHEMA)) {
-							for(int r5=0;r5!=c1.size();++r5) {
+			if(automaton.getKind(r0) == K_And) {
+				int r1 = automaton.getContents(r0);
+				if(automaton.getSize(r1) >= 2) {
+					for(int r3=0;r3!=automaton.getSize(r1);++r3) {
+						int r2 = automaton.getChild(r1, r3);
+						if(Runtime.acceptsState(type3,automaton,r2, SCHEMA)) {
+							for(int r5=0;r5!=automaton.getSize(r1);++r5) {
 								if(r5 == r3) { continue; }
-								int r4 = c1.get(r5);
-								if(Runtime.accepts(type3,automaton,automaton.get(r4), SCHEMA)) {
+								int r4 = automaton.getChild(r1, r5);
+								if(Runtime.acceptsState(type3,automaton,r4, SCHEMA)) {
 									int[] state = {r0, r1, r2, r3, r4, r5, 0};
 									activations.add(new Activation(this,null,state));
 								}
@@ -699,24 +639,18 @@ public final class Types {
 
 		public final void probe(Automaton automaton, int root, List<Activation> activations) {
 			int r0 = root;
-			Automaton.State s0 = automaton.get(r0);
-			if(s0.kind == K_And) {
-				Automaton.Term t0 = (Automaton.Term) s0;
-				int r1 = t0.contents;
-				Automaton.State s1 = automaton.get(r1);
-				Automaton.Collection c1 = (Automaton.Collection) s1;
-				if(c1.size() >= 2) {
-					for(int r3=0;r3!=c1.size();++r3) {
-						int r2 = c1.get(r3);
-						if(Runtime.accepts(type3,automaton,automaton.get(r2), SCHEMA)) {
-							for(int r5=0;r5!=c1.size();++r5) {
+			if(automaton.getKind(r0) == K_And) {
+				int r1 = automaton.getContents(r0);
+				if(automaton.getSize(r1) >= 2) {
+					for(int r3=0;r3!=automaton.getSize(r1);++r3) {
+						int r2 = automaton.getChild(r1, r3);
+						if(Runtime.acceptsState(type3,automaton,r2, SCHEMA)) {
+							for(int r5=0;r5!=automaton.getSize(r1);++r5) {
 								if(r5 == r3) { continue; }
-								int r4 = c1.get(r5);
-								Automaton.State s4 = automaton.get(r4);
-								if(s4.kind == K_Not) {
-									Automaton.Term t4 = (Automaton.Term) s4;
-									int r6 = t4.contents;
-									if(Runtime.accepts(type3,automaton,automaton.get(r6), SCHEMA)) {
+								int r4 = automaton.getChild(r1, r5);
+								if(automaton.getKind(r4) == K_Not) {
+									int r6 = automaton.getContents(r4);
+									if(Runtime.acceptsState(type3,automaton,r6, SCHEMA)) {
 										int[] state = {r0, r1, r2, r3, r4, r5, r6, 0};
 										activations.add(new Activation(this,null,state));
 									}
@@ -779,16 +713,12 @@ public final class Types {
 
 		public final void probe(Automaton automaton, int root, List<Activation> activations) {
 			int r0 = root;
-			Automaton.State s0 = automaton.get(r0);
-			if(s0.kind == K_Or) {
-				Automaton.Term t0 = (Automaton.Term) s0;
-				int r1 = t0.contents;
-				Automaton.State s1 = automaton.get(r1);
-				Automaton.Collection c1 = (Automaton.Collection) s1;
-				if(c1.size() >= 1) {
-					for(int r3=0;r3!=c1.size();++r3) {
-						int r2 = c1.get(r3);
-						if(Runtime.accepts(type0,automaton,automaton.get(r2), SCHEMA)) {
+			if(automaton.getKind(r0) == K_Or) {
+				int r1 = automaton.getContents(r0);
+				if(automaton.getSize(r1) >= 1) {
+					for(int r3=0;r3!=automaton.getSize(r1);++r3) {
+						int r2 = automaton.getChild(r1, r3);
+						if(Runtime.acceptsState(type0,automaton,r2, SCHEMA)) {
 							int[] state = {r0, r1, r2, r3, 0};
 							activations.add(new Activation(this,null,state));
 						}
@@ -819,7 +749,7 @@ public final class Types {
 			return false;
 		}
 
-		public final int minimum() { return 1; }
+		public final int minimum() { return 2; }
 		public final int maximum() { return Integer.MAX_VALUE; }
 	}
 	// Or({Void, $15<Type> xs...})
@@ -829,16 +759,12 @@ public final class Types {
 
 		public final void probe(Automaton automaton, int root, List<Activation> activations) {
 			int r0 = root;
-			Automaton.State s0 = automaton.get(r0);
-			if(s0.kind == K_Or) {
-				Automaton.Term t0 = (Automaton.Term) s0;
-				int r1 = t0.contents;
-				Automaton.State s1 = automaton.get(r1);
-				Automaton.Collection c1 = (Automaton.Collection) s1;
-				if(c1.size() >= 1) {
-					for(int r3=0;r3!=c1.size();++r3) {
-						int r2 = c1.get(r3);
-						if(Runtime.accepts(type1,automaton,automaton.get(r2), SCHEMA)) {
+			if(automaton.getKind(r0) == K_Or) {
+				int r1 = automaton.getContents(r0);
+				if(automaton.getSize(r1) >= 1) {
+					for(int r3=0;r3!=automaton.getSize(r1);++r3) {
+						int r2 = automaton.getChild(r1, r3);
+						if(Runtime.acceptsState(type1,automaton,r2, SCHEMA)) {
 							int[] state = {r0, r1, r2, r3, 0};
 							activations.add(new Activation(this,null,state));
 						}
@@ -870,7 +796,7 @@ public final class Types {
 			return false;
 		}
 
-		public final int minimum() { return 1; }
+		public final int minimum() { return 2; }
 		public final int maximum() { return Integer.MAX_VALUE; }
 	}
 	// term $4<Ref($2<^Type>)>
@@ -886,11 +812,9 @@ public final class Types {
 
 		public final void probe(Automaton automaton, int root, List<Activation> activations) {
 			int r0 = root;
-			Automaton.State s0 = automaton.get(r0);
-			if(s0.kind == K_Ref) {
-				Automaton.Term t0 = (Automaton.Term) s0;
-				int r1 = t0.contents;
-				if(Runtime.accepts(type1,automaton,automaton.get(r1), SCHEMA)) {
+			if(automaton.getKind(r0) == K_Ref) {
+				int r1 = automaton.getContents(r0);
+				if(Runtime.acceptsState(type1,automaton,r1, SCHEMA)) {
 					int[] state = {r0, r1};
 					activations.add(new Activation(this,null,state));
 				}
@@ -921,26 +845,18 @@ public final class Types {
 
 		public final void probe(Automaton automaton, int root, List<Activation> activations) {
 			int r0 = root;
-			Automaton.State s0 = automaton.get(r0);
-			if(s0.kind == K_And) {
-				Automaton.Term t0 = (Automaton.Term) s0;
-				int r1 = t0.contents;
-				Automaton.State s1 = automaton.get(r1);
-				Automaton.Collection c1 = (Automaton.Collection) s1;
-				if(c1.size() >= 2) {
-					for(int r3=0;r3!=c1.size();++r3) {
-						int r2 = c1.get(r3);
-						Automaton.State s2 = automaton.get(r2);
-						if(s2.kind == K_Ref) {
-							Automaton.Term t2 = (Automaton.Term) s2;
-							int r4 = t2.contents;
-							for(int r6=0;r6!=c1.size();++r6) {
+			if(automaton.getKind(r0) == K_And) {
+				int r1 = automaton.getContents(r0);
+				if(automaton.getSize(r1) >= 2) {
+					for(int r3=0;r3!=automaton.getSize(r1);++r3) {
+						int r2 = automaton.getChild(r1, r3);
+						if(automaton.getKind(r2) == K_Ref) {
+							int r4 = automaton.getContents(r2);
+							for(int r6=0;r6!=automaton.getSize(r1);++r6) {
 								if(r6 == r3) { continue; }
-								int r5 = c1.get(r6);
-								Automaton.State s5 = automaton.get(r5);
-								if(s5.kind == K_Ref) {
-									Automaton.Term t5 = (Automaton.Term) s5;
-									int r7 = t5.contents;
+								int r5 = automaton.getChild(r1, r6);
+								if(automaton.getKind(r5) == K_Ref) {
+									int r7 = automaton.getContents(r5);
 									int[] state = {r0, r1, r2, r3, r4, r5, r6, r7, 0};
 									activations.add(new Activation(this,null,state));
 								}
@@ -984,7 +900,7 @@ public final class Types {
 			return false;
 		}
 
-		public final int minimum() { return 1; }
+		public final int minimum() { return 5; }
 		public final int maximum() { return Integer.MAX_VALUE; }
 	}
 	// Or({Ref(Any) t, Ref($15<Type>), $15<Type> ts...})
@@ -994,27 +910,19 @@ public final class Types {
 
 		public final void probe(Automaton automaton, int root, List<Activation> activations) {
 			int r0 = root;
-			Automaton.State s0 = automaton.get(r0);
-			if(s0.kind == K_Or) {
-				Automaton.Term t0 = (Automaton.Term) s0;
-				int r1 = t0.contents;
-				Automaton.State s1 = automaton.get(r1);
-				Automaton.Collection c1 = (Automaton.Collection) s1;
-				if(c1.size() >= 2) {
-					for(int r3=0;r3!=c1.size();++r3) {
-						int r2 = c1.get(r3);
-						Automaton.State s2 = automaton.get(r2);
-						if(s2.kind == K_Ref) {
-							Automaton.Term t2 = (Automaton.Term) s2;
-							int r4 = t2.contents;
-							if(Runtime.accepts(type0,automaton,automaton.get(r4), SCHEMA)) {
-								for(int r6=0;r6!=c1.size();++r6) {
+			if(automaton.getKind(r0) == K_Or) {
+				int r1 = automaton.getContents(r0);
+				if(automaton.getSize(r1) >= 2) {
+					for(int r3=0;r3!=automaton.getSize(r1);++r3) {
+						int r2 = automaton.getChild(r1, r3);
+						if(automaton.getKind(r2) == K_Ref) {
+							int r4 = automaton.getContents(r2);
+							if(Runtime.acceptsState(type0,automaton,r4, SCHEMA)) {
+								for(int r6=0;r6!=automaton.getSize(r1);++r6) {
 									if(r6 == r3) { continue; }
-									int r5 = c1.get(r6);
-									Automaton.State s5 = automaton.get(r5);
-									if(s5.kind == K_Ref) {
-										Automaton.Term t5 = (Automaton.Term) s5;
-										int r7 = t5.contents;
+									int r5 = automaton.getChild(r1, r6);
+									if(automaton.getKind(r5) == K_Ref) {
+										int r7 = automaton.getContents(r5);
 										int[] state = {r0, r1, r2, r3, r4, r5, r6, r7, 0};
 										activations.add(new Activation(this,null,state));
 									}
@@ -1052,7 +960,7 @@ public final class Types {
 			return false;
 		}
 
-		public final int minimum() { return 1; }
+		public final int minimum() { return 5; }
 		public final int maximum() { return Integer.MAX_VALUE; }
 	}
 	// And({Ref($15<Type> t1), Not(Ref($15<Type> t2)), $15<Type> ts...})
@@ -1062,30 +970,20 @@ public final class Types {
 
 		public final void probe(Automaton automaton, int root, List<Activation> activations) {
 			int r0 = root;
-			Automaton.State s0 = automaton.get(r0);
-			if(s0.kind == K_And) {
-				Automaton.Term t0 = (Automaton.Term) s0;
-				int r1 = t0.contents;
-				Automaton.State s1 = automaton.get(r1);
-				Automaton.Collection c1 = (Automaton.Collection) s1;
-				if(c1.size() >= 2) {
-					for(int r3=0;r3!=c1.size();++r3) {
-						int r2 = c1.get(r3);
-						Automaton.State s2 = automaton.get(r2);
-						if(s2.kind == K_Ref) {
-							Automaton.Term t2 = (Automaton.Term) s2;
-							int r4 = t2.contents;
-							for(int r6=0;r6!=c1.size();++r6) {
+			if(automaton.getKind(r0) == K_And) {
+				int r1 = automaton.getContents(r0);
+				if(automaton.getSize(r1) >= 2) {
+					for(int r3=0;r3!=automaton.getSize(r1);++r3) {
+						int r2 = automaton.getChild(r1, r3);
+						if(automaton.getKind(r2) == K_Ref) {
+							int r4 = automaton.getContents(r2);
+							for(int r6=0;r6!=automaton.getSize(r1);++r6) {
 								if(r6 == r3) { continue; }
-								int r5 = c1.get(r6);
-								Automaton.State s5 = automaton.get(r5);
-								if(s5.kind == K_Not) {
-									Automaton.Term t5 = (Automaton.Term) s5;
-									int r7 = t5.contents;
-									Automaton.State s7 = automaton.get(r7);
-									if(s7.kind == K_Ref) {
-										Automaton.Term t7 = (Automaton.Term) s7;
-										int r8 = t7.contents;
+								int r5 = automaton.getChild(r1, r6);
+								if(automaton.getKind(r5) == K_Not) {
+									int r7 = automaton.getContents(r5);
+									if(automaton.getKind(r7) == K_Ref) {
+										int r8 = automaton.getContents(r7);
 										int[] state = {r0, r1, r2, r3, r4, r5, r6, r7, r8, 0};
 										activations.add(new Activation(this,null,state));
 									}
@@ -1132,7 +1030,7 @@ public final class Types {
 			return false;
 		}
 
-		public final int minimum() { return 1; }
+		public final int minimum() { return 6; }
 		public final int maximum() { return Integer.MAX_VALUE; }
 	}
 	// term $4<Meta($2<^Type>)>
@@ -1148,11 +1046,9 @@ public final class Types {
 
 		public final void probe(Automaton automaton, int root, List<Activation> activations) {
 			int r0 = root;
-			Automaton.State s0 = automaton.get(r0);
-			if(s0.kind == K_Meta) {
-				Automaton.Term t0 = (Automaton.Term) s0;
-				int r1 = t0.contents;
-				if(Runtime.accepts(type1,automaton,automaton.get(r1), SCHEMA)) {
+			if(automaton.getKind(r0) == K_Meta) {
+				int r1 = automaton.getContents(r0);
+				if(Runtime.acceptsState(type1,automaton,r1, SCHEMA)) {
 					int[] state = {r0, r1};
 					activations.add(new Activation(this,null,state));
 				}
@@ -1183,26 +1079,18 @@ public final class Types {
 
 		public final void probe(Automaton automaton, int root, List<Activation> activations) {
 			int r0 = root;
-			Automaton.State s0 = automaton.get(r0);
-			if(s0.kind == K_And) {
-				Automaton.Term t0 = (Automaton.Term) s0;
-				int r1 = t0.contents;
-				Automaton.State s1 = automaton.get(r1);
-				Automaton.Collection c1 = (Automaton.Collection) s1;
-				if(c1.size() >= 2) {
-					for(int r3=0;r3!=c1.size();++r3) {
-						int r2 = c1.get(r3);
-						Automaton.State s2 = automaton.get(r2);
-						if(s2.kind == K_Meta) {
-							Automaton.Term t2 = (Automaton.Term) s2;
-							int r4 = t2.contents;
-							for(int r6=0;r6!=c1.size();++r6) {
+			if(automaton.getKind(r0) == K_And) {
+				int r1 = automaton.getContents(r0);
+				if(automaton.getSize(r1) >= 2) {
+					for(int r3=0;r3!=automaton.getSize(r1);++r3) {
+						int r2 = automaton.getChild(r1, r3);
+						if(automaton.getKind(r2) == K_Meta) {
+							int r4 = automaton.getContents(r2);
+							for(int r6=0;r6!=automaton.getSize(r1);++r6) {
 								if(r6 == r3) { continue; }
-								int r5 = c1.get(r6);
-								Automaton.State s5 = automaton.get(r5);
-								if(s5.kind == K_Meta) {
-									Automaton.Term t5 = (Automaton.Term) s5;
-									int r7 = t5.contents;
+								int r5 = automaton.getChild(r1, r6);
+								if(automaton.getKind(r5) == K_Meta) {
+									int r7 = automaton.getContents(r5);
 									int[] state = {r0, r1, r2, r3, r4, r5, r6, r7, 0};
 									activations.add(new Activation(this,null,state));
 								}
@@ -1246,7 +1134,7 @@ public final class Types {
 			return false;
 		}
 
-		public final int minimum() { return 1; }
+		public final int minimum() { return 5; }
 		public final int maximum() { return Integer.MAX_VALUE; }
 	}
 	// Or({Meta(Any) t, Meta($15<Type>), $15<Type> ts...})
@@ -1256,27 +1144,19 @@ public final class Types {
 
 		public final void probe(Automaton automaton, int root, List<Activation> activations) {
 			int r0 = root;
-			Automaton.State s0 = automaton.get(r0);
-			if(s0.kind == K_Or) {
-				Automaton.Term t0 = (Automaton.Term) s0;
-				int r1 = t0.contents;
-				Automaton.State s1 = automaton.get(r1);
-				Automaton.Collection c1 = (Automaton.Collection) s1;
-				if(c1.size() >= 2) {
-					for(int r3=0;r3!=c1.size();++r3) {
-						int r2 = c1.get(r3);
-						Automaton.State s2 = automaton.get(r2);
-						if(s2.kind == K_Meta) {
-							Automaton.Term t2 = (Automaton.Term) s2;
-							int r4 = t2.contents;
-							if(Runtime.accepts(type0,automaton,automaton.get(r4), SCHEMA)) {
-								for(int r6=0;r6!=c1.size();++r6) {
+			if(automaton.getKind(r0) == K_Or) {
+				int r1 = automaton.getContents(r0);
+				if(automaton.getSize(r1) >= 2) {
+					for(int r3=0;r3!=automaton.getSize(r1);++r3) {
+						int r2 = automaton.getChild(r1, r3);
+						if(automaton.getKind(r2) == K_Meta) {
+							int r4 = automaton.getContents(r2);
+							if(Runtime.acceptsState(type0,automaton,r4, SCHEMA)) {
+								for(int r6=0;r6!=automaton.getSize(r1);++r6) {
 									if(r6 == r3) { continue; }
-									int r5 = c1.get(r6);
-									Automaton.State s5 = automaton.get(r5);
-									if(s5.kind == K_Meta) {
-										Automaton.Term t5 = (Automaton.Term) s5;
-										int r7 = t5.contents;
+									int r5 = automaton.getChild(r1, r6);
+									if(automaton.getKind(r5) == K_Meta) {
+										int r7 = automaton.getContents(r5);
 										int[] state = {r0, r1, r2, r3, r4, r5, r6, r7, 0};
 										activations.add(new Activation(this,null,state));
 									}
@@ -1314,7 +1194,7 @@ public final class Types {
 			return false;
 		}
 
-		public final int minimum() { return 1; }
+		public final int minimum() { return 5; }
 		public final int maximum() { return Integer.MAX_VALUE; }
 	}
 	// And({Meta($15<Type> t1), Not(Meta($15<Type> t2)), $15<Type> ts...})
@@ -1324,30 +1204,20 @@ public final class Types {
 
 		public final void probe(Automaton automaton, int root, List<Activation> activations) {
 			int r0 = root;
-			Automaton.State s0 = automaton.get(r0);
-			if(s0.kind == K_And) {
-				Automaton.Term t0 = (Automaton.Term) s0;
-				int r1 = t0.contents;
-				Automaton.State s1 = automaton.get(r1);
-				Automaton.Collection c1 = (Automaton.Collection) s1;
-				if(c1.size() >= 2) {
-					for(int r3=0;r3!=c1.size();++r3) {
-						int r2 = c1.get(r3);
-						Automaton.State s2 = automaton.get(r2);
-						if(s2.kind == K_Meta) {
-							Automaton.Term t2 = (Automaton.Term) s2;
-							int r4 = t2.contents;
-							for(int r6=0;r6!=c1.size();++r6) {
+			if(automaton.getKind(r0) == K_And) {
+				int r1 = automaton.getContents(r0);
+				if(automaton.getSize(r1) >= 2) {
+					for(int r3=0;r3!=automaton.getSize(r1);++r3) {
+						int r2 = automaton.getChild(r1, r3);
+						if(automaton.getKind(r2) == K_Meta) {
+							int r4 = automaton.getContents(r2);
+							for(int r6=0;r6!=automaton.getSize(r1);++r6) {
 								if(r6 == r3) { continue; }
-								int r5 = c1.get(r6);
-								Automaton.State s5 = automaton.get(r5);
-								if(s5.kind == K_Not) {
-									Automaton.Term t5 = (Automaton.Term) s5;
-									int r7 = t5.contents;
-									Automaton.State s7 = automaton.get(r7);
-									if(s7.kind == K_Meta) {
-										Automaton.Term t7 = (Automaton.Term) s7;
-										int r8 = t7.contents;
+								int r5 = automaton.getChild(r1, r6);
+								if(automaton.getKind(r5) == K_Not) {
+									int r7 = automaton.getContents(r5);
+									if(automaton.getKind(r7) == K_Meta) {
+										int r8 = automaton.getContents(r7);
 										int[] state = {r0, r1, r2, r3, r4, r5, r6, r7, r8, 0};
 										activations.add(new Activation(this,null,state));
 									}
@@ -1394,7 +1264,7 @@ public final class Types {
 			return false;
 		}
 
-		public final int minimum() { return 1; }
+		public final int minimum() { return 6; }
 		public final int maximum() { return Integer.MAX_VALUE; }
 	}
 	// term $9<Term(^[^string,$3<^Type>...])>
@@ -1415,36 +1285,24 @@ public final class Types {
 
 		public final void probe(Automaton automaton, int root, List<Activation> activations) {
 			int r0 = root;
-			Automaton.State s0 = automaton.get(r0);
-			if(s0.kind == K_And) {
-				Automaton.Term t0 = (Automaton.Term) s0;
-				int r1 = t0.contents;
-				Automaton.State s1 = automaton.get(r1);
-				Automaton.Collection c1 = (Automaton.Collection) s1;
-				if(c1.size() >= 2) {
-					for(int r3=0;r3!=c1.size();++r3) {
-						int r2 = c1.get(r3);
-						Automaton.State s2 = automaton.get(r2);
-						if(s2.kind == K_Term) {
-							Automaton.Term t2 = (Automaton.Term) s2;
-							int r4 = t2.contents;
-							Automaton.State s4 = automaton.get(r4);
-							Automaton.List l4 = (Automaton.List) s4;
-							if(l4.size() == 2) {
-								int r5 = l4.get(0);
-								int r6 = l4.get(1);
-								for(int r8=0;r8!=c1.size();++r8) {
+			if(automaton.getKind(r0) == K_And) {
+				int r1 = automaton.getContents(r0);
+				if(automaton.getSize(r1) >= 2) {
+					for(int r3=0;r3!=automaton.getSize(r1);++r3) {
+						int r2 = automaton.getChild(r1, r3);
+						if(automaton.getKind(r2) == K_Term) {
+							int r4 = automaton.getContents(r2);
+							if(automaton.getSize(r4) == 2) {
+								int r5 = automaton.getChild(r4, 0);
+								int r6 = automaton.getChild(r4, 1);
+								for(int r8=0;r8!=automaton.getSize(r1);++r8) {
 									if(r8 == r3) { continue; }
-									int r7 = c1.get(r8);
-									Automaton.State s7 = automaton.get(r7);
-									if(s7.kind == K_Term) {
-										Automaton.Term t7 = (Automaton.Term) s7;
-										int r9 = t7.contents;
-										Automaton.State s9 = automaton.get(r9);
-										Automaton.List l9 = (Automaton.List) s9;
-										if(l9.size() == 2) {
-											int r10 = l9.get(0);
-											int r11 = l9.get(1);
+									int r7 = automaton.getChild(r1, r8);
+									if(automaton.getKind(r7) == K_Term) {
+										int r9 = automaton.getContents(r7);
+										if(automaton.getSize(r9) == 2) {
+											int r10 = automaton.getChild(r9, 0);
+											int r11 = automaton.getChild(r9, 1);
 											int[] state = {r0, r1, r2, r3, r4, r5, r6, r7, r8, r9, r10, r11, 0};
 											activations.add(new Activation(this,null,state));
 										}
@@ -1503,7 +1361,7 @@ public final class Types {
 			return false;
 		}
 
-		public final int minimum() { return 0; }
+		public final int minimum() { return 9; }
 		public final int maximum() { return Integer.MAX_VALUE; }
 	}
 	// term $9<Nominal(^[^string,$3<^Type>])>
@@ -1524,14 +1382,10 @@ public final class Types {
 
 		public final void probe(Automaton automaton, int root, List<Activation> activations) {
 			int r0 = root;
-			Automaton.State s0 = automaton.get(r0);
-			if(s0.kind == K_Nominal) {
-				Automaton.Term t0 = (Automaton.Term) s0;
-				int r1 = t0.contents;
-				Automaton.State s1 = automaton.get(r1);
-				Automaton.List l1 = (Automaton.List) s1;
-				int r2 = l1.get(0);
-				int r3 = l1.get(1);
+			if(automaton.getKind(r0) == K_Nominal) {
+				int r1 = automaton.getContents(r0);
+				int r2 = automaton.getChild(r1, 0);
+				int r3 = automaton.getChild(r1, 1);
 				int[] state = {r0, r1, r2, r3};
 				activations.add(new Activation(this,null,state));
 			}
@@ -1550,7 +1404,7 @@ public final class Types {
 			return false;
 		}
 
-		public final int minimum() { return 1; }
+		public final int minimum() { return 3; }
 		public final int maximum() { return Integer.MAX_VALUE; }
 	}
 	// term Fun(^[$2<^Type>,$2])
@@ -1582,20 +1436,14 @@ public final class Types {
 
 		public final void probe(Automaton automaton, int root, List<Activation> activations) {
 			int r0 = root;
-			Automaton.State s0 = automaton.get(r0);
-			if(s0.kind == K_Set) {
-				Automaton.Term t0 = (Automaton.Term) s0;
-				int r1 = t0.contents;
-				Automaton.State s1 = automaton.get(r1);
-				Automaton.List l1 = (Automaton.List) s1;
-				int r2 = l1.get(0);
-				int r3 = l1.get(1);
-				Automaton.State s3 = automaton.get(r3);
-				Automaton.Collection c3 = (Automaton.Collection) s3;
-				if(c3.size() >= 1) {
-					for(int r5=0;r5!=c3.size();++r5) {
-						int r4 = c3.get(r5);
-						if(Runtime.accepts(type1,automaton,automaton.get(r4), SCHEMA)) {
+			if(automaton.getKind(r0) == K_Set) {
+				int r1 = automaton.getContents(r0);
+				int r2 = automaton.getChild(r1, 0);
+				int r3 = automaton.getChild(r1, 1);
+				if(automaton.getSize(r3) >= 1) {
+					for(int r5=0;r5!=automaton.getSize(r3);++r5) {
+						int r4 = automaton.getChild(r3, r5);
+						if(Runtime.acceptsState(type1,automaton,r4, SCHEMA)) {
 							int[] state = {r0, r1, r2, r3, r4, r5, 0};
 							activations.add(new Activation(this,null,state));
 						}
@@ -1630,7 +1478,7 @@ public final class Types {
 			return false;
 		}
 
-		public final int minimum() { return 1; }
+		public final int minimum() { return 4; }
 		public final int maximum() { return Integer.MAX_VALUE; }
 	}
 	// term $11<Bag($9<^[$2<^Type>,^{|$2...|}[$2...]]>)>
@@ -1651,20 +1499,14 @@ public final class Types {
 
 		public final void probe(Automaton automaton, int root, List<Activation> activations) {
 			int r0 = root;
-			Automaton.State s0 = automaton.get(r0);
-			if(s0.kind == K_Bag) {
-				Automaton.Term t0 = (Automaton.Term) s0;
-				int r1 = t0.contents;
-				Automaton.State s1 = automaton.get(r1);
-				Automaton.List l1 = (Automaton.List) s1;
-				int r2 = l1.get(0);
-				int r3 = l1.get(1);
-				Automaton.State s3 = automaton.get(r3);
-				Automaton.Collection c3 = (Automaton.Collection) s3;
-				if(c3.size() >= 1) {
-					for(int r5=0;r5!=c3.size();++r5) {
-						int r4 = c3.get(r5);
-						if(Runtime.accepts(type1,automaton,automaton.get(r4), SCHEMA)) {
+			if(automaton.getKind(r0) == K_Bag) {
+				int r1 = automaton.getContents(r0);
+				int r2 = automaton.getChild(r1, 0);
+				int r3 = automaton.getChild(r1, 1);
+				if(automaton.getSize(r3) >= 1) {
+					for(int r5=0;r5!=automaton.getSize(r3);++r5) {
+						int r4 = automaton.getChild(r3, r5);
+						if(Runtime.acceptsState(type1,automaton,r4, SCHEMA)) {
 							int[] state = {r0, r1, r2, r3, r4, r5, 0};
 							activations.add(new Activation(this,null,state));
 						}
@@ -1699,7 +1541,7 @@ public final class Types {
 			return false;
 		}
 
-		public final int minimum() { return 1; }
+		public final int minimum() { return 4; }
 		public final int maximum() { return Integer.MAX_VALUE; }
 	}
 	// term $11<List(^[$2<^Type>,^[$2...]])>
@@ -1720,16 +1562,10 @@ public final class Types {
 
 		public final void probe(Automaton automaton, int root, List<Activation> activations) {
 			int r0 = root;
-			Automaton.State s0 = automaton.get(r0);
-			if(s0.kind == K_List) {
-				Automaton.Term t0 = (Automaton.Term) s0;
-				int r1 = t0.contents;
-				Automaton.State s1 = automaton.get(r1);
-				Automaton.List l1 = (Automaton.List) s1;
-				int r2 = l1.get(0);
-				int r3 = l1.get(1);
-				Automaton.State s3 = automaton.get(r3);
-				Automaton.List l3 = (Automaton.List) s3;
+			if(automaton.getKind(r0) == K_List) {
+				int r1 = automaton.getContents(r0);
+				int r2 = automaton.getChild(r1, 0);
+				int r3 = automaton.getChild(r1, 1);
 				int[] state = {r0, r1, r2, r3, 0};
 				activations.add(new Activation(this,null,state));
 			}
@@ -1766,19 +1602,15 @@ public final class Types {
 
 		public final void probe(Automaton automaton, int root, List<Activation> activations) {
 			int r0 = root;
-			Automaton.State s0 = automaton.get(r0);
-			if(s0.kind == K_And) {
-				Automaton.Term t0 = (Automaton.Term) s0;
-				int r1 = t0.contents;
-				Automaton.State s1 = automaton.get(r1);
-				Automaton.Collection c1 = (Automaton.Collection) s1;
-				if(c1.size() >= 2) {
-					for(int r3=0;r3!=c1.size();++r3) {
-						int r2 = c1.get(r3);
-						if(Runtime.accepts(type6,automaton,automaton.get(r2), SCHEMA)) {
-							for(int r5=0;r5!=c1.size();++r5) {
+			if(automaton.getKind(r0) == K_And) {
+				int r1 = automaton.getContents(r0);
+				if(automaton.getSize(r1) >= 2) {
+					for(int r3=0;r3!=automaton.getSize(r1);++r3) {
+						int r2 = automaton.getChild(r1, r3);
+						if(Runtime.acceptsState(type6,automaton,r2, SCHEMA)) {
+							for(int r5=0;r5!=automaton.getSize(r1);++r5) {
 								if(r5 == r3) { continue; }
-								int r4 = c1.get(r5);
+								int r4 = automaton.getChild(r1, r5);
 								int[] state = {r0, r1, r2, r3, r4, r5, 0};
 								activations.add(new Activation(this,null,state));
 							}
@@ -1841,40 +1673,24 @@ public final class Types {
 
 		public final void probe(Automaton automaton, int root, List<Activation> activations) {
 			int r0 = root;
-			Automaton.State s0 = automaton.get(r0);
-			if(s0.kind == K_And) {
-				Automaton.Term t0 = (Automaton.Term) s0;
-				int r1 = t0.contents;
-				Automaton.State s1 = automaton.get(r1);
-				Automaton.Collection c1 = (Automaton.Collection) s1;
-				if(c1.size() >= 2) {
-					for(int r3=0;r3!=c1.size();++r3) {
-						int r2 = c1.get(r3);
-						Automaton.State s2 = automaton.get(r2);
-						if(s2.kind == K_List) {
-							Automaton.Term t2 = (Automaton.Term) s2;
-							int r4 = t2.contents;
-							Automaton.State s4 = automaton.get(r4);
-							Automaton.List l4 = (Automaton.List) s4;
-							int r5 = l4.get(0);
-							if(Runtime.accepts(type11,automaton,automaton.get(r5), SCHEMA)) {
-								int r6 = l4.get(1);
-								Automaton.State s6 = automaton.get(r6);
-								Automaton.List l6 = (Automaton.List) s6;
-								for(int r9=0;r9!=c1.size();++r9) {
+			if(automaton.getKind(r0) == K_And) {
+				int r1 = automaton.getContents(r0);
+				if(automaton.getSize(r1) >= 2) {
+					for(int r3=0;r3!=automaton.getSize(r1);++r3) {
+						int r2 = automaton.getChild(r1, r3);
+						if(automaton.getKind(r2) == K_List) {
+							int r4 = automaton.getContents(r2);
+							int r5 = automaton.getChild(r4, 0);
+							if(Runtime.acceptsState(type11,automaton,r5, SCHEMA)) {
+								int r6 = automaton.getChild(r4, 1);
+								for(int r9=0;r9!=automaton.getSize(r1);++r9) {
 									if(r9 == r3) { continue; }
-									int r8 = c1.get(r9);
-									Automaton.State s8 = automaton.get(r8);
-									if(s8.kind == K_List) {
-										Automaton.Term t8 = (Automaton.Term) s8;
-										int r10 = t8.contents;
-										Automaton.State s10 = automaton.get(r10);
-										Automaton.List l10 = (Automaton.List) s10;
-										int r11 = l10.get(0);
-										if(Runtime.accepts(type11,automaton,automaton.get(r11), SCHEMA)) {
-											int r12 = l10.get(1);
-											Automaton.State s12 = automaton.get(r12);
-											Automaton.List l12 = (Automaton.List) s12;
+									int r8 = automaton.getChild(r1, r9);
+									if(automaton.getKind(r8) == K_List) {
+										int r10 = automaton.getContents(r8);
+										int r11 = automaton.getChild(r10, 0);
+										if(Runtime.acceptsState(type11,automaton,r11, SCHEMA)) {
+											int r12 = automaton.getChild(r10, 1);
 											int[] state = {r0, r1, r2, r3, r4, r5, r6, 0, r8, r9, r10, r11, r12, 0, 0};
 											activations.add(new Activation(this,null,state));
 										}
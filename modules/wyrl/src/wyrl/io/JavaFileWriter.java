@@ -54,6 +54,12 @@ public class JavaFileWriter {
 	private PrintWriter out;
 	private final HashMap<String, Type.Term> terms = new HashMap<String, Type.Term>();
 
+	/**
+	 * Indicates whether rules should be grouped by their root term into
+	 * dispatch rules (see <code>writeDispatchRule()</code>).
+	 */
+	private boolean dispatch = false;
+
 	public JavaFileWriter(Writer os) {
 		this.out = new PrintWriter(os);
 	}
@@ -62,6 +68,19 @@ public class JavaFileWriter {
 		this.out = new PrintWriter(os);
 	}
 
+	/**
+	 * Set whether or not the generated rule arrays should group rules with
+	 * the same root term into a single dispatch rule. This is a drop-in
+	 * replacement, in that the activations produced for any state are exactly
+	 * those (and in the same order) that the ungrouped rules would produce
+	 * under the default rule ordering.
+	 * 
+	 * @param flag
+	 */
+	public void setDispatch(boolean flag) {
+		this.dispatch = flag;
+	}
+
 	public void write(SpecFile spec) throws IOException {
 		reset();
 		translate(spec, spec);
@@ -385,8 +404,8 @@ public class JavaFileWriter {
 			return level;
 		} else {
 			int typeIndex = register(pattern.type);
-			myOut(level++, "if(Runtime.accepts(type" + typeIndex
-					+ ",automaton,automaton.get(r" + source + "), SCHEMA)) {");
+			myOut(level++, "if(Runtime.acceptsState(type" + typeIndex
+					+ ",automaton,r" + source + ", SCHEMA)) {");
 			return level;
 		}
 	}
@@ -394,9 +413,6 @@ public class JavaFileWriter {
 	public int translatePatternMatch(int level, Pattern.Term pattern,
 			Type declared, int source, Environment environment) {
 
-		myOut(level, "Automaton.State s" + source + " = automaton.get(r"
-				+ source + ");");
-
 		// ====================================================================
 		// First, determine what we know about this term.
 		// ====================================================================
@@ -412,7 +428,7 @@ public class JavaFileWriter {
 			// In this case, don't know much about the term we are matching.
 			// Furthermore, we need to check whether we have the right
 			// term.
-			myOut(level++, "if(s" + source + ".kind == K_" + pattern.name
+			myOut(level++, "if(automaton.getKind(r" + source + ") == K_" + pattern.name
 					+ ") {");
 			Type.Term concrete = terms.get(pattern.name);
 			element = concrete.element();
@@ -422,10 +438,9 @@ public class JavaFileWriter {
 		// Second, recursively check whether the data element matches
 		// ====================================================================
 		if (pattern.data != null) {
-			myOut(level, "Automaton.Term t" + source + " = (Automaton.Term) s"
-					+ source + ";");
 			int target = environment.allocate(Type.T_ANY(), pattern.variable);
-			myOut(level, "int r" + target + " = t" + source + ".contents;");
+			myOut(level, "int r" + target + " = automaton.getContents(r"
+					+ source + ");");
 			return translatePatternMatch(level, pattern.data,
 					element.element(), target, environment);
 		} else {
@@ -446,11 +461,6 @@ public class JavaFileWriter {
 	
 	public int translateBoundedPatternMatch(int level, Pattern.List pattern,
 			Type.List declared, int source, Environment environment) {
-		myOut(level, "Automaton.State s" + source + " = automaton.get(r"
-				+ source + ");");
-		myOut(level, "Automaton.List l" + source + " = (Automaton.List) s"
-				+ source + ";");
-
 		// ====================================================================
 		// First, extract what we know about this list
 		// ====================================================================
@@ -462,7 +472,7 @@ public class JavaFileWriter {
 			// In this case, we have a fixed-size list pattern being matched
 			// against an unbounded list type. Therefore, we must check that the
 			// type being matched does indeed have the right size.
-			myOut(level++, "if(l" + source + ".size() == "
+			myOut(level++, "if(automaton.getSize(r" + source + ") == "
 					+ pattern_elements.length + ") {");
 		} 
 
@@ -474,8 +484,8 @@ public class JavaFileWriter {
 		for (int i = 0, j = 0; i != pattern_elements.length; ++i) {
 			Pair<Pattern, String> p = pattern_elements[i];
 			int element = environment.allocate(Type.T_ANY());
-			myOut(level, "int r" + element + " = l" + source + ".get(" + i
-					+ ");");
+			myOut(level, "int r" + element + " = automaton.getChild(r" + source
+					+ ", " + i + ");");
 			level = translatePatternMatch(level, p.first(), declared_elements[j],
 					element, environment);
 			
@@ -490,11 +500,6 @@ public class JavaFileWriter {
 
 	public int translateUnboundedPatternMatch(int level, Pattern.List pattern,
 			Type.List declared, int source, Environment environment) {
-		myOut(level, "Automaton.State s" + source + " = automaton.get(r"
-				+ source + ");");
-		myOut(level, "Automaton.List l" + source + " = (Automaton.List) s"
-				+ source + ";");
-
 		// ====================================================================
 		// First, extract what we know about this list
 		// ====================================================================
@@ -507,7 +512,7 @@ public class JavaFileWriter {
 			// against an unbounded list type, but the former required more
 			// elements than are guaranteed by the latter; therefore, we need to
 			// check there are enough elements.
-			myOut(level++, "if(l" + source + ".size() >= "
+			myOut(level++, "if(automaton.getSize(r" + source + ") >= "
 					+ (pattern_elements.length - 1) + ") {");
 		}
 
@@ -519,8 +524,8 @@ public class JavaFileWriter {
 		for (int i = 0, j = 0; i != (pattern_elements.length-1); ++i) {
 			Pair<Pattern, String> p = pattern_elements[i];
 			int element = environment.allocate(Type.T_ANY());
-			myOut(level, "int r" + element + " = l" + source + ".get(" + i
-					+ ");");
+			myOut(level, "int r" + element + " = automaton.getChild(r" + source
+					+ ", " + i + ");");
 			level = translatePatternMatch(level, p.first(), declared_elements[j],
 					element, environment);
 			
@@ -546,9 +551,9 @@ public class JavaFileWriter {
 			String idx = "i" + source;
 			myOut(level, "boolean m" + source + " = true;");
 			myOut(level++, "for(int " + idx + "=" + lastPatternElementIndex
-					+ "; " + idx + " < l" + source + ".size(); " + idx + "++) {");
-			myOut(level, "int r" + element + " = l" + source + ".get("
-					+ idx + ");");
+					+ "; " + idx + " < automaton.getSize(r" + source + "); " + idx + "++) {");
+			myOut(level, "int r" + element + " = automaton.getChild(r" + source
+					+ ", " + idx + ");");
 			int myLevel = level;
 			level = translatePatternMatch(level, lastPatternElement,
 					lastDeclaredElement, element, environment.clone());
@@ -580,11 +585,6 @@ public class JavaFileWriter {
 	public int translateBoundedPatternMatch(int level, Pattern.BagOrSet pattern,
 			Type.Collection declared, int source, Environment environment) {
 		
-		myOut(level, "Automaton.State s" + source + " = automaton.get(r"
-				+ source + ");");
-		myOut(level, "Automaton.Collection c" + source
-				+ " = (Automaton.Collection) s" + source + ";");
-
 		// ====================================================================
 		// First, extract what we know about this set or bag
 		// ====================================================================
@@ -595,7 +595,7 @@ public class JavaFileWriter {
 			// In this case, we have a fixed-size list pattern being matched
 			// against an unbounded list type. Therefore, we must check that the
 			// type being matched does indeed have the right size.
-			myOut(level++, "if(c" + source + ".size() == " + elements.length
+			myOut(level++, "if(automaton.getSize(r" + source + ") == " + elements.length
 					+ ") {");
 		} 
 
@@ -617,8 +617,8 @@ public class JavaFileWriter {
 			indices[i] = index;
 			
 			// Construct the for-loop for this element
-			myOut(level++, "for(int " + idx + "=0;" + idx + "!=c" + source
-					+ ".size();++" + idx + ") {");
+			myOut(level++, "for(int " + idx + "=0;" + idx + "!=automaton.getSize(r"
+					+ source + ");++" + idx + ") {");
 
 			// Check that the current element from the source collection is not
 			// already matched. If this is the first pattern element (i.e. i ==
@@ -636,8 +636,8 @@ public class JavaFileWriter {
 				}
 				out.println(") { continue; }");
 			}
-			myOut(level, "int r" + item + " = c" + source + ".get(" + idx
-					+ ");");
+			myOut(level, "int r" + item + " = automaton.getChild(r" + source
+					+ ", " + idx + ");");
 			
 			level = translatePatternMatch(level, pat, declared_elements[j], item, environment);
 			
@@ -652,11 +652,6 @@ public class JavaFileWriter {
 
 	public int translateUnboundedPatternMatch(int level, Pattern.BagOrSet pattern,
 			Type.Collection declared, int source, Environment environment) {
-		myOut(level, "Automaton.State s" + source + " = automaton.get(r"
-				+ source + ");");
-		myOut(level, "Automaton.Collection c" + source
-				+ " = (Automaton.Collection) s" + source + ";");
-
 		// ====================================================================
 		// First, extract what we know about this set or bag
 		// ====================================================================
@@ -669,7 +664,7 @@ public class JavaFileWriter {
 			// against an unbounded list type, but the former required more
 			// elements than are guaranteed by the latter; therefore, we need to
 			// check there are enough elements.
-			myOut(level++, "if(c" + source + ".size() >= "
+			myOut(level++, "if(automaton.getSize(r" + source + ") >= "
 					+ (pattern_elements.length - 1) + ") {");
 		}
 
@@ -695,8 +690,8 @@ public class JavaFileWriter {
 			indices[i] = index;
 			
 			// Construct the for-loop for this element
-			myOut(level++, "for(int " + idx + "=0;" + idx + "!=c" + source
-					+ ".size();++" + idx + ") {");
+			myOut(level++, "for(int " + idx + "=0;" + idx + "!=automaton.getSize(r"
+					+ source + ");++" + idx + ") {");
 
 			// Check that the current element from the source collection is not
 			// already matched. If this is the first pattern element (i.e. i ==
@@ -714,8 +709,8 @@ public class JavaFileWriter {
 				}
 				out.println(") { continue; }");
 			}
-			myOut(level, "int r" + item + " = c" + source + ".get(" + idx
-					+ ");");
+			myOut(level, "int r" + item + " = automaton.getChild(r" + source
+					+ ", " + idx + ");");
 
 			level = translatePatternMatch(level, pat, declared_elements[j], item, environment);
 			
@@ -741,8 +736,8 @@ public class JavaFileWriter {
 			myOut(level, "boolean m" + source + "_" + lastPatternElementIndex + " = true;");
 
 			// Construct the for-loop for this element
-			myOut(level++, "for(int " + idx + "=0;" + idx + "!=c" + source
-					+ ".size();++" + idx + ") {");
+			myOut(level++, "for(int " + idx + "=0;" + idx + "!=automaton.getSize(r"
+					+ source + ");++" + idx + ") {");
 
 			// Check that the current element from the source collection is not
 			// already matched. If this is the first pattern element (i.e. i ==
@@ -760,8 +755,8 @@ public class JavaFileWriter {
 				}
 				out.println(") { continue; }");
 			}
-			myOut(level, "int r" + item + " = c" + source + ".get(" + idx
-					+ ");");
+			myOut(level, "int r" + item + " = automaton.getChild(r" + source
+					+ ", " + idx + ");");
 			int myLevel = level;
 			level = translatePatternMatch(level, lastPatternElement,
 					lastDeclaredElement, item, environment.clone());
@@ -1103,6 +1098,10 @@ public class JavaFileWriter {
 		myOut(1,
 				"// =========================================================================");
 		myOut();
+		if (dispatch) {
+			writeDispatchedRuleArrays(spec);
+			return;
+		}
 		myOut(1,
 				"public static final InferenceRule[] inferences = new InferenceRule[]{");
 
@@ -1148,6 +1147,323 @@ public class JavaFileWriter {
 		myOut();
 	}
 
+	/**
+	 * Write out the rule arrays such that all rules of the same sort
+	 * (inference or reduction) whose patterns have the same root term are
+	 * grouped into a single dispatch rule. Since rewriters index rules by the
+	 * kind of their root term, each kind then has at most one rule to probe.
+	 * Rules which are alone in matching their root term are not grouped.
+	 * 
+	 * @param spec
+	 */
+	protected void writeDispatchedRuleArrays(SpecFile spec) {
+		LinkedHashMap<String, ArrayList<Pair<String, RewriteDecl>>> inferences = new LinkedHashMap<String, ArrayList<Pair<String, RewriteDecl>>>();
+		LinkedHashMap<String, ArrayList<Pair<String, RewriteDecl>>> reductions = new LinkedHashMap<String, ArrayList<Pair<String, RewriteDecl>>>();
+
+		// First, create an instance of every rule and group them by the name
+		// of their root term.
+		int inferCounter = 0;
+		int reduceCounter = 0;
+		int patternCounter = 0;
+		for (Decl d : getAllDeclarations(spec)) {
+			if (d instanceof RewriteDecl) {
+				RewriteDecl rd = (RewriteDecl) d;
+				String className;
+				LinkedHashMap<String, ArrayList<Pair<String, RewriteDecl>>> groups;
+				if (rd instanceof InferDecl) {
+					className = "Inference_" + inferCounter++;
+					groups = inferences;
+				} else {
+					className = "Reduction_" + reduceCounter++;
+					groups = reductions;
+				}
+				String field = className.toLowerCase();
+				myOut(1, "private final static " + className + " " + field
+						+ " = new " + className + "(pattern" + patternCounter
+						+ ");");
+				ArrayList<Pair<String, RewriteDecl>> group = groups
+						.get(rd.pattern.name);
+				if (group == null) {
+					group = new ArrayList<Pair<String, RewriteDecl>>();
+					groups.put(rd.pattern.name, group);
+				}
+				group.add(new Pair<String, RewriteDecl>(field, rd));
+				patternCounter++;
+			}
+		}
+		myOut();
+
+		// Second, write a dispatch rule for every group with more than one
+		// rule in it.
+		ArrayList<String> inferenceRules = writeDispatchRules(inferences,
+				false);
+		ArrayList<String> reductionRules = writeDispatchRules(reductions,
+				true);
+
+		// Finally, write the arrays themselves.
+		myOut(1,
+				"public static final InferenceRule[] inferences = new InferenceRule[]{");
+		for (int i = 0; i != inferenceRules.size(); ++i) {
+			if (i != 0) {
+				out.println(",");
+			}
+			indent(2);
+			out.print(inferenceRules.get(i));
+		}
+		myOut();
+		myOut(1, "};");
+		myOut(1,
+				"public static final ReductionRule[] reductions = new ReductionRule[]{");
+		for (int i = 0; i != reductionRules.size(); ++i) {
+			if (i != 0) {
+				out.println(",");
+			}
+			indent(2);
+			out.print(reductionRules.get(i));
+		}
+		myOut();
+		myOut(1, "};");
+		myOut();
+	}
+
+	/**
+	 * Write out a dispatch rule for each group of rules containing more than
+	 * one rule. Since a dispatch rule identifies its candidate rules using a
+	 * bit mask, groups of more than 64 rules are not grouped.
+	 * 
+	 * @param groups
+	 *            --- maps the name of each root term to the rules matching
+	 *            it.
+	 * @param isReduction
+	 *            --- indicates whether these are reduction or inference rules.
+	 * @return --- an expression for each element of the rule array.
+	 */
+	private ArrayList<String> writeDispatchRules(
+			LinkedHashMap<String, ArrayList<Pair<String, RewriteDecl>>> groups,
+			boolean isReduction) {
+		ArrayList<String> rules = new ArrayList<String>();
+		for (Map.Entry<String, ArrayList<Pair<String, RewriteDecl>>> e : groups
+				.entrySet()) {
+			ArrayList<Pair<String, RewriteDecl>> group = e.getValue();
+			if (group.size() == 1 || group.size() > 64) {
+				for (Pair<String, RewriteDecl> p : group) {
+					rules.add(p.first());
+				}
+			} else {
+				String className = (isReduction ? "ReductionDispatch_"
+						: "InferenceDispatch_") + e.getKey();
+				writeDispatchRule(className, isReduction, e.getKey(), group);
+				rules.add("new " + className + "(new Pattern.Term(\""
+						+ e.getKey() + "\", null, null))");
+			}
+		}
+		return rules;
+	}
+
+	/**
+	 * <p>
+	 * Write out a dispatch rule for a group of rules whose patterns have the
+	 * same root term. The dispatch rule tests what is common to the group
+	 * once, and then probes only those rules which could match. In
+	 * particular, it determines the kind of the root's child and, where the
+	 * child is a collection, which kinds of term occur in it. A rule whose
+	 * pattern requires the child (or some element of it) to be a term of a
+	 * kind which is not there cannot produce any activations, and so is not
+	 * probed.
+	 * </p>
+	 * 
+	 * <p>
+	 * The remaining rules are probed in the order that
+	 * <code>MinRuleComparator</code> would place them. Activations are still
+	 * made against the rules themselves, hence the activations produced for
+	 * any state are exactly those that probing each rule in turn would have
+	 * produced. No memory is allocated by the dispatch itself.
+	 * </p>
+	 * 
+	 * <p>
+	 * The dispatch rule implements <code>DispatchRule</code>, so that rewriters
+	 * can probe the rules themselves (and, hence, count one probe for each
+	 * rule) whilst using the dispatch rule only to skip those rules which
+	 * cannot match.
+	 * </p>
+	 * 
+	 * @param className
+	 *            --- name of the dispatch rule class.
+	 * @param isReduction
+	 *            --- indicates whether these are reduction or inference rules.
+	 * @param name
+	 *            --- name of the root term.
+	 * @param group
+	 *            --- the rules (and their field names) to dispatch to.
+	 */
+	protected void writeDispatchRule(String className, boolean isReduction,
+			String name, ArrayList<Pair<String, RewriteDecl>> group) {
+		// First, order rules by decreasing minimum change. This is a stable
+		// sort, as is the one used by rewriters to order their rules.
+		group = new ArrayList<Pair<String, RewriteDecl>>(group);
+		Collections.sort(group,
+				new Comparator<Pair<String, RewriteDecl>>() {
+					public int compare(Pair<String, RewriteDecl> p1,
+							Pair<String, RewriteDecl> p2) {
+						int m1 = RewriteComplexity.minimumChange(p1.second());
+						int m2 = RewriteComplexity.minimumChange(p2.second());
+						return m1 > m2 ? -1 : (m1 == m2 ? 0 : 1);
+					}
+				});
+
+		// Second, determine what each rule requires of the root's child.
+		ArrayList<String> guards = new ArrayList<String>();
+		LinkedHashSet<String> elementKinds = new LinkedHashSet<String>();
+		boolean childKind = false;
+		int minimum = Integer.MAX_VALUE;
+		for (Pair<String, RewriteDecl> p : group) {
+			Pattern data = p.second().pattern.data;
+			String guard = null;
+			String kind = requiredKind(data);
+			if (kind != null) {
+				guard = "k1 == K_" + kind;
+				childKind = true;
+			} else if (data instanceof Pattern.Collection) {
+				for (String k : requiredElementKinds((Pattern.Collection) data)) {
+					guard = guard == null ? "" : guard + " && ";
+					guard = guard + "e_" + k;
+					elementKinds.add(k);
+				}
+			}
+			guards.add(guard);
+			minimum = Math.min(minimum,
+					RewriteComplexity.minimumChange(p.second()));
+		}
+
+		myOut(1, "// dispatch for " + name);
+		if (isReduction) {
+			myOut(1, "private final static class " + className
+					+ " extends AbstractRewriteRule implements ReductionRule, DispatchRule {");
+		} else {
+			myOut(1, "private final static class " + className
+					+ " extends AbstractRewriteRule implements InferenceRule, DispatchRule {");
+		}
+		myOut();
+		indent(2);
+		out.print("private static final RewriteRule[] rules = { ");
+		for (int i = 0; i != group.size(); ++i) {
+			if (i != 0) {
+				out.print(", ");
+			}
+			out.print(group.get(i).first());
+		}
+		out.println(" };");
+		myOut();
+		myOut(2, "public " + className
+				+ "(Pattern.Term pattern) { super(pattern); }");
+		myOut();
+		myOut(2, "public final RewriteRule[] rules() { return rules; }");
+		myOut();
+		myOut(2,
+				"public final void probe(Automaton automaton, int root, List<Activation> activations) {");
+		myOut(3, "long candidates = candidates(automaton, root);");
+		myOut(3, "for(int i=0;i!=rules.length;++i) {");
+		myOut(4, "if((candidates & (1L << i)) != 0) {");
+		myOut(5, "rules[i].probe(automaton, root, activations);");
+		myOut(4, "}");
+		myOut(3, "}");
+		myOut(2, "}");
+		myOut();
+		myOut(2,
+				"public final long candidates(Automaton automaton, int root) {");
+		myOut(3, "if(automaton.getKind(root) != K_" + name + ") { return 0L; }");
+		if (childKind || !elementKinds.isEmpty()) {
+			myOut(3, "int r1 = automaton.getContents(root);");
+		}
+		if (childKind) {
+			myOut(3, "int k1 = automaton.getKind(r1);");
+		}
+		if (!elementKinds.isEmpty()) {
+			for (String k : elementKinds) {
+				myOut(3, "boolean e_" + k + " = false;");
+			}
+			myOut(3, "for(int i=0;i!=automaton.getSize(r1);++i) {");
+			myOut(4, "switch(automaton.getKind(automaton.getChild(r1, i))) {");
+			for (String k : elementKinds) {
+				myOut(5, "case K_" + k + ":");
+				myOut(6, "e_" + k + " = true;");
+				myOut(6, "break;");
+			}
+			myOut(4, "}");
+			myOut(3, "}");
+		}
+		myOut(3, "long r = 0L;");
+		for (int i = 0; i != group.size(); ++i) {
+			String guard = guards.get(i);
+			String bit = "r |= 1L << " + i + ";";
+			if (guard == null) {
+				myOut(3, bit);
+			} else {
+				myOut(3, "if(" + guard + ") {");
+				myOut(4, bit);
+				myOut(3, "}");
+			}
+		}
+		myOut(3, "return r;");
+		myOut(2, "}");
+		myOut();
+		myOut(2,
+				"public final boolean apply(Automaton automaton, Object _state) {");
+		myOut(3, "// activations are made against the rules dispatched to, hence");
+		myOut(3, "// the state can only be an activation of one of them");
+		myOut(3, "return ((Activation) _state).apply(automaton);");
+		myOut(2, "}");
+		myOut();
+		myOut(2, "public final int minimum() { return " + minimum + "; }");
+		myOut(2, "public final int maximum() { return Integer.MAX_VALUE; }");
+		myOut(1, "}");
+		myOut();
+	}
+
+	/**
+	 * Determine the kind of term which any state matched by a given pattern
+	 * must have, if there is one.
+	 * 
+	 * @param pattern
+	 * @return --- the name of the term, or <code>null</code> if the pattern
+	 *         can match states of different kinds.
+	 */
+	protected String requiredKind(Pattern pattern) {
+		String name = null;
+		if (pattern instanceof Pattern.Term) {
+			name = ((Pattern.Term) pattern).name;
+		} else if (pattern instanceof Pattern.Leaf) {
+			Type type = stripNominalsAndRefs(((Pattern.Leaf) pattern).type);
+			if (type instanceof Type.Term) {
+				name = ((Type.Term) type).name();
+			}
+		}
+		return terms.containsKey(name) ? name : null;
+	}
+
+	/**
+	 * Determine the kinds of term which must occur amongst the elements of any
+	 * collection matched by a given pattern. The trailing element of an
+	 * unbounded pattern can match zero elements, and so is ignored.
+	 * 
+	 * @param pattern
+	 * @return
+	 */
+	protected List<String> requiredElementKinds(Pattern.Collection pattern) {
+		ArrayList<String> kinds = new ArrayList<String>();
+		int length = pattern.elements.length;
+		if (pattern.unbounded) {
+			length = length - 1;
+		}
+		for (int i = 0; i < length; ++i) {
+			String kind = requiredKind(pattern.elements[i].first());
+			if (kind != null && !kinds.contains(kind)) {
+				kinds.add(kind);
+			}
+		}
+		return kinds;
+	}
+
 	protected void writeTypeTests() throws IOException {
 		myOut(1,
 				"// =========================================================================");
@@ -53,6 +53,10 @@ public class JavaIdentifierInputStream extends InputStream {
 	}
 
 	public int read() throws IOException {
+		if ((count + 6 * (identifier.length() - index)) < 8) {
+			// not enough bits left for a whole byte
+			return -1;
+		}
 		int value = 0;
 		int mask = 1;
 		for(int i=0;i!=8;++i) {
@@ -156,10 +156,35 @@ public class Runtime {
 	public static boolean accepts(Type type, Automaton automaton, int root,
 			Schema schema) {
 
+		// FIXME: this doesn't yet handle cyclic automata
+		Automaton type_automaton = type.automaton();
+		return acceptsReference(type_automaton, type_automaton.getRoot(0),
+				automaton, root, schema);
+	}
+
+	/**
+	 * Determine whether the state at a given index in an automaton is
+	 * <i>accepted</i> by (i.e. contained in) a given type. Unlike
+	 * <code>accepts()</code>, the type here describes the state itself rather
+	 * than a reference to it. This function is used during rewriting to
+	 * determine whether or not a given pattern leaf matches, and works
+	 * directly on the automaton's arrays without constructing any states.
+	 * 
+	 * @param type
+	 *            --- The type being to check for containment.
+	 * @param automaton
+	 *            --- The automaton being checked for inclusion.
+	 * @param index
+	 *            --- The index of the state being checked for inclusion.
+	 * @return
+	 */
+	public static boolean acceptsState(Type type, Automaton automaton,
+			int index, Schema schema) {
+
 		// FIXME: this doesn't yet handle cyclic automata
 		Automaton type_automaton = type.automaton();
 		return accepts(type_automaton, type_automaton.getRoot(0), automaton,
-				root, schema);
+				index, schema);
 	}
 
 	/**
@@ -174,9 +199,9 @@ public class Runtime {
 	 * 
 	 * We can then ask the question as to whether or not the type
 	 * <code>Bool</code> accepts the automaton which describes <code>True</code>
-	 * . This function is used during rewriting to determine whether or not a
-	 * given pattern leaf matches, and also for implementing the <code>is</code>
-	 * operator
+	 * . This overload is retained for code generated by earlier versions of
+	 * wyrl. Since the given state is not part of the automaton, it is first
+	 * added to a copy and so <code>acceptsState()</code> should be preferred.
 	 * 
 	 * @param type
 	 *            --- The type being to check for containment.
@@ -186,79 +211,70 @@ public class Runtime {
 	 */
 	public static boolean accepts(Type type, Automaton actual,
 			Automaton.State aState, Schema schema) {
+		Automaton copy = new Automaton(actual);
+		int index = copy.add(aState);
+		return acceptsState(type, copy, index, schema);
+	}
 
-		// FIXME: this doesn't yet handle cyclic automata
-
-		Automaton type_automaton = type.automaton();
-		return accepts(type_automaton, type_automaton.getRoot(0), actual,
-				aState, schema);
-	}	
-	
-	private static boolean accepts(Automaton type, int tIndex,
+	private static boolean acceptsReference(Automaton type, int tIndex,
 			Automaton actual, int aIndex, Schema schema) {
-		Automaton.Term tState = (Automaton.Term) type.get(tIndex);
-		Automaton.State aState = actual.get(aIndex);
-		if (tState.kind == Types.K_Ref) {
-			Automaton.Term tTerm = (Automaton.Term) tState;
-			return accepts(type, tTerm.contents, actual, aState, schema);
+		if (type.getKind(tIndex) == Types.K_Ref) {
+			return accepts(type, type.getContents(tIndex), actual, aIndex,
+					schema);
 		} else {
 			return false;
 		}
 	}
 
 	private static boolean accepts(Automaton type, int tIndex,
-			Automaton automaton, Automaton.State aState, Schema schema) {
-		Automaton.Term tState = (Automaton.Term) type.get(tIndex);
-		
-		switch (tState.kind) {
+			Automaton automaton, int aIndex, Schema schema) {
+		int tKind = type.getKind(tIndex);
+		int aKind = automaton.getKind(aIndex);
+
+		switch (tKind) {
 		case Types.K_Void:
 			return false;
 		case Types.K_Any:
 			return true;
 		case Types.K_Bool:
-			return aState instanceof Automaton.Bool;
+			return aKind == Automaton.K_BOOL;
 		case Types.K_Int:
-			return aState instanceof Automaton.Int;
+			return aKind == Automaton.K_INT;
 		case Types.K_Real:
-			return aState instanceof Automaton.Real;
+			return aKind == Automaton.K_REAL;
 		case Types.K_String:
-			return aState instanceof Automaton.Strung;
+			return aKind == Automaton.K_STRING;
 		case Types.K_Term:
-			if (aState instanceof Automaton.Term) {
-				Automaton.Term aTerm = (Automaton.Term) aState;
-				return accepts(type, tState, automaton, aTerm, schema);
+			if (aKind >= 0) {
+				return acceptsTerm(type, tIndex, automaton, aIndex, schema);
 			}
 			return false;
 		case Types.K_Nominal:
-			return acceptsNominal(type, (Automaton.Term) tState, automaton,
-					aState, schema);
+			return acceptsNominal(type, tIndex, automaton, aIndex, schema);
 		case Types.K_Set:
-			if (aState instanceof Automaton.Set) {
-				Automaton.Set aSet = (Automaton.Set) aState;
-				return acceptsSetOrBag(type, tState, automaton, aSet, schema);
+			if (aKind == Automaton.K_SET) {
+				return acceptsSetOrBag(type, tIndex, automaton, aIndex, schema);
 			}
 			return false;
 		case Types.K_Bag:
-			if (aState instanceof Automaton.Bag) {
-				Automaton.Bag aBag = (Automaton.Bag) aState;
-				return acceptsSetOrBag(type, tState, automaton, aBag, schema);
+			if (aKind == Automaton.K_BAG) {
+				return acceptsSetOrBag(type, tIndex, automaton, aIndex, schema);
 			}
 			return false;
 		case Types.K_List:
-			if (aState instanceof Automaton.List) {
-				Automaton.List aList = (Automaton.List) aState;
-				return acceptsList(type, tState, automaton, aList, schema);
+			if (aKind == Automaton.K_LIST) {
+				return acceptsList(type, tIndex, automaton, aIndex, schema);
 			}
 			return false;
 		case Types.K_Or:
-			return acceptsOr(type, tState, automaton, aState, schema);
+			return acceptsOr(type, tIndex, automaton, aIndex, schema);
 		case Types.K_And:
-			return acceptsAnd(type, tState, automaton, aState, schema);
+			return acceptsAnd(type, tIndex, automaton, aIndex, schema);
 		}
 
 		// This should be dead-code since all possible cases are covered above.
 		throw new IllegalArgumentException("unknowm type kind encountered ("
-				+ tState.kind + ")");
+				+ tKind + ")");
 	}
 
 	/**
@@ -278,13 +294,13 @@ public class Runtime {
 	 * @param type
 	 *            --- The type automaton which provides a schema describing a
 	 *            given type.
-	 * @param tState
+	 * @param tIndex
 	 *            --- The state in the type automaton being which is being
 	 *            checked to see whether it accepts the actual state.
 	 * @param actual
 	 *            --- The actual automaton whose states (at least some) are
 	 *            testing whether or not is accepted.
-	 * @param aTerm
+	 * @param aIndex
 	 *            --- The state in the actual automaton being tested for
 	 *            acceptance. This is known to represent a term.
 	 * @param schema
@@ -292,17 +308,20 @@ public class Runtime {
 	 *            term names to their kinds.
 	 * @return
 	 */
-	private static boolean accepts(Automaton type, Automaton.Term tState,
-			Automaton actual, Automaton.Term aTerm, Schema schema) {
-		Automaton.List list = (Automaton.List) type.get(tState.contents);
-		String expectedName = ((Automaton.Strung) type.get(list.get(0))).value;
-		String actualName = schema.get(aTerm.kind).name;
+	private static boolean acceptsTerm(Automaton type, int tIndex,
+			Automaton actual, int aIndex, Schema schema) {
+		int list = type.getContents(tIndex);
+		String expectedName = ((Automaton.Strung) type.getConstant(type
+				.getChild(list, 0))).value;
+		String actualName = schema.get(actual.getKind(aIndex)).name;
+		int aContents = actual.getContents(aIndex);
 		if (!expectedName.equals(actualName)) {
 			return false;
-		} else if (list.size() == 1) {
-			return aTerm.contents == Automaton.K_VOID;
+		} else if (type.getSize(list) == 1) {
+			return aContents == Automaton.K_VOID;
 		} else {
-			return accepts(type, list.get(1), actual, aTerm.contents, schema);
+			return acceptsReference(type, type.getChild(list, 1), actual,
+					aContents, schema);
 		}
 	}
 
@@ -324,39 +343,36 @@ public class Runtime {
 	 * @param type
 	 *            --- The type automaton which provides a schema describing a
 	 *            given type.
-	 * @param tState
+	 * @param tIndex
 	 *            --- The state in the type automaton being which is being
 	 *            checked to see whether it accepts the actual state.
 	 * @param actual
 	 *            --- The actual automaton whose states (at least some) are
 	 *            testing whether or not is accepted.
-	 * @param aTerm
+	 * @param aIndex
 	 *            --- The state in the actual automaton being tested for
-	 *            acceptance. This is known to represent a term.
+	 *            acceptance. This is known to represent a set or bag.
 	 * @param schema
 	 *            -- The schema for the actual automaton which is used to map
 	 *            term names to their kinds.
 	 * @return
 	 */
-	private static boolean acceptsSetOrBag(Automaton type,
-			Automaton.Term tState, Automaton automaton,
-			Automaton.Collection aSetOrBag, Schema schema) {
+	private static boolean acceptsSetOrBag(Automaton type, int tIndex,
+			Automaton automaton, int aIndex, Schema schema) {
 
-		Automaton.List list = (Automaton.List) type.get(tState.contents);
-		Automaton.Collection collection = (Automaton.Collection) type.get(list
-				.get(1));
-		int unboundedIndex = list.get(0);
-		Automaton.Term unbounded = (Automaton.Term) type.get(unboundedIndex);
-		boolean isUnbounded = unbounded.kind != Types.K_Void;
+		int list = type.getContents(tIndex);
+		int collection = type.getChild(list, 1);
+		int unboundedIndex = type.getChild(list, 0);
+		boolean isUnbounded = type.getKind(unboundedIndex) != Types.K_Void;
+		int aSize = automaton.getSize(aIndex);
 
 		// The minimum expected size of the collection. In the case of a bounded
 		// collection, this is exactly the size of the collection. For an
 		// unbounded collection, it is one less since the last element
 		// represents zero or more elements.
-		int minSize = collection.size();
+		int minSize = type.getSize(collection);
 		
-		if (aSetOrBag.size() < minSize
-				|| (!isUnbounded && minSize != aSetOrBag.size())) {
+		if (aSize < minSize || (!isUnbounded && minSize != aSize)) {
 			// collection is not big enough.
 			return false;
 		}
@@ -369,14 +385,14 @@ public class Runtime {
 		// loop means we don't try all combinations?
 		
 		for (int i = 0; i != minSize; ++i) {
-			int typeItem = collection.get(i);
+			int typeItem = type.getChild(collection, i);
 			boolean found = false;
-			for (int j = 0; j != aSetOrBag.size(); ++j) {
+			for (int j = 0; j != aSize; ++j) {
 				if (matched.get(j)) {
 					continue;
 				}
-				int aItem = aSetOrBag.get(j);
-				if (accepts(type, typeItem, automaton, aItem, schema)) {
+				int aItem = automaton.getChild(aIndex, j);
+				if (acceptsReference(type, typeItem, automaton, aItem, schema)) {
 					matched.set(i, true);
 					found = true;
 					break;
@@ -390,12 +406,13 @@ public class Runtime {
 		// Finally, for an unbounded match we need to match all other items
 		// against the remainder.
 		if (isUnbounded) {
-			for (int j = 0; j != aSetOrBag.size(); ++j) {
+			for (int j = 0; j != aSize; ++j) {
 				if (matched.get(j)) {
 					continue;
 				}
-				int aItem = aSetOrBag.get(j);
-				if (!accepts(type, unboundedIndex, automaton, aItem, schema)) {
+				int aItem = automaton.getChild(aIndex, j);
+				if (!acceptsReference(type, unboundedIndex, automaton, aItem,
+						schema)) {
 					return false;
 				}
 			}
@@ -409,10 +426,10 @@ public class Runtime {
 	/**
 	 * <p>
 	 * Determine whether a state in the type automaton accepts a state in the
-	 * actual automaton. Here, both states are known to represent lists. For the
-	 * type automaton, we have a template describing a list type, whilst for the
-	 * actual automaton we have an actual list state. The question is whether or
-	 * not the actual state matches the given template.
+	 * actual automaton. Here, both states are known to represent lists. For
+	 * the type automaton, we have a template describing a list type, whilst
+	 * for the actual automaton we have an actual list state. The question is
+	 * whether or not the actual state matches the given template.
 	 * </p>
 	 * <p>
 	 * The template for list is given by <code>List[Type,[Type...]]</code>,
@@ -424,36 +441,35 @@ public class Runtime {
 	 * @param type
 	 *            --- The type automaton which provides a schema describing a
 	 *            given type.
-	 * @param tState
+	 * @param tIndex
 	 *            --- The state in the type automaton being which is being
 	 *            checked to see whether it accepts the actual state.
 	 * @param actual
 	 *            --- The actual automaton whose states (at least some) are
 	 *            testing whether or not is accepted.
-	 * @param aTerm
+	 * @param aIndex
 	 *            --- The state in the actual automaton being tested for
-	 *            acceptance. This is known to represent a term.
+	 *            acceptance. This is known to represent a list.
 	 * @param schema
 	 *            -- The schema for the actual automaton which is used to map
 	 *            term names to their kinds.
 	 * @return
 	 */
-	private static boolean acceptsList(Automaton type, Automaton.Term tState,
-			Automaton automaton, Automaton.List aList, Schema schema) {
-		Automaton.List list = (Automaton.List) type.get(tState.contents);
-		Automaton.Collection collection = (Automaton.Collection) type.get(list
-				.get(1));
-		int unboundedIndex = list.get(0);
-		Automaton.Term unbounded = (Automaton.Term) type.get(unboundedIndex);
-		boolean isUnbounded = unbounded.kind != Types.K_Void;
+	private static boolean acceptsList(Automaton type, int tIndex,
+			Automaton automaton, int aIndex, Schema schema) {
+		int list = type.getContents(tIndex);
+		int collection = type.getChild(list, 1);
+		int unboundedIndex = type.getChild(list, 0);
+		boolean isUnbounded = type.getKind(unboundedIndex) != Types.K_Void;
+		int aSize = automaton.getSize(aIndex);
 
 		// The minimum expected size of the collection. In the case of a bounded
 		// collection, this is exactly the size of the collection. For an
 		// unbounded collection, it is one less since the last element
 		// represents zero or more elements.
-		int minSize = collection.size();
+		int minSize = type.getSize(collection);
 
-		if (aList.size() < minSize || (!isUnbounded && minSize != aList.size())) {
+		if (aSize < minSize || (!isUnbounded && minSize != aSize)) {
 			// collection is not big enough.
 			return false;
 		}
@@ -461,9 +477,9 @@ public class Runtime {
 		// Now, attempt to match all the requested items. Each match is loaded
 		// into matches in order to prevent double matching of the same item.
 		for (int i = 0; i != minSize; ++i) {
-			int tItem = collection.get(i);
-			int aItem = aList.get(i);
-			if (!accepts(type, tItem, automaton, aItem, schema)) {
+			int tItem = type.getChild(collection, i);
+			int aItem = automaton.getChild(aIndex, i);
+			if (!acceptsReference(type, tItem, automaton, aItem, schema)) {
 				return false;
 			}
 		}
@@ -471,9 +487,10 @@ public class Runtime {
 		// Finally, for an unbounded match we need to match all other items
 		// against the remainder.
 		if (isUnbounded) {
-			for (int j = minSize; j != aList.size(); ++j) {
-				int aItem = aList.get(j);
-				if (!accepts(type, unboundedIndex, automaton, aItem, schema)) {
+			for (int j = minSize; j != aSize; ++j) {
+				int aItem = automaton.getChild(aIndex, j);
+				if (!acceptsReference(type, unboundedIndex, automaton, aItem,
+						schema)) {
 					return false;
 				}
 			}
@@ -501,45 +518,44 @@ public class Runtime {
 	 * @param type
 	 *            --- The type automaton which provides a schema describing a
 	 *            given type.
-	 * @param tState
+	 * @param tIndex
 	 *            --- The state in the type automaton being which is being
 	 *            checked to see whether it accepts the actual state.
 	 * @param actual
 	 *            --- The actual automaton whose states (at least some) are
 	 *            testing whether or not is accepted.
-	 * @param aTerm
+	 * @param aIndex
 	 *            --- The state in the actual automaton being tested for
-	 *            acceptance. This is known to represent a term.
+	 *            acceptance.
 	 * @param schema
 	 *            -- The schema for the actual automaton which is used to map
 	 *            term names to their kinds.
 	 * @return
 	 */
-	private static boolean acceptsNominal(Automaton type,
-			Automaton.Term tState, Automaton automaton, Automaton.State aState,
-			Schema schema) {
-		Automaton.List l = (Automaton.List) type.get(tState.contents);
-		return accepts(type, l.get(1), automaton, aState, schema);
+	private static boolean acceptsNominal(Automaton type, int tIndex,
+			Automaton automaton, int aIndex, Schema schema) {
+		int list = type.getContents(tIndex);
+		return accepts(type, type.getChild(list, 1), automaton, aIndex, schema);
 	}
 
-	private static boolean acceptsAnd(Automaton type, Automaton.Term tState,
-			Automaton automaton, Automaton.State aState, Schema schema) {
-		Automaton.Set set = (Automaton.Set) type.get(tState.contents);
-		for (int i = 0; i != set.size(); ++i) {
-			int element = set.get(i);
-			if (!accepts(type, element, automaton, aState, schema)) {
+	private static boolean acceptsAnd(Automaton type, int tIndex,
+			Automaton automaton, int aIndex, Schema schema) {
+		int set = type.getContents(tIndex);
+		for (int i = 0; i != type.getSize(set); ++i) {
+			int element = type.getChild(set, i);
+			if (!accepts(type, element, automaton, aIndex, schema)) {
 				return false;
 			}
 		}
 		return true;
 	}
 
-	private static boolean acceptsOr(Automaton type, Automaton.Term tState,
-			Automaton automaton, Automaton.State aState, Schema schema) {
-		Automaton.Set set = (Automaton.Set) type.get(tState.contents);
-		for (int i = 0; i != set.size(); ++i) {
-			int element = set.get(i);
-			if (accepts(type, element, automaton, aState, schema)) {
+	private static boolean acceptsOr(Automaton type, int tIndex,
+			Automaton automaton, int aIndex, Schema schema) {
+		int set = type.getContents(tIndex);
+		for (int i = 0; i != type.getSize(set); ++i) {
+			int element = type.getChild(set, i);
+			if (accepts(type, element, automaton, aIndex, schema)) {
 				return true;
 			}
 		}
@@ -50,6 +50,7 @@ public class WyrlAntTask extends MatchingTask {
 	private String sourceFile;
 	private String outputFile;
 	private boolean debug;	
+	private boolean dispatch;
 	
 	public WyrlAntTask() {
 	}
@@ -70,6 +71,10 @@ public class WyrlAntTask extends MatchingTask {
 		this.debug = flag;
 	}
 	
+	public void setDispatch(boolean flag) {
+		this.dispatch = flag;
+	}
+	
 	public void execute() throws BuildException {
 		try {
 			long start = System.currentTimeMillis();
@@ -121,7 +126,9 @@ public class WyrlAntTask extends MatchingTask {
 				
 				start = System.currentTimeMillis();
 				BufferedWriter bw = new BufferedWriter(new FileWriter(ofile),65536);				
-				new JavaFileWriter(bw).write(sf);				
+				JavaFileWriter writer = new JavaFileWriter(bw);
+				writer.setDispatch(dispatch);
+				writer.write(sf);				
 				if(debug) {
 					long end = System.currentTimeMillis();
 					log("Wrote target file ... [" + (end - start) + "ms]");